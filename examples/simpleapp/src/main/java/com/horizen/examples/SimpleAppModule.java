@@ -59,6 +59,7 @@ public class SimpleAppModule
         File stateStore = new File(sidechainSettings.scorexSettings().dataDir().getAbsolutePath() + "/state");
         File historyStore = new File(sidechainSettings.scorexSettings().dataDir().getAbsolutePath() + "/history");
         File consensusStore = new File(sidechainSettings.scorexSettings().dataDir().getAbsolutePath() + "/consensusData");
+        File mainchainBlockReferencesStore = new File(sidechainSettings.scorexSettings().dataDir().getAbsolutePath() + "/mainchainBlockReferences");
 
 
 
@@ -121,6 +122,9 @@ public class SimpleAppModule
         bind(Storage.class)
                 .annotatedWith(Names.named("ConsensusStorage"))
                 .toInstance(IODBStorageUtil.getStorage(consensusStore));
+        bind(Storage.class)
+                .annotatedWith(Names.named("MainchainBlockReferencesStorage"))
+                .toInstance(IODBStorageUtil.getStorage(mainchainBlockReferencesStore));
 
         bind(new TypeLiteral<List<ApplicationApiGroup>> () {})
                 .annotatedWith(Names.named("CustomApiGroups"))
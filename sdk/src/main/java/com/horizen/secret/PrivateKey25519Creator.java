@@ -1,11 +1,8 @@
 package com.horizen.secret;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Ints;
 import com.horizen.node.NodeWallet;
 import com.horizen.utils.Ed25519;
 import com.horizen.utils.Pair;
-import scorex.crypto.hash.Blake2b256;
 
 import java.util.List;
 
@@ -34,9 +31,7 @@ public final class PrivateKey25519Creator implements SecretCreator<PrivateKey255
     @Override
     public PrivateKey25519 generateNextSecret(NodeWallet wallet) {
         List<Secret> prevSecrets = wallet.secretsOfType(PrivateKey25519.class);
-        byte[] nonce = Ints.toByteArray(prevSecrets.size());
-        byte[] seed = Blake2b256.hash(Bytes.concat(wallet.walletSeed(), nonce));
 
-        return generateSecret(seed);
+        return generateUnusedSecret(wallet, prevSecrets.size());
     }
 }
@@ -1,11 +1,8 @@
 package com.horizen.secret;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Ints;
 import com.horizen.cryptolibprovider.CryptoLibProvider;
 import com.horizen.cryptolibprovider.SchnorrFunctions.KeyType;
 import com.horizen.node.NodeWallet;
-import scorex.crypto.hash.Blake2b256;
 
 import java.util.EnumMap;
 import java.util.List;
@@ -35,9 +32,7 @@ public class SchnorrKeyGenerator implements SecretCreator<SchnorrSecret> {
     @Override
     public SchnorrSecret generateNextSecret(NodeWallet wallet) {
         List<Secret> prevSecrets = wallet.secretsOfType(SchnorrSecret.class);
-        byte[] nonce = Ints.toByteArray(prevSecrets.size());
-        byte[] seed = Blake2b256.hash(Bytes.concat(wallet.walletSeed(), nonce));
 
-        return generateSecret(seed);
+        return generateUnusedSecret(wallet, prevSecrets.size());
     }
 }
@@ -1,8 +1,15 @@
 package com.horizen.secret;
 
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
 import com.horizen.node.NodeWallet;
+import scorex.crypto.hash.Blake2b256;
 
-interface SecretCreator<S extends Secret>
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public interface SecretCreator<S extends Secret>
 {
     // Generate secret without context of previously generated secrets stored in wallet.
     // Mostly for tests.
@@ -10,4 +17,32 @@ interface SecretCreator<S extends Secret>
 
     // Generate secret taking in consideration context of previously generated secrets stored in wallet.
     S generateNextSecret(NodeWallet wallet);
+
+    // Generate secrets with derivation indexes in range [fromIndex, fromIndex + count) from the wallet seed.
+    // Secret with index N is the same one generateNextSecret returns for a wallet with N secrets of that type,
+    // unless the secret with index N is already in the wallet.
+    // Secrets are generated in parallel, the result is ordered by index.
+    default List<S> generateSecrets(byte[] walletSeed, int fromIndex, int count) {
+        return IntStream.range(fromIndex, fromIndex + count)
+                .parallel()
+                .mapToObj(index -> generateSecret(secretSeed(walletSeed, index)))
+                .collect(Collectors.toList());
+    }
+
+    // Generate the secret with the lowest derivation index starting from fromIndex, which is not in the wallet yet.
+    // Secrets derived for the explicit range of indexes may leave gaps, so the number of secrets is not always the next free index.
+    default S generateUnusedSecret(NodeWallet wallet, int fromIndex) {
+        int index = fromIndex;
+        S secret = generateSecret(secretSeed(wallet.walletSeed(), index));
+        while (wallet.secretByPublicKey(secret.publicImage()).isPresent()) {
+            index++;
+            secret = generateSecret(secretSeed(wallet.walletSeed(), index));
+        }
+        return secret;
+    }
+
+    // Deterministic seed of the secret with given derivation index.
+    static byte[] secretSeed(byte[] walletSeed, int index) {
+        return Blake2b256.hash(Bytes.concat(walletSeed, Ints.toByteArray(index)));
+    }
 }
\ No newline at end of file
@@ -1,10 +1,7 @@
 package com.horizen.secret;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Ints;
 import com.horizen.node.NodeWallet;
 import com.horizen.cryptolibprovider.CryptoLibProvider;
-import scorex.crypto.hash.Blake2b256;
 import com.horizen.cryptolibprovider.VrfFunctions.KeyType;
 import java.util.EnumMap;
 import java.util.List;
@@ -34,9 +31,7 @@ public class VrfKeyGenerator implements SecretCreator<VrfSecretKey> {
     @Override
     public VrfSecretKey generateNextSecret(NodeWallet wallet) {
         List<Secret> prevSecrets = wallet.secretsOfType(VrfSecretKey.class);
-        byte[] nonce = Ints.toByteArray(prevSecrets.size());
-        byte[] seed = Blake2b256.hash(Bytes.concat(wallet.walletSeed(), nonce));
 
-        return generateSecret(seed);
+        return generateUnusedSecret(wallet, prevSecrets.size());
     }
 }
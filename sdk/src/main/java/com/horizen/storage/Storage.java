@@ -1,5 +1,6 @@
 package com.horizen.storage;
 
+import java.util.Iterator;
 import java.util.Optional;
 import java.util.List;
 import com.horizen.utils.Pair;
@@ -12,6 +13,11 @@ public interface Storage {
     List<Pair<ByteArrayWrapper,Optional<ByteArrayWrapper>>> get(List<ByteArrayWrapper> keys);
     List<Pair<ByteArrayWrapper,ByteArrayWrapper>> getAll();
 
+    // Iterate over all the records without loading them at once, if the underlying storage supports it.
+    default Iterator<Pair<ByteArrayWrapper,ByteArrayWrapper>> getAllIterator() {
+        return getAll().iterator();
+    }
+
     Optional<ByteArrayWrapper> lastVersionID();
 
     void update(ByteArrayWrapper version, List<Pair<ByteArrayWrapper, ByteArrayWrapper>> toUpdate,
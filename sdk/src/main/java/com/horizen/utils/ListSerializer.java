@@ -67,4 +67,42 @@ public class ListSerializer<T extends BytesSerializable> implements ScorexSerial
 
         return objectsList;
     }
+
+    // Move the reader after the list without parsing its elements.
+    public void skip(Reader reader) {
+        int objectsCount = reader.getInt();
+        if(objectsCount < 0)
+            throw new IllegalArgumentException("Input data contains illegal elements count - " + objectsCount);
+
+        int objectsTotalLength = 0;
+        for(int i = 0; i < objectsCount; i++)
+            objectsTotalLength += reader.getInt();
+
+        if (reader.remaining() < objectsTotalLength)
+            throw new IllegalArgumentException("Input data is corrupted.");
+        reader.getBytes(objectsTotalLength);
+    }
+
+    // Parse only the element with the given index, the elements before it are skipped without parsing.
+    public T parseElement(Reader reader, int index) {
+        int objectsCount = reader.getInt();
+        if(index < 0 || index >= objectsCount)
+            throw new IllegalArgumentException("Input data doesn't contain element with index - " + index);
+
+        int offset = 0;
+        int length = 0;
+        for(int i = 0; i < objectsCount; i++) {
+            int currentLength = reader.getInt();
+            if(i < index)
+                offset += currentLength;
+            else if(i == index)
+                length = currentLength;
+        }
+
+        if (reader.remaining() < offset + length)
+            throw new IllegalArgumentException("Input data is corrupted.");
+        if (offset > 0)
+            reader.getBytes(offset);
+        return serializer.parseBytes(reader.getBytes(length));
+    }
 }
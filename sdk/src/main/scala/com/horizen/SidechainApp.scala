@@ -62,6 +62,7 @@ class SidechainApp @Inject()
    @Named("HistoryStorage") val historyStorage: Storage,
    @Named("WalletForgingBoxesInfoStorage") val walletForgingBoxesInfoStorage: Storage,
    @Named("ConsensusStorage") val consensusStorage: Storage,
+   @Named("MainchainBlockReferencesStorage") val mainchainBlockReferencesStorage: Storage,
    @Named("CustomApiGroups") val customApiGroups: JList[ApplicationApiGroup],
    @Named("RejectedApiPaths") val rejectedApiPaths : JList[Pair[String, String]]
   )
@@ -177,19 +178,22 @@ class SidechainApp @Inject()
   protected val sidechainHistoryStorage = new SidechainHistoryStorage(
     //openStorage(new JFile(s"${sidechainSettings.scorexSettings.dataDir.getAbsolutePath}/history")),
     registerStorage(historyStorage),
-    sidechainTransactionsCompanion, params)
+    sidechainTransactionsCompanion, params,
+    compressBlockBodies = sidechainSettings.history.compressBlockBodies)
   protected val consensusDataStorage = new ConsensusDataStorage(
     //openStorage(new JFile(s"${sidechainSettings.scorexSettings.dataDir.getAbsolutePath}/consensusData")),
     registerStorage(consensusStorage))
   protected val forgingBoxesMerklePathStorage = new ForgingBoxesInfoStorage(registerStorage(walletForgingBoxesInfoStorage))
+  // Note: a new required binding, so custom application modules must provide a "MainchainBlockReferencesStorage" too.
+  //openStorage(new JFile(s"${sidechainSettings.scorexSettings.dataDir.getAbsolutePath}/mainchainBlockReferences")),
+  protected val sidechainMainchainBlockReferencesStorage = new MainchainBlockReferencesStorage(registerStorage(mainchainBlockReferencesStorage))
 
   // Append genesis secrets if we start the node first time
   if(sidechainSecretStorage.isEmpty) {
-    for(secretHex <- sidechainSettings.wallet.genesisSecrets)
-      sidechainSecretStorage.add(sidechainSecretsCompanion.parseBytes(BytesUtils.fromHexString(secretHex)))
+    val genesisSecrets = (sidechainSettings.wallet.genesisSecrets ++ sidechainSettings.withdrawalEpochCertificateSettings.signersSecrets)
+      .map(secretHex => sidechainSecretsCompanion.parseBytes(BytesUtils.fromHexString(secretHex)))
 
-    for(secretSchnorr <- sidechainSettings.withdrawalEpochCertificateSettings.signersSecrets)
-      sidechainSecretStorage.add(sidechainSecretsCompanion.parseBytes(BytesUtils.fromHexString(secretSchnorr)))
+    sidechainSecretStorage.add(genesisSecrets.toList)
   }
 
 
@@ -241,7 +245,7 @@ class SidechainApp @Inject()
 
   // Init Forger with a proper web socket client
   val mainchainNodeChannel = new MainchainNodeChannelImpl(communicationClient, params)
-  val mainchainSynchronizer = new MainchainSynchronizer(mainchainNodeChannel)
+  val mainchainSynchronizer = new MainchainSynchronizer(mainchainNodeChannel, sidechainMainchainBlockReferencesStorage, sidechainSettings.websocket.blockRequestsInFlight)
   val sidechainBlockForgerActorRef: ActorRef = ForgerRef("Forger", sidechainSettings, nodeViewHolderRef,  mainchainSynchronizer, sidechainTransactionsCompanion, params)
 
   // Init Transactions and Block actors for Api routes classes
@@ -266,7 +270,7 @@ class SidechainApp @Inject()
     SidechainBlockApiRoute(settings.restApi, nodeViewHolderRef, sidechainBlockActorRef, sidechainBlockForgerActorRef),
     SidechainNodeApiRoute(peerManagerRef, networkControllerRef, timeProvider, settings.restApi, nodeViewHolderRef),
     SidechainTransactionApiRoute(settings.restApi, nodeViewHolderRef, sidechainTransactionActorRef, sidechainTransactionsCompanion, sidechainCoreTransactionFactory, params),
-    SidechainWalletApiRoute(settings.restApi, nodeViewHolderRef)
+    SidechainWalletApiRoute(settings.restApi, nodeViewHolderRef, sidechainSecretsCompanion)
   )
 
   // In order to provide the feature to override core api and exclude some other apis,
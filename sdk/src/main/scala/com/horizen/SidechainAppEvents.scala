@@ -1,5 +1,10 @@
 package com.horizen
 
+import scorex.util.ModifierId
+
 object SidechainAppEvents {
   object SidechainApplicationStart
+
+  // Published by the node view holder after the active chain was switched to another fork.
+  case class ChainSwitched(branchPoint: ModifierId, removedBlocks: Int, appliedBlocks: Int, durationInMs: Long)
 }
@@ -2,8 +2,8 @@ package com.horizen
 
 import java.util.{ArrayList => JArrayList, List => JList, Optional => JOptional}
 
-import com.horizen.block.{MainchainBlockReference, MainchainHeader, SidechainBlock}
-import com.horizen.chain.{MainchainBlockReferenceDataInfo, MainchainHeaderHash, MainchainHeaderInfo, SidechainBlockInfo}
+import com.horizen.block.{MainchainBlockReference, MainchainHeader, Ommer, SidechainBlock, SidechainBlockHeader}
+import com.horizen.chain.{LazyBlocksSeq, MainchainBlockReferenceDataInfo, MainchainHeaderHash, MainchainHeaderInfo, SidechainBlockInfo}
 import com.horizen.consensus._
 import com.horizen.node.NodeHistory
 import com.horizen.node.util.MainchainBlockReferenceInfo
@@ -127,6 +127,10 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
 
   def blockInfoById(blockId: ModifierId): SidechainBlockInfo = storage.blockInfoById(blockId)
 
+  def headerById(blockId: ModifierId): Option[SidechainBlockHeader] = storage.headerById(blockId)
+
+  def ommerById(blockId: ModifierId): Option[Ommer] = storage.ommerById(blockId)
+
   def blockToBlockInfo(block: SidechainBlock): Option[SidechainBlockInfo] = storage.blockInfoOptionById(block.parentId).map(calculateBlockInfo(block, _))
 
 
@@ -151,7 +155,7 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
   }
 
   def bestForkChanges(block: SidechainBlock): Try[ProgressInfo[SidechainBlock]] = Try {
-    val (newChainSuffix, currentChainSuffix) = commonBlockSuffixes(modifierById(block.parentId).get)
+    val (newChainSuffix, currentChainSuffix) = commonBlockSuffixes(block.parentId)
     if(newChainSuffix.isEmpty && currentChainSuffix.isEmpty)
       throw new IllegalArgumentException("Cannot retrieve fork changes. Fork length is more than params.maxHistoryRewritingLength")
 
@@ -160,11 +164,19 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
 
     if(newChainSuffixValidity) {
       val rollbackPoint = newChainSuffix.headOption
-      val toRemove = currentChainSuffix.tail.map(id => storage.blockById(id).get)
-      val toApply = newChainSuffix.tail.map(id => storage.blockById(id).get) ++ Seq(block)
+      // Current chain suffix blocks are consecutive blocks of the active chain after the common one.
+      val toRemoveIds: IndexedSeq[ModifierId] = storage.activeChainBlockIds(height - currentChainSuffix.size + 2, height).toIndexedSeq
+      require(toRemoveIds.nonEmpty)
+      val toApplyIds: IndexedSeq[ModifierId] = newChainSuffix.tail.toIndexedSeq :+ block.id
+
+      val missedBlockIds = (toRemoveIds ++ toApplyIds.init).filter(id => storage.blockInfoOptionById(id).isEmpty)
+      if(missedBlockIds.nonEmpty)
+        throw new IllegalStateException(s"Cannot retrieve fork changes. Blocks are missed in the storage: ${missedBlockIds.mkString(", ")}")
 
-      require(toRemove.nonEmpty)
-      require(toApply.nonEmpty)
+      // Blocks to remove and to apply are carried by ids and loaded from the storage one by one while traversing,
+      // so a long chain switch doesn't keep all the fork blocks in memory at once.
+      val toRemove = new LazyBlocksSeq(toRemoveIds, storage.blockById)
+      val toApply = new LazyBlocksSeq(toApplyIds, id => if (id == block.id) Some(block) else storage.blockById(id))
 
       ProgressInfo[SidechainBlock](rollbackPoint, toRemove, toApply, Seq())
     } else {
@@ -173,12 +185,12 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
     }
   }
 
-  // Find common suffixes for two chains - starting from forkBlock and from bestBlock.
+  // Find common suffixes for two chains - starting from forkBlockId and from bestBlock.
   // Returns last common block and then variant blocks for two chains.
-  private def commonBlockSuffixes(forkBlock: SidechainBlock): (Seq[ModifierId], Seq[ModifierId]) = {
-    chainBack(forkBlock.id, storage.isInActiveChain, Int.MaxValue) match {
+  private def commonBlockSuffixes(forkBlockId: ModifierId): (Seq[ModifierId], Seq[ModifierId]) = {
+    chainBack(forkBlockId, storage.isInActiveChain, height - params.maxHistoryRewritingLength) match {
       case Some(newBestChain) =>
-        val commonBlockHeight = storage.blockInfoById(newBestChain.head).height
+        val commonBlockHeight = storage.heightOf(newBestChain.head).get
         if(height - commonBlockHeight > params.maxHistoryRewritingLength)
           // fork length is more than params.maxHistoryRewritingLength
           (Seq[ModifierId](), Seq[ModifierId]())
@@ -192,20 +204,24 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
     (res._1.isEmpty && res._2.isEmpty) || res._1.head == res._2.head
   }
 
-  // Go back though chain and get block ids until condition 'until' or reaching the limit
-  // None if parent block is not in chain
-  // Note: work faster for active chain back (looks inside memory) and slower for fork chain (looks inside disk)
+  // Go back though chain and get block ids until condition 'until' or going below the minHeight
+  // None if parent block is not in chain or the condition was not reached above minHeight
+  // Note: parents are taken from the in-memory block tree for the blocks above the rewriting horizon, so no disk reads are expected
   private def chainBack(blockId: ModifierId,
                         until: ModifierId => Boolean,
-                        limit: Int): Option[Seq[ModifierId]] = { // to do
-    var acc: Seq[ModifierId] = Seq(blockId)
+                        minHeight: Int): Option[Seq[ModifierId]] = {
+    var acc: List[ModifierId] = List(blockId)
     var id = blockId
+    var idHeight = storage.heightOf(blockId).getOrElse(return None)
 
-    while(acc.size < limit && !until(id)) {
+    while(!until(id)) {
+      if(idHeight <= minHeight)
+        return None
       storage.parentBlockId(id) match {
         case Some(parentId) =>
-          acc = parentId +: acc
+          acc = parentId :: acc
           id = parentId
+          idHeight -= 1
         case _ =>
           //log.warn(s"Parent block for ${encoder.encode(block.id)} not found ")
           return None
@@ -215,8 +231,7 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
   }
 
   override def reportModifierIsValid(block: SidechainBlock): SidechainHistory = {
-      var newStorage = storage.updateSemanticValidity(block, ModifierSemanticValidity.Valid).get
-      newStorage = newStorage.setAsBestBlock(block, storage.blockInfoById(block.id)).get
+      val newStorage = storage.setAsValidBestBlock(block).get
       new SidechainHistory(newStorage, consensusDataStorage, params, semanticBlockValidators, historyBlockValidators)
   }
 
@@ -237,7 +252,11 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
     // Remove blocks, that were applied before current invalid one
     // Apply blocks, that were part of ActiveChain
     // skip blocks to Download, that are part of wrong chain we tried to apply.
-    val newProgressInfo = ProgressInfo(progressInfo.branchPoint, progressInfo.toApply.takeWhile(block => !block.id.equals(modifier.id)), progressInfo.toRemove, Seq())
+    val appliedBeforeInvalid: Seq[SidechainBlock] = progressInfo.toApply match {
+      case blocks: LazyBlocksSeq => blocks.takeWhileId(id => !id.equals(modifier.id))
+      case blocks => blocks.takeWhile(block => !block.id.equals(modifier.id))
+    }
+    val newProgressInfo = ProgressInfo(progressInfo.branchPoint, appliedBeforeInvalid, progressInfo.toRemove, Seq())
     newHistory -> newProgressInfo
   }
 
@@ -269,41 +288,17 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
   override def continuationIds(info: SidechainSyncInfo, size: Int): ModifierIds = {
     info.knownBlockIds.find(id => storage.isInActiveChain(id)) match {
       case Some(commonBlockId) =>
-        storage.activeChainAfter(commonBlockId).tail.take(size).map(id => (SidechainBlock.ModifierTypeId, id))
+        storage.activeChainAfter(commonBlockId, size).tail.map(id => (SidechainBlock.ModifierTypeId, id))
       case None =>
         //log.warn("Found chain without common block ids from remote")
         Seq()
     }
   }
 
-  // see https://en.bitcoin.it/wiki/Protocol_documentation#getblocks
-  private def knownBlocksHeightToSync(): Seq[Int] = {
-    if (isEmpty)
-      return Seq()
-
-    var indexes: Seq[Int] = Seq()
-
-    var step: Int = 1
-    // Start at the top of the chain and work backwards.
-    var index: Int = height
-    while (index > 1) {
-      indexes = indexes :+ index
-      // Push top 10 indexes first, then back off exponentially.
-      if(indexes.size >= 10)
-        step *= 2
-      index -= step
-    }
-    // Push the genesis block index.
-    indexes :+ 1
-  }
-
   override def syncInfo: SidechainSyncInfo = {
     // collect control points of block ids like in bitcoin (last 10, then increase step exponentially until genesis block)
-    SidechainSyncInfo(
-      // return a sequence of block ids for given blocks height backward starting from blockId
-      knownBlocksHeightToSync().map(height => storage.activeChainBlockId(height).get)
-    )
-
+    // the locator is cached by the storage till the best block changes
+    SidechainSyncInfo(storage.activeChainLocator)
   }
 
   // get divergent suffix until we reach the end of otherBlockIds or known block in otherBlockIds.
@@ -347,7 +342,7 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
         val otherBestKnownBlockIndex = dSuffix.size - 1 - dSuffix.reverse.indexWhere(id => storage.heightOf(id).isDefined)
         val otherBestKnownBlockHeight = storage.heightOf(dSuffix(otherBestKnownBlockIndex)).get
         // other node height can be approximatly calculated as height of other KNOWN best block height + size of rest unknown blocks after it.
-        // why approximately? see knownBlocksHeightToSync algorithm: blocks to sync step increasing.
+        // why approximately? see SidechainHistoryStorage.locatorHeights algorithm: blocks to sync step increasing.
         // to do: need to discuss
         val otherBestBlockApproxHeight = otherBestKnownBlockHeight + (dSuffix.size - 1 - otherBestKnownBlockIndex)
         if (storage.height < otherBestBlockApproxHeight)
@@ -369,18 +364,12 @@ class SidechainHistory private (val storage: SidechainHistoryStorage,
 
   override def getLastBlockIds(count: Int): JList[String] = {
     val blockList = new JArrayList[String]()
-    if(isEmpty)
-      blockList
-    else {
-      var id = bestBlockId
-      blockList.add(id)
-      while (blockList.size < count && !isGenesisBlock(id)) {
-        val parentBlockId = storage.parentBlockId(id).get
-        blockList.add(parentBlockId)
-        id = parentBlockId
-      }
-      blockList
+    if(!isEmpty) {
+      // At least the best block id is returned
+      val fromHeight = if (count > 1) Math.max(1, height - count + 1) else height
+      storage.activeChainBlockIds(fromHeight, height).reverseIterator.foreach(id => blockList.add(id))
     }
+    blockList
   }
 
   override def getBestBlock: SidechainBlock = {
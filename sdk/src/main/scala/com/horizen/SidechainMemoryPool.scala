@@ -1,6 +1,7 @@
 package com.horizen
 
 import java.util.{Comparator, Optional, ArrayList => JArrayList, List => JList}
+import java.util.concurrent.ConcurrentSkipListSet
 
 import com.horizen.box.Box
 import com.horizen.node.NodeMemoryPool
@@ -22,6 +23,11 @@ class SidechainMemoryPool(unconfirmed: TrieMap[String, SidechainTypes#SCBT])
   override type NVCT = SidechainMemoryPool
   //type BT = BoxTransaction[ProofOfKnowledgeProposition[Secret], Box[ProofOfKnowledgeProposition[Secret]]]
 
+  // Unconfirmed transactions ordered by fee decreasing. Updated on every add and remove,
+  // so the transactions for the next block are taken without sorting the whole pool.
+  private val unconfirmedByFee = new ConcurrentSkipListSet[SidechainTypes#SCBT](SidechainMemoryPool.feeDescendingComparator)
+  unconfirmedByFee.addAll(unconfirmed.values.asJavaCollection)
+
   // Getters:
   override def modifierById(modifierId: ModifierId): Option[SidechainTypes#SCBT] = {
     unconfirmed.get(modifierId)
@@ -40,7 +46,7 @@ class SidechainMemoryPool(unconfirmed: TrieMap[String, SidechainTypes#SCBT])
   }
 
   override def take(limit: Int): Iterable[SidechainTypes#SCBT] = {
-    unconfirmed.values.toSeq.sortBy(-_.fee).take(limit)
+    unconfirmedByFee.iterator().asScala.take(limit).toList
   }
 
   def take(sortFunc: (SidechainTypes#SCBT, SidechainTypes#SCBT) => Boolean,
@@ -54,7 +60,10 @@ class SidechainMemoryPool(unconfirmed: TrieMap[String, SidechainTypes#SCBT])
 
   override def filter(condition: SidechainTypes#SCBT => Boolean): SidechainMemoryPool = {
     unconfirmed.retain { (k, v) =>
-      condition(v)
+      val retained = condition(v)
+      if (!retained)
+        unconfirmedByFee.remove(v)
+      retained
     }
     this
   }
@@ -73,7 +82,7 @@ class SidechainMemoryPool(unconfirmed: TrieMap[String, SidechainTypes#SCBT])
     // tx.incompatibilityChecker().hasIncompatibleTransactions(tx, unconfirmed)
     if (tx.incompatibilityChecker().isMemoryPoolCompatible &&
         tx.incompatibilityChecker().isTransactionCompatible(tx, unconfirmed.values.toList.asJava)) {
-      unconfirmed.put(tx.id, tx)
+      addUnconfirmed(tx)
       Success[SidechainMemoryPool](this)
     }
     else
@@ -97,7 +106,7 @@ class SidechainMemoryPool(unconfirmed: TrieMap[String, SidechainTypes#SCBT])
     }
 
     for (t <- txs)
-      unconfirmed.put(t.id, t)
+      addUnconfirmed(t)
 
     new Success[SidechainMemoryPool](this)
   }
@@ -116,16 +125,21 @@ class SidechainMemoryPool(unconfirmed: TrieMap[String, SidechainTypes#SCBT])
     }
 
     for (t <- txs)
-      unconfirmed.put(t.id, t)
+      addUnconfirmed(t)
 
     this
   }
 
   override def remove(tx: SidechainTypes#SCBT): SidechainMemoryPool = {
-    unconfirmed.remove(tx.id)
+    unconfirmed.remove(tx.id).foreach(unconfirmedByFee.remove)
     this
   }
 
+  private def addUnconfirmed(tx: SidechainTypes#SCBT): Unit = {
+    unconfirmed.put(tx.id, tx).foreach(unconfirmedByFee.remove)
+    unconfirmedByFee.add(tx)
+  }
+
   override def getTransactions: JList[SidechainTypes#SCBT] = {
     unconfirmed.values.toList.asJava
   }
@@ -137,7 +151,7 @@ class SidechainMemoryPool(unconfirmed: TrieMap[String, SidechainTypes#SCBT])
   }
 
   override def getTransactionsSortedByFee(limit: Int): JList[SidechainTypes#SCBT] = {
-    unconfirmed.values.toList.sortBy(-_.fee).take(limit).asJava
+    unconfirmedByFee.iterator().asScala.take(limit).toList.asJava
   }
 
   override def getSize: Int = unconfirmed.size
@@ -150,5 +164,13 @@ class SidechainMemoryPool(unconfirmed: TrieMap[String, SidechainTypes#SCBT])
 object SidechainMemoryPool
 {
   lazy val emptyPool : SidechainMemoryPool = new SidechainMemoryPool(TrieMap())
+
+  // Fee decreasing order, transactions with the same fee are ordered by id.
+  val feeDescendingComparator: Comparator[SidechainTypes#SCBT] = new Comparator[SidechainTypes#SCBT] {
+    override def compare(tx1: SidechainTypes#SCBT, tx2: SidechainTypes#SCBT): Int = {
+      val feeComparison = java.lang.Long.compare(tx2.fee(), tx1.fee())
+      if (feeComparison != 0) feeComparison else tx1.id.compareTo(tx2.id)
+    }
+  }
 }
 
@@ -19,6 +19,8 @@ import scorex.core.utils.NetworkTimeProvider
 import scorex.util.{ModifierId, ScorexLogging}
 
 import scala.annotation.tailrec
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.{Future, blocking}
 import scala.util.{Failure, Success, Try}
 class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
                               historyStorage: SidechainHistoryStorage,
@@ -48,7 +50,10 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
                                             wallet: VL,
                                             failedMod: Option[SidechainBlock],
                                             alternativeProgressInfo: Option[ProgressInfo[SidechainBlock]],
-                                            suffix: IndexedSeq[SidechainBlock])
+                                            suffix: IndexedSeq[AppliedBlockTransactions])
+
+  // Applied block reduced to the data needed for the memory pool update, so the applied blocks are not kept in memory.
+  case class AppliedBlockTransactions(blockId: ModifierId, transactions: Seq[SidechainTypes#SCBT])
 
   override val scorexSettings: ScorexSettings = sidechainSettings.scorexSettings
 
@@ -86,6 +91,29 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
     result.get
   }
 
+  // History pruning is a low priority periodic task: it is processed between the other view holder messages
+  // and each run is limited by the number of heights, so the blocks application is not delayed for long.
+  override def preStart(): Unit = {
+    super.preStart()
+    val historySettings = sidechainSettings.history
+    if (historySettings.pruningEnabled) {
+      import context.dispatcher
+      context.system.scheduler.schedule(historySettings.pruningInterval, historySettings.pruningInterval, self, SidechainNodeViewHolder.ReceivableMessages.PruneHistory)
+    }
+  }
+
+  protected def processPruneHistory: Receive = {
+    case SidechainNodeViewHolder.ReceivableMessages.PruneHistory =>
+      val historySettings = sidechainSettings.history
+      historyStorage.prune(historySettings.pruningBodiesKeepEpochs, historySettings.pruningHeightsPerRun) match {
+        case Success(result) =>
+          if (result.prunedForkBlocks > 0 || result.prunedBodies > 0)
+            log.info(s"History pruned: ${result.prunedForkBlocks} fork blocks and ${result.prunedBodies} block bodies removed, ${result.reclaimedBytes} bytes reclaimed")
+        case Failure(ex) =>
+          log.error("History pruning failed", ex)
+      }
+  }
+
   protected def getCurrentSidechainNodeViewInfo: Receive = {
     case SidechainNodeViewHolder.ReceivableMessages.GetDataFromCurrentSidechainNodeView(f) => try {
       sender() ! f(new SidechainNodeView(history(), minimalState(), vault(), memoryPool()))
@@ -128,11 +156,72 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
     }
   }
 
+  protected def processLocallyGeneratedSecrets: Receive = {
+    case ls: SidechainNodeViewHolder.ReceivableMessages.LocallyGeneratedSecrets[SidechainTypes#SCS] =>
+      secretsModify(ls.secrets)
+  }
+
+  // Add all the secrets to the wallet at once, then look for their boxes in the current state with a single rescan.
+  // Note: the rescan goes in background, so the boxes of the secrets appear in the wallet after the reply.
+  protected def secretsModify(secrets: Seq[SidechainTypes#SCS]): Unit = {
+    val propositions: Set[SidechainTypes#SCP] = secrets.map(_.publicImage().asInstanceOf[SidechainTypes#SCP]).toSet
+    vault().addSecrets(secrets) match {
+      case Success(newVault) =>
+        updateNodeView(updatedVault = Some(newVault))
+        sender() ! Success(Unit)
+        startWalletRescan(propositions, new WalletRescanProgress())
+      case Failure(ex) =>
+        sender() ! Failure(ex)
+    }
+  }
+
+  protected def processRescanWallet: Receive = {
+    case SidechainNodeViewHolder.ReceivableMessages.RescanWallet(progress) =>
+      startWalletRescan(vault().publicKeys(), progress)
+
+    case SidechainNodeViewHolder.ReceivableMessages.ApplyWalletRescanChunk(propositions, boxes, timestamp, progress) =>
+      if (!progress.isCancelled) {
+        vault().applyRescanChunk(minimalState(), propositions, boxes, timestamp, progress) match {
+          case Success(newVault) =>
+            updateNodeView(updatedVault = Some(newVault))
+          case Failure(ex) =>
+            log.error(s"Wallet rescan failed: $progress", ex)
+            progress.cancel()
+        }
+      }
+
+    case SidechainNodeViewHolder.ReceivableMessages.FinishWalletRescan(progress) =>
+      progress.finish()
+      log.info(s"Wallet rescan completed: $progress")
+  }
+
+  // State is iterated by chunks outside of the node view holder, so it keeps processing other messages during the rescan.
+  // Boxes found in every chunk are sent back to be stored in the wallet one chunk per message.
+  protected def startWalletRescan(propositions: Set[SidechainTypes#SCP], progress: WalletRescanProgress): Unit = {
+    val state = minimalState()
+    val timestamp = history().bestBlock.timestamp
+    Future {
+      blocking {
+        try {
+          SidechainWallet.rescanState(state, propositions, progress)(boxes =>
+            self ! SidechainNodeViewHolder.ReceivableMessages.ApplyWalletRescanChunk(propositions, boxes, timestamp, progress))
+        } catch {
+          case ex: Exception => log.error(s"Wallet rescan failed: $progress", ex)
+        } finally {
+          self ! SidechainNodeViewHolder.ReceivableMessages.FinishWalletRescan(progress)
+        }
+      }
+    }
+  }
+
   override def receive: Receive = {
       applyFunctionOnNodeView orElse
       applyBiFunctionOnNodeView orElse
       getCurrentSidechainNodeViewInfo orElse
       processLocallyGeneratedSecret orElse
+      processLocallyGeneratedSecrets orElse
+      processRescanWallet orElse
+      processPruneHistory orElse
       super.receive
   }
 
@@ -151,17 +240,34 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
           context.system.eventStream.publish(NewOpenSurface(historyBeforeStUpdate.openSurfaceIds()))
 
           if (progressInfo.toApply.nonEmpty) {
-            val (newHistory, newStateTry, newWallet, blocksApplied) =
-              updateStateAndWallet(historyBeforeStUpdate, minimalState(), vault(), progressInfo, IndexedSeq())
+            val chainSwitchStart = System.nanoTime()
+            val (newHistory, newStateTry, newWallet, blocksApplied, walletRescanReverted) =
+              updateStateAndWallet(historyBeforeStUpdate, minimalState(), vault(), progressInfo, IndexedSeq(), walletRescanReverted = false)
 
             newStateTry match {
               case Success(newState) =>
-                val newMemPool = updateMemPool(progressInfo.toRemove, blocksApplied, memoryPool(), newState)
+                // Blocks to remove are loaded one by one, only their transactions are kept.
+                val removedBlocksTransactions: Seq[Seq[SidechainTypes#SCBT]] = progressInfo.toRemove.map(_.transactions).toList
+                val newMemPool = updateMemPoolTransactions(removedBlocksTransactions.flatten, blocksApplied.flatMap(_.transactions), memoryPool(), newState)
                 // Note: in parent NodeViewHolder.pmodModify wallet was updated here.
 
+                if (progressInfo.chainSwitchingNeeded) {
+                  val chainSwitched = SidechainAppEvents.ChainSwitched(progressInfo.branchPoint.get, removedBlocksTransactions.size,
+                    blocksApplied.size, (System.nanoTime() - chainSwitchStart) / 1000000)
+                  log.info(s"Chain switched at ${chainSwitched.branchPoint}: ${chainSwitched.removedBlocks} blocks removed, " +
+                    s"${chainSwitched.appliedBlocks} blocks applied in ${chainSwitched.durationInMs} ms")
+                  context.system.eventStream.publish(chainSwitched)
+                }
+
                 log.info(s"Persistent modifier ${pmod.encodedId} applied successfully")
                 updateNodeView(Some(newHistory), Some(newState), Some(newWallet), Some(newMemPool))
 
+                // Boxes found by the rescan were reverted together with the blocks, but they may still exist in the new State.
+                if (walletRescanReverted) {
+                  log.info("Wallet rescan results were reverted by the chain switch, the wallet is rescanned again.")
+                  startWalletRescan(newWallet.publicKeys(), new WalletRescanProgress())
+                }
+
 
               case Failure(e) =>
                 log.warn(s"Can`t apply persistent modifier (id: ${pmod.encodedId}, contents: $pmod) to minimal state", e)
@@ -188,28 +294,47 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
     }
   }
 
+  // This method is actually a copy-paste of parent NodeViewHolder.updateMemPool method.
+  // The difference is that it takes the transactions instead of the blocks, and applied ones are looked up by id in a set.
+  protected def updateMemPoolTransactions(rolledBackTxs: Seq[SidechainTypes#SCBT],
+                                          appliedTxs: Seq[SidechainTypes#SCBT],
+                                          memPool: MP,
+                                          state: MS): MP = {
+    val appliedTxIds: Set[ModifierId] = appliedTxs.map(_.id).toSet
+    memPool.putWithoutCheck(rolledBackTxs).filter(tx => !appliedTxIds.contains(tx.id) && state.validate(tx).isSuccess)
+  }
+
   // This method is actually a copy-paste of parent NodeViewHolder.updateState method.
   // The difference is that State is updated together with Wallet.
+  // State and Wallet are rolled back once to the branch point, then the blocks to apply are taken from the ProgressInfo one by one:
+  // the History provides them lazily, and only the transactions of the applied blocks are kept for the memory pool update.
+  // Also reports if the Wallet rollback has reverted the results of the rescan, so it must be done again.
   @tailrec
   private def updateStateAndWallet(history: HIS,
                           state: MS,
                           wallet: VL,
                           progressInfo: ProgressInfo[SidechainBlock],
-                          suffixApplied: IndexedSeq[SidechainBlock]): (HIS, Try[MS], VL, Seq[SidechainBlock]) = {
+                          suffixApplied: IndexedSeq[AppliedBlockTransactions],
+                          walletRescanReverted: Boolean): (HIS, Try[MS], VL, Seq[AppliedBlockTransactions], Boolean) = {
     requestDownloads(progressInfo)
 
     // Do rollback if chain switch needed
-    val (stateToApplyTry: Try[MS], walletToApplyTry: Try[VL], suffixTrimmed: IndexedSeq[SidechainBlock]) = if (progressInfo.chainSwitchingNeeded) {
-      @SuppressWarnings(Array("org.wartremover.warts.OptionPartial"))
-      val branchingPoint = progressInfo.branchPoint.get //todo: .get
-      if (state.version != branchingPoint) {
-        (
-          state.rollbackTo(idToVersion(branchingPoint)),
-          wallet.rollback(idToVersion(branchingPoint)),
-          trimChainSuffix(suffixApplied, branchingPoint)
-        )
-      } else (Success(state), Success(wallet), IndexedSeq())
-    } else (Success(state), Success(wallet), suffixApplied)
+    val (stateToApplyTry: Try[MS], walletToApplyTry: Try[VL], suffixTrimmed: IndexedSeq[AppliedBlockTransactions], rescanReverted: Boolean) =
+      if (progressInfo.chainSwitchingNeeded) {
+        @SuppressWarnings(Array("org.wartremover.warts.OptionPartial"))
+        val branchingPoint = progressInfo.branchPoint.get //todo: .get
+        if (state.version != branchingPoint) {
+          val stateRollbackTry = state.rollbackTo(idToVersion(branchingPoint))
+          val rescanVersionsBeforeRollback = wallet.rescanVersions
+          val walletRollbackTry = wallet.rollback(idToVersion(branchingPoint))
+          (
+            stateRollbackTry,
+            walletRollbackTry,
+            trimChainSuffix(suffixApplied, branchingPoint),
+            walletRescanReverted || walletRollbackTry.exists(rolledBackWallet => !rescanVersionsBeforeRollback.subsetOf(rolledBackWallet.rescanVersions))
+          )
+        } else (Success(state), Success(wallet), IndexedSeq(), walletRescanReverted)
+      } else (Success(state), Success(wallet), suffixApplied, walletRescanReverted)
 
     (stateToApplyTry, walletToApplyTry) match {
       case (Success(stateToApply), Success(walletToApply)) =>
@@ -219,8 +344,8 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
           case Some(_) =>
             @SuppressWarnings(Array("org.wartremover.warts.OptionPartial"))
             val alternativeProgressInfo = nodeUpdateInfo.alternativeProgressInfo.get
-            updateStateAndWallet(nodeUpdateInfo.history, nodeUpdateInfo.state, nodeUpdateInfo.wallet, alternativeProgressInfo, nodeUpdateInfo.suffix)
-          case None => (nodeUpdateInfo.history, Success(nodeUpdateInfo.state), nodeUpdateInfo.wallet, nodeUpdateInfo.suffix)
+            updateStateAndWallet(nodeUpdateInfo.history, nodeUpdateInfo.state, nodeUpdateInfo.wallet, alternativeProgressInfo, nodeUpdateInfo.suffix, rescanReverted)
+          case None => (nodeUpdateInfo.history, Success(nodeUpdateInfo.state), nodeUpdateInfo.wallet, nodeUpdateInfo.suffix, rescanReverted)
         }
       case (Failure(e), _) =>
         log.error("State rollback failed: ", e)
@@ -236,8 +361,8 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
   }
 
   // This method is actually a copy-paste of parent NodeViewHolder.trimChainSuffix method.
-  protected def trimChainSuffix(suffix: IndexedSeq[SidechainBlock], rollbackPoint: scorex.util.ModifierId): IndexedSeq[SidechainBlock] = {
-    val idx = suffix.indexWhere(_.id == rollbackPoint)
+  protected def trimChainSuffix(suffix: IndexedSeq[AppliedBlockTransactions], rollbackPoint: scorex.util.ModifierId): IndexedSeq[AppliedBlockTransactions] = {
+    val idx = suffix.indexWhere(_.blockId == rollbackPoint)
     if (idx == -1) IndexedSeq() else suffix.drop(idx)
   }
 
@@ -245,7 +370,7 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
   protected def applyStateAndWallet(history: HIS,
                            stateToApply: MS,
                            walletToApply: VL,
-                           suffixTrimmed: IndexedSeq[SidechainBlock],
+                           suffixTrimmed: IndexedSeq[AppliedBlockTransactions],
                            progressInfo: ProgressInfo[SidechainBlock]): SidechainNodeUpdateInformation = {
     val updateInfoSample = SidechainNodeUpdateInformation(history, stateToApply, walletToApply, None, None, suffixTrimmed)
     progressInfo.toApply.foldLeft(updateInfoSample) { case (updateInfo, modToApply) =>
@@ -269,7 +394,8 @@ class SidechainNodeViewHolder(sidechainSettings: SidechainSettings,
             val historyAfterApply = newHistory.reportModifierIsValid(modToApply)
             context.system.eventStream.publish(SemanticallySuccessfulModifier(modToApply))
             val walletAfterApply = newWallet.scanPersistent(modToApply)
-            SidechainNodeUpdateInformation(historyAfterApply, stateAfterApply, walletAfterApply, None, None, updateInfo.suffix :+ modToApply)
+            SidechainNodeUpdateInformation(historyAfterApply, stateAfterApply, walletAfterApply, None, None,
+              updateInfo.suffix :+ AppliedBlockTransactions(modToApply.id, modToApply.transactions))
           case Failure(e) =>
             val (historyAfterApply, newProgressInfo) = newHistory.reportModifierIsInvalid(modToApply, progressInfo)
             context.system.eventStream.publish(SemanticallyFailedModification(modToApply, e))
@@ -286,6 +412,14 @@ object SidechainNodeViewHolder /*extends ScorexLogging with ScorexEncoding*/ {
     case class ApplyFunctionOnNodeView[HIS, MS, VL, MP, A](f: java.util.function.Function[SidechainNodeView, A])
     case class ApplyBiFunctionOnNodeView[HIS, MS, VL, MP, T, A](f: java.util.function.BiFunction[SidechainNodeView, T, A], functionParameter: T)
     case class LocallyGeneratedSecret[S <: SidechainTypes#SCS](secret: S)
+    case class LocallyGeneratedSecrets[S <: SidechainTypes#SCS](secrets: Seq[S])
+    case class RescanWallet(progress: WalletRescanProgress)
+    private[horizen] case class ApplyWalletRescanChunk(propositions: Set[SidechainTypes#SCP],
+                                                       boxes: Seq[SidechainTypes#SCB],
+                                                       timestamp: Long,
+                                                       progress: WalletRescanProgress)
+    private[horizen] case class FinishWalletRescan(progress: WalletRescanProgress)
+    case object PruneHistory
   }
 }
 
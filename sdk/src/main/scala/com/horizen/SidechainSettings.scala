@@ -1,5 +1,7 @@
 package com.horizen
 
+import java.util.concurrent.TimeUnit
+
 import scorex.core.settings.ScorexSettings
 
 import scala.concurrent.duration.FiniteDuration
@@ -11,7 +13,8 @@ case class WebSocketSettings(address: String,
                              reconnectionMaxAttempts: Int,
                              zencliCommandLine: String,
                              zencliCommandLineArguments: Option[Seq[String]] = None,
-                             allowNoConnectionInRegtest: Boolean = true // In Regtest allow to forge new blocks without connection to MC node, for example.
+                             allowNoConnectionInRegtest: Boolean = true, // In Regtest allow to forge new blocks without connection to MC node, for example.
+                             blockRequestsInFlight: Int = 8 // Max number of MC block requests sent without waiting for the responses.
                             )
 
 case class GenesisDataSettings(scGenesisBlockHex: String,
@@ -32,6 +35,13 @@ case class withdrawalEpochCertificateSettings(submitterIsEnabled: Boolean,
 case class WalletSettings(seed: String,
                           genesisSecrets: Seq[String])
 
+case class HistorySettings(compressBlockBodies: Boolean = false, // Store new block bodies compressed, records of both formats stay readable.
+                           pruningEnabled: Boolean = false, // Remove the fork blocks below the history rewriting horizon.
+                           pruningBodiesKeepEpochs: Option[Int] = None, // Remove bodies of the active chain blocks older than this number of withdrawal epochs.
+                           pruningInterval: FiniteDuration = FiniteDuration(10, TimeUnit.MINUTES),
+                           pruningHeightsPerRun: Int = 1000 // Max number of heights pruned at once, so blocks application is not delayed for long.
+                          )
+
 case class MainchainSettings(
                               path: String
                             )
@@ -41,5 +51,6 @@ case class SidechainSettings(
                               genesisData: GenesisDataSettings,
                               websocket: WebSocketSettings,
                               withdrawalEpochCertificateSettings: withdrawalEpochCertificateSettings,
-                              wallet: WalletSettings
+                              wallet: WalletSettings,
+                              history: HistorySettings = HistorySettings()
                             )
\ No newline at end of file
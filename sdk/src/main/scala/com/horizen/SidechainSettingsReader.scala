@@ -25,7 +25,10 @@ object SidechainSettingsReader
     val genesisSetting = config.as[GenesisDataSettings]("scorex.genesis")
     val backwardTransfer = config.as[withdrawalEpochCertificateSettings]("scorex.withdrawalEpochCertificate")
     val walletSetting = config.as[WalletSettings]("scorex.wallet")
-    SidechainSettings(scorexSettings, genesisSetting, webSocketConnectorConfiguration, backwardTransfer, walletSetting)
+    val historySetting = config.getAs[HistorySettings]("scorex.history").getOrElse(HistorySettings())
+    require(historySetting.pruningBodiesKeepEpochs.forall(_ >= 2),
+      "History pruning must keep block bodies of at least 2 withdrawal epochs: the current and the previous ones are used by the certificates.")
+    SidechainSettings(scorexSettings, genesisSetting, webSocketConnectorConfiguration, backwardTransfer, walletSetting, historySetting)
   }
 
   def readConfigFromPath(userConfigPath: String, applicationConfigPath: Option[String]): Config = {
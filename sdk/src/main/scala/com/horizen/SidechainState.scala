@@ -20,6 +20,7 @@ import scorex.core.transaction.state.{BoxStateChangeOperation, BoxStateChanges,
 import scorex.util.{ModifierId, ScorexLogging}
 
 import scala.collection.JavaConverters._
+import scala.collection.parallel.TaskSupport
 import scala.util.{Failure, Success, Try}
 
 
@@ -78,6 +79,13 @@ class SidechainState private[horizen] (stateStorage: SidechainStateStorage, val
     }
   }
 
+  // get closed boxes from State storage by chunks, filtered in parallel
+  def closedBoxesByChunks(chunkSize: Int,
+                          taskSupport: TaskSupport,
+                          boxFilter: SidechainTypes#SCB => Boolean): (Int, Iterator[Seq[SidechainTypes#SCB]]) = {
+    stateStorage.getBoxesByChunks(chunkSize, taskSupport, boxFilter)
+  }
+
   def withdrawalRequests(epoch: Int): Seq[WithdrawalRequestBox] = {
     stateStorage.getWithdrawalRequests(epoch)
   }
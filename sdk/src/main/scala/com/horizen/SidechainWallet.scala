@@ -2,6 +2,7 @@ package com.horizen
 
 import java.lang
 import java.util.{List => JList, Optional => JOptional}
+import java.util.concurrent.ForkJoinPool
 
 import com.horizen.block.SidechainBlock
 import com.horizen.box.{Box, ForgerBox}
@@ -14,13 +15,17 @@ import com.horizen.storage._
 import com.horizen.transaction.Transaction
 import com.horizen.transaction.mainchain.SidechainCreation
 import com.horizen.utils.{ByteArrayWrapper, BytesUtils, ForgerBoxMerklePathInfo, MerklePath}
-import scorex.core.VersionTag
+import scorex.core.{VersionTag, bytesToId, versionToBytes}
 import com.horizen.utils._
 import scorex.util.ModifierId
+import scorex.crypto.hash.Blake2b256
+import com.google.common.primitives.Bytes
 
+import scala.annotation.tailrec
 import scala.util.Try
 import scala.collection.JavaConverters._
 import scala.collection.mutable
+import scala.collection.parallel.ForkJoinTaskSupport
 import scala.compat.java8.OptionConverters._
 
 
@@ -70,6 +75,15 @@ class SidechainWallet private[horizen] (seed: Array[Byte],
     this
   }
 
+  // Add the list of secrets at once: SecretStore commits them in chunks instead of one version per secret.
+  // Note: boxes of the secrets that already exist in the State are unknown to the wallet until rescan(...) is called.
+  def addSecrets(secrets: Seq[SidechainTypes#SCS]): Try[SidechainWallet] = Try {
+    require(secrets != null, "Secrets must be NOT NULL.")
+    secretStorage.add(secrets.toList).get
+    secrets.foreach(secret => applicationWallet.onAddSecret(secret))
+    this
+  }
+
   // 1) check for existence
   // 2) remove from SecretStore (note: provide a unique version to SecretStore)
   override def removeSecret(publicImage: SidechainTypes#SCP): Try[SidechainWallet] = Try {
@@ -144,17 +158,67 @@ class SidechainWallet private[horizen] (seed: Array[Byte],
     this
   }
 
+  // Add the boxes found by the rescan of the State (see SidechainWallet.rescanState(...)) for the given propositions to BoxStore.
+  // Delegated ForgerBoxes are added to ForgingBoxesInfoStorage the same way as during scanPersistent.
+  // Boxes not present in the current State anymore (spent after they were found) and already known boxes are skipped.
+  // State doesn't keep the transaction that created the box, so the State version (block id) is used as the transaction id,
+  // and the given timestamp as creation time.
+  // Results are committed under the versions derived from the last version of each storage, so the rollback to the current
+  // block keeps them (see rollback(...)).
+  def applyRescanChunk(state: SidechainState,
+                       propositions: Set[SidechainTypes#SCP],
+                       boxes: Seq[SidechainTypes#SCB],
+                       timestamp: Long,
+                       progress: WalletRescanProgress): Try[SidechainWallet] = Try {
+    require(state != null, "State must be NOT NULL.")
+    require(propositions != null, "Propositions must be NOT NULL.")
+    require(boxes != null, "Boxes must be NOT NULL.")
+    require(progress != null, "Progress must be NOT NULL.")
+
+    val stateVersionId = bytesToId(versionToBytes(state.version))
+    val closedBoxes = boxes.filter(box => state.closedBox(box.id()).isDefined)
+
+    val newWalletBoxes = closedBoxes
+      .withFilter(box => propositions.contains(box.proposition()) && walletBoxStorage.get(box.id()).isEmpty)
+      .map(box => new WalletBox(box, stateVersionId, timestamp))
+
+    // Already known forger boxes are skipped by the ForgingBoxesInfoStorage itself.
+    val delegatedForgerBoxes: Seq[ForgerBox] = closedBoxes
+      .withFilter(box => SidechainWallet.isDelegatedForgerBox(box, propositions))
+      .map(_.asInstanceOf[ForgerBox])
+
+    if (newWalletBoxes.nonEmpty)
+      walletBoxStorage.update(SidechainWallet.rescanVersion(walletBoxStorage.lastVersionId.asScala), newWalletBoxes.toList, List()).get
+
+    if (delegatedForgerBoxes.nonEmpty)
+      forgingBoxesInfoStorage.updateForgerBoxes(SidechainWallet.rescanVersion(forgingBoxesInfoStorage.lastVersionId), delegatedForgerBoxes, Seq()).get
+
+    progress.chunkProcessed(newWalletBoxes.size)
+    this
+  }
+
   // rollback BoxStorage and TransactionsStorage only. SecretStorage must not change.
+  // Rescan results and epoch info committed on top of the given block version belong to it, so they are kept.
   override def rollback(to: VersionTag): Try[SidechainWallet] = Try {
     require(to != null, "Version to rollback to must be NOT NULL.")
     val version = new ByteArrayWrapper(BytesUtils.fromHexString(to))
-    walletBoxStorage.rollback(version).get
+    walletBoxStorage.rollback(SidechainWallet.rollbackPoint(version, walletBoxStorage.rollbackVersions,
+      v => Seq(SidechainWallet.rescanVersion(Some(v))))).get
     walletTransactionStorage.rollback(version).get
-    forgingBoxesInfoStorage.rollback(version).get
+    forgingBoxesInfoStorage.rollback(SidechainWallet.rollbackPoint(version, forgingBoxesInfoStorage.rollbackVersions,
+      v => Seq(SidechainWallet.rescanVersion(Some(v)), forgingBoxesInfoStorage.nextVersionAfter(v)))).get
     applicationWallet.onRollback(version.data)
     this
   }
 
+  // Versions of the rescan results committed to the wallet storages (see applyRescanChunk(...)).
+  // The rollback below the block the rescan was done on reverts the found boxes, though they are still present in the State,
+  // so if some of these versions are missed after the rollback, the rescan must be done again.
+  def rescanVersions: Set[ByteArrayWrapper] = {
+    SidechainWallet.rescanVersionsOf(walletBoxStorage.rollbackVersions) ++
+      SidechainWallet.rescanVersionsOf(forgingBoxesInfoStorage.rollbackVersions)
+  }
+
   // Java NodeWallet interface definition
   override def allBoxes : JList[Box[Proposition]] = {
     walletBoxStorage.getAll.map(_.box).asJava
@@ -206,13 +270,17 @@ class SidechainWallet private[horizen] (seed: Array[Byte],
   override def walletSeed(): Array[Byte] = seed
 
   def applyConsensusEpochInfo(epochInfo: ConsensusEpochInfo): SidechainWallet = {
-    val merkleTreeLeaves = epochInfo.forgersBoxIds.leaves().asScala.map(leaf => new ByteArrayWrapper(leaf))
+    // Map each leaf to its index once, instead of searching through the leaves for every forger box.
+    val leafIndexes = mutable.HashMap[ByteArrayWrapper, Int]()
+    epochInfo.forgersBoxIds.leaves().asScala.iterator.zipWithIndex.foreach {
+      case (leaf, idx) => leafIndexes.put(new ByteArrayWrapper(leaf), idx)
+    }
 
     // Calculate merkle path for all delegated forgerBoxes
     val forgerBoxMerklePathInfoSeq = forgingBoxesInfoStorage.getForgerBoxes.getOrElse(Seq()).map(forgerBox => {
       ForgerBoxMerklePathInfo(
         forgerBox,
-        epochInfo.forgersBoxIds.getMerklePathForLeaf(merkleTreeLeaves.indexOf(new ByteArrayWrapper(forgerBox.id())))
+        epochInfo.forgersBoxIds.getMerklePathForLeaf(leafIndexes.getOrElse(new ByteArrayWrapper(forgerBox.id()), -1))
       )
     })
 
@@ -236,6 +304,77 @@ class SidechainWallet private[horizen] (seed: Array[Byte],
 
 object SidechainWallet
 {
+  // Number of State records processed at once during the rescan.
+  val rescanChunkSize: Int = 10000
+  // Number of threads used to parse and match the State records during the rescan.
+  val rescanParallelism: Int = Runtime.getRuntime.availableProcessors()
+
+  // Look through the closed boxes of the State for the ones owned by given propositions or delegated to them.
+  // State boxes are streamed by chunks: each chunk is parsed and matched in parallel, then the found boxes are passed to onChunk.
+  // It goes through the whole State storage, so it's expected to be called outside of the node view holder,
+  // with the found boxes applied to the wallet by applyRescanChunk(...) inside of it.
+  def rescanState(state: SidechainState,
+                  propositions: Set[SidechainTypes#SCP],
+                  progress: WalletRescanProgress)
+                 (onChunk: Seq[SidechainTypes#SCB] => Unit): Unit = {
+    require(state != null, "State must be NOT NULL.")
+    require(propositions != null, "Propositions must be NOT NULL.")
+    require(progress != null, "Progress must be NOT NULL.")
+
+    val pool = new ForkJoinPool(rescanParallelism)
+    try {
+      val (totalChunks, chunks) = if (propositions.nonEmpty)
+        state.closedBoxesByChunks(rescanChunkSize, new ForkJoinTaskSupport(pool),
+          box => propositions.contains(box.proposition()) || isDelegatedForgerBox(box, propositions))
+      else
+        (0, Iterator.empty)
+
+      progress.start(totalChunks)
+
+      while (chunks.hasNext && !progress.isCancelled)
+        onChunk(chunks.next())
+    } finally {
+      pool.shutdown()
+    }
+  }
+
+  private def isDelegatedForgerBox(box: SidechainTypes#SCB, propositions: Set[SidechainTypes#SCP]): Boolean = box match {
+    case forgerBox: ForgerBox => propositions.contains(forgerBox.blockSignProposition())
+    case _ => false
+  }
+
+  private def randomVersion: ByteArrayWrapper = {
+    val version = new Array[Byte](32)
+    scala.util.Random.nextBytes(version)
+    new ByteArrayWrapper(version)
+  }
+
+  // Version of the rescan update committed on top of the given last version of the storage.
+  private[horizen] def rescanVersion(lastVersion: Option[ByteArrayWrapper]): ByteArrayWrapper = lastVersion match {
+    case Some(version) => new ByteArrayWrapper(Blake2b256.hash(Bytes.concat("rescan".getBytes, version.data)))
+    case None => randomVersion
+  }
+
+  // Storage versions, which are the rescan versions committed on top of the other storage versions.
+  private[horizen] def rescanVersionsOf(storageVersions: Seq[ByteArrayWrapper]): Set[ByteArrayWrapper] = {
+    val versions = storageVersions.toSet
+    storageVersions.map(version => rescanVersion(Some(version))).filter(versions.contains).toSet
+  }
+
+  // Last of the storage versions committed on top of the given block version before the next block,
+  // i.e. following the chain of the versions derived from the block version.
+  private[horizen] def rollbackPoint(blockVersion: ByteArrayWrapper,
+                                     storageVersions: Seq[ByteArrayWrapper],
+                                     derivedVersions: ByteArrayWrapper => Seq[ByteArrayWrapper]): ByteArrayWrapper = {
+    val versions = storageVersions.toSet
+    @tailrec
+    def lastDerivedVersion(version: ByteArrayWrapper): ByteArrayWrapper = derivedVersions(version).find(versions.contains) match {
+      case Some(derivedVersion) => lastDerivedVersion(derivedVersion)
+      case None => version
+    }
+    lastDerivedVersion(blockVersion)
+  }
+
   private[horizen] def restoreWallet(seed: Array[Byte],
                                      walletBoxStorage: SidechainWalletBoxStorage,
                                      secretStorage: SidechainSecretStorage,
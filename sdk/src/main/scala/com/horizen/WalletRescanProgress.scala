@@ -0,0 +1,38 @@
+package com.horizen
+
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
+
+
+// Progress of the wallet rescan from State. Is shared between the rescan itself and its observers, like API.
+// Cancellation is checked between the chunks, so WalletBoxes found in already processed chunks remain in the wallet.
+class WalletRescanProgress {
+  private val cancelled = new AtomicBoolean(false)
+  private val finished = new AtomicBoolean(false)
+  private val totalChunksCounter = new AtomicInteger(0)
+  private val processedChunksCounter = new AtomicInteger(0)
+  private val foundBoxesCounter = new AtomicInteger(0)
+
+  def cancel(): Unit = cancelled.set(true)
+
+  def isCancelled: Boolean = cancelled.get()
+
+  def isFinished: Boolean = finished.get()
+
+  def totalChunks: Int = totalChunksCounter.get()
+
+  def processedChunks: Int = processedChunksCounter.get()
+
+  def foundBoxes: Int = foundBoxesCounter.get()
+
+  private[horizen] def start(totalChunks: Int): Unit = totalChunksCounter.set(totalChunks)
+
+  private[horizen] def chunkProcessed(boxesFound: Int): Unit = {
+    foundBoxesCounter.addAndGet(boxesFound)
+    processedChunksCounter.incrementAndGet()
+  }
+
+  private[horizen] def finish(): Unit = finished.set(true)
+
+  override def toString: String = s"WalletRescanProgress(processed $processedChunks of $totalChunks chunks, found $foundBoxes boxes" +
+    s"${if (isCancelled) ", cancelled" else ""}${if (isFinished) ", finished" else ""})"
+}
@@ -9,8 +9,8 @@ import com.horizen.api.http.SidechainBlockErrorResponse._
 import com.horizen.api.http.SidechainBlockRestSchema._
 import com.horizen.block.SidechainBlock
 import com.horizen.consensus.{intToConsensusEpochNumber, intToConsensusSlotNumber}
-import com.horizen.forge.Forger.ReceivableMessages.{GetForgingInfo, StartForging, StopForging, TryForgeNextBlockForEpochAndSlot}
-import com.horizen.forge.ForgingInfo
+import com.horizen.forge.Forger.ReceivableMessages.{GetForgingInfo, GetForgingSchedule, StartForging, StopForging, TryForgeNextBlockForEpochAndSlot}
+import com.horizen.forge.{Forger, ForgingInfo, ForgingSlotEligibility}
 import com.horizen.serialization.Views
 import com.horizen.utils.BytesUtils
 import scorex.core.settings.RESTApiSettings
@@ -25,7 +25,7 @@ case class SidechainBlockApiRoute(override val settings: RESTApiSettings, sidech
   extends SidechainApiRoute {
 
   override val route: Route = pathPrefix("block") {
-    findById ~ findLastIds ~ findIdByHeight ~ getBestBlockInfo ~ startForging ~ stopForging ~ generateBlockForEpochNumberAndSlot ~ getForgingInfo
+    findById ~ findLastIds ~ findIdByHeight ~ getBestBlockInfo ~ startForging ~ stopForging ~ generateBlockForEpochNumberAndSlot ~ getForgingInfo ~ getForgingSchedule
   }
 
   /**
@@ -135,6 +135,23 @@ case class SidechainBlockApiRoute(override val settings: RESTApiSettings, sidech
     }
   }
 
+  /**
+    * Return the next slots of the current consensus epoch, in which the node's forger boxes are eligible to forge.
+    */
+  def getForgingSchedule: Route = (post & path("forgingSchedule")) {
+    entity(as[ReqForgingSchedule]) { body =>
+      val future = forgerRef ? GetForgingSchedule(body.slotsNumber.getOrElse(Forger.eligibilityLookAheadSlots))
+      val result = Await.result(future, timeout.duration).asInstanceOf[Try[Seq[ForgingSlotEligibility]]]
+      result match {
+        case Success(eligibleSlots) =>
+          ApiResponseUtil.toResponse(RespForgingSchedule(eligibleSlots.map(eligibility =>
+            RespEligibleSlot(eligibility.epochAndSlot.epochNumber, eligibility.epochAndSlot.slotNumber,
+              BytesUtils.toHexString(eligibility.forgerBoxId), eligibility.forgerBoxValue))))
+        case Failure(ex) => ApiResponseUtil.toResponse(ErrorGetForgingSchedule(s"Failed to get forging schedule: ${ex.getMessage}", None))
+      }
+    }
+  }
+
 }
 
 
@@ -179,6 +196,18 @@ object SidechainBlockRestSchema {
   @JsonView(Array(classOf[Views.Default]))
   private[api] case class RespForgingInfo(consensusSecondsInSlot: Int, consensusSlotsInEpoch: Int, bestEpochNumber: Int, bestSlotNumber: Int) extends SuccessResponse
 
+  @JsonView(Array(classOf[Views.Default]))
+  private[api] case class ReqForgingSchedule(slotsNumber: Option[Int]) {
+    require(slotsNumber.forall(number => number > 0 && number <= Forger.maxForgingScheduleSlots),
+      s"Invalid slots number $slotsNumber. Number must be > 0 and <= ${Forger.maxForgingScheduleSlots}")
+  }
+
+  @JsonView(Array(classOf[Views.Default]))
+  private[api] case class RespEligibleSlot(epochNumber: Int, slotNumber: Int, forgerBoxId: String, forgerBoxValue: Long)
+
+  @JsonView(Array(classOf[Views.Default]))
+  private[api] case class RespForgingSchedule(eligibleSlots: Seq[RespEligibleSlot]) extends SuccessResponse
+
   @JsonView(Array(classOf[Views.Default]))
   private[api] case class ReqSubmit(blockHex: String) {
     require(blockHex.nonEmpty, s"Invalid hex data $blockHex. String must be not empty")
@@ -235,4 +264,8 @@ object SidechainBlockErrorResponse {
   case class ErrorGetForgingInfo(description: String, exception: Option[Throwable]) extends ErrorResponse {
     override val code: String = "0108"
   }
-}
\ No newline at end of file
+
+  case class ErrorGetForgingSchedule(description: String, exception: Option[Throwable]) extends ErrorResponse {
+    override val code: String = "0109"
+  }
+}
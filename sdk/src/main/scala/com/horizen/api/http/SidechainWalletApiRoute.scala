@@ -5,15 +5,17 @@ import akka.http.scaladsl.server.Route
 import akka.pattern.ask
 import com.fasterxml.jackson.annotation.JsonView
 import com.horizen.SidechainNodeViewHolder.ReceivableMessages
-import com.horizen.SidechainNodeViewHolder.ReceivableMessages.LocallyGeneratedSecret
-import com.horizen.SidechainTypes
+import com.horizen.SidechainNodeViewHolder.ReceivableMessages.{LocallyGeneratedSecret, LocallyGeneratedSecrets, RescanWallet}
+import com.horizen.{SidechainTypes, WalletRescanProgress}
 import com.horizen.api.http.JacksonSupport._
-import com.horizen.api.http.SidechainWalletErrorResponse.ErrorSecretNotAdded
+import com.horizen.api.http.SidechainWalletErrorResponse.{ErrorRescanInProgress, ErrorRescanNotFound, ErrorSecretDerivation, ErrorSecretNotAdded, ErrorSecretParsing}
 import com.horizen.api.http.SidechainWalletRestScheme._
 import com.horizen.box.Box
+import com.horizen.companion.SidechainSecretsCompanion
 import com.horizen.proposition.{Proposition, VrfPublicKey}
-import com.horizen.secret.{PrivateKey25519Creator, VrfKeyGenerator}
+import com.horizen.secret.{PrivateKey25519, PrivateKey25519Creator, SchnorrKeyGenerator, SchnorrSecret, VrfKeyGenerator, VrfSecretKey}
 import com.horizen.serialization.Views
+import com.horizen.utils.BytesUtils
 import scorex.core.settings.RESTApiSettings
 
 import scala.collection.JavaConverters._
@@ -21,11 +23,16 @@ import scala.concurrent.{Await, ExecutionContext}
 import scala.util.{Failure, Success, Try}
 
 case class SidechainWalletApiRoute(override val settings: RESTApiSettings,
-                                   sidechainNodeViewHolderRef: ActorRef)(implicit val context: ActorRefFactory, override val ec: ExecutionContext)
+                                   sidechainNodeViewHolderRef: ActorRef,
+                                   sidechainSecretsCompanion: SidechainSecretsCompanion)(implicit val context: ActorRefFactory, override val ec: ExecutionContext)
   extends SidechainApiRoute {
 
+  // Progress of the last wallet rescan started through the API.
+  @volatile private var lastRescanProgress: Option[WalletRescanProgress] = None
+
   override val route: Route = (pathPrefix("wallet")) {
-    allBoxes ~ balance ~ createPrivateKey25519 ~ createVrfSecret ~ allPublicKeys
+    allBoxes ~ balance ~ createPrivateKey25519 ~ createVrfSecret ~ importSecrets ~ deriveSecrets ~ allPublicKeys ~
+      rescan ~ rescanStatus ~ cancelRescan
   }
 
   /**
@@ -105,6 +112,74 @@ case class SidechainWalletApiRoute(override val settings: RESTApiSettings,
     }
   }
 
+  /**
+    * Import the list of secrets at once and return corresponding public keys.
+    * Secrets are stored in chunked batches followed by a single wallet rescan of the current state.
+    */
+  def importSecrets: Route = (post & path("importSecrets")) {
+    entity(as[ReqImportSecrets]) { body =>
+      Try(body.secrets.map(secretHex => sidechainSecretsCompanion.parseBytes(BytesUtils.fromHexString(secretHex)))) match {
+        case Success(secrets) =>
+          val future = sidechainNodeViewHolderRef ? LocallyGeneratedSecrets(secrets)
+          Await.result(future, timeout.duration).asInstanceOf[Try[Unit]] match {
+            case Success(_) =>
+              ApiResponseUtil.toResponse(RespImportSecrets(secrets.map(_.publicImage().asInstanceOf[SidechainTypes#SCP])))
+            case Failure(e) =>
+              ApiResponseUtil.toResponse(ErrorSecretNotAdded("Failed to import secrets.", Some(e)))
+          }
+        case Failure(e) =>
+          ApiResponseUtil.toResponse(ErrorSecretParsing(e.getMessage, Some(e)))
+      }
+    }
+  }
+
+  /**
+    * Derive secrets of the given type from the wallet seed for the range of indexes [fromIndex, fromIndex + count),
+    * register the ones unknown to the wallet and return corresponding public keys.
+    * If 'fromIndex' is not specified, the next 'count' secrets are derived, so a lookahead pool of addresses can be prepared.
+    */
+  def deriveSecrets: Route = (post & path("deriveSecrets")) {
+    entity(as[ReqDeriveSecrets]) { body =>
+      withNodeView { sidechainNodeView =>
+        val wallet = sidechainNodeView.getNodeWallet
+        val secretType = body.secretType.getOrElse(classOf[PrivateKey25519].getSimpleName)
+
+        Try {
+          require(body.count > 0 && body.count <= SidechainWalletApiRoute.maxSecretsToDerive,
+            s"Number of secrets to derive must be in range [1, ${SidechainWalletApiRoute.maxSecretsToDerive}].")
+          require(body.fromIndex.forall(_ >= 0), "Derivation index must be non-negative.")
+
+          val derivedSecrets: Seq[SidechainTypes#SCS] = secretType match {
+            case "PrivateKey25519" =>
+              val fromIndex = body.fromIndex.getOrElse(wallet.secretsOfType(classOf[PrivateKey25519]).size())
+              PrivateKey25519Creator.getInstance().generateSecrets(wallet.walletSeed(), fromIndex, body.count).asScala
+            case "VrfSecretKey" =>
+              val fromIndex = body.fromIndex.getOrElse(wallet.secretsOfType(classOf[VrfSecretKey]).size())
+              VrfKeyGenerator.getInstance().generateSecrets(wallet.walletSeed(), fromIndex, body.count).asScala
+            case "SchnorrSecret" =>
+              val fromIndex = body.fromIndex.getOrElse(wallet.secretsOfType(classOf[SchnorrSecret]).size())
+              SchnorrKeyGenerator.getInstance().generateSecrets(wallet.walletSeed(), fromIndex, body.count).asScala
+            case _ =>
+              throw new IllegalArgumentException(s"Secret type $secretType can't be derived.")
+          }
+          derivedSecrets
+        } match {
+          case Success(derivedSecrets) =>
+            val newSecrets = derivedSecrets.filterNot(secret => wallet.secretByPublicKey(secret.publicImage()).isPresent)
+            val future = sidechainNodeViewHolderRef ? LocallyGeneratedSecrets(newSecrets)
+            Await.result(future, timeout.duration).asInstanceOf[Try[Unit]] match {
+              case Success(_) =>
+                ApiResponseUtil.toResponse(RespDeriveSecrets(derivedSecrets.map(_.publicImage().asInstanceOf[SidechainTypes#SCP])))
+              case Failure(e) =>
+                ApiResponseUtil.toResponse(ErrorSecretNotAdded("Failed to add derived secrets.", Some(e)))
+            }
+          case Failure(e) =>
+            ApiResponseUtil.toResponse(ErrorSecretDerivation(e.getMessage, Some(e)))
+        }
+      }
+    }
+  }
+
   /**
     * Returns the list of all wallet’s propositions (public keys). Filter propositions of the given type
     */
@@ -127,6 +202,48 @@ case class SidechainWalletApiRoute(override val settings: RESTApiSettings,
     }
   }
 
+  /**
+    * Start the rescan of the State boxes for all wallet's propositions.
+    * Rescan goes in background, its progress can be checked with 'rescanStatus'.
+    */
+  def rescan: Route = (post & path("rescan")) {
+    lastRescanProgress match {
+      case Some(progress) if !progress.isFinished =>
+        ApiResponseUtil.toResponse(ErrorRescanInProgress("Wallet rescan is already in progress.", None))
+      case _ =>
+        val progress = new WalletRescanProgress()
+        lastRescanProgress = Some(progress)
+        sidechainNodeViewHolderRef ! RescanWallet(progress)
+        ApiResponseUtil.toResponse(rescanStatusResponse(progress))
+    }
+  }
+
+  /**
+    * Return the progress of the last wallet rescan.
+    */
+  def rescanStatus: Route = (post & path("rescanStatus")) {
+    lastRescanProgress match {
+      case Some(progress) => ApiResponseUtil.toResponse(rescanStatusResponse(progress))
+      case None => ApiResponseUtil.toResponse(ErrorRescanNotFound("Wallet rescan was not started.", None))
+    }
+  }
+
+  /**
+    * Cancel the last wallet rescan. Boxes found before cancellation remain in the wallet.
+    */
+  def cancelRescan: Route = (post & path("cancelRescan")) {
+    lastRescanProgress match {
+      case Some(progress) =>
+        progress.cancel()
+        ApiResponseUtil.toResponse(rescanStatusResponse(progress))
+      case None => ApiResponseUtil.toResponse(ErrorRescanNotFound("Wallet rescan was not started.", None))
+    }
+  }
+
+  private def rescanStatusResponse(progress: WalletRescanProgress): RespRescanStatus = {
+    RespRescanStatus(progress.processedChunks, progress.totalChunks, progress.foundBoxes, progress.isCancelled, progress.isFinished)
+  }
+
   def getClassBySecretClassName(className: String): java.lang.Class[_ <: SidechainTypes#SCS] = {
     Try{Class.forName(className).asSubclass(classOf[SidechainTypes#SCS])}.
       getOrElse(Class.forName("com.horizen.secret." + className).asSubclass(classOf[SidechainTypes#SCS]))
@@ -138,6 +255,11 @@ case class SidechainWalletApiRoute(override val settings: RESTApiSettings,
   }
 }
 
+object SidechainWalletApiRoute {
+  // Max number of secrets that can be derived within a single request.
+  val maxSecretsToDerive: Int = 100000
+}
+
 object SidechainWalletRestScheme {
 
   @JsonView(Array(classOf[Views.Default]))
@@ -158,6 +280,22 @@ object SidechainWalletRestScheme {
   @JsonView(Array(classOf[Views.Default]))
   private[api] case class RespCreateVrfSecret(proposition: VrfPublicKey) extends SuccessResponse
 
+  @JsonView(Array(classOf[Views.Default]))
+  private[api] case class ReqImportSecrets(secrets: Seq[String])
+
+  @JsonView(Array(classOf[Views.Default]))
+  private[api] case class RespImportSecrets(propositions: Seq[Proposition]) extends SuccessResponse
+
+  @JsonView(Array(classOf[Views.Default]))
+  private[api] case class ReqDeriveSecrets(secretType: Option[String], fromIndex: Option[Int], count: Int)
+
+  @JsonView(Array(classOf[Views.Default]))
+  private[api] case class RespDeriveSecrets(propositions: Seq[Proposition]) extends SuccessResponse
+
+  @JsonView(Array(classOf[Views.Default]))
+  private[api] case class RespRescanStatus(processedChunks: Int, totalChunks: Int, foundBoxes: Int,
+                                           cancelled: Boolean, finished: Boolean) extends SuccessResponse
+
   @JsonView(Array(classOf[Views.Default]))
   private[api] case class ReqAllPropositions(proptype: Option[String])
 
@@ -172,4 +310,20 @@ object SidechainWalletErrorResponse {
     override val code: String = "0301"
   }
 
+  case class ErrorSecretParsing(description: String, exception: Option[Throwable]) extends ErrorResponse {
+    override val code: String = "0302"
+  }
+
+  case class ErrorSecretDerivation(description: String, exception: Option[Throwable]) extends ErrorResponse {
+    override val code: String = "0303"
+  }
+
+  case class ErrorRescanInProgress(description: String, exception: Option[Throwable]) extends ErrorResponse {
+    override val code: String = "0304"
+  }
+
+  case class ErrorRescanNotFound(description: String, exception: Option[Throwable]) extends ErrorResponse {
+    override val code: String = "0305"
+  }
+
 }
\ No newline at end of file
@@ -108,13 +108,23 @@ class Equihash(val N: Int, val K: Int) {
     true
   }
 
-  // Generates base digest state with Horizen Mainchain personalization bytes and updates with msg (usually header bytes without solution)
+  // Checks the solution for the msg (usually header bytes without solution) with Horizen Mainchain personalization bytes.
+  // Uses the allocation free EquihashVerifier of the current thread, results are the same as for the Blake2bDigest based check.
   def checkEquihashSolution(msgBytes: Array[Byte], solution: Array[Byte]): Boolean = {
+    if(msgBytes == null || solution == null)
+      throw new IllegalArgumentException("Invalid parameters!")
+    if (solution.length != SolutionWidth)
+      return false
+
+    Equihash.verifier(N, K).verify(msgBytes, solution)
+  }
+
+  // Generates base digest state with Horizen Mainchain personalization bytes and updates with msg.
+  private[block] def baseDigest(msgBytes: Array[Byte]): Blake2bDigest = {
     val b2digest: Blake2bDigest = new Blake2bDigest(null, HashOutputLength, null,
       Bytes.concat("ZcashPoW".getBytes, BytesUtils.reverseBytes(Ints.toByteArray(N)), BytesUtils.reverseBytes(Ints.toByteArray(K))))
     b2digest.update(msgBytes, 0, msgBytes.length)
-
-    checkEquihashSolution(b2digest, solution)
+    b2digest
   }
 
   def checkEquihashSolution(b2digest: Blake2bDigest, solution: Array[Byte]): Boolean = {
@@ -161,6 +171,18 @@ class Equihash(val N: Int, val K: Int) {
 
 object Equihash {
 
+  // Verifier buffers depend on (N, K) only, so a single verifier per thread is enough.
+  private val verifiers: ThreadLocal[EquihashVerifier] = new ThreadLocal[EquihashVerifier]()
+
+  private[block] def verifier(N: Int, K: Int): EquihashVerifier = {
+    var verifier: EquihashVerifier = verifiers.get()
+    if (verifier == null || verifier.N != N || verifier.K != K) {
+      verifier = new EquihashVerifier(N, K)
+      verifiers.set(verifier)
+    }
+    verifier
+  }
+
   def getIndicesFromMinimal(minimal: Array[Byte], collisionBitLength: Int): Array[Int] = {
     assert(((collisionBitLength+1)+7)/8 <= 4)
     val lenIndices: Int = 8*4*minimal.length/(collisionBitLength+1)
@@ -0,0 +1,253 @@
+package com.horizen.block
+
+import java.util
+
+// Allocation free Equihash solution verifier, gives the same results as Equihash.checkEquihashSolution(b2digest, solution).
+// All the buffers are allocated once and reused for every verification, so an instance must be used by a single thread only.
+// Each Blake2b output is calculated once for all the solution indices of the same IndicesPerHashOutput group.
+// Leaf hashes are kept as (K + 1) collision chunks in a primitive int array, the indices tree is collapsed in place level by level.
+private[block] class EquihashVerifier(val N: Int, val K: Int) {
+  import EquihashVerifier._
+
+  private val IndicesPerHashOutput: Int = 512 / N
+  private val HashOutputLength: Int = IndicesPerHashOutput * N / 8
+  private val CollisionBitLength: Int = N / (K + 1)
+  private val IndexBitLength: Int = CollisionBitLength + 1
+  private val IndicesNumber: Int = 1 << K
+  private val ChunksPerIndex: Int = K + 1
+
+  private val indices: Array[Int] = new Array[Int](IndicesNumber)
+  private val sortedIndices: Array[Int] = new Array[Int](IndicesNumber)
+  private val chunks: Array[Int] = new Array[Int](IndicesNumber * ChunksPerIndex)
+
+  // Open addressing table: hash output index -> position of the calculated output in hashOutputs.
+  private val cacheCapacityBits: Int = K + 1
+  private val cachedOutputIndices: Array[Int] = new Array[Int](1 << cacheCapacityBits)
+  private val cachedOutputPositions: Array[Int] = new Array[Int](1 << cacheCapacityBits)
+  private val hashOutputs: Array[Byte] = new Array[Byte](IndicesNumber * HashOutputLength)
+  private var cachedOutputsNumber: Int = 0
+
+  // Blake2b state after the full blocks of the message, and the message tail to be followed by the hash output index.
+  private val baseState: Array[Long] = new Array[Long](8)
+  private val state: Array[Long] = new Array[Long](8)
+  private val v: Array[Long] = new Array[Long](16)
+  private val m: Array[Long] = new Array[Long](16)
+  private val tail: Array[Byte] = new Array[Byte](2 * BlockLength)
+  private var tailLength: Int = 0
+  private var fullBlocksLength: Long = 0
+  private var messageLength: Long = 0
+
+  // "ZcashPoW" ++ LE(N) ++ LE(K) personalization as two little-endian words.
+  private val personalization0: Long = readLongLE("ZcashPoW".getBytes, 0)
+  private val personalization1: Long = (N & 0xFFFFFFFFL) | (K.toLong << 32)
+
+  def verify(msgBytes: Array[Byte], solution: Array[Byte]): Boolean = {
+    var j: Int = 0
+    while (j < IndicesNumber) {
+      indices(j) = readBits(solution, j * IndexBitLength, IndexBitLength)
+      j += 1
+    }
+
+    // Every pair of indices meets in some subtrees merge, so all of them must be distinct.
+    System.arraycopy(indices, 0, sortedIndices, 0, IndicesNumber)
+    util.Arrays.sort(sortedIndices)
+    j = 1
+    while (j < IndicesNumber) {
+      if (sortedIndices(j) == sortedIndices(j - 1))
+        return false
+      j += 1
+    }
+
+    initDigest(msgBytes)
+    util.Arrays.fill(cachedOutputIndices, -1)
+    cachedOutputsNumber = 0
+
+    j = 0
+    while (j < IndicesNumber) {
+      val index: Int = indices(j)
+      val bitOffset: Int = hashOutputPosition(index / IndicesPerHashOutput) * 8 + (index % IndicesPerHashOutput) * N
+      var c: Int = 0
+      while (c < ChunksPerIndex) {
+        chunks(j * ChunksPerIndex + c) = readBits(hashOutputs, bitOffset + c * CollisionBitLength, CollisionBitLength)
+        c += 1
+      }
+      j += 1
+    }
+
+    // On round r the node i of the level keeps the XORed chunks of the leaves [i * 2^r, (i + 1) * 2^r).
+    var nodesNumber: Int = IndicesNumber
+    var round: Int = 0
+    while (round < K) {
+      var node: Int = 0
+      while (node < nodesNumber / 2) {
+        val left: Int = 2 * node * ChunksPerIndex
+        val right: Int = left + ChunksPerIndex
+        if (chunks(left + round) != chunks(right + round))
+          return false
+        // Subtrees must be ordered by their first indices.
+        if (indices((2 * node) << round) >= indices((2 * node + 1) << round))
+          return false
+
+        var c: Int = round + 1
+        while (c < ChunksPerIndex) {
+          chunks(node * ChunksPerIndex + c) = chunks(left + c) ^ chunks(right + c)
+          c += 1
+        }
+        node += 1
+      }
+      nodesNumber /= 2
+      round += 1
+    }
+
+    chunks(K) == 0
+  }
+
+  private def hashOutputPosition(outputIndex: Int): Int = {
+    val mask: Int = (1 << cacheCapacityBits) - 1
+    var slot: Int = (outputIndex * 0x9E3779B9) >>> (32 - cacheCapacityBits)
+    while (cachedOutputIndices(slot) != -1) {
+      if (cachedOutputIndices(slot) == outputIndex)
+        return cachedOutputPositions(slot)
+      slot = (slot + 1) & mask
+    }
+
+    val position: Int = cachedOutputsNumber * HashOutputLength
+    calculateHashOutput(outputIndex, position)
+    cachedOutputIndices(slot) = outputIndex
+    cachedOutputPositions(slot) = position
+    cachedOutputsNumber += 1
+    position
+  }
+
+  private def initDigest(msgBytes: Array[Byte]): Unit = {
+    System.arraycopy(IV, 0, baseState, 0, 8)
+    // Parameter block: digest length, no key, fanout = 1, depth = 1, no salt.
+    baseState(0) ^= 0x01010000L ^ HashOutputLength
+    baseState(6) ^= personalization0
+    baseState(7) ^= personalization1
+
+    val fullBlocks: Int = msgBytes.length / BlockLength
+    var block: Int = 0
+    while (block < fullBlocks) {
+      compress(baseState, msgBytes, block * BlockLength, (block + 1).toLong * BlockLength, isLastBlock = false)
+      block += 1
+    }
+
+    fullBlocksLength = fullBlocks.toLong * BlockLength
+    messageLength = msgBytes.length.toLong + 4
+    tailLength = msgBytes.length - fullBlocks * BlockLength
+    System.arraycopy(msgBytes, fullBlocks * BlockLength, tail, 0, tailLength)
+    util.Arrays.fill(tail, tailLength, tail.length, 0.toByte)
+  }
+
+  private def calculateHashOutput(outputIndex: Int, position: Int): Unit = {
+    System.arraycopy(baseState, 0, state, 0, 8)
+    tail(tailLength) = outputIndex.toByte
+    tail(tailLength + 1) = (outputIndex >>> 8).toByte
+    tail(tailLength + 2) = (outputIndex >>> 16).toByte
+    tail(tailLength + 3) = (outputIndex >>> 24).toByte
+
+    if (tailLength + 4 > BlockLength) {
+      compress(state, tail, 0, fullBlocksLength + BlockLength, isLastBlock = false)
+      compress(state, tail, BlockLength, messageLength, isLastBlock = true)
+    }
+    else
+      compress(state, tail, 0, messageLength, isLastBlock = true)
+
+    var i: Int = 0
+    while (i < HashOutputLength) {
+      hashOutputs(position + i) = (state(i >> 3) >>> (8 * (i & 7))).toByte
+      i += 1
+    }
+  }
+
+  private def compress(h: Array[Long], buffer: Array[Byte], offset: Int, counter: Long, isLastBlock: Boolean): Unit = {
+    var i: Int = 0
+    while (i < 16) {
+      m(i) = readLongLE(buffer, offset + 8 * i)
+      i += 1
+    }
+    System.arraycopy(h, 0, v, 0, 8)
+    System.arraycopy(IV, 0, v, 8, 8)
+    v(12) ^= counter
+    if (isLastBlock)
+      v(14) = ~v(14)
+
+    var round: Int = 0
+    while (round < Rounds) {
+      val s: Int = (round % 10) * 16
+      mix(0, 4, 8, 12, m(Sigma(s)), m(Sigma(s + 1)))
+      mix(1, 5, 9, 13, m(Sigma(s + 2)), m(Sigma(s + 3)))
+      mix(2, 6, 10, 14, m(Sigma(s + 4)), m(Sigma(s + 5)))
+      mix(3, 7, 11, 15, m(Sigma(s + 6)), m(Sigma(s + 7)))
+      mix(0, 5, 10, 15, m(Sigma(s + 8)), m(Sigma(s + 9)))
+      mix(1, 6, 11, 12, m(Sigma(s + 10)), m(Sigma(s + 11)))
+      mix(2, 7, 8, 13, m(Sigma(s + 12)), m(Sigma(s + 13)))
+      mix(3, 4, 9, 14, m(Sigma(s + 14)), m(Sigma(s + 15)))
+      round += 1
+    }
+
+    i = 0
+    while (i < 8) {
+      h(i) ^= v(i) ^ v(i + 8)
+      i += 1
+    }
+  }
+
+  private def mix(a: Int, b: Int, c: Int, d: Int, x: Long, y: Long): Unit = {
+    v(a) = v(a) + v(b) + x
+    v(d) = java.lang.Long.rotateRight(v(d) ^ v(a), 32)
+    v(c) = v(c) + v(d)
+    v(b) = java.lang.Long.rotateRight(v(b) ^ v(c), 24)
+    v(a) = v(a) + v(b) + y
+    v(d) = java.lang.Long.rotateRight(v(d) ^ v(a), 16)
+    v(c) = v(c) + v(d)
+    v(b) = java.lang.Long.rotateRight(v(b) ^ v(c), 63)
+  }
+}
+
+
+private[block] object EquihashVerifier {
+  private val BlockLength: Int = 128
+  private val Rounds: Int = 12
+
+  private val IV: Array[Long] = Array(
+    0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+    0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L)
+
+  private val Sigma: Array[Int] = Array(
+    0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+    14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3,
+    11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4,
+    7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8,
+    9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13,
+    2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9,
+    12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11,
+    13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10,
+    6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5,
+    10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0)
+
+  private def readLongLE(bytes: Array[Byte], offset: Int): Long = {
+    var res: Long = 0
+    var i: Int = 7
+    while (i >= 0) {
+      res = (res << 8) | (bytes(offset + i) & 0xFFL)
+      i -= 1
+    }
+    res
+  }
+
+  // Reads 'bitLength' bits in big-endian order starting from 'bitOffset' bit, the same way as Equihash.expandArray does.
+  private[block] def readBits(bytes: Array[Byte], bitOffset: Int, bitLength: Int): Int = {
+    val firstByte: Int = bitOffset >> 3
+    val lastByte: Int = (bitOffset + bitLength - 1) >> 3
+    var acc: Long = 0
+    var i: Int = firstByte
+    while (i <= lastByte) {
+      acc = (acc << 8) | (bytes(i) & 0xFFL)
+      i += 1
+    }
+    val shift: Int = (lastByte + 1) * 8 - bitOffset - bitLength
+    ((acc >>> shift) & ((1L << bitLength) - 1)).toInt
+  }
+}
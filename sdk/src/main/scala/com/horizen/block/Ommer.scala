@@ -14,7 +14,7 @@ import scala.collection.JavaConverters._
 import scala.util.{Failure, Success, Try}
 
 @JsonView(Array(classOf[Views.Default]))
-@JsonIgnoreProperties(Array("id"))
+@JsonIgnoreProperties(Array("id", "score"))
 case class Ommer(
                   override val header: SidechainBlockHeader,
                   mainchainReferencesDataMerkleRootHashOption: Option[Array[Byte]], // Empty if no mainchainBlockReferencesData present in block.
@@ -27,6 +27,9 @@ case class Ommer(
 
   lazy val id: Array[Byte] = idToBytes(header.id)
 
+  // Score of the whole sub ommers tree: calculated once, because verified on every level of the Ommers tree.
+  override lazy val score: Long = super.score
+
   def verifyDataConsistency(): Try[Unit] = Try {
     // Verify that Ommers' mainchainReferencesHeaders, ReferencesData and nextMainchainHeaders root hashes are consistent to sidechainBlockHeader.mainchainMerkleRootHash.
     if(mainchainHeaders.isEmpty && mainchainReferencesDataMerkleRootHashOption.isEmpty) {
@@ -91,8 +94,8 @@ case class Ommer(
 
     // Verify that each MainchainHeader is semantically valid
     // Even if we got non-critical error like MainchainHeaderTimestampInFutureException, change it to critical one.
-    for(mainchainHeader <- mainchainHeaders) {
-      mainchainHeader.semanticValidity(params) match {
+    for(headerValidity <- ProofOfWorkVerifier.headersSemanticValidity(mainchainHeaders, params)) {
+      headerValidity match {
         case Success(_) =>
         case Failure(e) => throw new InvalidOmmerDataException(s"Ommer ${BytesUtils.toHexString(id)} data is invalid: ${e.getMessage}")
       }
@@ -177,4 +180,11 @@ object OmmerSerializer extends ScorexSerializer[Ommer] {
 
     Ommer(header, mainchainReferencesDataMerkleRootHashOption, mainchainHeaders, ommers)
   }
+
+  // Parse only the mainchain header with the given index: the other mainchain headers and the ommers are not parsed.
+  def parseMainchainHeader(r: Reader, index: Int): MainchainHeader = {
+    SidechainBlockHeaderSerializer.parse(r)
+    r.getBytes(r.getInt())
+    mainchainHeaderListSerializer.parseElement(r, index)
+  }
 }
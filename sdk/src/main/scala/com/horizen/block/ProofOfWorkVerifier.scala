@@ -5,13 +5,19 @@ import java.math.BigInteger
 import com.google.common.primitives.UnsignedInts
 import com.horizen.params.NetworkParams
 import com.horizen.storage.SidechainHistoryStorage
-import com.horizen.utils.{BytesUtils, Utils}
+import com.horizen.utils.{BytesUtils, ParallelComputation, Utils}
 
+import scala.util.Try
 import scala.util.control.Breaks._
 
 object ProofOfWorkVerifier {
 
-  private case class OmmersContainerNextWorkRequiredResult(isValid: Boolean, actualTimeBitsData: List[Tuple2[Int, Int]], actualBitsTotal: BigInteger)
+  // Rolling window of (time, bits) data of the last "params.nPowAveragingWindow + params.nMedianTimeSpan" MainchainHeaders
+  // together with the total target of the last "params.nPowAveragingWindow" of them, so next work of the header is checked in constant time.
+  // Last header hash is not defined for the window built from the genesis PoW data only.
+  case class PowTimeBitsWindow(timeBitsData: Vector[(Int, Int)], bitsTotal: BigInteger, lastHeaderHashOpt: Option[Array[Byte]])
+
+  private case class OmmersContainerNextWorkRequiredResult(isValid: Boolean, actualWindow: PowTimeBitsWindow)
 
   def checkProofOfWork(header: MainchainHeader, params: NetworkParams): Boolean = {
     val target: BigInteger = Utils.decodeCompactBits(UnsignedInts.toLong(header.bits))
@@ -28,18 +34,55 @@ object ProofOfWorkVerifier {
     true
   }
 
+  // Semantic validity (including Equihash solution and PoW target) of the batch of MainchainHeaders checked in parallel.
+  // Results are returned in the order of the headers.
+  def headersSemanticValidity(headers: Seq[MainchainHeader], params: NetworkParams): Seq[Try[Unit]] = {
+    if(headers.size <= 1)
+      return headers.map(header => header.semanticValidity(params))
+
+    val parHeaders = headers.par
+    parHeaders.tasksupport = ParallelComputation.taskSupport
+    parHeaders.map(header => header.semanticValidity(params)).seq
+  }
+
   // Check that PoW target (bits) is correct for all MainchainHeaders and Ommers' MainchainHeaders (recursively) included into SidechainBlock.
   // The order of MainchainHeaders in Block (both active and orphaned) verified in block semantic validity method
   def checkNextWorkRequired(block: SidechainBlock, sidechainHistoryStorage: SidechainHistoryStorage, params: NetworkParams): Boolean = {
     if(block.mainchainHeaders.isEmpty)
       return true
 
-    // Collect information of time and bits for last "params.nPowAveragingWindow + params.nMedianTimeSpan" MainchainBlockReferences
-    // already presented in a current chain of SidechainBlocks.
+    getPowTimeBitsWindow(block, sidechainHistoryStorage, params) match {
+      case Some(window) => checkNextWorkRequired(block, window, params).isDefined
+      case None => false
+    }
+  }
+
+  // Check that PoW target (bits) is correct for all MainchainHeaders and Ommers' MainchainHeaders (recursively) included into SidechainBlock
+  // following the given window of the previous MainchainHeaders. Returns the window updated with the block MainchainHeaders if valid.
+  def checkNextWorkRequired(block: SidechainBlock, window: PowTimeBitsWindow, params: NetworkParams): Option[PowTimeBitsWindow] = {
+    block.mainchainHeaders.headOption match {
+      case None => Some(window)
+      case Some(firstHeader) =>
+        if(window.lastHeaderHashOpt.exists(hash => !firstHeader.hashPrevBlock.sameElements(hash)))
+          return None
+
+        val res = checkOmmersContainerNextWorkRequired(block, window, params)
+        if(res.isValid) Some(res.actualWindow) else None
+    }
+  }
+
+  // Collect information of time and bits for last "params.nPowAveragingWindow + params.nMedianTimeSpan" MainchainBlockReferences
+  // already presented in a current chain of SidechainBlocks before the first MainchainHeader of the block.
+  def getPowTimeBitsWindow(block: SidechainBlock, sidechainHistoryStorage: SidechainHistoryStorage, params: NetworkParams): Option[PowTimeBitsWindow] = {
+    if(block.mainchainHeaders.isEmpty)
+      return None
+
     var timeBitsData = List[Tuple2[Int, Int]]()
+    var lastHeaderHashOpt: Option[Array[Byte]] = None
     // Take firt MC Ref header if exists, else get first nextMCHeader
     var currentHeader = block.mainchainHeaders.head
-    var currentBlock: SidechainBlock = block
+    // Only headers data of the previous blocks is needed, so their bodies are not read from the storage.
+    var currentContainer: OmmersContainer = block
     breakable {
       while (true) {
         if (currentHeader.hash.sameElements(params.genesisMainchainBlockHash)) {
@@ -53,17 +96,19 @@ object ProofOfWorkVerifier {
         }
 
         // get previous block
-        currentBlock = sidechainHistoryStorage.blockById(currentBlock.parentId) match {
-          case b: Some[SidechainBlock] => b.get
-          case _ => return false
+        currentContainer = sidechainHistoryStorage.ommerById(currentContainer.header.parentId) match {
+          case Some(ommer) => ommer
+          case _ => return None
         }
 
         // check for mainchain headers and their order, and collect data from them.
-        if(currentBlock.mainchainHeaders.nonEmpty) {
-          for(header <- currentBlock.mainchainHeaders.reverse) {
+        if(currentContainer.mainchainHeaders.nonEmpty) {
+          for(header <- currentContainer.mainchainHeaders.reverse) {
             if(!header.hash.sameElements(currentHeader.hashPrevBlock))
-              return false
+              return None
             timeBitsData = Tuple2[Int, Int](header.time, header.bits) :: timeBitsData
+            if(lastHeaderHashOpt.isEmpty)
+              lastHeaderHashOpt = Some(header.hash)
             currentHeader = header
             if(timeBitsData.size == params.nPowAveragingWindow + params.nMedianTimeSpan)
               break
@@ -74,7 +119,7 @@ object ProofOfWorkVerifier {
 
     // check that we have enough data for next pow verification
     if(timeBitsData.size != params.nPowAveragingWindow + params.nMedianTimeSpan)
-      return false
+      return None
 
     // calculate totalBits for last params.nPowAveragingWindow blocks
     var bitsTotal: BigInteger = BigInteger.ZERO
@@ -82,55 +127,53 @@ object ProofOfWorkVerifier {
       bitsTotal = bitsTotal.add(Utils.decodeCompactBits(UnsignedInts.toLong(timeBitsData(i)._2)))
     }
 
-    // verify next work for each MainchainHeader in the requested block
-    if(!checkOmmersContainerNextWorkRequired(block, timeBitsData, bitsTotal, params).isValid)
-      return false
-
-    true
+    Some(PowTimeBitsWindow(timeBitsData.toVector, bitsTotal, lastHeaderHashOpt))
   }
 
   private def checkOmmersContainerNextWorkRequired(ommersContainer: OmmersContainer,
-                                                   initialTimeBitsData: List[Tuple2[Int, Int]],
-                                                   initialBitsTotal: BigInteger,
+                                                   initialWindow: PowTimeBitsWindow,
                                                    params: NetworkParams): OmmersContainerNextWorkRequiredResult = {
-    var timeBitsData = initialTimeBitsData
-    var bitsTotal = initialBitsTotal
+    var window = initialWindow
 
     for(mainchainHeader <- ommersContainer.mainchainHeaders) {
-      val timeData: Seq[Int] = timeBitsData.map(data => data._1)
-      val bitsAvg = bitsTotal.divide(BigInteger.valueOf(params.nPowAveragingWindow))
+      val timeBitsData = window.timeBitsData
+      val bitsAvg = window.bitsTotal.divide(BigInteger.valueOf(params.nPowAveragingWindow))
 
       val res = ProofOfWorkVerifier.calculateNextWorkRequired(
         bitsAvg,
-        geMedianTimePast(timeData, timeData.size - params.nPowAveragingWindow, params),
-        geMedianTimePast(timeData, timeData.size, params),
+        getMedianTimePast(timeBitsData, timeBitsData.size - params.nPowAveragingWindow, params),
+        getMedianTimePast(timeBitsData, timeBitsData.size, params),
         params)
 
       // TO DO: BigInteger has a higher precision than uint256 on divide operation, that's why our result can be bigger (a bit), than actual in nBits value
       // Precision should be decreased after any divide operation. See commented code in calculateNextWorkRequired and in BitcoinJ implementation.
       if(Math.abs(res - mainchainHeader.bits) > 1)
-        return OmmersContainerNextWorkRequiredResult(false, timeBitsData, bitsTotal)
+        return OmmersContainerNextWorkRequiredResult(false, window)
 
       // subtract oldest MC block target data and add current one
-      bitsTotal = bitsTotal
+      val bitsTotal = window.bitsTotal
         .subtract(Utils.decodeCompactBits(UnsignedInts.toLong(timeBitsData(timeBitsData.size - params.nPowAveragingWindow)._2)))
         .add(Utils.decodeCompactBits(UnsignedInts.toLong(mainchainHeader.bits)))
       // remove oldest time/bits data info, append with current block info
-      timeBitsData = timeBitsData.tail :+ Tuple2[Int, Int](mainchainHeader.time, mainchainHeader.bits)
+      window = PowTimeBitsWindow(timeBitsData.tail :+ Tuple2[Int, Int](mainchainHeader.time, mainchainHeader.bits), bitsTotal, Some(mainchainHeader.hash))
     }
 
     // check Ommers NextWorkRequired one by one
-    var ommersTimeBitsData = initialTimeBitsData
-    var ommersBitsTotal = initialBitsTotal
+    var ommersWindow = initialWindow
     for(ommer <- ommersContainer.ommers) {
-      val res: OmmersContainerNextWorkRequiredResult = checkOmmersContainerNextWorkRequired(ommer, ommersTimeBitsData, ommersBitsTotal, params)
+      val res: OmmersContainerNextWorkRequiredResult = checkOmmersContainerNextWorkRequired(ommer, ommersWindow, params)
       if(!res.isValid)
         return res
-      ommersTimeBitsData = res.actualTimeBitsData
-      ommersBitsTotal = res.actualBitsTotal
+      ommersWindow = res.actualWindow
     }
 
-    OmmersContainerNextWorkRequiredResult(true, timeBitsData, bitsTotal)
+    OmmersContainerNextWorkRequiredResult(true, window)
+  }
+
+  // Median of the nMedianTimeSpan times before index: only the needed part of the window is touched.
+  private def getMedianTimePast(timeBitsData: Vector[(Int, Int)], index: Int, params: NetworkParams): Int = {
+    val median = timeBitsData.slice(index - params.nMedianTimeSpan, index).map(_._1).sortWith((a, b) => a < b)
+    median(params.nMedianTimeSpan / 2)
   }
 
   def geMedianTimePast(times: Seq[Int], index: Int, params: NetworkParams): Int = {
@@ -176,8 +176,8 @@ class SidechainBlock(override val header: SidechainBlockHeader,
     }
 
     // Check that MainchainHeaders are valid.
-    for(mainchainHeader <- mainchainHeaders) {
-      mainchainHeader.semanticValidity(params) match {
+    for(headerValidity <- ProofOfWorkVerifier.headersSemanticValidity(mainchainHeaders, params)) {
+      headerValidity match {
         case Success(_) =>
         case Failure(e) => throw e
       }
@@ -1,72 +1,123 @@
 package com.horizen.chain
 
-import scorex.util.ModifierId
+import com.horizen.utils.WithdrawalEpochInfo
+import com.horizen.vrf.VrfOutput
+import scorex.core.NodeViewModifier
+import scorex.core.consensus.ModifierSemanticValidity
+import scorex.util.{ModifierId, bytesToId, idToBytes}
 
 import scala.collection.mutable.ArrayBuffer
+import scala.util.Try
 
 
-final class ActiveChain private(sidechainCache: ElementsChain[ModifierId, SidechainBlockInfo],
-                                mainchainHeadersCache: ElementsChain[MainchainHeaderHash, MainchainHeaderMetadata],
-                                mainchainReferenceDataCache: ElementsChain[MainchainHeaderHash, MainchainHeaderMetadata],
-                                mainchainCreationBlockHeight: Int = 1) {
+// Active chain data is packed into primitive arrays to keep millions of blocks without per block objects:
+// sidechain block ids and MainchainHeader hashes are stored as packed bytes with open addressing id -> height indexes,
+// SidechainBlockInfo is stored as fixed-width record. MainchainHeader and reference data hashes of the block are not stored in
+// the record, but restored from the mainchain hashes chains by the mainchain heights reached at the block.
+final class ActiveChain private(mainchainCreationBlockHeight: Int = 1) {
+  import ActiveChain._
 
   require(mainchainCreationBlockHeight > 0, "Mainchain creation block height height shall be at least 1")
   private val mainchainCreationBlockHeightDifference = mainchainCreationBlockHeight - 1
 
-  // Sidechain data retrieval
-  def height: Int = sidechainCache.height
+  private val sidechainIds: PackedIdsChain = new PackedIdsChain(NodeViewModifier.ModifierIdSize)
+  private val sidechainBlockInfos: PackedRecords = new PackedRecords(BlockInfoRecordLength)
+  // Created with the length of the first VrfOutput added, contains a record for each block after that.
+  private var vrfOutputs: Option[PackedRecords] = None
+  private var genesisParentIdOpt: Option[ModifierId] = None
+
+  private val mainchainHeaders: MainchainHashesChain = new MainchainHashesChain()
+  private val mainchainReferencesData: MainchainHashesChain = new MainchainHashesChain()
 
-  def bestId: Option[ModifierId] = sidechainCache.bestId
+  // Sidechain data retrieval
+  def height: Int = sidechainIds.height
 
-  def bestScBlockInfo: Option[SidechainBlockInfo] = sidechainCache.bestData
+  def bestId: Option[ModifierId] = idByHeight(height)
 
-  def heightById(id: ModifierId): Option[Int] = sidechainCache.heightById(id)
+  def bestScBlockInfo: Option[SidechainBlockInfo] = blockInfoByHeight(height)
 
-  def contains(id: ModifierId): Boolean = sidechainCache.contains(id)
+  def heightById(id: ModifierId): Option[Int] = idBytesOpt(id).flatMap(sidechainIds.heightById)
 
-  def chainAfter(id: ModifierId): Seq[ModifierId] = sidechainCache.chainAfter(id)
+  def contains(id: ModifierId): Boolean = idBytesOpt(id).exists(sidechainIds.contains)
 
-  def blockInfoById(id: ModifierId): Option[SidechainBlockInfo] = sidechainCache.heightById(id).flatMap(sidechainCache.dataByHeight)
+  // Given id and at most limit ids after it, the work is proportional to the returned ids number.
+  def chainAfter(id: ModifierId, limit: Int = Int.MaxValue): Seq[ModifierId] = {
+    heightById(id) match {
+      case Some(idHeight) =>
+        val lastHeight = if (limit > height - idHeight) height else idHeight + limit
+        (idHeight to lastHeight).map(h => idByHeight(h).get)
+      case None => Seq()
+    }
+  }
 
-  def blockInfoByHeight(blockHeight: Int): Option[SidechainBlockInfo] = sidechainCache.dataByHeight(blockHeight)
+  def blockInfoById(id: ModifierId): Option[SidechainBlockInfo] = heightById(id).flatMap(blockInfoByHeight)
+
+  def blockInfoByHeight(blockHeight: Int): Option[SidechainBlockInfo] = {
+    if (blockHeight < 1 || blockHeight > height)
+      return None
+
+    val index = blockHeight - 1
+    val parentId = if (blockHeight == 1) genesisParentIdOpt.get else idByHeight(blockHeight - 1).get
+    val vrfOutputOpt = if (sidechainBlockInfos.getByte(index, VrfOutputDefinedOffset) != 0)
+      Some(new VrfOutput(vrfOutputs.get.getBytes(index, 0, vrfOutputs.get.recordLength)))
+    else
+      None
+
+    Some(SidechainBlockInfo(
+      sidechainBlockInfos.getInt(index, HeightOffset),
+      sidechainBlockInfos.getLong(index, ScoreOffset),
+      parentId,
+      sidechainBlockInfos.getLong(index, TimestampOffset),
+      ModifierSemanticValidity.restoreFromCode(sidechainBlockInfos.getByte(index, SemanticValidityOffset)),
+      mainchainHashesOfBlock(mainchainHeaders, blockHeight, McHeadersHeightOffset),
+      mainchainHashesOfBlock(mainchainReferencesData, blockHeight, McReferencesDataHeightOffset),
+      WithdrawalEpochInfo(sidechainBlockInfos.getInt(index, WithdrawalEpochOffset), sidechainBlockInfos.getInt(index, WithdrawalEpochIndexOffset)),
+      vrfOutputOpt,
+      bytesToId(sidechainBlockInfos.getBytes(index, LastBlockInPreviousConsensusEpochOffset, NodeViewModifier.ModifierIdSize))
+    ))
+  }
 
-  def idByHeight(blockHeight: Int): Option[ModifierId] = sidechainCache.idByHeight(blockHeight)
+  def idByHeight(blockHeight: Int): Option[ModifierId] = sidechainIds.idByHeight(blockHeight).map(bytesToId)
 
   // Mainchain data retrieval
-  def mcHeadersHeightByMcHash(mainchainHeaderHash: MainchainHeaderHash): Option[Int] = mainchainHeadersCache.heightById(mainchainHeaderHash).map(_ + mainchainCreationBlockHeightDifference)
+  def mcHeadersHeightByMcHash(mainchainHeaderHash: MainchainHeaderHash): Option[Int] = mainchainHeaders.heightByHash(mainchainHeaderHash).map(_ + mainchainCreationBlockHeightDifference)
 
-  def mcRefDataHeightByMcHash(mainchainHeaderHash: MainchainHeaderHash): Option[Int] = mainchainReferenceDataCache.heightById(mainchainHeaderHash).map(_ + mainchainCreationBlockHeightDifference)
+  def mcRefDataHeightByMcHash(mainchainHeaderHash: MainchainHeaderHash): Option[Int] = mainchainReferencesData.heightByHash(mainchainHeaderHash).map(_ + mainchainCreationBlockHeightDifference)
 
-  def mcHashByMcHeight(mcHeight: Int): Option[MainchainHeaderHash] = mainchainHeadersCache.idByHeight(mcHeight - mainchainCreationBlockHeightDifference)
+  def mcHashByMcHeight(mcHeight: Int): Option[MainchainHeaderHash] = mainchainHeaders.hashByHeight(mcHeight - mainchainCreationBlockHeightDifference)
 
   // Active chain store
-  def heightOfMcHeaders: Int = mainchainHeadersCache.height + mainchainCreationBlockHeightDifference
+  def heightOfMcHeaders: Int = mainchainHeaders.height + mainchainCreationBlockHeightDifference
 
-  def heightOfMcReferencesData: Int = mainchainReferenceDataCache.height + mainchainCreationBlockHeightDifference
+  def heightOfMcReferencesData: Int = mainchainReferencesData.height + mainchainCreationBlockHeightDifference
 
-  def mcHeaderMetadataByMcHash(mainchainHeaderHash: MainchainHeaderHash): Option[MainchainHeaderMetadata] = mainchainHeadersCache.dataById(mainchainHeaderHash)
+  def mcHeaderMetadataByMcHash(mainchainHeaderHash: MainchainHeaderHash): Option[MainchainHeaderMetadata] = mainchainHeaders.metadataByHash(mainchainHeaderHash)
 
-  def mcReferenceDataMetadataByMcHash(mainchainHeaderHash: MainchainHeaderHash): Option[MainchainHeaderMetadata] = mainchainReferenceDataCache.dataById(mainchainHeaderHash)
+  def mcReferenceDataMetadataByMcHash(mainchainHeaderHash: MainchainHeaderHash): Option[MainchainHeaderMetadata] = mainchainReferencesData.metadataByHash(mainchainHeaderHash)
 
-  def bestMainchainHeaderHash: Option[MainchainHeaderHash] = mainchainHeadersCache.bestId
+  def bestMainchainHeaderHash: Option[MainchainHeaderHash] = mainchainHeaders.bestHash
 
   // Mixed data retrieval
   def heightByMcHeader(mainchainHeaderHash: MainchainHeaderHash): Option[Int] = {
-    mainchainHeadersCache.dataById(mainchainHeaderHash).map(_.sidechainHeight)
+    mainchainHeaders.heightByHash(mainchainHeaderHash).map(mainchainHeaders.sidechainHeightByHeight)
   }
 
   def idByMcHeader(mainchainHeaderHash: MainchainHeaderHash): Option[ModifierId] = {
-    heightByMcHeader(mainchainHeaderHash).flatMap(sidechainCache.idByHeight)
+    heightByMcHeader(mainchainHeaderHash).flatMap(idByHeight)
   }
 
   def heightByMcReferenceData(mainchainReferenceDataHeaderHash: MainchainHeaderHash): Option[Int] = {
-    mainchainReferenceDataCache.dataById(mainchainReferenceDataHeaderHash).map(_.sidechainHeight)
+    mainchainReferencesData.heightByHash(mainchainReferenceDataHeaderHash).map(mainchainReferencesData.sidechainHeightByHeight)
   }
 
   def idByMcReferenceData(mainchainReferenceDataHeaderHash: MainchainHeaderHash): Option[ModifierId] = {
-    heightByMcReferenceData(mainchainReferenceDataHeaderHash).flatMap(sidechainCache.idByHeight)
+    heightByMcReferenceData(mainchainReferenceDataHeaderHash).flatMap(idByHeight)
   }
 
+  // Memory allocated for the active chain data in bytes.
+  private[chain] def allocatedBytes: Long = sidechainIds.allocatedBytes + sidechainBlockInfos.allocatedBytes +
+    vrfOutputs.map(_.allocatedBytes).getOrElse(0L) + mainchainHeaders.allocatedBytes + mainchainReferencesData.allocatedBytes
+
   def setBestBlock(newBestId: ModifierId, newBestData: SidechainBlockInfo, mainchainParentHashOpt: Option[MainchainHeaderHash]): Unit = {
     if (height == 0) {
       setGenesisBlock(newBestId, newBestData, mainchainParentHashOpt)
@@ -91,7 +142,8 @@ final class ActiveChain private(sidechainCache: ElementsChain[ModifierId, Sidech
     val parentHeight = heightById(newBestInfo.getParentId).getOrElse(throw new IllegalArgumentException(s"Try to add unconnected sidechain block with id ${newBestId} to an active chain"))
 
     // check mainchain headers correctness
-    val actualMainchainParentForNewBlock = getLastMainchainHeaderHashTillHeight(parentHeight).getOrElse(throw new IllegalStateException(s"New best block clear all mainchain headers"))
+    val mcHeadersHeightForParent = mainchainHeightOfBlock(parentHeight, McHeadersHeightOffset)
+    val actualMainchainParentForNewBlock = mainchainHeaders.hashByHeight(mcHeadersHeightForParent).getOrElse(throw new IllegalStateException(s"New best block clear all mainchain headers"))
 
     val mcReferencesIsEmpty = newBestInfo.mainchainHeaderHashes.isEmpty
     if (mcReferencesIsEmpty != givenMainchainParentHashOpt.isEmpty) {
@@ -105,23 +157,22 @@ final class ActiveChain private(sidechainCache: ElementsChain[ModifierId, Sidech
     }
 
     // get actual MainchainReferenceData HeaderHash till parentHeight
-    val actualMainchainReferenceDataParentForNewBlock = getLastMainchainReferenceDataHeaderHashTillHeight(parentHeight)
+    val mcRefDataHeightForParent = mainchainHeightOfBlock(parentHeight, McReferencesDataHeightOffset)
+    val actualMainchainReferenceDataParentForNewBlock = mainchainReferencesData.hashByHeight(mcRefDataHeightForParent)
       .getOrElse(throw new IllegalStateException(s"New best block clear all mainchain references data header hashes"))
 
     // check MainchainReferenceData correctness against MainchainHeaders
-    val mcDataHeight: Int = mcRefDataHeightByMcHash(actualMainchainReferenceDataParentForNewBlock).get
-    val mcHeaderHeight: Int = mcHeadersHeightByMcHash(actualMainchainParentForNewBlock).get
     val missedRefDataHeaderHashes: Seq[MainchainHeaderHash] =
-      (mcDataHeight + 1 to mcHeaderHeight).flatMap(h => mcHashByMcHeight(h)) ++ newBestInfo.mainchainHeaderHashes
+      (mcRefDataHeightForParent + 1 to mcHeadersHeightForParent).flatMap(h => mainchainHeaders.hashByHeight(h)) ++ newBestInfo.mainchainHeaderHashes
     val expectedRefDataHeaderHashes = missedRefDataHeaderHashes.take(newBestInfo.mainchainReferenceDataHeaderHashes.size)
     if(!expectedRefDataHeaderHashes.equals(newBestInfo.mainchainReferenceDataHeaderHashes))
       throw new IllegalArgumentException("Try to add inconsistent mainchain reference data")
 
 
     // cut storages
-    sidechainCache.cutToId(newBestInfo.parentId)
-    mainchainHeadersCache.cutToId(actualMainchainParentForNewBlock)
-    mainchainReferenceDataCache.cutToId(actualMainchainReferenceDataParentForNewBlock)
+    cutToHeight(parentHeight)
+    mainchainHeaders.cutToHeight(mcHeadersHeightForParent)
+    mainchainReferencesData.cutToHeight(mcRefDataHeightForParent)
 
     // add new data
     addToStorages(newBestId, newBestInfo, Some(actualMainchainParentForNewBlock), Some(actualMainchainReferenceDataParentForNewBlock))
@@ -131,53 +182,113 @@ final class ActiveChain private(sidechainCache: ElementsChain[ModifierId, Sidech
                             newTipInfo: SidechainBlockInfo,
                             mainchainHeaderParentHashOpt: Option[MainchainHeaderHash],
                             mainchainRefDataParentHeaderHash: Option[MainchainHeaderHash]): Unit = {
-    sidechainCache.appendData(newTipId, newTipInfo)
+    appendBlockInfo(newTipId, newTipInfo)
 
     val addedTipHeight = heightById(newTipId).getOrElse(throw new IllegalStateException("Added tip has no height"))
-    val preparedMainchainHeadersInfo = buildMainchainHeadersInfo(addedTipHeight, newTipInfo.mainchainHeaderHashes, mainchainHeaderParentHashOpt)
-    preparedMainchainHeadersInfo.foreach { case (id, data) => mainchainHeadersCache.appendData(id, data) }
+    appendMainchainHashes(mainchainHeaders, addedTipHeight, newTipInfo.mainchainHeaderHashes, mainchainHeaderParentHashOpt)
+    appendMainchainHashes(mainchainReferencesData, addedTipHeight, newTipInfo.mainchainReferenceDataHeaderHashes, mainchainRefDataParentHeaderHash)
+
+    sidechainBlockInfos.putInt(addedTipHeight - 1, McHeadersHeightOffset, mainchainHeaders.height)
+    sidechainBlockInfos.putInt(addedTipHeight - 1, McReferencesDataHeightOffset, mainchainReferencesData.height)
+  }
+
+  private def appendBlockInfo(newTipId: ModifierId, newTipInfo: SidechainBlockInfo): Unit = {
+    if (height > 0 && !bestId.contains(newTipInfo.parentId)) {
+      throw new IllegalArgumentException("Try to append block with incorrect parent")
+    }
 
-    val preparedMainchainRefDataHeadersInfo = buildMainchainHeadersInfo(addedTipHeight, newTipInfo.mainchainReferenceDataHeaderHashes, mainchainRefDataParentHeaderHash)
-    preparedMainchainRefDataHeadersInfo.foreach { case (id, data) => mainchainReferenceDataCache.appendData(id, data) }
+    if (newTipInfo.parentId == newTipId) {
+      throw new IllegalArgumentException("Try to add incorrect data: element has himself as a parent")
+    }
+
+    val vrfOutputBytesOpt = newTipInfo.vrfOutputOpt.map(_.bytes())
+    vrfOutputBytesOpt.foreach(vrfOutputBytes => {
+      if (vrfOutputs.exists(_.recordLength != vrfOutputBytes.length))
+        throw new IllegalArgumentException(s"Try to add VrfOutput of inconsistent length ${vrfOutputBytes.length}")
+    })
+
+    sidechainIds.append(idToBytes(newTipId))
+    if (height == 1)
+      genesisParentIdOpt = Some(newTipInfo.parentId)
+
+    val index = sidechainBlockInfos.append()
+    sidechainBlockInfos.putInt(index, HeightOffset, newTipInfo.height)
+    sidechainBlockInfos.putLong(index, ScoreOffset, newTipInfo.score)
+    sidechainBlockInfos.putLong(index, TimestampOffset, newTipInfo.timestamp)
+    sidechainBlockInfos.putByte(index, SemanticValidityOffset, newTipInfo.semanticValidity.code)
+    sidechainBlockInfos.putInt(index, WithdrawalEpochOffset, newTipInfo.withdrawalEpochInfo.epoch)
+    sidechainBlockInfos.putInt(index, WithdrawalEpochIndexOffset, newTipInfo.withdrawalEpochInfo.lastEpochIndex)
+    sidechainBlockInfos.putBytes(index, LastBlockInPreviousConsensusEpochOffset, idToBytes(newTipInfo.lastBlockInPreviousConsensusEpoch))
+
+    vrfOutputBytesOpt match {
+      case Some(vrfOutputBytes) =>
+        val records = vrfOutputs.getOrElse {
+          val created = new PackedRecords(vrfOutputBytes.length)
+          (0 until index).foreach(_ => created.append())
+          vrfOutputs = Some(created)
+          created
+        }
+        records.putBytes(records.append(), 0, vrfOutputBytes)
+        sidechainBlockInfos.putByte(index, VrfOutputDefinedOffset, 1)
+      case None =>
+        vrfOutputs.foreach(_.append())
+    }
   }
 
-  private def getLastMainchainHeaderHashTillHeight(scHeight: Int): Option[MainchainHeaderHash] = {
-    sidechainCache
-      .getLastDataByPredicateTillHeight(scHeight)(_.mainchainHeaderHashes.nonEmpty)
-      .flatMap(scBlockInfo => scBlockInfo.mainchainHeaderHashes.lastOption)
+  // Malformed id can't be a part of the chain.
+  private def idBytesOpt(id: ModifierId): Option[Array[Byte]] = Try(idToBytes(id)).toOption
+
+  private def cutToHeight(newHeight: Int): Unit = {
+    if (newHeight < height) {
+      sidechainIds.cutToHeight(newHeight)
+      sidechainBlockInfos.truncate(newHeight)
+      vrfOutputs.foreach(_.truncate(newHeight))
+    }
   }
 
-  private def getLastMainchainReferenceDataHeaderHashTillHeight(scHeight: Int): Option[MainchainHeaderHash] = {
-    sidechainCache
-      .getLastDataByPredicateTillHeight(scHeight)(_.mainchainReferenceDataHeaderHashes.nonEmpty)
-      .flatMap(scBlockInfo => scBlockInfo.mainchainReferenceDataHeaderHashes.lastOption)
+  // Mainchain chain height reached at the given sidechain block, zero for the empty chain.
+  private def mainchainHeightOfBlock(blockHeight: Int, heightOffset: Int): Int = {
+    if (blockHeight > 0) sidechainBlockInfos.getInt(blockHeight - 1, heightOffset) else 0
   }
 
-  private def buildMainchainHeadersInfo(sidechainHeight: Int,
-                                        mainchainHeaderHashes: Seq[MainchainHeaderHash],
-                                        mainchainParentHashOpt: Option[MainchainHeaderHash]): Seq[(MainchainHeaderHash, MainchainHeaderMetadata)] = {
+  private def mainchainHashesOfBlock(mainchainHashes: MainchainHashesChain, blockHeight: Int, heightOffset: Int): Seq[MainchainHeaderHash] = {
+    (mainchainHeightOfBlock(blockHeight - 1, heightOffset) + 1 to mainchainHeightOfBlock(blockHeight, heightOffset))
+      .map(h => mainchainHashes.hashByHeight(h).get)
+  }
+
+  private def appendMainchainHashes(mainchainHashes: MainchainHashesChain,
+                                    sidechainHeight: Int,
+                                    mainchainHeaderHashes: Seq[MainchainHeaderHash],
+                                    mainchainParentHashOpt: Option[MainchainHeaderHash]): Unit = {
     if (mainchainHeaderHashes.nonEmpty) {
       require(mainchainParentHashOpt.isDefined, "Active chain inconsistency: parent is not defined for new best non empty mainchain references")
 
-      val bufferForBuildingMainchainHeaders = (Seq[(MainchainHeaderHash, MainchainHeaderMetadata)](), mainchainParentHashOpt.get)
-      mainchainHeaderHashes.foldLeft(bufferForBuildingMainchainHeaders) {
-        case ((data, parent), headerHash) => (data :+ (headerHash, MainchainHeaderMetadata(sidechainHeight, parent)), headerHash)
-      }._1
-    }
-    else {
-      Seq()
+      mainchainHeaderHashes.foldLeft(mainchainParentHashOpt.get) {
+        case (parent, headerHash) =>
+          mainchainHashes.append(headerHash, parent, sidechainHeight)
+          headerHash
+      }
     }
   }
 }
 
 object ActiveChain {
+  // Fixed-width SidechainBlockInfo record layout.
+  private val HeightOffset: Int = 0
+  private val ScoreOffset: Int = HeightOffset + 4
+  private val TimestampOffset: Int = ScoreOffset + 8
+  private val SemanticValidityOffset: Int = TimestampOffset + 8
+  private val WithdrawalEpochOffset: Int = SemanticValidityOffset + 1
+  private val WithdrawalEpochIndexOffset: Int = WithdrawalEpochOffset + 4
+  private val McHeadersHeightOffset: Int = WithdrawalEpochIndexOffset + 4
+  private val McReferencesDataHeightOffset: Int = McHeadersHeightOffset + 4
+  private val VrfOutputDefinedOffset: Int = McReferencesDataHeightOffset + 4
+  private val LastBlockInPreviousConsensusEpochOffset: Int = VrfOutputDefinedOffset + 1
+  private val BlockInfoRecordLength: Int = LastBlockInPreviousConsensusEpochOffset + NodeViewModifier.ModifierIdSize
+
   // In case of empty storage
   def apply(mainchainCreationBlockHeight: Int): ActiveChain = {
-    new ActiveChain(
-      new ElementsChain[ModifierId, SidechainBlockInfo](),
-      new ElementsChain[MainchainHeaderHash, MainchainHeaderMetadata](),
-      new ElementsChain[MainchainHeaderHash, MainchainHeaderMetadata](),
-      mainchainCreationBlockHeight: Int)
+    new ActiveChain(mainchainCreationBlockHeight)
   }
 
   // In case of storage with blocks
@@ -0,0 +1,35 @@
+package com.horizen.chain
+
+import scorex.util.ModifierId
+
+import scala.collection.mutable
+
+case class BlockTreeNode(parentId: ModifierId, height: Int, score: Long)
+
+// In-memory index of the blocks tree (both active chain and forks blocks) above some height: parent, height and score by block id.
+// Blocks below the rewriting horizon are evicted, so the index covers the part of the tree where the active chain may be switched.
+class BlockTreeIndex {
+  private val nodes: mutable.HashMap[ModifierId, BlockTreeNode] = mutable.HashMap()
+  private val idsByHeight: mutable.TreeMap[Int, List[ModifierId]] = mutable.TreeMap()
+
+  def size: Int = nodes.size
+
+  def get(id: ModifierId): Option[BlockTreeNode] = nodes.get(id)
+
+  def contains(id: ModifierId): Boolean = nodes.contains(id)
+
+  def add(id: ModifierId, node: BlockTreeNode): Unit = {
+    if (!nodes.contains(id)) {
+      nodes.put(id, node)
+      idsByHeight.put(node.height, id :: idsByHeight.getOrElse(node.height, List()))
+    }
+  }
+
+  def evictBelow(minHeight: Int): Unit = {
+    while (idsByHeight.headOption.exists(_._1 < minHeight)) {
+      val (evictedHeight, evictedIds) = idsByHeight.head
+      evictedIds.foreach(nodes.remove)
+      idsByHeight.remove(evictedHeight)
+    }
+  }
+}
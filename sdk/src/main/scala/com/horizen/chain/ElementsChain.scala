@@ -71,19 +71,13 @@ class ElementsChain[ID, DATA <: LinkedElement[ID]](private var lastId: Option[ID
     lastId = Some(newId)
   }
 
-  def chainAfter(id: ID): Seq[ID] = {
-    if (contains(id) && height > 0) {
-      var res: Seq[ID] = Seq()
-
-      var currentHeight = heightById(id).get
-      while (currentHeight < height) {
-        currentHeight += 1
-        res = res :+ dataByHeight(currentHeight).get.getParentId
-      }
-      res :+ bestId.get
-    }
-    else {
-      Seq()
+  // Given id and at most limit ids after it, the work is proportional to the returned ids number.
+  def chainAfter(id: ID, limit: Int = Int.MaxValue): Seq[ID] = {
+    heightById(id) match {
+      case Some(idHeight) =>
+        val lastHeight = if (limit > height - idHeight) height else idHeight + limit
+        (idHeight to lastHeight).map(h => idByHeight(h).get)
+      case None => Seq()
     }
   }
 
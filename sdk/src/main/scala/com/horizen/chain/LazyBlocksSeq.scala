@@ -0,0 +1,26 @@
+package com.horizen.chain
+
+import com.horizen.block.SidechainBlock
+import scorex.util.ModifierId
+
+// Sequence of the blocks known by their ids: the size is taken from the ids, and the blocks are loaded one by one while traversing,
+// so a long chain switch doesn't keep all the blocks in memory at once. Each traversal loads every block exactly once.
+class LazyBlocksSeq(val ids: IndexedSeq[ModifierId], loadBlock: ModifierId => Option[SidechainBlock]) extends Seq[SidechainBlock] {
+
+  override def length: Int = ids.length
+
+  override def isEmpty: Boolean = ids.isEmpty
+
+  override def apply(idx: Int): SidechainBlock = load(ids(idx))
+
+  override def iterator: Iterator[SidechainBlock] = ids.iterator.map(load)
+
+  // Prefix of the blocks selected by ids, so no blocks are loaded.
+  def takeWhileId(p: ModifierId => Boolean): LazyBlocksSeq = new LazyBlocksSeq(ids.takeWhile(p), loadBlock)
+
+  override def toString: String = s"LazyBlocksSeq(${ids.mkString(", ")})"
+
+  private def load(id: ModifierId): SidechainBlock = {
+    loadBlock(id).getOrElse(throw new IllegalStateException(s"Block $id was not found in the storage"))
+  }
+}
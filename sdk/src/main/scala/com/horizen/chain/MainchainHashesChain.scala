@@ -0,0 +1,47 @@
+package com.horizen.chain
+
+// Chain of MainchainHeader hashes with the sidechain height of the block containing each of them.
+// Parent of every hash is the previous one in the chain, so only the parent of the first hash is stored explicitly.
+private[chain] class MainchainHashesChain {
+  private val hashes: PackedIdsChain = new PackedIdsChain(mainchainHeaderHashSize)
+  private val sidechainHeights: PackedRecords = new PackedRecords(4)
+  private var firstParentOpt: Option[MainchainHeaderHash] = None
+
+  def height: Int = hashes.height
+
+  def bestHash: Option[MainchainHeaderHash] = hashes.bestId.map(byteArrayToMainchainHeaderHash)
+
+  def heightByHash(hash: MainchainHeaderHash): Option[Int] = hashes.heightById(hash.data)
+
+  def hashByHeight(requestedHeight: Int): Option[MainchainHeaderHash] = hashes.idByHeight(requestedHeight).map(byteArrayToMainchainHeaderHash)
+
+  def sidechainHeightByHeight(requestedHeight: Int): Int = sidechainHeights.getInt(requestedHeight - 1, 0)
+
+  def metadataByHash(hash: MainchainHeaderHash): Option[MainchainHeaderMetadata] = {
+    heightByHash(hash).map(hashHeight => {
+      val parent = if (hashHeight == 1) firstParentOpt.get else hashByHeight(hashHeight - 1).get
+      MainchainHeaderMetadata(sidechainHeightByHeight(hashHeight), parent)
+    })
+  }
+
+  def append(hash: MainchainHeaderHash, parent: MainchainHeaderHash, sidechainHeight: Int): Unit = {
+    if (height > 0 && !bestHash.contains(parent))
+      throw new IllegalArgumentException("Try to append mainchain header hash with incorrect parent")
+    if (parent == hash)
+      throw new IllegalArgumentException("Try to add incorrect data: element has himself as a parent")
+
+    hashes.append(hash.data)
+    sidechainHeights.putInt(sidechainHeights.append(), 0, sidechainHeight)
+    if (height == 1)
+      firstParentOpt = Some(parent)
+  }
+
+  def cutToHeight(newHeight: Int): Unit = {
+    hashes.cutToHeight(newHeight)
+    sidechainHeights.truncate(newHeight)
+    if (newHeight == 0)
+      firstParentOpt = None
+  }
+
+  def allocatedBytes: Long = hashes.allocatedBytes + sidechainHeights.allocatedBytes
+}
@@ -0,0 +1,124 @@
+package com.horizen.chain
+
+// Chain of fixed length ids (hashes) packed into primitive arrays, heights are 1-based as in ElementsChain.
+// Id -> height lookup is done by the open addressing (linear probing) table, which keeps record indices only:
+// ids are compared against the packed records themselves, so the index costs a few bytes per element.
+private[chain] class PackedIdsChain(val idLength: Int) {
+  import PackedIdsChain._
+
+  require(idLength >= 4, "Id length shall be at least 4 bytes")
+
+  private val ids: PackedRecords = new PackedRecords(idLength)
+
+  // Slot contains record index + 1, zero for the empty slot.
+  private var table: Array[Int] = new Array[Int](1 << InitialCapacityBits)
+  private var capacityBits: Int = InitialCapacityBits
+
+  def height: Int = ids.size
+
+  def contains(id: Array[Byte]): Boolean = slotOf(id) >= 0
+
+  def heightById(id: Array[Byte]): Option[Int] = {
+    val slot = slotOf(id)
+    if (slot >= 0) Some(table(slot)) else None
+  }
+
+  def idByHeight(requestedHeight: Int): Option[Array[Byte]] = {
+    if (requestedHeight > 0 && requestedHeight <= height) Some(ids.getBytes(requestedHeight - 1, 0, idLength)) else None
+  }
+
+  def bestId: Option[Array[Byte]] = idByHeight(height)
+
+  def append(id: Array[Byte]): Int = {
+    require(id.length == idLength, s"Id length ${id.length} differs from expected $idLength")
+    if (contains(id))
+      throw new IllegalArgumentException("Try to add already existing id to the chain")
+
+    if ((height + 1).toLong > (table.length.toLong * MaxLoadPercent) / 100)
+      resize(capacityBits + 1)
+
+    val index = ids.append()
+    ids.putBytes(index, 0, id)
+    insert(index)
+    height
+  }
+
+  def cutToHeight(newHeight: Int): Unit = {
+    require(newHeight >= 0 && newHeight <= height, s"Chain of height $height can't be cut to height $newHeight")
+    var index = height - 1
+    while (index >= newHeight) {
+      remove(index)
+      index -= 1
+    }
+    ids.truncate(newHeight)
+  }
+
+  // Allocated memory in bytes, for monitoring purposes.
+  def allocatedBytes: Long = ids.allocatedBytes + table.length.toLong * 4
+
+  private def slotOf(id: Array[Byte]): Int = {
+    if (id.length != idLength)
+      return -1
+    val mask = table.length - 1
+    var slot = homeSlot(hash(id))
+    while (table(slot) != 0) {
+      if (ids.bytesEqual(table(slot) - 1, 0, id))
+        return slot
+      slot = (slot + 1) & mask
+    }
+    -1
+  }
+
+  private def insert(index: Int): Unit = {
+    val mask = table.length - 1
+    var slot = homeSlot(hash(index))
+    while (table(slot) != 0)
+      slot = (slot + 1) & mask
+    table(slot) = index + 1
+  }
+
+  // Backward shift deletion: entries of the probe sequence after the removed one are moved to keep them reachable.
+  private def remove(index: Int): Unit = {
+    val mask = table.length - 1
+    var hole = homeSlot(hash(index))
+    while (table(hole) != index + 1)
+      hole = (hole + 1) & mask
+    table(hole) = 0
+
+    var slot = (hole + 1) & mask
+    while (table(slot) != 0) {
+      val home = homeSlot(hash(table(slot) - 1))
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        table(hole) = table(slot)
+        table(slot) = 0
+        hole = slot
+      }
+      slot = (slot + 1) & mask
+    }
+  }
+
+  private def resize(newCapacityBits: Int): Unit = {
+    table = new Array[Int](1 << newCapacityBits)
+    capacityBits = newCapacityBits
+    var index = 0
+    while (index < height) {
+      insert(index)
+      index += 1
+    }
+  }
+
+  private def homeSlot(hash: Int): Int = (hash * 0x9E3779B9) >>> (32 - capacityBits)
+
+  private def hash(index: Int): Int = ids.getInt(index, 0) ^ ids.getInt(index, idLength - 4)
+
+  private def hash(id: Array[Byte]): Int = readInt(id, 0) ^ readInt(id, idLength - 4)
+}
+
+private[chain] object PackedIdsChain {
+  val InitialCapacityBits: Int = 10
+  val MaxLoadPercent: Int = 70
+
+  private def readInt(bytes: Array[Byte], offset: Int): Int = {
+    (bytes(offset) << 24) | ((bytes(offset + 1) & 0xFF) << 16) | ((bytes(offset + 2) & 0xFF) << 8) | (bytes(offset + 3) & 0xFF)
+  }
+}
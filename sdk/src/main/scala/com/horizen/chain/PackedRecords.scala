@@ -0,0 +1,86 @@
+package com.horizen.chain
+
+import java.nio.ByteBuffer
+
+import scala.collection.mutable.ArrayBuffer
+
+// Fixed-width records packed into chunks of primitive byte arrays, so millions of records produce neither per record objects
+// nor a single huge array to be copied on growth. Records are addressed by 0-based index.
+private[chain] class PackedRecords(val recordLength: Int) {
+  import PackedRecords._
+
+  require(recordLength > 0, "Record length shall be positive")
+
+  private val chunks: ArrayBuffer[ByteBuffer] = ArrayBuffer()
+  private var recordsNumber: Int = 0
+
+  def size: Int = recordsNumber
+
+  // Append zero-filled record and return its index.
+  def append(): Int = {
+    val index = recordsNumber
+    if (index == chunks.size * RecordsPerChunk)
+      chunks.append(ByteBuffer.wrap(new Array[Byte](RecordsPerChunk * recordLength)))
+    else
+      java.util.Arrays.fill(chunks(index >>> ChunkBits).array(), position(index), position(index) + recordLength, 0.toByte)
+    recordsNumber += 1
+    index
+  }
+
+  // Chunks are kept allocated, so short chain reorganizations do not reallocate them.
+  def truncate(newSize: Int): Unit = {
+    require(newSize >= 0 && newSize <= recordsNumber, s"Records can't be truncated from $recordsNumber to $newSize")
+    recordsNumber = newSize
+  }
+
+  def getByte(index: Int, fieldOffset: Int): Byte = chunk(index).get(position(index) + fieldOffset)
+
+  def putByte(index: Int, fieldOffset: Int, value: Byte): Unit = chunk(index).put(position(index) + fieldOffset, value)
+
+  def getInt(index: Int, fieldOffset: Int): Int = chunk(index).getInt(position(index) + fieldOffset)
+
+  def putInt(index: Int, fieldOffset: Int, value: Int): Unit = chunk(index).putInt(position(index) + fieldOffset, value)
+
+  def getLong(index: Int, fieldOffset: Int): Long = chunk(index).getLong(position(index) + fieldOffset)
+
+  def putLong(index: Int, fieldOffset: Int, value: Long): Unit = chunk(index).putLong(position(index) + fieldOffset, value)
+
+  def getBytes(index: Int, fieldOffset: Int, length: Int): Array[Byte] = {
+    val res = new Array[Byte](length)
+    System.arraycopy(chunk(index).array(), position(index) + fieldOffset, res, 0, length)
+    res
+  }
+
+  def putBytes(index: Int, fieldOffset: Int, bytes: Array[Byte]): Unit = {
+    System.arraycopy(bytes, 0, chunk(index).array(), position(index) + fieldOffset, bytes.length)
+  }
+
+  def bytesEqual(index: Int, fieldOffset: Int, bytes: Array[Byte]): Boolean = {
+    val array = chunk(index).array()
+    val start = position(index) + fieldOffset
+    var i = 0
+    while (i < bytes.length) {
+      if (array(start + i) != bytes(i))
+        return false
+      i += 1
+    }
+    true
+  }
+
+  // Allocated memory in bytes, for monitoring purposes.
+  def allocatedBytes: Long = chunks.size.toLong * RecordsPerChunk * recordLength
+
+  private def chunk(index: Int): ByteBuffer = {
+    if (index < 0 || index >= recordsNumber)
+      throw new IndexOutOfBoundsException(s"Record index $index is out of bounds [0, $recordsNumber)")
+    chunks(index >>> ChunkBits)
+  }
+
+  private def position(index: Int): Int = (index & ChunkMask) * recordLength
+}
+
+private[chain] object PackedRecords {
+  val ChunkBits: Int = 16
+  val RecordsPerChunk: Int = 1 << ChunkBits
+  val ChunkMask: Int = RecordsPerChunk - 1
+}
@@ -1,19 +1,21 @@
 package com.horizen.consensus
 
 import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
 
+import com.google.common.cache.{Cache, CacheBuilder, CacheStats}
 import com.google.common.primitives.{Ints, Longs}
 import com.horizen.block.SidechainBlockHeader
 import com.horizen.chain.SidechainBlockInfo
 import com.horizen.params.{NetworkParams, NetworkParamsUtils}
 import com.horizen.storage.SidechainBlockInfoProvider
-import com.horizen.utils.{LruCache, Utils}
+import com.horizen.utils.ByteArrayWrapper
 import com.horizen.vrf.VrfOutput
-import io.iohk.iodb.ByteArrayWrapper
 import scorex.core.block.Block
 import scorex.core.block.Block.Timestamp
 import scorex.util.{ModifierId, ScorexLogging}
 
+import scala.collection.mutable.ListBuffer
 import scala.compat.java8.OptionConverters._
 
 trait ConsensusDataProvider {
@@ -43,39 +45,78 @@ trait ConsensusDataProvider {
     }
     else {
       val lastBlockInPreviousEpoch = getLastBlockInPreviousConsensusEpoch(blockTimestamp, parentBlockId)
-      consensusDataStorage.getNonceConsensusEpochInfo(blockIdToEpochId(lastBlockInPreviousEpoch))
-        .getOrElse(calculateNonceForEpoch(blockIdToEpochId(getLastBlockInPreviousConsensusEpoch(blockTimestamp, parentBlockId))))
+      getOrCalculateNonceForEpoch(blockIdToEpochId(lastBlockInPreviousEpoch))
     }
   }
 
+  private def getOrCalculateNonceForEpoch(epochId: ConsensusEpochId): NonceConsensusEpochInfo = {
+    consensusDataStorage.getNonceConsensusEpochInfo(epochId).getOrElse(calculateNonceForEpoch(epochId))
+  }
+
   //Added check of timestamp, otherwise malicious actor could create fake genesis block
   private def isGenesisBlock(blockTimestamp: Block.Timestamp, parentBlockId: ModifierId): Boolean = {
     blockTimestamp == params.sidechainGenesisBlockTimestamp && parentBlockId == params.sidechainGenesisBlockParentId
   }
 
   def getFullConsensusEpochInfoForBlock(blockTimestamp: Timestamp, parentBlockId: ModifierId): FullConsensusEpochInfo = {
-    val stakeConsensusEpochInfo = getStakeConsensusEpochInfo(blockTimestamp, parentBlockId)
-      .getOrElse(throw new IllegalStateException(s"Stake was not defined for block ${parentBlockId}"))
-    val nonceConsensusEpochInfo = getOrCalculateNonceConsensusEpochInfo(blockTimestamp, parentBlockId)
-    FullConsensusEpochInfo(stakeConsensusEpochInfo, nonceConsensusEpochInfo)
+    // All the blocks of the same epoch on the same chain share the info, that depends on the previous epoch only.
+    val previousEpochId: ConsensusEpochId =
+      if (isGenesisBlock(blockTimestamp, parentBlockId))
+        blockIdToEpochId(params.sidechainGenesisBlockId)
+      else
+        blockIdToEpochId(getLastBlockInPreviousConsensusEpoch(blockTimestamp, parentBlockId))
+
+    consensusDataStorage.getFullConsensusEpochInfo(previousEpochId).getOrElse {
+      val stakeConsensusEpochInfo = getStakeConsensusEpochInfo(blockTimestamp, parentBlockId)
+        .getOrElse(throw new IllegalStateException(s"Stake was not defined for block ${parentBlockId}"))
+      val nonceConsensusEpochInfo = getOrCalculateNonceConsensusEpochInfo(blockTimestamp, parentBlockId)
+      val fullConsensusEpochInfo = FullConsensusEpochInfo(stakeConsensusEpochInfo, nonceConsensusEpochInfo)
+
+      consensusDataStorage.cacheFullConsensusEpochInfo(previousEpochId, fullConsensusEpochInfo)
+      fullConsensusEpochInfo
+    }
   }
 
-  //Check possible stack buffer overflow situations
+  // Nonces are calculated iteratively: go back through the epochs till the one with the known nonce,
+  // then calculate the nonces in the forward direction. Nonce depends on the last block in the epoch only,
+  // so calculated nonces are persisted immediately and the next calculation will stop on them.
   def calculateNonceForEpoch(epochId: ConsensusEpochId): NonceConsensusEpochInfo = {
-    val lastBlockIdInEpoch: ModifierId = lastBlockIdInEpochId(epochId)
-    val lastBlockInfoInEpoch: SidechainBlockInfo = storage.blockInfoById(lastBlockIdInEpoch)
-
-    if (isGenesisBlock(lastBlockIdInEpoch)) {
-      ConsensusDataProvider.calculateNonceForGenesisBlock(params)
+    val epochsToCalculate = ListBuffer[(ModifierId, SidechainBlockInfo)]()
+    var knownNonceOpt: Option[NonceConsensusEpochInfo] = None
+    var currentEpochId: ConsensusEpochId = epochId
+
+    while (knownNonceOpt.isEmpty) {
+      val lastBlockIdInEpoch: ModifierId = lastBlockIdInEpochId(currentEpochId)
+      if (isGenesisBlock(lastBlockIdInEpoch)) {
+        knownNonceOpt = Some(ConsensusDataProvider.calculateNonceForGenesisBlock(params))
+      }
+      else {
+        val lastBlockInfoInEpoch: SidechainBlockInfo = storage.blockInfoById(lastBlockIdInEpoch)
+        // prepend to get the epochs in the forward direction
+        (lastBlockIdInEpoch, lastBlockInfoInEpoch) +=: epochsToCalculate
+        currentEpochId = blockIdToEpochId(lastBlockInfoInEpoch.lastBlockInPreviousConsensusEpoch)
+        knownNonceOpt = consensusDataStorage.getNonceConsensusEpochInfo(currentEpochId)
+      }
     }
-    else {
-      calculateNonceForNonGenesisEpoch(lastBlockIdInEpoch, lastBlockInfoInEpoch, Seq())
+
+    epochsToCalculate.foldLeft(knownNonceOpt.get) { case (previousNonce, (lastBlockIdInEpoch, lastBlockInfoInEpoch)) =>
+      val nonce = calculateNonceForNonGenesisEpoch(lastBlockIdInEpoch, lastBlockInfoInEpoch, Seq(), previousNonce)
+      consensusDataStorage.addNonceConsensusEpochInfo(blockIdToEpochId(lastBlockIdInEpoch), nonce)
+      nonce
     }
   }
 
   private[horizen] def calculateNonceForNonGenesisEpoch(lastBlockIdInEpoch: ModifierId,
                                                         lastBlockInfoInEpoch: SidechainBlockInfo,
                                                         initialNonceData: Seq[(VrfOutput, ConsensusSlotNumber)]): NonceConsensusEpochInfo = {
+    val previousEpoch: ConsensusEpochId = blockIdToEpochId(lastBlockInfoInEpoch.lastBlockInPreviousConsensusEpoch)
+    calculateNonceForNonGenesisEpoch(lastBlockIdInEpoch, lastBlockInfoInEpoch, initialNonceData, getOrCalculateNonceForEpoch(previousEpoch))
+  }
+
+  private def calculateNonceForNonGenesisEpoch(lastBlockIdInEpoch: ModifierId,
+                                               lastBlockInfoInEpoch: SidechainBlockInfo,
+                                               initialNonceData: Seq[(VrfOutput, ConsensusSlotNumber)],
+                                               previousNonce: NonceConsensusEpochInfo): NonceConsensusEpochInfo = {
     // Hash function is applied to the concatenation of VRF values that are inserted into each block, using values from
     // all blocks up to and including the middle ≈ 8k slots of an epoch that lasts approximately 24k slots in entirety.
     // (The “quiet” periods before and after this central block of slots that sets the nonce will
@@ -89,9 +130,7 @@ trait ConsensusDataProvider {
     val nonceMessageDigest: MessageDigest = createNonceMessageDigest(lastBlockIdInEpoch, lastBlockInfoInEpoch, eligibleSlotsRangeStart, eligibleSlotsRangeEnd, initialNonceData)
 
     //According to https://eprint.iacr.org/2017/573.pdf p.26
-    val previousEpoch: ConsensusEpochId = blockIdToEpochId(lastBlockInfoInEpoch.lastBlockInPreviousConsensusEpoch)
-    val previousNonce = consensusDataStorage.getNonceConsensusEpochInfo(previousEpoch).getOrElse(calculateNonceForEpoch(previousEpoch)).bytes
-    nonceMessageDigest.update(previousNonce)
+    nonceMessageDigest.update(previousNonce.bytes)
 
     val currentEpochNumberBytes = Ints.toByteArray(timeStampToEpochNumber(lastBlockInfoInEpoch.timestamp))
     nonceMessageDigest.update(currentEpochNumberBytes)
@@ -145,16 +184,12 @@ trait ConsensusDataProvider {
 
   def getVrfOutput(blockHeader: SidechainBlockHeader, nonceConsensusEpochInfo: NonceConsensusEpochInfo): Option[VrfOutput] = {
     //try to get cached value, if no in cache then calculate
-    val key = ConsensusDataProvider.blockIdAndNonceToKey(blockHeader.id, nonceConsensusEpochInfo)
-    val cachedValue = ConsensusDataProvider.vrfOutputCache.get(key)
-    if (cachedValue == null) {
-      calculateVrfOutput(blockHeader, nonceConsensusEpochInfo).map{vrfOutput =>
-        ConsensusDataProvider.vrfOutputCache.put(key, vrfOutput)
-        vrfOutput
-      }
-    }
-    else {
-      Some(cachedValue)
+    val key = ConsensusDataProvider.VrfOutputCacheKey(blockHeader.id, new ByteArrayWrapper(nonceConsensusEpochInfo.consensusNonce))
+    val vrfOutputCache = ConsensusDataProvider.vrfOutputCache(params)
+    Option(vrfOutputCache.getIfPresent(key)).orElse {
+      val vrfOutputOpt = calculateVrfOutput(blockHeader, nonceConsensusEpochInfo)
+      vrfOutputOpt.foreach(vrfOutput => vrfOutputCache.put(key, vrfOutput))
+      vrfOutputOpt
     }
   }
 
@@ -167,11 +202,24 @@ trait ConsensusDataProvider {
 }
 
 object ConsensusDataProvider {
-  private def blockIdAndNonceToKey(blockId: ModifierId, nonceConsensusEpochInfo: NonceConsensusEpochInfo): ByteArrayWrapper = {
-    new ByteArrayWrapper(Utils.doubleSHA256HashOfConcatenation(blockId.getBytes, nonceConsensusEpochInfo.consensusNonce))
+  // VRF output depends on the block header and the nonce only, so the key doesn't need any hashing.
+  private case class VrfOutputCacheKey(blockId: ModifierId, nonce: ByteArrayWrapper)
+
+  // Blocks and their ommers (with subommers) take different slots, so a chain contains at most one of them per slot.
+  // Keeps VRF outputs of the whole consensus epoch of both the active chain and the chain switched to by a reorg.
+  def vrfOutputCacheSize(params: NetworkParams): Long = 2L * params.consensusSlotsInEpoch
+
+  // Caches are shared by the providers with the same epoch length. Accessed both from the validation and forging paths.
+  private val vrfOutputCaches: ConcurrentHashMap[Int, Cache[VrfOutputCacheKey, VrfOutput]] = new ConcurrentHashMap()
+
+  private def vrfOutputCache(params: NetworkParams): Cache[VrfOutputCacheKey, VrfOutput] = {
+    vrfOutputCaches.computeIfAbsent(params.consensusSlotsInEpoch, _ => CacheBuilder.newBuilder()
+      .maximumSize(vrfOutputCacheSize(params))
+      .recordStats()
+      .build[VrfOutputCacheKey, VrfOutput]())
   }
 
-  private val vrfOutputCache: LruCache[ByteArrayWrapper, VrfOutput] = new LruCache[ByteArrayWrapper, VrfOutput](32) //check cache size
+  def vrfOutputCacheStats(params: NetworkParams): CacheStats = vrfOutputCache(params).stats()
 
   def calculateNonceForGenesisBlock(params: NetworkParams): NonceConsensusEpochInfo = {
     NonceConsensusEpochInfo(ConsensusNonce(Longs.toByteArray(params.sidechainGenesisBlockTimestamp)))
@@ -3,7 +3,7 @@ package com.horizen.consensus
 import java.util.{ArrayList => JArrayList}
 
 import com.horizen.storage.Storage
-import com.horizen.utils.{ByteArrayWrapper, Pair => JPair}
+import com.horizen.utils.{ByteArrayWrapper, LruCache, Pair => JPair}
 import scorex.crypto.hash.Blake2b256
 import scorex.util.ScorexLogging
 
@@ -11,6 +11,11 @@ import scala.compat.java8.OptionConverters._
 import scala.util.Random
 
 class ConsensusDataStorage(consensusEpochInfoStorage: Storage) extends ScorexLogging {
+  // Full consensus epoch info is requested for every appended block and verified ommer, but changes once per epoch.
+  // Epoch id is the id of the last block in the epoch, so the info of different forks never collide.
+  private val fullConsensusEpochInfoCache =
+    new LruCache[ConsensusEpochId, FullConsensusEpochInfo](ConsensusDataStorage.fullConsensusEpochInfoCacheSize)
+
   def addStakeConsensusEpochInfo(epochId: ConsensusEpochId, stakeEpochInfo: StakeConsensusEpochInfo): Unit = {
     log.info(s"Storage with id:${this.hashCode()} -- Add stake to consensus data storage: for epochId ${epochId} stake info: ${stakeEpochInfo}")
 
@@ -32,10 +37,13 @@ class ConsensusDataStorage(consensusEpochInfoStorage: Storage) extends ScorexLog
     log.info(s"Storage with id:${this.hashCode()} -- Add nonce to consensus data storage: for epochId ${epochId} nonce info: ${consensusNonce}")
 
     //NonceConsensusEpochInfo shall NOT be changed, check trying of overwriting value
-    require(getNonceConsensusEpochInfo(epochId).forall(nonceInfo => nonceInfo.equals(consensusNonce)),
+    val storedNonce = getNonceConsensusEpochInfo(epochId)
+    require(storedNonce.forall(nonceInfo => nonceInfo.equals(consensusNonce)),
       s"NonceConsensusEpochInfo shall not be redefined for epoch ${epochId}")
 
-    addEntry(nonceEpochInfoKey(epochId), NonceConsensusEpochInfoSerializer.toBytes(consensusNonce))
+    // Nonce may be already stored during its calculation, so nothing to update.
+    if (storedNonce.isEmpty)
+      addEntry(nonceEpochInfoKey(epochId), NonceConsensusEpochInfoSerializer.toBytes(consensusNonce))
   }
 
   def getNonceConsensusEpochInfo(epochId: ConsensusEpochId): Option[NonceConsensusEpochInfo] = {
@@ -45,6 +53,14 @@ class ConsensusDataStorage(consensusEpochInfoStorage: Storage) extends ScorexLog
       .map(byteArray => NonceConsensusEpochInfoSerializer.parseBytes(byteArray.data))
   }
 
+  def getFullConsensusEpochInfo(epochId: ConsensusEpochId): Option[FullConsensusEpochInfo] = fullConsensusEpochInfoCache.synchronized {
+    Option(fullConsensusEpochInfoCache.get(epochId))
+  }
+
+  def cacheFullConsensusEpochInfo(epochId: ConsensusEpochId, fullConsensusEpochInfo: FullConsensusEpochInfo): Unit = fullConsensusEpochInfoCache.synchronized {
+    fullConsensusEpochInfoCache.put(epochId, fullConsensusEpochInfo)
+  }
+
   private def nextVersion: Array[Byte] = {
     val version = new Array[Byte](32)
     Random.nextBytes(version)
@@ -62,3 +78,8 @@ class ConsensusDataStorage(consensusEpochInfoStorage: Storage) extends ScorexLog
     consensusEpochInfoStorage.update(new ByteArrayWrapper(nextVersion), listForUpdate, java.util.Collections.emptyList())
   }
 }
+
+object ConsensusDataStorage {
+  // Number of epochs, including the forks ones, which full consensus info is kept in memory.
+  val fullConsensusEpochInfoCacheSize: Int = 16
+}
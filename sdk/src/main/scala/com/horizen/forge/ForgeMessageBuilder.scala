@@ -10,13 +10,14 @@ import com.horizen.proof.VrfProof
 import com.horizen.proposition.Proposition
 import com.horizen.secret.{PrivateKey25519, VrfSecretKey}
 import com.horizen.transaction.SidechainTransaction
-import com.horizen.utils.MerklePath
+import com.horizen.utils.{MerklePath, ParallelComputation}
 import com.horizen.{SidechainHistory, SidechainMemoryPool, SidechainState, SidechainWallet}
 import scorex.core.NodeViewHolder.ReceivableMessages.GetDataFromCurrentView
 import scorex.util.{ModifierId, ScorexLogging}
 import com.horizen.chain._
 import com.horizen.vrf.VrfOutput
 
+import scala.collection.concurrent.TrieMap
 import scala.util.{Failure, Success, Try}
 
 class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
@@ -25,8 +26,35 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
                           allowNoWebsocketConnectionInRegtest: Boolean) extends ScorexLogging with TimeToEpochSlotConverter {
   type ForgeMessageType = GetDataFromCurrentView[SidechainHistory, SidechainState, SidechainWallet, SidechainMemoryPool, ForgeResult]
 
+  type EligibilityDataMessageType = GetDataFromCurrentView[SidechainHistory, SidechainState, SidechainWallet, SidechainMemoryPool, Try[EligibilityData]]
+  type BlockTemplateMessageType = GetDataFromCurrentView[SidechainHistory, SidechainState, SidechainWallet, SidechainMemoryPool, Try[Unit]]
+  type EligibleForger = (ForgerBox, MerklePath, PrivateKey25519, VrfProof, VrfOutput)
+  type OwnedForgingData = (ForgerBox, MerklePath, PrivateKey25519, VrfSecretKey)
+
+  // Data copied from the current view to calculate the forging eligibility for the slots outside of the view holder:
+  // owned forger boxes with their secrets ordered by stake decreasing and the consensus info of every slot.
+  case class EligibilityData(consensusEpochNumber: ConsensusEpochNumber,
+                             ownedForgingData: Seq[OwnedForgingData],
+                             slotsConsensusInfo: Seq[(ConsensusEpochAndSlot, FullConsensusEpochInfo)])
+
+  // Forging eligibility calculated ahead of the slots of the current consensus epoch together with the consensus info used.
+  // None means that no owned forger box is eligible for the slot.
+  // Only complete results are kept: if VRF proving was stopped by the deadline, the slot is recalculated at forging time.
+  private val precalculatedEligibility = TrieMap[ConsensusEpochAndSlot, (FullConsensusEpochInfo, Option[EligibleForger])]()
+
   case class BranchPointInfo(branchPointId: ModifierId, referenceDataToInclude: Seq[MainchainHeaderHash], headersToInclude: Seq[MainchainHeaderHash])
 
+  // Block content prepared for the branch point on top of the active chain tip.
+  // Transactions are not a part of the template: they are taken from the fee ordered memory pool at forging time.
+  private case class BlockTemplate(branchPointInfo: BranchPointInfo,
+                                   bestBlockId: ModifierId,
+                                   mainchainBlockReferences: Seq[MainchainBlockReference],
+                                   ommers: Seq[Ommer])
+
+  // The last block template is reused by the next forging attempts while the branch point info and the tip remain the same,
+  // and is updated incrementally otherwise.
+  @volatile private var lastBlockTemplateOpt: Option[BlockTemplate] = None
+
   def buildForgeMessageForEpochAndSlot(consensusEpochNumber: ConsensusEpochNumber, consensusSlotNumber: ConsensusSlotNumber): ForgeMessageType = {
       val forgingFunctionForEpochAndSlot: View => ForgeResult = tryToForgeNextBlock(consensusEpochNumber, consensusSlotNumber)
 
@@ -36,6 +64,61 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
       forgeMessage
   }
 
+  def buildEligibilityDataMessageForSlots(consensusEpochNumber: ConsensusEpochNumber, fromSlotNumber: ConsensusSlotNumber, slotsNumber: Int): EligibilityDataMessageType = {
+    GetDataFromCurrentView[SidechainHistory, SidechainState, SidechainWallet, SidechainMemoryPool, Try[EligibilityData]](
+      getEligibilityData(consensusEpochNumber, fromSlotNumber, slotsNumber))
+  }
+
+  def buildBlockTemplateMessage(): BlockTemplateMessageType = {
+    GetDataFromCurrentView[SidechainHistory, SidechainState, SidechainWallet, SidechainMemoryPool, Try[Unit]](prepareBlockTemplate)
+  }
+
+  // Collect the data to calculate the forging eligibility for the next slots of the epoch on top of the current best block.
+  // Only the data lookup is done inside the view holder, VRF proving is done by calculateEligibility(...) outside of it.
+  protected def getEligibilityData(consensusEpochNumber: ConsensusEpochNumber, fromSlotNumber: ConsensusSlotNumber, slotsNumber: Int)
+                                  (nodeView: View): Try[EligibilityData] = Try {
+    val bestBlockEpochAndSlot = timestampToEpochAndSlot(nodeView.history.bestBlockInfo.timestamp)
+    val lastSlotNumber = Math.min(fromSlotNumber + slotsNumber - 1, params.consensusSlotsInEpoch)
+
+    val slotsConsensusInfo = (fromSlotNumber to lastSlotNumber)
+      .map(slotNumber => ConsensusEpochAndSlot(consensusEpochNumber, intToConsensusSlotNumber(slotNumber)))
+      .filter(epochAndSlot => epochAndSlot > bestBlockEpochAndSlot)
+      .map(epochAndSlot => {
+        val timestamp = getTimeStampForEpochAndSlot(epochAndSlot.epochNumber, epochAndSlot.slotNumber)
+        (epochAndSlot, nodeView.history.getFullConsensusEpochInfoForBlock(timestamp, nodeView.history.bestBlockId))
+      })
+
+    EligibilityData(consensusEpochNumber, getOwnedForgingData(nodeView.vault, consensusEpochNumber), slotsConsensusInfo)
+  }
+
+  // Calculate forging eligibility for the slots, so the forging attempt in the slot will skip VRF proving.
+  // Slots already calculated for the same consensus info are not recalculated. Returns the eligible slots.
+  def calculateEligibility(eligibilityData: EligibilityData): Seq[ForgingSlotEligibility] = {
+    // Remove the obsolete data
+    precalculatedEligibility.keys.filter(_.epochNumber < eligibilityData.consensusEpochNumber).foreach(precalculatedEligibility.remove)
+
+    eligibilityData.slotsConsensusInfo.flatMap {
+      case (epochAndSlot, consensusInfo) =>
+        val eligibleForgerOpt = precalculatedEligibility.get(epochAndSlot) match {
+          case Some((precalculatedConsensusInfo, precalculatedEligibleForgerOpt)) if precalculatedConsensusInfo.equals(consensusInfo) =>
+            precalculatedEligibleForgerOpt
+          case _ =>
+            val (calculatedEligibleForgerOpt, isComplete) =
+              calculateEligibleForger(eligibilityData.ownedForgingData, epochAndSlot, consensusInfo, vrfProvingDeadlineMillis(epochAndSlot))
+            if (isComplete)
+              precalculatedEligibility.put(epochAndSlot, (consensusInfo, calculatedEligibleForgerOpt))
+            calculatedEligibleForgerOpt
+        }
+
+        eligibleForgerOpt.map{case (forgerBox, _, _, _, _) => ForgingSlotEligibility(epochAndSlot, forgerBox.id(), forgerBox.value())}
+    }
+  }
+
+  // Prepare the block template in advance, if the node is going to forge in one of the next slots.
+  protected def prepareBlockTemplate(nodeView: View): Try[Unit] = {
+    getBranchPointInfo(nodeView.history).flatMap(branchPointInfo => getBlockTemplate(nodeView, branchPointInfo)).map(_ => ())
+  }
+
   protected def tryToForgeNextBlock(nextConsensusEpochNumber: ConsensusEpochNumber, nextConsensusSlotNumber: ConsensusSlotNumber)(nodeView: View): ForgeResult = Try {
     log.info(s"Try to forge block for epoch $nextConsensusEpochNumber with slot $nextConsensusSlotNumber")
 
@@ -51,24 +134,17 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
 
     val nextBlockTimestamp = getTimeStampForEpochAndSlot(nextConsensusEpochNumber, nextConsensusSlotNumber)
     val consensusInfo: FullConsensusEpochInfo = nodeView.history.getFullConsensusEpochInfoForBlock(nextBlockTimestamp, parentBlockId)
-    val totalStake = consensusInfo.stakeConsensusEpochInfo.totalStake
-    val vrfMessage = buildVrfMessage(nextConsensusSlotNumber, consensusInfo.nonceConsensusEpochInfo)
-
-    val sidechainWallet = nodeView.vault
-
-    // Get ForgerBoxes and MerklePaths from wallet and order them by stake decreasing.
-    val forgerBoxMerklePathInfoSeq: Seq[(ForgerBox, MerklePath)]
-    = sidechainWallet.getForgerBoxMerklePathInfoOpt(nextConsensusEpochNumber).getOrElse(Seq())
-      .sortWith(_.forgerBox.value() > _.forgerBox.value())
-      .map(d => (d.forgerBox, d.merklePath))
-
-    val ownedForgingDataView: Seq[(ForgerBox, MerklePath, PrivateKey25519, VrfProof, VrfOutput)]
-    = forgerBoxMerklePathInfoSeq.view.flatMap{case (forgerBox, merklePath) => getSecretsAndProof(sidechainWallet, vrfMessage, forgerBox, merklePath)}
-
-    val eligibleForgingDataView: Seq[(ForgerBox, MerklePath, PrivateKey25519, VrfProof, VrfOutput)] =
-      ownedForgingDataView.filter{case(forgerBox, merklePath, privateKey25519, vrfProof, vrfOutput) => vrfProofCheckAgainstStake(vrfOutput, forgerBox.value(), totalStake)}
-
-    val eligibleForgerOpt = eligibleForgingDataView.headOption //force all forging related calculations
+    val epochAndSlot = ConsensusEpochAndSlot(nextConsensusEpochNumber, nextConsensusSlotNumber)
+
+    // Use the eligibility calculated ahead of the slot, if it was calculated for the same consensus info.
+    val eligibleForgerOpt: Option[EligibleForger] = precalculatedEligibility.remove(epochAndSlot) match {
+      case Some((precalculatedConsensusInfo, precalculatedEligibleForgerOpt)) if precalculatedConsensusInfo.equals(consensusInfo) =>
+        log.info(s"Use precalculated forging eligibility for epoch $nextConsensusEpochNumber slot $nextConsensusSlotNumber")
+        precalculatedEligibleForgerOpt
+      case _ =>
+        calculateEligibleForger(getOwnedForgingData(nodeView.vault, nextConsensusEpochNumber), epochAndSlot, consensusInfo,
+          vrfProvingDeadlineMillis(epochAndSlot))._1
+    }
 
     val forgingResult = eligibleForgerOpt
       .map{case (forgerBox, merklePath, privateKey25519, vrfProof, vrfOutput) =>
@@ -86,16 +162,77 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
     }
   }
 
-  private def getSecretsAndProof(wallet: SidechainWallet, vrfMessage: VrfMessage, forgerBox: ForgerBox, merklePath: MerklePath): Option[(ForgerBox, MerklePath, PrivateKey25519, VrfProof, VrfOutput)] = {
+  // Get ForgerBoxes and MerklePaths from wallet with the corresponding secrets and order them by stake decreasing.
+  // Wallet is not thread safe, so the secrets are taken before any parallel processing.
+  private def getOwnedForgingData(wallet: SidechainWallet, consensusEpochNumber: ConsensusEpochNumber): Seq[OwnedForgingData] = {
+    wallet.getForgerBoxMerklePathInfoOpt(consensusEpochNumber).getOrElse(Seq())
+      .sortWith(_.forgerBox.value() > _.forgerBox.value())
+      .flatMap(d => getSecrets(wallet, d.forgerBox, d.merklePath))
+  }
+
+  // Forging shall not take more than a slot, so VRF proving shall end in the middle of the slot
+  // leaving the second half of it for the block assembly.
+  // Slots which middle has already passed (e.g. forging of the explicitly requested past slot) are not limited.
+  private def vrfProvingDeadlineMillis(epochAndSlot: ConsensusEpochAndSlot): Long = {
+    val slotStartMillis = getTimeStampForEpochAndSlot(epochAndSlot.epochNumber, epochAndSlot.slotNumber) * 1000L
+    val deadlineMillis = slotStartMillis + params.consensusSecondsInSlot * 1000L / 2
+    if (deadlineMillis > System.currentTimeMillis()) deadlineMillis else Long.MaxValue
+  }
+
+  private def calculateEligibleForger(ownedForgingData: Seq[OwnedForgingData],
+                                      epochAndSlot: ConsensusEpochAndSlot,
+                                      consensusInfo: FullConsensusEpochInfo,
+                                      vrfProvingDeadlineMillis: Long): (Option[EligibleForger], Boolean) = {
+    val totalStake = consensusInfo.stakeConsensusEpochInfo.totalStake
+    val vrfMessage = buildVrfMessage(epochAndSlot.slotNumber, consensusInfo.nonceConsensusEpochInfo)
+
+    val vrfProvingStart = System.nanoTime()
+    val eligibleForgerResult = findEligibleForger(vrfMessage, ownedForgingData, totalStake, vrfProvingDeadlineMillis)
+    val vrfProvingTimeMillis = (System.nanoTime() - vrfProvingStart) / 1000000
+
+    log.info(s"VRF proving for epoch ${epochAndSlot.epochNumber} slot ${epochAndSlot.slotNumber} took $vrfProvingTimeMillis ms " +
+      s"for ${ownedForgingData.size} owned forger boxes")
+    eligibleForgerResult
+  }
+
+  // VRF proofs are calculated in parallel by batches following the stake decreasing order,
+  // so the chosen forger box is the same as in case of sequential processing.
+  // Forger boxes not processed before the deadline are skipped.
+  // Returns the eligible forger, if any, and whether the result is complete: the forger was found or all the owned forger boxes were checked.
+  private def findEligibleForger(vrfMessage: VrfMessage,
+                                 ownedForgingData: Seq[OwnedForgingData],
+                                 totalStake: Long,
+                                 deadlineMillis: Long): (Option[EligibleForger], Boolean) = {
+    val batches = ownedForgingData.grouped(ForgeMessageBuilder.vrfProvingBatchSize)
+    var eligibleForgerOpt: Option[EligibleForger] = None
+    var processedNumber: Int = 0
+
+    while (eligibleForgerOpt.isEmpty && batches.hasNext && System.currentTimeMillis() < deadlineMillis) {
+      val batch = batches.next().par
+      batch.tasksupport = ParallelComputation.taskSupport
+
+      val provedBatch: Seq[EligibleForger] = batch.map{
+        case (forgerBox, merklePath, rewardPrivateKey, vrfSecret) =>
+          val vrfProofAndHash = vrfSecret.prove(vrfMessage)
+          (forgerBox, merklePath, rewardPrivateKey, vrfProofAndHash.getKey, vrfProofAndHash.getValue)
+      }.seq
+
+      eligibleForgerOpt = provedBatch.find{case (forgerBox, _, _, _, vrfOutput) => vrfProofCheckAgainstStake(vrfOutput, forgerBox.value(), totalStake)}
+      processedNumber += provedBatch.size
+    }
+
+    val isComplete = eligibleForgerOpt.isDefined || processedNumber == ownedForgingData.size
+    if (!isComplete)
+      log.warn(s"VRF proving deadline reached: only $processedNumber of ${ownedForgingData.size} owned forger boxes were checked")
+
+    (eligibleForgerOpt, isComplete)
+  }
+
+  private def getSecrets(wallet: SidechainWallet, forgerBox: ForgerBox, merklePath: MerklePath): Option[OwnedForgingData] = {
     for {
       rewardPrivateKey <- wallet.secret(forgerBox.blockSignProposition()).asInstanceOf[Option[PrivateKey25519]]
       vrfSecret <- wallet.secret(forgerBox.vrfPubKey()).asInstanceOf[Option[VrfSecretKey]]
-      vrfProofAndHash <- Some(vrfSecret.prove(vrfMessage))
-    } yield {
-      val vrfProof = vrfProofAndHash.getKey
-      val vrfOutput = vrfProofAndHash.getValue
-      (forgerBox, merklePath, rewardPrivateKey, vrfProof, vrfOutput)
-    }
+    } yield (forgerBox, merklePath, rewardPrivateKey, vrfSecret)
   }
 
   private def checkNextEpochAndSlot(parentBlockTimestamp: Long,
@@ -180,6 +317,47 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
     }
   }
 
+  private def getBlockTemplate(nodeView: View, branchPointInfo: BranchPointInfo): Try[BlockTemplate] = {
+    val bestBlockId = nodeView.history.bestBlockId
+    lastBlockTemplateOpt match {
+      case Some(template) if template.branchPointInfo == branchPointInfo && template.bestBlockId == bestBlockId =>
+        Success(template)
+      case _ =>
+        buildBlockTemplate(nodeView, branchPointInfo, lastBlockTemplateOpt).map(template => {
+          lastBlockTemplateOpt = Some(template)
+          template
+        })
+    }
+  }
+
+  // Build the block template reusing the ommers of the previous one of the same branch.
+  private def buildBlockTemplate(nodeView: View, branchPointInfo: BranchPointInfo, previousTemplateOpt: Option[BlockTemplate]): Try[BlockTemplate] = Try {
+    // Get all needed MainchainBlockReferences, MainchainSynchronizer retrieves from MC Node only the ones not retrieved before
+    val mainchainHashes: Seq[MainchainHeaderHash] = (branchPointInfo.referenceDataToInclude ++ branchPointInfo.headersToInclude).distinct
+    val mainchainBlockReferences: Seq[MainchainBlockReference] =
+      mainchainSynchronizer.getMainchainBlockReferences(nodeView.history, mainchainHashes).get
+
+    // Get ommers in case if branch point is not current best block.
+    // Ommers of the previous template are reused, if the tip was built on top of them.
+    val knownOmmersTemplateOpt: Option[BlockTemplate] = previousTemplateOpt.filter(_.branchPointInfo.branchPointId == branchPointInfo.branchPointId)
+    var ommers: Seq[Ommer] = Seq()
+    var blockId = nodeView.history.bestBlockId
+    while (blockId != branchPointInfo.branchPointId) {
+      knownOmmersTemplateOpt match {
+        case Some(template) if template.bestBlockId == blockId =>
+          ommers = template.ommers ++ ommers
+          blockId = branchPointInfo.branchPointId
+        case _ =>
+          // Ommer is read directly, without the block transactions and mainchain references data
+          val ommer = nodeView.history.ommerById(blockId).get
+          blockId = ommer.header.parentId
+          ommers = ommer +: ommers
+      }
+    }
+
+    BlockTemplate(branchPointInfo, nodeView.history.bestBlockId, mainchainBlockReferences, ommers)
+  }
+
   private def forgeBlock(nodeView: View,
                          timestamp: Long,
                          branchPointInfo: BranchPointInfo,
@@ -187,31 +365,30 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
                          forgerBoxMerklePath: MerklePath,
                          blockSignPrivateKey: PrivateKey25519,
                          vrfProof: VrfProof): ForgeResult = {
+    val blockAssemblyStart = System.nanoTime()
     val parentBlockId: ModifierId = branchPointInfo.branchPointId
     val parentBlockInfo: SidechainBlockInfo = nodeView.history.blockInfoById(branchPointInfo.branchPointId)
     var withdrawalEpochMcBlocksLeft: Int = params.withdrawalEpochLength - parentBlockInfo.withdrawalEpochInfo.lastEpochIndex
     if (withdrawalEpochMcBlocksLeft == 0) // parent block is the last block of the epoch
       withdrawalEpochMcBlocksLeft = params.withdrawalEpochLength
 
-    // Get all needed MainchainBlockReferences from MC Node
-    val mainchainHashesToRetrieve: Seq[MainchainHeaderHash] = (branchPointInfo.referenceDataToInclude ++ branchPointInfo.headersToInclude).distinct
-    val mainchainBlockReferences: Seq[MainchainBlockReference] =
-      mainchainSynchronizer.getMainchainBlockReferences(nodeView.history, mainchainHashesToRetrieve) match {
-        case Success(references) => references
-        case Failure(ex) => return ForgeFailed(ex)
-      }
+    val blockTemplate: BlockTemplate = getBlockTemplate(nodeView, branchPointInfo) match {
+      case Success(template) => template
+      case Failure(ex) => return ForgeFailed(ex)
+    }
 
     // Extract proper MainchainReferenceData
     val mainchainReferenceData: Seq[MainchainBlockReferenceData] =
-      mainchainBlockReferences.withFilter(ref => branchPointInfo.referenceDataToInclude.contains(byteArrayToMainchainHeaderHash(ref.header.hash)))
+      blockTemplate.mainchainBlockReferences.withFilter(ref => branchPointInfo.referenceDataToInclude.contains(byteArrayToMainchainHeaderHash(ref.header.hash)))
       .map(_.data)
 
     // Extract proper MainchainHeaders
     val mainchainHeaders: Seq[MainchainHeader] =
-      mainchainBlockReferences.withFilter(ref => branchPointInfo.headersToInclude.contains(byteArrayToMainchainHeaderHash(ref.header.hash)))
+      blockTemplate.mainchainBlockReferences.withFilter(ref => branchPointInfo.headersToInclude.contains(byteArrayToMainchainHeaderHash(ref.header.hash)))
         .map(_.header)
 
     // Get transactions if possible
+    // Memory pool keeps the transactions ordered by fee and valid against the current tip state, so no sorting needed.
     val transactions: Seq[SidechainTransaction[Proposition, NoncedBox[Proposition]]] =
       if (branchPointInfo.referenceDataToInclude.size == withdrawalEpochMcBlocksLeft) { // SC block is going to become the last block of the withdrawal epoch
         Seq() // no SC Txs allowed
@@ -221,15 +398,11 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
           .toSeq
       }
 
-    // Get ommers in case if branch point is not current best block
-    var ommers: Seq[Ommer] = Seq()
-    var blockId = nodeView.history.bestBlockId
-    while (blockId != branchPointInfo.branchPointId) {
-      val block = nodeView.history.getBlockById(blockId).get() // TODO: replace with method blockById with no Option
-      blockId = block.parentId
-      ommers = Ommer.toOmmer(block) +: ommers
-    }
+    val ommers: Seq[Ommer] = blockTemplate.ommers
 
+    val blockAssemblyTimeMillis = (System.nanoTime() - blockAssemblyStart) / 1000000
+
+    val blockCreationStart = System.nanoTime()
     val tryBlock = SidechainBlock.create(
       parentBlockId,
       timestamp,
@@ -244,6 +417,10 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
       companion,
       params)
 
+    // Block creation includes the block signing.
+    val blockCreationTimeMillis = (System.nanoTime() - blockCreationStart) / 1000000
+    log.info(s"Block assembly took $blockAssemblyTimeMillis ms, block creation and signing took $blockCreationTimeMillis ms")
+
     tryBlock match {
       case Success(block) => ForgeSuccess(block)
       case Failure(exception) => ForgeFailed(exception)
@@ -251,6 +428,9 @@ class ForgeMessageBuilder(mainchainSynchronizer: MainchainSynchronizer,
   }
 }
 
-
-
-
+object ForgeMessageBuilder {
+  // Number of threads used to calculate VRF proofs of the owned forger boxes.
+  val vrfProvingParallelism: Int = ParallelComputation.parallelism
+  // Number of forger boxes which VRF proofs are calculated before checking for the eligible one.
+  val vrfProvingBatchSize: Int = vrfProvingParallelism * 4
+}
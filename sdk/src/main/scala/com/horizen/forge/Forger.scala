@@ -9,8 +9,8 @@ import akka.util.Timeout
 import com.horizen._
 import com.horizen.block.SidechainBlock
 import com.horizen.companion.SidechainTransactionsCompanion
-import com.horizen.consensus.{ConsensusEpochAndSlot, ConsensusEpochNumber, ConsensusSlotNumber, TimeToEpochSlotConverter}
-import com.horizen.forge.Forger.ReceivableMessages.{GetForgingInfo, StartForging, StopForging, TryForgeNextBlockForEpochAndSlot}
+import com.horizen.consensus.{ConsensusEpochAndSlot, ConsensusEpochNumber, ConsensusSlotNumber, TimeToEpochSlotConverter, intToConsensusSlotNumber}
+import com.horizen.forge.Forger.ReceivableMessages.{GetForgingInfo, GetForgingSchedule, StartForging, StopForging, TryForgeNextBlockForEpochAndSlot}
 import com.horizen.params.NetworkParams
 import scorex.core.NodeViewHolder.ReceivableMessages
 import scorex.core.NodeViewHolder.ReceivableMessages.LocallyGeneratedModifier
@@ -19,7 +19,7 @@ import scorex.util.ScorexLogging
 import scala.concurrent.ExecutionContext.Implicits.global
 import scala.concurrent.Future
 import scala.concurrent.duration.FiniteDuration
-import scala.util.{Failure, Success}
+import scala.util.{Failure, Success, Try}
 
 class Forger(settings: SidechainSettings,
              viewHolderRef: ActorRef,
@@ -62,7 +62,8 @@ class Forger(settings: SidechainSettings,
     processStartForgingMessage orElse
     processStopForgingMessage orElse
     processTryForgeNextBlockForEpochAndSlotMessage orElse
-    processGetForgeInfo orElse {
+    processGetForgeInfo orElse
+    processGetForgingSchedule orElse {
       case message: Any => log.error(s"Forger received strange message: ${message} from ${sender().path.name}")
     }
   }
@@ -92,6 +93,32 @@ class Forger(settings: SidechainSettings,
     val epochAndSlot = timestampToEpochAndSlot(currentTime)
     log.info(s"Send TryForgeNextBlockForEpochAndSlot message with epoch and slot ${epochAndSlot}")
     tryToCreateBlockForEpochAndSlot(epochAndSlot.epochNumber, epochAndSlot.slotNumber, None)
+    precalculateEligibility(epochAndSlot)
+  }
+
+  // Calculate forging eligibility for the next slots of the current epoch in advance, so the next forging attempts don't wait for VRF proving.
+  protected def precalculateEligibility(currentEpochAndSlot: ConsensusEpochAndSlot): Unit = {
+    calculateEligibility(currentEpochAndSlot.epochNumber, intToConsensusSlotNumber(currentEpochAndSlot.slotNumber + 1), Forger.eligibilityLookAheadSlots)
+      .onComplete{
+        case Success(eligibleSlots) => log.debug(s"Forging eligibility precalculated, eligible slots: ${eligibleSlots.map(_.epochAndSlot)}")
+        case Failure(ex) => log.warn(s"Failed to precalculate forging eligibility. Reason: ${ex.getMessage}")
+      }
+  }
+
+  // Only the forging data is taken from the view holder: VRF proving is done outside of it, not to block the node view processing.
+  // The block template is prepared in advance by the view holder, if any slot is eligible.
+  protected def calculateEligibility(epochNumber: ConsensusEpochNumber, fromSlotNumber: ConsensusSlotNumber, slotsNumber: Int): Future[Seq[ForgingSlotEligibility]] = {
+    val eligibilityDataMessage = forgeMessageBuilder.buildEligibilityDataMessageForSlots(epochNumber, fromSlotNumber, slotsNumber)
+    (viewHolderRef ? eligibilityDataMessage).asInstanceOf[Future[Try[forgeMessageBuilder.EligibilityData]]]
+      .map(eligibilityData => forgeMessageBuilder.calculateEligibility(eligibilityData.get))
+      .andThen{
+        case Success(eligibleSlots) if eligibleSlots.nonEmpty =>
+          (viewHolderRef ? forgeMessageBuilder.buildBlockTemplateMessage()).asInstanceOf[Future[Try[Unit]]].onComplete{
+            case Success(Failure(ex)) => log.debug(s"Failed to prepare block template in advance. Reason: ${ex.getMessage}")
+            case Failure(ex) => log.debug(s"Failed to prepare block template in advance. Reason: ${ex.getMessage}")
+            case _ =>
+          }
+      }
   }
 
   protected def tryToCreateBlockForEpochAndSlot(epochNumber: ConsensusEpochNumber, slot: ConsensusSlotNumber, respondsToOpt: Option[ActorRef]): Unit = {
@@ -139,6 +166,21 @@ class Forger(settings: SidechainSettings,
     }
   }
 
+  protected def processGetForgingSchedule: Receive = {
+    case GetForgingSchedule(slotsNumber) => {
+      val forgingScheduleRequester = sender()
+
+      // Schedule starts from the next slot and is limited by the current consensus epoch, which nonce is known.
+      val currentEpochAndSlot = timestampToEpochAndSlot(Instant.now.getEpochSecond)
+      val eligibleSlotsFut = calculateEligibility(currentEpochAndSlot.epochNumber,
+        intToConsensusSlotNumber(currentEpochAndSlot.slotNumber + 1), Math.min(slotsNumber, Forger.maxForgingScheduleSlots))
+      eligibleSlotsFut.onComplete{
+        case success @ Success(_) => forgingScheduleRequester ! success
+        case failure @ Failure(_) => forgingScheduleRequester ! failure
+      }
+    }
+  }
+
   def getEpochAndSlotForBestBlock(view: View): ConsensusEpochAndSlot = {
     val history = view.history
     history.timestampToEpochAndSlot(history.bestBlockInfo.timestamp)
@@ -151,7 +193,13 @@ object Forger extends ScorexLogging {
     case object StopForging
     case class  TryForgeNextBlockForEpochAndSlot(consensusEpochNumber: ConsensusEpochNumber, consensusSlotNumber: ConsensusSlotNumber)
     case object GetForgingInfo
+    case class  GetForgingSchedule(slotsNumber: Int)
   }
+
+  // Number of the next slots which forging eligibility is calculated in advance.
+  val eligibilityLookAheadSlots: Int = 10
+  // Max number of the slots in the forging schedule request: every slot may require VRF proving for all owned forger boxes.
+  val maxForgingScheduleSlots: Int = 100
 }
 
 
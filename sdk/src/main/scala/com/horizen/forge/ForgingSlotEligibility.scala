@@ -0,0 +1,5 @@
+package com.horizen.forge
+
+import com.horizen.consensus.ConsensusEpochAndSlot
+
+case class ForgingSlotEligibility(epochAndSlot: ConsensusEpochAndSlot, forgerBoxId: Array[Byte], forgerBoxValue: Long)
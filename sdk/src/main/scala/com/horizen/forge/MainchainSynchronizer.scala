@@ -1,16 +1,28 @@
 package com.horizen.forge
 
+import com.google.common.cache.{Cache, CacheBuilder}
 import com.horizen.SidechainHistory
 import com.horizen.block.MainchainBlockReference
 import com.horizen.chain.{MainchainHeaderHash, byteArrayToMainchainHeaderHash}
 import com.horizen.utils.BytesUtils
+import com.horizen.storage.MainchainBlockReferencesStorage
 import com.horizen.websocket.MainchainNodeChannel
 import com.horizen.utils._
 
-import scala.collection.mutable.ListBuffer
+import scorex.util.ScorexLogging
+
 import scala.util.{Failure, Success, Try}
 
-class MainchainSynchronizer(mainchainNodeChannel: MainchainNodeChannel) {
+class MainchainSynchronizer(mainchainNodeChannel: MainchainNodeChannel,
+                            mainchainBlockReferencesStorage: MainchainBlockReferencesStorage,
+                            maxBlockRequestsInFlight: Int = MainchainSynchronizer.DEFAULT_BLOCK_REQUESTS_IN_FLIGHT) extends ScorexLogging {
+
+  // Already retrieved and parsed MainchainBlockReferences shared between the forging attempts.
+  // Backed by the persistent storage, which survives the node restart.
+  private val mainchainBlockReferencesCache: Cache[MainchainHeaderHash, MainchainBlockReference] = CacheBuilder.newBuilder()
+    .maximumSize(MainchainSynchronizer.REFERENCES_CACHE_SIZE)
+    .build[MainchainHeaderHash, MainchainBlockReference]()
+
   // Get divergent mainchain suffix between SC Node and MC Node
   // Return last common header with height + divergent suffix
   def getMainchainDivergentSuffix(history: SidechainHistory, limit: Int): Try[(Int, Seq[MainchainHeaderHash])] = Try {
@@ -47,20 +59,37 @@ class MainchainSynchronizer(mainchainNodeChannel: MainchainNodeChannel) {
     }
   }
 
+  // Get MainchainBlockReferences for given hashes in the same order.
+  // Only references not present in the cache nor in the storage are retrieved from MC node.
   def getMainchainBlockReferences(history: SidechainHistory, hashes: Seq[MainchainHeaderHash]): Try[Seq[MainchainBlockReference]] = Try {
-    val references = ListBuffer[MainchainBlockReference]()
-    for(hash <- hashes) {
-      mainchainNodeChannel.getBlockByHash(BytesUtils.toHexString(hash.data)) match {
-        case Success(ref) =>
-          references.append(ref)
+    val cachedReferences: Map[MainchainHeaderHash, MainchainBlockReference] = hashes.flatMap(hash =>
+      Option(mainchainBlockReferencesCache.getIfPresent(hash)).orElse(mainchainBlockReferencesStorage.get(hash)).map(reference => hash -> reference)
+    ).toMap
+    val hashesToRetrieve: Seq[MainchainHeaderHash] = hashes.filterNot(cachedReferences.contains)
+
+    val retrievedHeightsAndReferences: Seq[(Int, MainchainBlockReference)] =
+      mainchainNodeChannel.getBlocksByHashes(hashesToRetrieve.map(hash => BytesUtils.toHexString(hash.data)), maxBlockRequestsInFlight) match {
+        case Success(heightsAndReferences) => heightsAndReferences
         case Failure(ex) =>
-          throw new IllegalStateException(s"Can't retrieve MainchainBlockReference for hash $hash. Connection error.", ex)
+          throw new IllegalStateException(s"Can't retrieve MainchainBlockReferences for hashes $hashesToRetrieve. Connection error.", ex)
+      }
+    val retrievedReferences: Map[MainchainHeaderHash, MainchainBlockReference] = hashesToRetrieve.zip(retrievedHeightsAndReferences.map(_._2)).toMap
+
+    cachedReferences.foreach{case (hash, reference) => mainchainBlockReferencesCache.put(hash, reference)}
+    retrievedReferences.foreach{case (hash, reference) => mainchainBlockReferencesCache.put(hash, reference)}
+    if (retrievedHeightsAndReferences.nonEmpty) {
+      mainchainBlockReferencesStorage.add(retrievedHeightsAndReferences) match {
+        case Success(_) =>
+        case Failure(ex) => log.warn(s"Failed to store retrieved MainchainBlockReferences. Reason: ${ex.getMessage}")
       }
     }
-    references
+
+    hashes.map(hash => cachedReferences.getOrElse(hash, retrievedReferences(hash)))
   }
 }
 
 object MainchainSynchronizer {
   val MAX_BLOCKS_REQUEST: Int = 50
+  val DEFAULT_BLOCK_REQUESTS_IN_FLIGHT: Int = 8
+  val REFERENCES_CACHE_SIZE: Int = 2 * MAX_BLOCKS_REQUEST
 }
\ No newline at end of file
@@ -7,10 +7,13 @@ import scorex.util.ScorexLogging
 import scorex.crypto.hash.Blake2b256
 
 import scala.collection.JavaConverters._
+import scala.collection.mutable
+import scala.collection.concurrent.TrieMap
 import scala.compat.java8.OptionConverters._
 import scala.util.{Failure, Random, Success, Try}
 import java.util.{ArrayList => JArrayList}
 
+import com.google.common.primitives.{Bytes, Ints}
 import com.horizen.box.{ForgerBox, ForgerBoxSerializer}
 
 
@@ -19,19 +22,41 @@ class ForgingBoxesInfoStorage(storage: Storage) extends SidechainTypes with Scor
   require(storage != null, "Storage must be NOT NULL.")
 
   private[horizen] def epochKey(epoch: ConsensusEpochNumber): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"epoch$epoch"))
-  private[horizen] val forgerBoxesKey: ByteArrayWrapper = new ByteArrayWrapper(Blake2b256.hash("forgerBoxesKey".getBytes()))
+  private[horizen] def forgerBoxKey(boxId: Array[Byte]): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256.hash(boxId))
+  // Forger box ids index: ids are stored at the positions from 0 to forgerBoxesCount - 1, each box keeps its position,
+  // so the index is updated only for the changed boxes. The position of a removed box is taken by the last box.
+  private[horizen] def forgerBoxIndexKey(position: Int): ByteArrayWrapper =
+    new ByteArrayWrapper(Blake2b256.hash(Bytes.concat("forgerBoxIndex".getBytes(), Ints.toByteArray(position))))
+  private[horizen] def forgerBoxPositionKey(boxId: Array[Byte]): ByteArrayWrapper =
+    new ByteArrayWrapper(Blake2b256.hash(Bytes.concat("forgerBoxPosition".getBytes(), boxId)))
+  private[horizen] val forgerBoxesCountKey: ByteArrayWrapper = new ByteArrayWrapper(Blake2b256.hash("forgerBoxesCountKey".getBytes()))
+  // All forger boxes in a single list record, as they were stored before.
+  private[horizen] val legacyForgerBoxesKey: ByteArrayWrapper = new ByteArrayWrapper(Blake2b256.hash("forgerBoxesKey".getBytes()))
   private[horizen] val maxNumberOfStoredEpochs: Int = 3
 
   private[horizen] val forgerBoxMerklePathInfoListSerializer = new ListSerializer[ForgerBoxMerklePathInfo](ForgerBoxMerklePathInfoSerializer)
-  private[horizen] val forgerBoxListSerializer = new ListSerializer[ForgerBox](ForgerBoxSerializer.getSerializer)
+  private[horizen] val legacyForgerBoxListSerializer = new ListSerializer[ForgerBox](ForgerBoxSerializer.getSerializer)
+
+  // In-memory copy of the stored epochs merkle path info to avoid parsing of the record on every forging attempt.
+  // Contains not more than maxNumberOfStoredEpochs entries, the same as the physical storage.
+  private val forgerBoxMerklePathInfoCache = TrieMap[ConsensusEpochNumber, Seq[ForgerBoxMerklePathInfo]]()
+
+  migrateLegacyForgerBoxes()
 
   private def nextVersion: ByteArrayWrapper = {
-    val version = new Array[Byte](32)
     lastVersionId match {
-      case Some(lastVersion) => new Random(lastVersion.hashCode()).nextBytes(version)
-      case None => Random.nextBytes(version)
+      case Some(lastVersion) => nextVersionAfter(lastVersion)
+      case None =>
+        val version = new Array[Byte](32)
+        Random.nextBytes(version)
+        new ByteArrayWrapper(version)
     }
+  }
 
+  // Version of the epoch info update committed on top of the given version.
+  private[horizen] def nextVersionAfter(lastVersion: ByteArrayWrapper): ByteArrayWrapper = {
+    val version = new Array[Byte](32)
+    new Random(lastVersion.hashCode()).nextBytes(version)
     new ByteArrayWrapper(version)
   }
 
@@ -41,54 +66,147 @@ class ForgingBoxesInfoStorage(storage: Storage) extends SidechainTypes with Scor
     require(boxMerklePathInfoSeq != null, "Seq of boxMerklePathInfoSeq to append must be NOT NULL. Use empty Seq instead.")
 
     // remove data of the epoch with number (epoch - maxNumberOfStoredEpochs) if exists.
+    val epochToRemove = ConsensusEpochNumber @@ (epoch - maxNumberOfStoredEpochs)
     val removeList = new JArrayList[ByteArrayWrapper]()
-    removeList.add(epochKey(ConsensusEpochNumber @@ (epoch - maxNumberOfStoredEpochs)))
+    removeList.add(epochKey(epochToRemove))
 
     val updateList = new JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]]()
     updateList.add(new Pair(epochKey(epoch), new ByteArrayWrapper(forgerBoxMerklePathInfoListSerializer.toBytes(boxMerklePathInfoSeq.asJava))))
 
     storage.update(nextVersion, updateList, removeList)
 
+    forgerBoxMerklePathInfoCache.remove(epochToRemove)
+    forgerBoxMerklePathInfoCache.put(epoch, boxMerklePathInfoSeq)
+
     this
   }
 
+  // Split the legacy forger boxes list record into the separate box records and the ids index.
+  // Note: it's done on open and after the rollback, because the rollback may restore the legacy record.
+  private def migrateLegacyForgerBoxes(): Unit = {
+    storage.get(legacyForgerBoxesKey).asScala.foreach(baw => {
+      val forgerBoxes = legacyForgerBoxListSerializer.parseBytes(baw.data).asScala
+      val toUpdate = new JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]]()
+      forgerBoxes.zipWithIndex.foreach { case (forgerBox, position) =>
+        toUpdate.add(new Pair(forgerBoxKey(forgerBox.id()), new ByteArrayWrapper(ForgerBoxSerializer.getSerializer.toBytes(forgerBox))))
+        toUpdate.add(new Pair(forgerBoxIndexKey(position), new ByteArrayWrapper(forgerBox.id())))
+        toUpdate.add(new Pair(forgerBoxPositionKey(forgerBox.id()), new ByteArrayWrapper(Ints.toByteArray(position))))
+      }
+      if (forgerBoxes.nonEmpty)
+        toUpdate.add(new Pair(forgerBoxesCountKey, new ByteArrayWrapper(Ints.toByteArray(forgerBoxes.size))))
+
+      val toRemove = new JArrayList[ByteArrayWrapper]()
+      toRemove.add(legacyForgerBoxesKey)
+
+      storage.update(nextVersion, toUpdate, toRemove)
+      log.info(s"${forgerBoxes.size} forger boxes migrated from the legacy list record.")
+    })
+  }
+
   // When new block applied we anchor the new version to its id.
   // This version can be used as a rollback point during rollback process.
+  // Every ForgerBox is stored as a separate record, so only the records of the changed boxes and their index positions are written.
   def updateForgerBoxes(version: ByteArrayWrapper,
                         forgerBoxesToAppendSeq: Seq[ForgerBox],
                         boxIdsRemoveSeq: Seq[Array[Byte]]): Try[ForgingBoxesInfoStorage] = Try {
-    val toUpdate: JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]] = new JArrayList()
+    // Records changed by the update: Some value to update, None to remove.
+    val changes = mutable.LinkedHashMap[ByteArrayWrapper, Option[ByteArrayWrapper]]()
+    def get(key: ByteArrayWrapper): Option[ByteArrayWrapper] = changes.getOrElse(key, storage.get(key).asScala)
+
+    var count = forgerBoxesCount
+
+    boxIdsRemoveSeq.foreach(boxId => get(forgerBoxPositionKey(boxId)).foreach(positionBytes => {
+      val position = Ints.fromByteArray(positionBytes.data)
+      val lastPosition = count - 1
+      if (position != lastPosition) {
+        val lastBoxId = get(forgerBoxIndexKey(lastPosition)).getOrElse(
+          throw new IllegalStateException(s"Forger box id is missed in the index for position $lastPosition."))
+        changes.put(forgerBoxIndexKey(position), Some(lastBoxId))
+        changes.put(forgerBoxPositionKey(lastBoxId.data), Some(positionBytes))
+      }
+      changes.put(forgerBoxIndexKey(lastPosition), None)
+      changes.put(forgerBoxPositionKey(boxId), None)
+      changes.put(forgerBoxKey(boxId), None)
+      count -= 1
+    }))
+
+    // Box removed in the same update is appended back.
+    forgerBoxesToAppendSeq.foreach(forgerBox => {
+      if (get(forgerBoxPositionKey(forgerBox.id())).isEmpty) {
+        changes.put(forgerBoxKey(forgerBox.id()), Some(new ByteArrayWrapper(ForgerBoxSerializer.getSerializer.toBytes(forgerBox))))
+        changes.put(forgerBoxIndexKey(count), Some(new ByteArrayWrapper(forgerBox.id())))
+        changes.put(forgerBoxPositionKey(forgerBox.id()), Some(new ByteArrayWrapper(Ints.toByteArray(count))))
+        count += 1
+      }
+    })
+
+    // Update the count only if current ForgerBox set was changed: some boxes were removed and/or some boxes were added.
+    if (changes.nonEmpty)
+      changes.put(forgerBoxesCountKey, if (count > 0) Some(new ByteArrayWrapper(Ints.toByteArray(count))) else None)
+
+    val toUpdate = new JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]]()
+    val toRemove = new JArrayList[ByteArrayWrapper]()
+    changes.foreach {
+      case (key, Some(value)) => toUpdate.add(new Pair(key, value))
+      case (key, None) => toRemove.add(key)
+    }
 
-    val currentForgerBoxSeq: Seq[ForgerBox] = getForgerBoxes.getOrElse(Seq())
-    val existentForgerBoxSeq: Seq[ForgerBox] = currentForgerBoxSeq.filterNot(box => boxIdsRemoveSeq.exists(removedId => box.id().sameElements(removedId)))
-    val newForgerBoxSeq = existentForgerBoxSeq ++ forgerBoxesToAppendSeq
+    storage.update(version, toUpdate, toRemove)
+    this
+  }
 
-    // Update only if current ForgerBox sequence was changed: some boxes were removed and/or some boxes were added.
-    if(existentForgerBoxSeq.size != currentForgerBoxSeq.size || forgerBoxesToAppendSeq.nonEmpty)
-      toUpdate.add(new Pair(forgerBoxesKey, new ByteArrayWrapper(forgerBoxListSerializer.toBytes(newForgerBoxSeq.asJava))))
+  private def getForgerBoxIds: Seq[ByteArrayWrapper] = {
+    forgerBoxesCount match {
+      case 0 => Seq()
+      case count =>
+        val records = storage.get((0 until count).map(forgerBoxIndexKey).asJava).asScala
+        records.flatMap(record => {
+          val boxIdOpt = record.getValue.asScala
+          if (boxIdOpt.isEmpty)
+            log.error(s"Forger box id is missed in the index for key ${record.getKey}.")
+          boxIdOpt
+        })
+    }
+  }
 
-    storage.update(version, toUpdate, new JArrayList())
-    this
+  def forgerBoxesCount: Int = {
+    storage.get(forgerBoxesCountKey).asScala match {
+      case Some(baw) => Ints.fromByteArray(baw.data)
+      case _ => 0
+    }
   }
 
   def getForgerBoxes: Option[Seq[ForgerBox]] = {
-    storage.get(forgerBoxesKey).asScala match {
-      case Some(baw) =>
-        forgerBoxListSerializer.parseBytesTry(baw.data) match {
-          case Success(forgerBoxes) => Some(forgerBoxes.asScala)
-          case Failure(exception) =>
-            log.error("Error while forger boxes list parsing.", exception)
+    getForgerBoxIds match {
+      case Seq() => None
+      case forgerBoxIds =>
+        val records = storage.get(forgerBoxIds.map(boxId => forgerBoxKey(boxId.data)).asJava).asScala
+        Some(records.flatMap(record => record.getValue.asScala match {
+          case Some(baw) => ForgerBoxSerializer.getSerializer.parseBytesTry(baw.data) match {
+            case Success(forgerBox) => Some(forgerBox)
+            case Failure(exception) =>
+              log.error("Error while forger box parsing.", exception)
+              None
+          }
+          case None =>
+            log.error(s"Forger box record is missed for key ${record.getKey}.")
             None
-        }
-      case _ => None
+        }))
     }
   }
 
   def getForgerBoxMerklePathInfoForEpoch(epoch: ConsensusEpochNumber): Option[Seq[ForgerBoxMerklePathInfo]] = {
+    forgerBoxMerklePathInfoCache.get(epoch).orElse(loadForgerBoxMerklePathInfoForEpoch(epoch))
+  }
+
+  private def loadForgerBoxMerklePathInfoForEpoch(epoch: ConsensusEpochNumber): Option[Seq[ForgerBoxMerklePathInfo]] = {
     storage.get(epochKey(epoch)).asScala match {
       case Some(baw) =>
         forgerBoxMerklePathInfoListSerializer.parseBytesTry(baw.data) match {
-          case Success(boxMerklePathsInfo) => Some(boxMerklePathsInfo.asScala)
+          case Success(boxMerklePathsInfo) =>
+            val boxMerklePathInfoSeq = boxMerklePathsInfo.asScala
+            forgerBoxMerklePathInfoCache.put(epoch, boxMerklePathInfoSeq)
+            Some(boxMerklePathInfoSeq)
           case Failure(exception) =>
             log.error("Error while box merkle paths info parsing.", exception)
             None
@@ -108,6 +226,9 @@ class ForgingBoxesInfoStorage(storage: Storage) extends SidechainTypes with Scor
   def rollback(version: ByteArrayWrapper): Try[ForgingBoxesInfoStorage] = Try {
     require(version != null, "Version to rollback to must be NOT NULL.")
     storage.rollback(version)
+    // Stored epochs info may be reverted as well, so it will be reloaded from the storage on demand.
+    forgerBoxMerklePathInfoCache.clear()
+    migrateLegacyForgerBoxes()
     this
   }
 
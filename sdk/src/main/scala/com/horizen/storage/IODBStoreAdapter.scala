@@ -1,6 +1,6 @@
 package com.horizen.storage
 
-import java.util.{ArrayList => JArrayList, List => JList}
+import java.util.{ArrayList => JArrayList, Iterator => JIterator, List => JList}
 import java.util.Optional
 import com.horizen.utils.Pair
 
@@ -56,6 +56,12 @@ class IODBStoreAdapter (store : Store)
     values
   }
 
+  override def getAllIterator: JIterator[Pair[ByteArrayWrapper, ByteArrayWrapper]] = {
+    store.getAll()
+      .map(i => new Pair[ByteArrayWrapper,ByteArrayWrapper](new ByteArrayWrapper(i._1), new ByteArrayWrapper(i._2)))
+      .asJava
+  }
+
   override def lastVersionID(): Optional[ByteArrayWrapper] = {
     val value = store.lastVersionID
     if (value.isEmpty)
@@ -0,0 +1,112 @@
+package com.horizen.storage
+
+import java.util.{ArrayList => JArrayList}
+
+import com.google.common.primitives.{Bytes, Ints}
+import com.horizen.block.{MainchainBlockReference, MainchainBlockReferenceSerializer}
+import com.horizen.chain.{MainchainHeaderHash, byteArrayToMainchainHeaderHash}
+import com.horizen.utils.{ByteArrayWrapper, Pair}
+import scorex.crypto.hash.Blake2b256
+import scorex.util.ScorexLogging
+
+import scala.collection.mutable
+import scala.compat.java8.OptionConverters._
+import scala.util.{Failure, Random, Success, Try}
+
+// Storage of already retrieved and parsed MainchainBlockReferences, so they are not retrieved from MC node and parsed again.
+// Contains references of the last `maxStoredHeights` MC heights only: older references are removed on every update.
+// References don't depend on the SC chain, so the storage is not rolled back together with the node view:
+// its versions are random and must never be used as rollback points.
+class MainchainBlockReferencesStorage(storage: Storage, val maxStoredHeights: Int = MainchainBlockReferencesStorage.DEFAULT_MAX_STORED_HEIGHTS)
+  extends ScorexLogging
+{
+  require(storage != null, "Storage must be NOT NULL.")
+  require(maxStoredHeights > 0, "Max stored heights number must be positive.")
+
+  private[horizen] def referenceKey(hash: MainchainHeaderHash): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256.hash(hash.data))
+  private[horizen] def heightKey(height: Int): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"height$height"))
+  private[horizen] val minHeightKey: ByteArrayWrapper = new ByteArrayWrapper(Blake2b256.hash("minHeightKey".getBytes()))
+  private[horizen] val maxHeightKey: ByteArrayWrapper = new ByteArrayWrapper(Blake2b256.hash("maxHeightKey".getBytes()))
+
+  private val hashLength: Int = 32
+
+  def get(hash: MainchainHeaderHash): Option[MainchainBlockReference] = {
+    storage.get(referenceKey(hash)).asScala.flatMap(value => {
+      MainchainBlockReferenceSerializer.parseBytesTry(value.data.drop(Ints.BYTES)) match {
+        case Success(reference) => Some(reference)
+        case Failure(ex) =>
+          log.error(s"Failed to parse stored MainchainBlockReference $hash", ex)
+          None
+      }
+    })
+  }
+
+  def contains(hash: MainchainHeaderHash): Boolean = storage.get(referenceKey(hash)).isPresent
+
+  def minHeight: Option[Int] = storage.get(minHeightKey).asScala.map(value => Ints.fromByteArray(value.data))
+
+  def maxHeight: Option[Int] = storage.get(maxHeightKey).asScala.map(value => Ints.fromByteArray(value.data))
+
+  // Add references with their MC heights and remove the ones which are out of the `maxStoredHeights` window.
+  // The storage is a cache, so the random version here is not used as a point to rollback.
+  def add(heightsAndReferences: Seq[(Int, MainchainBlockReference)]): Try[MainchainBlockReferencesStorage] = Try {
+    val currentMinHeightOpt = minHeight
+    val currentMaxHeightOpt = maxHeight
+
+    val newMaxHeight: Int = (currentMaxHeightOpt.toSeq ++ heightsAndReferences.map(_._1)).foldLeft(Int.MinValue)(Math.max)
+    val lowestHeightToKeep: Int = newMaxHeight - maxStoredHeights + 1
+
+    // Hashes stored for the heights, including the not persisted yet ones.
+    val heightsToUpdate = mutable.TreeMap[Int, Seq[ByteArrayWrapper]]()
+    def hashesForHeight(height: Int): Seq[ByteArrayWrapper] = heightsToUpdate.getOrElse(height,
+      storage.get(heightKey(height)).asScala.map(value => value.data.grouped(hashLength).map(new ByteArrayWrapper(_)).toSeq).getOrElse(Seq()))
+
+    val toUpdate = new mutable.LinkedHashMap[ByteArrayWrapper, ByteArrayWrapper]()
+    for ((height, reference) <- heightsAndReferences if height >= lowestHeightToKeep) {
+      val hash = byteArrayToMainchainHeaderHash(reference.header.hash)
+      val key = referenceKey(hash)
+      if (!toUpdate.contains(key) && !storage.get(key).isPresent) {
+        toUpdate.put(key, new ByteArrayWrapper(Bytes.concat(Ints.toByteArray(height), reference.bytes)))
+        heightsToUpdate.put(height, hashesForHeight(height) :+ hash)
+      }
+    }
+
+    if (toUpdate.nonEmpty) {
+      // Remove the references of the heights out of the window.
+      val toRemove = new mutable.LinkedHashSet[ByteArrayWrapper]()
+      val newMinHeight: Int = (currentMinHeightOpt.toSeq ++ heightsToUpdate.keys).min
+      val pruneUntilHeight: Int = Math.min(lowestHeightToKeep, currentMaxHeightOpt.map(_ + 1).getOrElse(lowestHeightToKeep))
+      for (height <- newMinHeight until pruneUntilHeight) {
+        hashesForHeight(height).foreach(hash => toRemove.add(referenceKey(byteArrayToMainchainHeaderHash(hash.data))))
+        toRemove.add(heightKey(height))
+      }
+
+      heightsToUpdate.foreach{case (height, hashes) =>
+        toUpdate.put(heightKey(height), new ByteArrayWrapper(Bytes.concat(hashes.map(_.data): _*)))}
+      toUpdate.put(minHeightKey, new ByteArrayWrapper(Ints.toByteArray(Math.max(newMinHeight, lowestHeightToKeep))))
+      toUpdate.put(maxHeightKey, new ByteArrayWrapper(Ints.toByteArray(newMaxHeight)))
+
+      val updateList = new JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]]()
+      toUpdate.foreach{case (key, value) => updateList.add(new Pair(key, value))}
+      val removeList = new JArrayList[ByteArrayWrapper]()
+      toRemove.foreach(removeList.add)
+
+      storage.update(nextVersion, updateList, removeList)
+    }
+
+    this
+  }
+
+  private def nextVersion: ByteArrayWrapper = {
+    val version = new Array[Byte](32)
+    Random.nextBytes(version)
+    new ByteArrayWrapper(version)
+  }
+
+  def isEmpty: Boolean = storage.isEmpty
+}
+
+object MainchainBlockReferencesStorage {
+  // About 2 days of MC blocks.
+  val DEFAULT_MAX_STORED_HEIGHTS: Int = 576
+}
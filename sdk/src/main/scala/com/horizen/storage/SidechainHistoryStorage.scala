@@ -1,18 +1,32 @@
 package com.horizen.storage
 
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.util.zip.{Deflater, Inflater}
 import java.util.{ArrayList => JArrayList, List => JList}
 
+import com.google.common.cache.{Cache, CacheBuilder}
+import com.google.common.primitives.{Bytes, Ints}
+import com.horizen.SidechainTypes
 import com.horizen.block._
+import com.horizen.box.NoncedBox
 import com.horizen.chain.{MainchainBlockReferenceDataInfo, _}
 import com.horizen.companion.SidechainTransactionsCompanion
 import com.horizen.node.util.MainchainBlockReferenceInfo
 import com.horizen.params.NetworkParams
+import com.horizen.proposition.Proposition
+import com.horizen.transaction.SidechainTransaction
 import com.horizen.utils._
 import com.horizen.utils.{Pair => JPair}
+import com.horizen.storage.SidechainHistoryStorage.{activeChainCheckpointChunkKey, activeChainCheckpointHeightKey, bodiesPrunedHeightKey, forksPrunedHeightKey}
+import scorex.core.NodeViewModifier
 import scorex.core.consensus.ModifierSemanticValidity
+import scorex.core.serialization.ScorexSerializer
 import scorex.crypto.hash.Blake2b256
+import scorex.util.serialization.{Reader, VLQByteBufferReader, Writer}
 import scorex.util.{ModifierId, ScorexLogging, bytesToId, idToBytes}
 
+import scala.collection.JavaConverters._
 import scala.collection.mutable.ArrayBuffer
 import scala.compat.java8.OptionConverters._
 import scala.util.{Failure, Random, Success, Try}
@@ -22,7 +36,11 @@ trait SidechainBlockInfoProvider {
   def blockInfoById(blockId: ModifierId): SidechainBlockInfo
 }
 
-class SidechainHistoryStorage(storage: Storage, sidechainTransactionsCompanion: SidechainTransactionsCompanion, params: NetworkParams)
+class SidechainHistoryStorage(storage: Storage,
+                              sidechainTransactionsCompanion: SidechainTransactionsCompanion,
+                              params: NetworkParams,
+                              activeChainCheckpointChunkSize: Int = SidechainHistoryStorage.DefaultActiveChainCheckpointChunkSize,
+                              compressBlockBodies: Boolean = false)
   extends SidechainBlockInfoProvider
   with ScorexLogging {
   // Version - RandomBytes(32)
@@ -30,39 +48,192 @@ class SidechainHistoryStorage(storage: Storage, sidechainTransactionsCompanion:
   require(storage != null, "Storage must be NOT NULL.")
   require(sidechainTransactionsCompanion != null, "SidechainTransactionsCompanion must be NOT NULL.")
   require(params != null, "params must be NOT NULL.")
+  require(activeChainCheckpointChunkSize > 0, "Active chain checkpoint chunk size must be positive.")
 
   private val bestBlockIdKey: ByteArrayWrapper = new ByteArrayWrapper(Array.fill(32)(-1: Byte))
 
+  private val bodySerializer: SidechainBlockBodySerializer = new SidechainBlockBodySerializer(sidechainTransactionsCompanion)
+
+  private val legacyBlockSerializer: SidechainBlockSerializer = new SidechainBlockSerializer(sidechainTransactionsCompanion)
+
   private val activeChain: ActiveChain = loadActiveChain()
 
+  private val blockTree: BlockTreeIndex = loadBlockTree()
+
+  // Recently requested mainchain headers and references data, e.g. by the API and the certificate submitter.
+  private val mainchainHeadersCache: Cache[MainchainHeaderHash, MainchainHeader] = CacheBuilder.newBuilder()
+    .maximumSize(SidechainHistoryStorage.MainchainDataCacheSize)
+    .build[MainchainHeaderHash, MainchainHeader]()
+  private val mainchainReferencesDataCache: Cache[MainchainHeaderHash, MainchainBlockReferenceData] = CacheBuilder.newBuilder()
+    .maximumSize(SidechainHistoryStorage.MainchainDataCacheSize)
+    .build[MainchainHeaderHash, MainchainBlockReferenceData]()
+
+  // Block locator of the active chain with the best block id it was built for: sync info is requested for each peer,
+  // while the locator changes only with the best block.
+  @volatile private var activeChainLocatorCache: Option[(ModifierId, Seq[ModifierId])] = None
+
+  // Active chain is restored from the persisted checkpoint of sequential chunks of (id, block info) records,
+  // the blocks after the checkpoint are read by the persisted height -> id index in batches.
+  // If the index is not consistent (e.g. missed for the blocks applied by the previous versions),
+  // the blocks are read one by one from the best block till the checkpoint (or till the fork point below it).
   private def loadActiveChain(): ActiveChain = {
     if (height == 0) {
       return ActiveChain(params.mainchainCreationBlockHeight)
     }
 
-    val activeChainBlocksInfo: ArrayBuffer[(ModifierId, SidechainBlockInfo)] = new ArrayBuffer(height)
+    val checkpointBlocksInfo: ArrayBuffer[(ModifierId, SidechainBlockInfo)] = loadActiveChainCheckpoint()
+    val bestId: ModifierId = bestBlockId
+    val bestInfo: SidechainBlockInfo = blockInfoById(bestId)
 
-    activeChainBlocksInfo.append((bestBlockId, blockInfoById(bestBlockId)))
-    while (activeChainBlocksInfo.last._2.height > 1) {
-      val id = activeChainBlocksInfo.last._2.parentId
-      activeChainBlocksInfo.append((id, blockInfoById(id)))
-    }
+    val orderedChainBlocks = loadActiveChainSuffixByHeights(checkpointBlocksInfo.lastOption.map(_._1), checkpointBlocksInfo.size + 1, bestId, bestInfo.height) match {
+      case Some(suffixBlocksInfo) => checkpointBlocksInfo ++= suffixBlocksInfo
+      case None =>
+        def isInCheckpoint(id: ModifierId, blockHeight: Int): Boolean =
+          blockHeight > 0 && blockHeight <= checkpointBlocksInfo.size && checkpointBlocksInfo(blockHeight - 1)._1 == id
+
+        val activeChainBlocksInfo: ArrayBuffer[(ModifierId, SidechainBlockInfo)] = new ArrayBuffer()
+
+        activeChainBlocksInfo.append((bestId, bestInfo))
+        while (activeChainBlocksInfo.last._2.height > 1 && !isInCheckpoint(activeChainBlocksInfo.last._2.parentId, activeChainBlocksInfo.last._2.height - 1)) {
+          val id = activeChainBlocksInfo.last._2.parentId
+          activeChainBlocksInfo.append((id, blockInfoById(id)))
+        }
 
-    val orderedChainBlocks = activeChainBlocksInfo.reverse
+        checkpointBlocksInfo.reduceToSize(activeChainBlocksInfo.last._2.height - 1)
+        checkpointBlocksInfo ++= activeChainBlocksInfo.reverseIterator
+    }
 
     val mainchainBlockParent = for {
       firstSidechainBlockInfo <- orderedChainBlocks.headOption
-      firstSidechainBlock <- blockById(firstSidechainBlockInfo._1)
-      firstMainchainHeader <- firstSidechainBlock.mainchainHeaders.headOption
+      firstSidechainBlockOmmer <- ommerById(firstSidechainBlockInfo._1)
+      firstMainchainHeader <- firstSidechainBlockOmmer.mainchainHeaders.headOption
     } yield byteArrayToMainchainHeaderHash(firstMainchainHeader.hashPrevBlock)
 
     ActiveChain(orderedChainBlocks, mainchainBlockParent.getOrElse(throw new IllegalStateException("Loaded active chain miss mainchain parent")), params.mainchainCreationBlockHeight)
   }
 
+  // Blocks tree index is restored from the ids of the blocks of each height starting from the rewriting horizon.
+  // Every stored block has its parent stored at the previous height, so the heights are read till the first one without blocks.
+  private def loadBlockTree(): BlockTreeIndex = {
+    val blockTree = new BlockTreeIndex()
+    var fromHeight: Int = Math.max(1, activeChain.height - params.maxHistoryRewritingLength)
+    var finished: Boolean = false
+    while (!finished) {
+      val idsAtHeights: Seq[Option[ByteArrayWrapper]] = getValues((fromHeight until fromHeight + SidechainHistoryStorage.HeightIndexReadBatchSize).map(blocksAtHeightKey))
+      val ids: Seq[ModifierId] = idsAtHeights.flatten.flatMap(_.data.grouped(NodeViewModifier.ModifierIdSize).map(bytesToId)).distinct
+      val forkIds: Seq[ModifierId] = ids.filterNot(activeChain.contains)
+      val forkInfos: Map[ModifierId, SidechainBlockInfo] = forkIds.zip(getValues(forkIds.map(blockInfoKey))).collect {
+        case (id, Some(baw)) => id -> SidechainBlockInfoSerializer.parseBytes(baw.data)
+      }.toMap
+
+      ids.foreach(id => activeChain.blockInfoById(id).orElse(forkInfos.get(id)).foreach(info => blockTree.add(id, BlockTreeNode(info.parentId, info.height, info.score))))
+      finished = idsAtHeights.exists(_.isEmpty)
+      fromHeight += SidechainHistoryStorage.HeightIndexReadBatchSize
+    }
+    blockTree
+  }
+
+  // Blocks of the persisted checkpoint ordered by height. Checkpoint may contain the blocks, which are not in the active chain anymore.
+  private def loadActiveChainCheckpoint(): ArrayBuffer[(ModifierId, SidechainBlockInfo)] = {
+    val checkpointBlocksInfo: ArrayBuffer[(ModifierId, SidechainBlockInfo)] = new ArrayBuffer()
+    val checkpointHeight: Int = storage.get(activeChainCheckpointHeightKey).asScala.map(baw => Ints.fromByteArray(baw.data)).getOrElse(0)
+
+    for (chunkIndex <- 0 until checkpointHeight / activeChainCheckpointChunkSize) {
+      val chunkOpt = storage.get(activeChainCheckpointChunkKey(chunkIndex)).asScala
+        .flatMap(baw => ActiveChainCheckpointChunkSerializer.parseBytesTry(baw.data) match {
+          case Failure(e) =>
+            log.warn("SidechainHistoryStorage: Failed to parse active chain checkpoint chunk bytes from storage.", e)
+            None
+          case Success(chunk) => Some(chunk)
+        })
+
+      chunkOpt match {
+        case Some(chunk) if chunk.size == activeChainCheckpointChunkSize && chunk.head._2.height == checkpointBlocksInfo.size + 1 =>
+          checkpointBlocksInfo ++= chunk
+        // Use the consistent part of the checkpoint only
+        case _ => return checkpointBlocksInfo
+      }
+    }
+    checkpointBlocksInfo
+  }
+
+  // Blocks of the active chain from the given height till the best one read by the height -> id index,
+  // None if the index entries are missed or are not linked with the parent or with the best block.
+  private def loadActiveChainSuffixByHeights(parentIdOpt: Option[ModifierId],
+                                             fromHeight: Int,
+                                             bestId: ModifierId,
+                                             bestHeight: Int): Option[Seq[(ModifierId, SidechainBlockInfo)]] = {
+    if (fromHeight > bestHeight)
+      return None
+
+    val suffixBlocksInfo: ArrayBuffer[(ModifierId, SidechainBlockInfo)] = new ArrayBuffer(bestHeight - fromHeight + 1)
+    var expectedParentIdOpt: Option[ModifierId] = parentIdOpt
+    var batchStart: Int = fromHeight
+    while (batchStart <= bestHeight) {
+      val batchEnd: Int = Math.min(bestHeight, batchStart + SidechainHistoryStorage.HeightIndexReadBatchSize - 1)
+      val idsOpt: Seq[Option[ModifierId]] = getValues((batchStart to batchEnd).map(activeChainHeightKey)).map(_.map(baw => bytesToId(baw.data)))
+      if (idsOpt.exists(_.isEmpty))
+        return None
+
+      val ids: Seq[ModifierId] = idsOpt.flatten
+      val infosOpt: Seq[Option[SidechainBlockInfo]] = getValues(ids.map(blockInfoKey))
+        .map(_.flatMap(baw => SidechainBlockInfoSerializer.parseBytesTry(baw.data).toOption))
+
+      for ((id, infoOpt) <- ids.zip(infosOpt)) {
+        infoOpt match {
+          case Some(info) if expectedParentIdOpt.forall(_ == info.parentId) =>
+            suffixBlocksInfo.append((id, info))
+            expectedParentIdOpt = Some(id)
+          case _ => return None
+        }
+      }
+      batchStart = batchEnd + 1
+    }
+
+    if (suffixBlocksInfo.last._1 != bestId)
+      return None
+    Some(suffixBlocksInfo)
+  }
+
+  // Values of the given keys read at once, None for the missed ones.
+  private def getValues(keys: Seq[ByteArrayWrapper]): Seq[Option[ByteArrayWrapper]] = {
+    val values: Map[ByteArrayWrapper, ByteArrayWrapper] = storage.get(keys.asJava).asScala
+      .flatMap(pair => pair.getValue.asScala.map(value => pair.getKey -> value)).toMap
+    keys.map(values.get)
+  }
+
+  // Persist the chunk of the active chain blocks, when the active chain height reaches the chunk end.
+  private def updateActiveChainCheckpoint(): Unit = {
+    val chainHeight = activeChain.height
+    if (chainHeight == 0 || chainHeight % activeChainCheckpointChunkSize != 0)
+      return
+
+    val chunk: Seq[(ModifierId, SidechainBlockInfo)] = (chainHeight - activeChainCheckpointChunkSize + 1 to chainHeight).map(blockHeight => {
+      val id = activeChain.idByHeight(blockHeight).get
+      (id, activeChain.blockInfoByHeight(blockHeight).get)
+    })
+
+    storage.update(
+      new ByteArrayWrapper(nextVersion),
+      java.util.Arrays.asList(
+        new JPair(activeChainCheckpointChunkKey(chainHeight / activeChainCheckpointChunkSize - 1), new ByteArrayWrapper(ActiveChainCheckpointChunkSerializer.toBytes(chunk))),
+        new JPair(activeChainCheckpointHeightKey, new ByteArrayWrapper(Ints.toByteArray(chainHeight)))),
+      new JArrayList()
+    )
+  }
+
   private def validityKey(blockId: ModifierId): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"validity$blockId"))
 
   private def blockInfoKey(blockId: ModifierId): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"blockInfo$blockId"))
 
+  private def blockHeaderKey(blockId: ModifierId): ByteArrayWrapper = new ByteArrayWrapper(idToBytes(blockId))
+
+  private def blockBodyKey(blockId: ModifierId): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"blockBody$blockId"))
+
+  private def blocksAtHeightKey(blockHeight: Int): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"blocksAtHeight$blockHeight"))
+
+  private def activeChainHeightKey(blockHeight: Int): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"activeChainHeight$blockHeight"))
+
   private def nextVersion: Array[Byte] = {
     val version = new Array[Byte](32)
     Random.nextBytes(version)
@@ -71,8 +242,13 @@ class SidechainHistoryStorage(storage: Storage, sidechainTransactionsCompanion:
 
   def height: Int = heightOf(bestBlockId).getOrElse(0)
 
+  // Block tree is still null while the active chain is loaded in the constructor, so block infos are read from the storage then.
+  private def blockTreeNode(blockId: ModifierId): Option[BlockTreeNode] = {
+    if (blockTree != null) blockTree.get(blockId) else None
+  }
+
   def heightOf(blockId: ModifierId): Option[Int] = {
-    blockInfoOptionById(blockId).map(_.height)
+    blockTreeNode(blockId).map(_.height).orElse(blockInfoOptionById(blockId).map(_.height))
   }
 
   def bestBlockId: ModifierId = storage.get(bestBlockIdKey).asScala.map(d => bytesToId(d.data)).getOrElse(params.sidechainGenesisBlockId)
@@ -88,13 +264,61 @@ class SidechainHistoryStorage(storage: Storage, sidechainTransactionsCompanion:
   }
 
   def blockById(blockId: ModifierId): Option[SidechainBlock] = {
-    storage.get(new ByteArrayWrapper(idToBytes(blockId))).asScala.flatMap { baw =>
-      val tryBlock = new SidechainBlockSerializer(sidechainTransactionsCompanion).parseBytesTry(baw.data)
-      tryBlock match {
-        case Failure(e) => log.warn("SidechainHistoryStorage: Failed to parse block bytes from storage.", e)
+    storage.get(blockHeaderKey(blockId)).asScala.flatMap(headerRecord =>
+      if (isLegacyBlockRecord(headerRecord.data))
+        parseStored(Some(headerRecord), legacyBlockSerializer.parseBytesTry, "legacy block")
+      else
+        for {
+          ommer <- parseStored(Some(headerRecord), parseOmmerRecord, "block header")
+          body <- parseStored(storage.get(blockBodyKey(blockId)).asScala, parseBody, "block body")
+        } yield toBlock(ommer, body)
+    )
+  }
+
+  // Block header only, read without the block body and without parsing the mainchain headers and ommers of the block.
+  def headerById(blockId: ModifierId): Option[SidechainBlockHeader] = {
+    parseStored(storage.get(blockHeaderKey(blockId)).asScala,
+      record => Try(SidechainBlockHeaderSerializer.parse(headerRecordReader(record))), "block header")
+  }
+
+  // Block header together with its mainchain headers and ommers, read without the block body (transactions and mainchain references data).
+  def ommerById(blockId: ModifierId): Option[Ommer] = {
+    parseStored(storage.get(blockHeaderKey(blockId)).asScala, parseOmmerRecord, "block header")
+  }
+
+  // Header records written before the header and body split contain the whole block, see SidechainHistoryStorage.BlockHeaderRecordMarker.
+  private def isLegacyBlockRecord(record: Array[Byte]): Boolean = record.nonEmpty && record(0) != SidechainHistoryStorage.BlockHeaderRecordMarker
+
+  // Reader positioned at the block header: both the current and the legacy header records continue with it.
+  private def headerRecordReader(record: Array[Byte]): Reader = {
+    val reader = new VLQByteBufferReader(ByteBuffer.wrap(record))
+    if (!isLegacyBlockRecord(record))
+      reader.getByte()
+    reader
+  }
+
+  private def parseOmmerRecord(record: Array[Byte]): Try[Ommer] = {
+    if (isLegacyBlockRecord(record))
+      legacyBlockSerializer.parseBytesTry(record).map(Ommer.toOmmer)
+    else
+      Try(OmmerSerializer.parse(headerRecordReader(record)))
+  }
+
+  private def toBlock(ommer: Ommer, body: SidechainBlockBody): SidechainBlock = {
+    new SidechainBlock(ommer.header, body.sidechainTransactions, body.mainchainBlockReferencesData, ommer.mainchainHeaders, ommer.ommers, sidechainTransactionsCompanion)
+  }
+
+  // Body record is prefixed with the codec id, so the records written with and without compression are both readable.
+  private def parseBody(record: Array[Byte]): Try[SidechainBlockBody] = BlockBodyCodec.decode(record).flatMap(bodySerializer.parseBytesTry)
+
+  private def parseStored[T](valueOpt: Option[ByteArrayWrapper], parse: Array[Byte] => Try[T], description: String): Option[T] = {
+    valueOpt.flatMap { baw =>
+      val tryValue = parse(baw.data)
+      tryValue match {
+        case Failure(e) => log.warn(s"SidechainHistoryStorage: Failed to parse $description bytes from storage.", e)
         case _ =>
       }
-      tryBlock.toOption
+      tryValue.toOption
     }
   }
 
@@ -119,15 +343,48 @@ class SidechainHistoryStorage(storage: Storage, sidechainTransactionsCompanion:
     }
   }
 
-  def parentBlockId(blockId: ModifierId): Option[ModifierId] = blockInfoOptionById(blockId).map(_.parentId)
+  // Recent blocks (both active and forks) are looked up in memory, the older ones are read from the storage.
+  def parentBlockId(blockId: ModifierId): Option[ModifierId] = blockTreeNode(blockId).map(_.parentId).orElse(blockInfoOptionById(blockId).map(_.parentId))
 
-  def chainScoreFor(blockId: ModifierId): Option[Long] = blockInfoOptionById(blockId).map(_.score)
+  def chainScoreFor(blockId: ModifierId): Option[Long] = blockTreeNode(blockId).map(_.score).orElse(blockInfoOptionById(blockId).map(_.score))
 
   def isInActiveChain(blockId: ModifierId): Boolean = activeChain.contains(blockId)
 
   def activeChainBlockId(height: Int): Option[ModifierId] = activeChain.idByHeight(height)
 
-  def activeChainAfter(blockId: ModifierId): Seq[ModifierId] = activeChain.chainAfter(blockId)
+  def activeChainAfter(blockId: ModifierId, limit: Int = Int.MaxValue): Seq[ModifierId] = activeChain.chainAfter(blockId, limit)
+
+  // Ids of the active chain blocks at the locator heights, from the best block to the genesis one.
+  def activeChainLocator: Seq[ModifierId] = {
+    activeChain.bestId match {
+      case Some(bestId) =>
+        activeChainLocatorCache match {
+          case Some((locatorBestId, locator)) if locatorBestId == bestId => locator
+          case _ =>
+            val locator: Seq[ModifierId] = SidechainHistoryStorage.locatorHeights(activeChain.height).map(h => activeChain.idByHeight(h).get)
+            activeChainLocatorCache = Some(bestId -> locator)
+            locator
+        }
+      case None => Seq()
+    }
+  }
+
+  // Ids of the active chain blocks in the given heights range (inclusive), clipped by the active chain height.
+  def activeChainBlockIds(fromHeight: Int, toHeight: Int): Seq[ModifierId] = {
+    (Math.max(fromHeight, 1) to Math.min(toHeight, activeChain.height)).flatMap(activeChain.idByHeight)
+  }
+
+  // Active chain blocks in the given heights range (inclusive) read at once, clipped by the active chain height.
+  def activeChainBlocks(fromHeight: Int, toHeight: Int): Seq[SidechainBlock] = {
+    val ids: Seq[ModifierId] = activeChainBlockIds(fromHeight, toHeight)
+    getValues(ids.flatMap(id => Seq(blockHeaderKey(id), blockBodyKey(id)))).grouped(2).map {
+      case Seq(Some(headerBaw), _) if isLegacyBlockRecord(headerBaw.data) =>
+        legacyBlockSerializer.parseBytesTry(headerBaw.data).get
+      case Seq(Some(headerBaw), Some(bodyBaw)) =>
+        toBlock(parseOmmerRecord(headerBaw.data).get, parseBody(bodyBaw.data).get)
+      case _ => throw new IllegalStateException("Active chain block is missed in the storage")
+    }.toList
+  }
 
   def getSidechainBlockContainingMainchainHeader(mainchainHeaderHash: Array[Byte]): Option[SidechainBlock] = {
     activeChain.idByMcHeader(byteArrayToMainchainHeaderHash(mainchainHeaderHash)).flatMap(blockById)
@@ -144,14 +401,46 @@ class SidechainHistoryStorage(storage: Storage, sidechainTransactionsCompanion:
     } yield MainchainBlockReference(header, data)
   }
 
+  // Active chain gives the containing sidechain block and the position of the mainchain header in it,
+  // so only this header is parsed from the stored block header record.
   def getMainchainHeaderByHash(mainchainHeaderHash: Array[Byte]): Option[MainchainHeader] = {
-    val sidechainBlock: Option[SidechainBlock] = getSidechainBlockContainingMainchainHeader(mainchainHeaderHash)
-    sidechainBlock.flatMap(_.mainchainHeaders.find(header => mainchainHeaderHash.sameElements(header.hash)))
+    val mcHash: MainchainHeaderHash = byteArrayToMainchainHeaderHash(mainchainHeaderHash)
+    activeChain.idByMcHeader(mcHash).flatMap(sidechainBlockId =>
+      cachedMainchainData(mainchainHeadersCache, mcHash) {
+        val index: Int = activeChain.blockInfoById(sidechainBlockId).get.mainchainHeaderHashes.indexOf(mcHash)
+        parseStored(storage.get(blockHeaderKey(sidechainBlockId)).asScala,
+          record =>
+            if (isLegacyBlockRecord(record)) parseOmmerRecord(record).map(_.mainchainHeaders(index))
+            else Try(OmmerSerializer.parseMainchainHeader(headerRecordReader(record), index)),
+          "mainchain header")
+      })
   }
 
+  // Active chain gives the containing sidechain block and the position of the mainchain reference data in it,
+  // so only this reference data is parsed from the stored block body record.
   def getMainchainReferenceDataByHash(mainchainHeaderHash: Array[Byte]): Option[MainchainBlockReferenceData] = {
-    val sidechainBlock: Option[SidechainBlock] = getSidechainBlockContainingMainchainReferenceData(mainchainHeaderHash)
-    sidechainBlock.flatMap(_.mainchainBlockReferencesData.find(data => mainchainHeaderHash.sameElements(data.headerHash)))
+    val mcHash: MainchainHeaderHash = byteArrayToMainchainHeaderHash(mainchainHeaderHash)
+    activeChain.idByMcReferenceData(mcHash).flatMap(sidechainBlockId =>
+      cachedMainchainData(mainchainReferencesDataCache, mcHash) {
+        val index: Int = activeChain.blockInfoById(sidechainBlockId).get.mainchainReferenceDataHeaderHashes.indexOf(mcHash)
+        storage.get(blockBodyKey(sidechainBlockId)).asScala match {
+          case Some(bodyRecord) =>
+            parseStored(Some(bodyRecord),
+              record => BlockBodyCodec.decode(record).map(bytes => bodySerializer.parseMainchainBlockReferenceData(new VLQByteBufferReader(ByteBuffer.wrap(bytes)), index)),
+              "mainchain reference data")
+          // Legacy block keeps the body in the header record, otherwise the body was pruned
+          case None => blockById(sidechainBlockId).flatMap(_.mainchainBlockReferencesData.lift(index))
+        }
+      })
+  }
+
+  // Mainchain data of the given hash never changes, so the cached value is used while the hash is in the active chain.
+  private def cachedMainchainData[T <: AnyRef](cache: Cache[MainchainHeaderHash, T], mcHash: MainchainHeaderHash)(load: => Option[T]): Option[T] = {
+    Option(cache.getIfPresent(mcHash)).orElse {
+      val loaded: Option[T] = load
+      loaded.foreach(value => cache.put(mcHash, value))
+      loaded
+    }
   }
 
   def getMainchainBlockReferenceInfoByMainchainBlockHeight(mainchainHeight: Int): Option[MainchainBlockReferenceInfo] = {
@@ -230,14 +519,25 @@ class SidechainHistoryStorage(storage: Storage, sidechainTransactionsCompanion:
     // add short block info
     toUpdate.add(new JPair(new ByteArrayWrapper(blockInfoKey(block.id)), new ByteArrayWrapper(blockInfo.bytes)))
 
-    // add block
-    toUpdate.add(new JPair(new ByteArrayWrapper(idToBytes(block.id)), new ByteArrayWrapper(block.bytes)))
+    // add block header (with mainchain headers and ommers) and block body separately
+    toUpdate.add(new JPair(blockHeaderKey(block.id), new ByteArrayWrapper(SidechainHistoryStorage.blockHeaderRecord(block))))
+    val bodyBytes: Array[Byte] = bodySerializer.toBytes(SidechainBlockBody(block.sidechainTransactions, block.mainchainBlockReferencesData))
+    toUpdate.add(new JPair(blockBodyKey(block.id), new ByteArrayWrapper(BlockBodyCodec.encode(bodyBytes, compressBlockBodies))))
+
+    // add block id to the ids of the blocks of the same height, so the fork blocks can be found by pruning
+    val idsAtHeight: Array[Byte] = storage.get(blocksAtHeightKey(blockInfo.height)).asScala.map(_.data).getOrElse(Array[Byte]())
+    toUpdate.add(new JPair(blocksAtHeightKey(blockInfo.height), new ByteArrayWrapper(Bytes.concat(idsAtHeight, idToBytes(block.id)))))
+
+    // fork block at the height already passed by pruning: move the pruning progress back, so the height is checked again
+    if (blockInfo.height <= getInt(forksPrunedHeightKey))
+      toUpdate.add(new JPair(forksPrunedHeightKey, new ByteArrayWrapper(Ints.toByteArray(blockInfo.height - 1))))
 
     storage.update(
       new ByteArrayWrapper(nextVersion),
       toUpdate,
       new JArrayList[ByteArrayWrapper]())
 
+    blockTree.add(block.id, BlockTreeNode(blockInfo.parentId, blockInfo.height, blockInfo.score))
     this
   }
 
@@ -263,16 +563,251 @@ class SidechainHistoryStorage(storage: Storage, sidechainTransactionsCompanion:
   }
 
   def setAsBestBlock(block: SidechainBlock, blockInfo: SidechainBlockInfo): Try[SidechainHistoryStorage] = Try {
+    updateBestBlock(block, blockInfo, Seq())
+    this
+  }
+
+  // Mark the block as semantically valid and set it as the best one with a single storage update,
+  // so each block applied during the chain switch costs one commit.
+  def setAsValidBestBlock(block: SidechainBlock): Try[SidechainHistoryStorage] = Try {
+    val blockInfo: SidechainBlockInfo = activeChain.blockInfoById(block.id).getOrElse(blockInfoById(block.id))
+      .copy(semanticValidity = ModifierSemanticValidity.Valid)
+    updateBestBlock(block, blockInfo, Seq(new JPair(new ByteArrayWrapper(blockInfoKey(block.id)), new ByteArrayWrapper(blockInfo.bytes))))
+    this
+  }
+
+  private def updateBestBlock(block: SidechainBlock, blockInfo: SidechainBlockInfo, additionalUpdates: Seq[JPair[ByteArrayWrapper, ByteArrayWrapper]]): Unit = {
+    // Entries of the height -> id index above the new best block height are not removed: they are never read.
     storage.update(
       new ByteArrayWrapper(nextVersion),
-      java.util.Arrays.asList(new JPair(bestBlockIdKey, new ByteArrayWrapper(idToBytes(block.id)))),
+      (additionalUpdates ++ Seq(
+        new JPair(bestBlockIdKey, new ByteArrayWrapper(idToBytes(block.id))),
+        new JPair(activeChainHeightKey(blockInfo.height), new ByteArrayWrapper(idToBytes(block.id))))).asJava,
       new JArrayList()
     )
 
     val mainchainParent: Option[MainchainHeaderHash] = block.mainchainHeaders.headOption.map(header => byteArrayToMainchainHeaderHash(header.hashPrevBlock))
     activeChain.setBestBlock(block.id, blockInfo, mainchainParent)
-    this
+    updateActiveChainCheckpoint()
+    blockTree.evictBelow(blockInfo.height - params.maxHistoryRewritingLength)
   }
 
+  // Incremental pruning of the history below the rewriting horizon (params.maxHistoryRewritingLength blocks behind the best one):
+  // blocks of the forks, which can't become active anymore, are removed completely,
+  // active chain blocks older than the given number of withdrawal epochs lose their bodies, headers and infos are kept.
+  // At most maxHeights heights are processed for each kind of pruning per call, progress is persisted.
+  def prune(bodiesKeepEpochsOpt: Option[Int], maxHeights: Int): Try[HistoryPruningResult] = Try {
+    require(maxHeights > 0, "Number of heights to prune must be positive.")
+    val horizonHeight: Int = height - params.maxHistoryRewritingLength
+
+    val forksPrunedHeight: Int = getInt(forksPrunedHeightKey)
+    val forksHeights: Seq[Int] = (forksPrunedHeight + 1) to Math.min(horizonHeight, forksPrunedHeight + maxHeights)
+    val forkIds: Seq[ModifierId] = forksHeights.zip(getValues(forksHeights.map(blocksAtHeightKey))).flatMap {
+      case (forkHeight, idsAtHeightOpt) =>
+        val activeId: Option[ModifierId] = activeChain.idByHeight(forkHeight)
+        idsAtHeightOpt.map(_.data.grouped(NodeViewModifier.ModifierIdSize).map(bytesToId).toSeq.distinct).getOrElse(Seq())
+          .filterNot(id => activeId.contains(id))
+    }
+
+    val bodiesPrunedHeight: Int = getInt(bodiesPrunedHeightKey)
+    val bodiesHeights: Seq[Int] = bodiesKeepEpochsOpt match {
+      case Some(keepEpochs) =>
+        val oldestKeptEpoch: Int = bestBlockInfo.withdrawalEpochInfo.epoch - keepEpochs
+        ((bodiesPrunedHeight + 1) to Math.min(horizonHeight, bodiesPrunedHeight + maxHeights))
+          .takeWhile(bodyHeight => activeChain.blockInfoByHeight(bodyHeight).exists(_.withdrawalEpochInfo.epoch < oldestKeptEpoch))
+      case None => Seq()
+    }
+    val bodiesIds: Seq[ModifierId] = bodiesHeights.flatMap(activeChain.idByHeight)
+
+    if (forksHeights.isEmpty && bodiesHeights.isEmpty) {
+      HistoryPruningResult(0, 0, 0L)
+    } else {
+      val keysToRemove: Seq[ByteArrayWrapper] = forkIds.flatMap(id => Seq(blockInfoKey(id), blockHeaderKey(id), blockBodyKey(id))) ++
+        forksHeights.map(blocksAtHeightKey) ++ bodiesIds.map(blockBodyKey)
+      val existingValues: Seq[(ByteArrayWrapper, ByteArrayWrapper)] = keysToRemove.zip(getValues(keysToRemove)).collect {
+        case (key, Some(value)) => (key, value)
+      }
+
+      // Legacy blocks keep the body in the header record: the record is replaced by the header only one.
+      val bodiesHeaderKeys: Seq[ByteArrayWrapper] = bodiesIds.map(blockHeaderKey)
+      val legacyRecordsUpdate: Seq[(ByteArrayWrapper, ByteArrayWrapper, Array[Byte])] = bodiesHeaderKeys.zip(getValues(bodiesHeaderKeys)).collect {
+        case (key, Some(record)) if isLegacyBlockRecord(record.data) =>
+          (key, record, SidechainHistoryStorage.blockHeaderRecord(legacyBlockSerializer.parseBytes(record.data)))
+      }
+
+      val toUpdate: JList[JPair[ByteArrayWrapper, ByteArrayWrapper]] = new JArrayList()
+      legacyRecordsUpdate.foreach { case (key, _, headerRecord) => toUpdate.add(new JPair(key, new ByteArrayWrapper(headerRecord))) }
+      forksHeights.lastOption.foreach(prunedHeight => toUpdate.add(new JPair(forksPrunedHeightKey, new ByteArrayWrapper(Ints.toByteArray(prunedHeight)))))
+      bodiesHeights.lastOption.foreach(prunedHeight => toUpdate.add(new JPair(bodiesPrunedHeightKey, new ByteArrayWrapper(Ints.toByteArray(prunedHeight)))))
+
+      storage.update(
+        new ByteArrayWrapper(nextVersion),
+        toUpdate,
+        existingValues.map(_._1).asJava)
+
+      val reclaimedBytes: Long = existingValues.map { case (key, value) => (key.data.length + value.data.length).toLong }.sum +
+        legacyRecordsUpdate.map { case (_, record, headerRecord) => (record.data.length - headerRecord.length).toLong }.sum
+      HistoryPruningResult(forkIds.size, bodiesIds.size, reclaimedBytes)
+    }
+  }
+
+  private def getInt(key: ByteArrayWrapper): Int = storage.get(key).asScala.map(baw => Ints.fromByteArray(baw.data)).getOrElse(0)
+
   def isEmpty: Boolean = storage.isEmpty
 }
+
+case class HistoryPruningResult(prunedForkBlocks: Int, prunedBodies: Int, reclaimedBytes: Long)
+
+object SidechainHistoryStorage {
+  // Number of the active chain blocks persisted together in a single checkpoint chunk.
+  val DefaultActiveChainCheckpointChunkSize: Int = 10000
+
+  // Number of the height -> id index entries read at once.
+  val HeightIndexReadBatchSize: Int = 1000
+
+  // Number of the recent mainchain headers and, separately, references data kept in memory.
+  val MainchainDataCacheSize: Long = 1000
+
+  // Block header records start with this marker followed by the Ommer bytes. Records of the blocks stored before
+  // the header and body split contain the whole SidechainBlock bytes, they start with the block version, which is not negative.
+  private[horizen] val BlockHeaderRecordMarker: Byte = -1
+
+  private[horizen] def blockHeaderRecord(block: SidechainBlock): Array[Byte] = Bytes.concat(Array(BlockHeaderRecordMarker), Ommer.toOmmer(block).bytes)
+
+  // Heights of the block locator for the chain of the given height, see https://en.bitcoin.it/wiki/Protocol_documentation#getblocks
+  // Top 10 heights first, then the step grows exponentially till the genesis block height, so O(log(height)) heights.
+  def locatorHeights(height: Int): IndexedSeq[Int] = {
+    val heights: ArrayBuffer[Int] = ArrayBuffer()
+    if (height > 0) {
+      var step: Int = 1
+      var index: Int = height
+      while (index > 1) {
+        heights += index
+        if (heights.size >= 10)
+          step *= 2
+        index -= step
+      }
+      heights += 1
+    }
+    heights
+  }
+
+  private[horizen] val activeChainCheckpointHeightKey: ByteArrayWrapper = new ByteArrayWrapper(Blake2b256("activeChainCheckpointHeight"))
+
+  private[horizen] def activeChainCheckpointChunkKey(chunkIndex: Int): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"activeChainCheckpointChunk$chunkIndex"))
+
+  // Heights till which the fork blocks and the active chain blocks bodies had been pruned.
+  private val forksPrunedHeightKey: ByteArrayWrapper = new ByteArrayWrapper(Blake2b256("forksPrunedHeight"))
+
+  private val bodiesPrunedHeightKey: ByteArrayWrapper = new ByteArrayWrapper(Blake2b256("bodiesPrunedHeight"))
+}
+
+// Block data, which is not a part of the block Ommer: the block is stored as its Ommer and the body records.
+private[horizen] case class SidechainBlockBody(sidechainTransactions: Seq[SidechainTransaction[Proposition, NoncedBox[Proposition]]],
+                                               mainchainBlockReferencesData: Seq[MainchainBlockReferenceData])
+
+private[horizen] class SidechainBlockBodySerializer(companion: SidechainTransactionsCompanion) extends ScorexSerializer[SidechainBlockBody] {
+  private val mcBlocksDataSerializer: ListSerializer[MainchainBlockReferenceData] = new ListSerializer[MainchainBlockReferenceData](
+    MainchainBlockReferenceDataSerializer,
+    SidechainBlock.MAX_MC_BLOCKS_NUMBER
+  )
+
+  private val sidechainTransactionsSerializer: ListSerializer[SidechainTypes#SCBT] = new ListSerializer[SidechainTypes#SCBT](
+    companion,
+    SidechainBlock.MAX_SIDECHAIN_TXS_NUMBER
+  )
+
+  override def serialize(body: SidechainBlockBody, w: Writer): Unit = {
+    sidechainTransactionsSerializer.serialize(body.sidechainTransactions.asJava, w)
+    mcBlocksDataSerializer.serialize(body.mainchainBlockReferencesData.asJava, w)
+  }
+
+  override def parse(r: Reader): SidechainBlockBody = {
+    val sidechainTransactions = sidechainTransactionsSerializer.parse(r)
+      .asScala.map(t => t.asInstanceOf[SidechainTransaction[Proposition, NoncedBox[Proposition]]])
+    val mainchainBlockReferencesData = mcBlocksDataSerializer.parse(r).asScala
+    SidechainBlockBody(sidechainTransactions, mainchainBlockReferencesData)
+  }
+
+  // Parse only the mainchain block reference data with the given index: transactions and the other data are skipped without parsing.
+  def parseMainchainBlockReferenceData(r: Reader, index: Int): MainchainBlockReferenceData = {
+    sidechainTransactionsSerializer.skip(r)
+    mcBlocksDataSerializer.parseElement(r, index)
+  }
+}
+
+// Codec of the stored block body records: codec id is written as the first byte of every record.
+// Compression uses JDK Deflater with the fastest level, original length is kept to allocate the output at once.
+private[horizen] object BlockBodyCodec {
+  val RawCodecId: Byte = 0
+  val DeflateCodecId: Byte = 1
+
+  def encode(bytes: Array[Byte], compress: Boolean): Array[Byte] = {
+    if (!compress)
+      return Bytes.concat(Array(RawCodecId), bytes)
+
+    val deflater = new Deflater(Deflater.BEST_SPEED)
+    try {
+      deflater.setInput(bytes)
+      deflater.finish()
+      val out = new ByteArrayOutputStream(bytes.length / 2 + 16)
+      out.write(DeflateCodecId)
+      out.write(Ints.toByteArray(bytes.length))
+      val buffer = new Array[Byte](8192)
+      while (!deflater.finished()) {
+        val compressedLength = deflater.deflate(buffer)
+        out.write(buffer, 0, compressedLength)
+      }
+      out.toByteArray
+    } finally {
+      deflater.end()
+    }
+  }
+
+  def decode(record: Array[Byte]): Try[Array[Byte]] = Try {
+    require(record.nonEmpty, "Block body record is empty")
+    record(0) match {
+      case RawCodecId => java.util.Arrays.copyOfRange(record, 1, record.length)
+      case DeflateCodecId =>
+        require(record.length >= 5, "Compressed block body record is too short")
+        val length = Ints.fromBytes(record(1), record(2), record(3), record(4))
+        require(length >= 0 && length <= SidechainBlock.MAX_BLOCK_SIZE, s"Compressed block body has invalid length $length")
+
+        val inflater = new Inflater()
+        try {
+          inflater.setInput(record, 5, record.length - 5)
+          val bytes = new Array[Byte](length)
+          var offset = 0
+          while (offset < length) {
+            val inflatedLength = inflater.inflate(bytes, offset, length - offset)
+            if (inflatedLength == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+              throw new IllegalArgumentException("Compressed block body is truncated")
+            offset += inflatedLength
+          }
+          bytes
+        } finally {
+          inflater.end()
+        }
+      case codecId => throw new IllegalArgumentException(s"Unknown block body codec $codecId")
+    }
+  }
+}
+
+private[horizen] object ActiveChainCheckpointChunkSerializer extends ScorexSerializer[Seq[(ModifierId, SidechainBlockInfo)]] {
+  override def serialize(chunk: Seq[(ModifierId, SidechainBlockInfo)], w: Writer): Unit = {
+    w.putInt(chunk.size)
+    chunk.foreach {
+      case (id, blockInfo) =>
+        w.putBytes(idToBytes(id))
+        SidechainBlockInfoSerializer.serialize(blockInfo, w)
+    }
+  }
+
+  override def parse(r: Reader): Seq[(ModifierId, SidechainBlockInfo)] = {
+    val size = r.getInt()
+    (0 until size).map(_ => {
+      val id = bytesToId(r.getBytes(NodeViewModifier.ModifierIdSize))
+      (id, SidechainBlockInfoSerializer.parse(r))
+    })
+  }
+}
@@ -12,7 +12,9 @@ import scala.collection.JavaConverters._
 import scala.collection.mutable
 import scala.util.Try
 
-class SidechainSecretStorage(storage: Storage, sidechainSecretsCompanion: SidechainSecretsCompanion)
+class SidechainSecretStorage(storage: Storage,
+                             sidechainSecretsCompanion: SidechainSecretsCompanion,
+                             maxSecretsPerUpdate: Int = SidechainSecretStorage.defaultMaxSecretsPerUpdate)
   extends SidechainTypes
   with ScorexLogging
 {
@@ -21,6 +23,7 @@ class SidechainSecretStorage(storage: Storage, sidechainSecretsCompanion: Sidech
 
   require(storage != null, "Storage must be NOT NULL.")
   require(sidechainSecretsCompanion != null, "SidechainSecretsCompanion must be NOT NULL.")
+  require(maxSecretsPerUpdate > 0, "Max number of Secrets per update must be positive.")
 
   private val secrets = new mutable.LinkedHashMap[ByteArrayWrapper, SidechainTypes#SCS]()
 
@@ -64,24 +67,36 @@ class SidechainSecretStorage(storage: Storage, sidechainSecretsCompanion: Sidech
     this
   }
 
+  // Secrets are committed in chunks of maxSecretsPerUpdate entries, so the import of a huge list of keys
+  // doesn't produce a separate storage version per key and doesn't keep a single huge batch in memory.
+  // Note: if some chunk fails to be committed, the previous chunks stay in the storage.
   def add (secretList: List[SidechainTypes#SCS]): Try[SidechainSecretStorage] = Try {
     require(!secretList.contains(null), "Secret must be NOT NULL.")
-    val updateList = new JArrayList[JPair[ByteArrayWrapper,ByteArrayWrapper]]()
-    val version = new Array[Byte](32)
-
-    scala.util.Random.nextBytes(version)
 
-    for (s <- secretList) {
+    val keysToAdd = new mutable.HashSet[ByteArrayWrapper]()
+    val secretsToAdd = secretList.map(s => {
       val key = calculateKey(s.publicImage())
-      require(!secrets.contains(key), "Key already exists - " + s)
-      secrets.put(key, s)
-      updateList.add(new JPair[ByteArrayWrapper, ByteArrayWrapper](key,
-        new ByteArrayWrapper(sidechainSecretsCompanion.toBytes(s))))
-    }
+      require(!secrets.contains(key) && keysToAdd.add(key), "Key already exists - " + s)
+      (key, s)
+    })
 
-    storage.update(new ByteArrayWrapper(version),
-      updateList,
-      List[ByteArrayWrapper]().asJava)
+    for (chunk <- secretsToAdd.grouped(maxSecretsPerUpdate)) {
+      val updateList = new JArrayList[JPair[ByteArrayWrapper,ByteArrayWrapper]](chunk.size)
+      val version = new Array[Byte](32)
+
+      scala.util.Random.nextBytes(version)
+
+      for ((key, s) <- chunk)
+        updateList.add(new JPair[ByteArrayWrapper, ByteArrayWrapper](key,
+          new ByteArrayWrapper(sidechainSecretsCompanion.toBytes(s))))
+
+      storage.update(new ByteArrayWrapper(version),
+        updateList,
+        List[ByteArrayWrapper]().asJava)
+
+      for ((key, s) <- chunk)
+        secrets.put(key, s)
+    }
 
     this
   }
@@ -125,3 +140,8 @@ class SidechainSecretStorage(storage: Storage, sidechainSecretsCompanion: Sidech
   def isEmpty: Boolean = storage.isEmpty
 
 }
+
+object SidechainSecretStorage {
+  // Max number of secrets to be committed to the storage within a single version.
+  val defaultMaxSecretsPerUpdate: Int = 10000
+}
@@ -14,6 +14,7 @@ import scorex.crypto.hash.Blake2b256
 import scorex.util.ScorexLogging
 
 import scala.collection.JavaConverters._
+import scala.collection.parallel.TaskSupport
 import scala.collection.mutable.ListBuffer
 import scala.compat.java8.OptionConverters._
 import scala.util._
@@ -70,6 +71,35 @@ class SidechainStateStorage(storage: Storage, sidechainBoxesCompanion: Sidechain
     }
   }
 
+  // Go through all the boxes of the storage split into chunks of chunkSize records.
+  // Records are streamed from the storage: only the chunk the iterator reaches is read, parsed and filtered in parallel
+  // using given taskSupport. The number of chunks is calculated by a separate pass over the records without parsing.
+  // Returns the number of chunks and the iterator over the filtered boxes of each chunk.
+  def getBoxesByChunks(chunkSize: Int,
+                       taskSupport: TaskSupport,
+                       boxFilter: SidechainTypes#SCB => Boolean): (Int, Iterator[Seq[SidechainTypes#SCB]]) = {
+    require(chunkSize > 0, "Chunk size must be positive.")
+    val recordsCount = storage.getAllIterator.asScala.size
+    val chunksCount = (recordsCount + chunkSize - 1) / chunkSize
+
+    val chunks = storage.getAllIterator.asScala.grouped(chunkSize).map(chunk => {
+      val parChunk = chunk.par
+      parChunk.tasksupport = taskSupport
+      parChunk.flatMap(record => parseBoxRecord(record).filter(boxFilter)).seq
+    })
+
+    (chunksCount, chunks)
+  }
+
+  // Note: storage contains not only boxes, but also withdrawal and consensus related records.
+  // So the record is treated as a box only if it can be parsed and its key is equal to the key calculated from the box id.
+  private def parseBoxRecord(record: JPair[ByteArrayWrapper, ByteArrayWrapper]): Option[SidechainTypes#SCB] = {
+    sidechainBoxesCompanion.parseBytesTry(record.getValue.data) match {
+      case Success(box) if calculateKey(box.id()).equals(record.getKey) => Some(box)
+      case _ => None
+    }
+  }
+
   def getWithdrawalEpochInfo: Option[WithdrawalEpochInfo] = {
     storage.get(withdrawalEpochInformationKey).asScala match {
       case Some(baw) =>
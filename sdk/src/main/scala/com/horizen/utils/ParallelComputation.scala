@@ -0,0 +1,26 @@
+package com.horizen.utils
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+import scala.collection.parallel.ForkJoinTaskSupport
+
+// Single pool for the CPU bound parallel computations of the node: MC headers PoW, Ommers VRF checks and VRF proving for forging.
+// It lives as long as the application: worker threads are daemons, so the pool is never shut down and doesn't keep the JVM running.
+object ParallelComputation {
+  val parallelism: Int = Runtime.getRuntime.availableProcessors()
+
+  private val workersCounter = new AtomicInteger()
+
+  private val workerThreadFactory: ForkJoinWorkerThreadFactory = (pool: ForkJoinPool) => {
+    val worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool)
+    worker.setDaemon(true)
+    worker.setName(s"parallel-computation-${workersCounter.incrementAndGet()}")
+    worker
+  }
+
+  private val pool: ForkJoinPool = new ForkJoinPool(parallelism, workerThreadFactory, null, false)
+
+  val taskSupport: ForkJoinTaskSupport = new ForkJoinTaskSupport(pool)
+}
@@ -2,14 +2,16 @@ package com.horizen.validation
 import java.time.Instant
 
 import com.horizen.SidechainHistory
-import com.horizen.block.{OmmersContainer, SidechainBlock, SidechainBlockHeader}
+import com.horizen.block.{Ommer, OmmersContainer, SidechainBlock, SidechainBlockHeader}
 import com.horizen.chain.SidechainBlockInfo
 import com.horizen.consensus._
+import com.horizen.utils.ParallelComputation
 import com.horizen.vrf.VrfOutput
 import scorex.core.block.Block
 import scorex.util.{ScorexLogging, ModifierId}
 
-import scala.util.Try
+import scala.collection.mutable
+import scala.util.{Failure, Success, Try}
 
 class ConsensusValidator extends HistoryBlockValidator with ScorexLogging {
   override def validate(block: SidechainBlock, history: SidechainHistory): Try[Unit] = Try {
@@ -97,50 +99,123 @@ class ConsensusValidator extends HistoryBlockValidator with ScorexLogging {
                                     history: SidechainHistory,
                                     previousEpochOmmersInfoAccumulator: Seq[(VrfOutput, ConsensusSlotNumber)]
                                    ): Unit = {
-    val ommers = ommersContainer.ommers
-    if(ommers.isEmpty)
+    if(ommersContainer.ommers.isEmpty)
       return
 
-    val ommersContainerEpochNumber: ConsensusEpochNumber = history.timeStampToEpochNumber(ommersContainer.header.timestamp)
-
-    var accumulator: Seq[(VrfOutput, ConsensusSlotNumber)] = previousEpochOmmersInfoAccumulator
-    var previousOmmerEpochNumber: ConsensusEpochNumber = ommersContainerEpochNumber
-    var ommerCurrentFullConsensusEpochInfo = currentFullConsensusEpochInfo
-    var ommerPreviousFullConsensusEpochInfoOpt = previousFullConsensusEpochInfoOpt
-
-    for(ommer <- ommers) {
-      val ommerEpochAndSlot: ConsensusEpochAndSlot = history.timestampToEpochAndSlot(ommer.header.timestamp)
-
-      if(ommerEpochAndSlot.epochNumber < previousOmmerEpochNumber) {
-        // First ommer is from previous consensus epoch to Ommer Container epoch.
-        ommerCurrentFullConsensusEpochInfo = previousFullConsensusEpochInfoOpt
-          .getOrElse(throw new IllegalStateException(s"Block ${ommersContainer.header.id} contains ommer two epochs before."))
-        // We are not allow to have an ommers 2 epoch before ommer container.
-        // It means that between block and its parent the whole epoch was skipped.
-        ommerPreviousFullConsensusEpochInfoOpt = None
-      } else if(ommerEpochAndSlot.epochNumber > previousOmmerEpochNumber) {
-        // Ommer switched the consensus epoch (previous ommer was from previous epoch).
-        // It means, that bestKnownParentId (parent of verified block) is also from previous epoch.
-        // So calculate the nonce again with passing info of all Ommers from previous epoch as well.
-        val nonce = history.calculateNonceForNonGenesisEpoch(bestKnownParentId, bestKnownParentInfo, accumulator)
-        ommerCurrentFullConsensusEpochInfo = FullConsensusEpochInfo(currentFullConsensusEpochInfo.stakeConsensusEpochInfo, nonce)
-        ommerPreviousFullConsensusEpochInfoOpt = previousFullConsensusEpochInfoOpt
-      }
+    // Consensus epoch info of every Ommer in the tree is resolved first, VRF and forger box checks are independent, so done in parallel.
+    // Consensus epoch info resolving failure stops the traversal, so it is the last item.
+    val ommersToVerify: Seq[Try[(Ommer, FullConsensusEpochInfo)]] = getOmmersConsensusEpochInfo(ommersContainer, currentFullConsensusEpochInfo,
+      previousFullConsensusEpochInfoOpt, bestKnownParentId, bestKnownParentInfo, history, previousEpochOmmersInfoAccumulator)
+
+    val verificationResults: Seq[Try[Unit]] = if(ommersToVerify.size <= 1) {
+      ommersToVerify.map(_.flatMap { case (ommer, fullConsensusEpochInfo) => Try(verifyOmmer(ommer, fullConsensusEpochInfo, history)) })
+    } else {
+      val parOmmersToVerify = ommersToVerify.par
+      parOmmersToVerify.tasksupport = ParallelComputation.taskSupport
+      parOmmersToVerify.map(_.flatMap { case (ommer, fullConsensusEpochInfo) => Try(verifyOmmer(ommer, fullConsensusEpochInfo, history)) }).seq
+    }
+
+    // Report the first failure in the Ommers tree traversal order: checks of the preceding Ommers go before the consensus epoch info failure.
+    verificationResults.collectFirst { case Failure(e) => e }.foreach(e => throw e)
+  }
 
-      val ommerVrfOutput: VrfOutput = history.getVrfOutput(ommer.header, ommerCurrentFullConsensusEpochInfo.nonceConsensusEpochInfo)
-        .getOrElse(throw new IllegalStateException(s"VRF check for Ommer ${ommer.header.id} had been failed"))
-      verifyForgerBox(ommer.header, ommerCurrentFullConsensusEpochInfo.stakeConsensusEpochInfo, ommerVrfOutput)
+  private def verifyOmmer(ommer: Ommer, fullConsensusEpochInfo: FullConsensusEpochInfo, history: SidechainHistory): Unit = {
+    val ommerVrfOutput: VrfOutput = getOmmerVrfOutput(ommer, fullConsensusEpochInfo.nonceConsensusEpochInfo, history)
+    verifyForgerBox(ommer.header, fullConsensusEpochInfo.stakeConsensusEpochInfo, ommerVrfOutput)
+  }
 
-      verifyOmmers(ommer, ommerCurrentFullConsensusEpochInfo, ommerPreviousFullConsensusEpochInfoOpt,
-        bestKnownParentId, bestKnownParentInfo, history, accumulator)
+  private def getOmmerVrfOutput(ommer: Ommer, nonceConsensusEpochInfo: NonceConsensusEpochInfo, history: SidechainHistory): VrfOutput = {
+    history.getVrfOutput(ommer.header, nonceConsensusEpochInfo)
+      .getOrElse(throw new IllegalStateException(s"VRF check for Ommer ${ommer.header.id} had been failed"))
+  }
 
-      // Add previous epoch ommer info to accumulated sequence.
-      if(ommerEpochAndSlot.epochNumber < ommersContainerEpochNumber) {
-        // prepend accumulator with ommer with more recent slot
-        accumulator = (ommerVrfOutput, ommerEpochAndSlot.slotNumber) +: accumulator
+  // Iterative pre-order traversal of the Ommers tree, that returns the Ommers with consensus epoch info to verify them with.
+  // VRF outputs of the previous epoch Ommers are calculated only if the nonce must be recalculated,
+  // the nonce for the same previous epoch Ommers data is calculated once for the whole tree.
+  // If consensus epoch info of some Ommer can't be resolved, the failure is returned at the Ommer position and the traversal stops.
+  private def getOmmersConsensusEpochInfo(ommersContainer: OmmersContainer,
+                                          currentFullConsensusEpochInfo: FullConsensusEpochInfo,
+                                          previousFullConsensusEpochInfoOpt: Option[FullConsensusEpochInfo],
+                                          bestKnownParentId: ModifierId,
+                                          bestKnownParentInfo: SidechainBlockInfo,
+                                          history: SidechainHistory,
+                                          previousEpochOmmersInfoAccumulator: Seq[(VrfOutput, ConsensusSlotNumber)]
+                                         ): Seq[Try[(Ommer, FullConsensusEpochInfo)]] = {
+    val recalculatedNonces = mutable.Map[Seq[(VrfOutput, ConsensusSlotNumber)], NonceConsensusEpochInfo]()
+    val ommersToVerify = mutable.ArrayBuffer[Try[(Ommer, FullConsensusEpochInfo)]]()
+
+    // Either the Ommer to verify (or the failure to get its info) or the Ommers container to traverse.
+    var stack: List[Either[Try[(Ommer, FullConsensusEpochInfo)], OmmersTraversalFrame]] =
+      List(Right(OmmersTraversalFrame(ommersContainer, currentFullConsensusEpochInfo, previousFullConsensusEpochInfoOpt, List())))
+
+    while(stack.nonEmpty) {
+      val item = stack.head
+      stack = stack.tail
+      item match {
+        case Left(ommerToVerify) =>
+          ommersToVerify.append(ommerToVerify)
+          if(ommerToVerify.isFailure)
+            stack = List()
+        case Right(frame) =>
+          val ommersContainerEpochNumber: ConsensusEpochNumber = history.timeStampToEpochNumber(frame.ommersContainer.header.timestamp)
+
+          var accumulator: List[(Ommer, NonceConsensusEpochInfo, ConsensusSlotNumber)] = frame.accumulator
+          var previousOmmerEpochNumber: ConsensusEpochNumber = ommersContainerEpochNumber
+          var ommerCurrentFullConsensusEpochInfo = frame.currentFullConsensusEpochInfo
+          var ommerPreviousFullConsensusEpochInfoOpt = frame.previousFullConsensusEpochInfoOpt
+          val items = mutable.ArrayBuffer[Either[Try[(Ommer, FullConsensusEpochInfo)], OmmersTraversalFrame]]()
+
+          var ommerEpochInfoFailed = false
+          val ommersIterator = frame.ommersContainer.ommers.iterator
+          while(ommersIterator.hasNext && !ommerEpochInfoFailed) {
+            val ommer = ommersIterator.next()
+            val ommerEpochAndSlot: ConsensusEpochAndSlot = history.timestampToEpochAndSlot(ommer.header.timestamp)
+
+            Try {
+              if(ommerEpochAndSlot.epochNumber < previousOmmerEpochNumber) {
+                // First ommer is from previous consensus epoch to Ommer Container epoch.
+                ommerCurrentFullConsensusEpochInfo = frame.previousFullConsensusEpochInfoOpt
+                  .getOrElse(throw new IllegalStateException(s"Block ${frame.ommersContainer.header.id} contains ommer two epochs before."))
+                // We are not allow to have an ommers 2 epoch before ommer container.
+                // It means that between block and its parent the whole epoch was skipped.
+                ommerPreviousFullConsensusEpochInfoOpt = None
+              } else if(ommerEpochAndSlot.epochNumber > previousOmmerEpochNumber) {
+                // Ommer switched the consensus epoch (previous ommer was from previous epoch).
+                // It means, that bestKnownParentId (parent of verified block) is also from previous epoch.
+                // So calculate the nonce again with passing info of all Ommers from previous epoch as well.
+                val nonceData: Seq[(VrfOutput, ConsensusSlotNumber)] = accumulator.map {
+                  case (accumulatedOmmer, nonceConsensusEpochInfo, slotNumber) => (getOmmerVrfOutput(accumulatedOmmer, nonceConsensusEpochInfo, history), slotNumber)
+                } ++ previousEpochOmmersInfoAccumulator
+                val nonce = recalculatedNonces.getOrElseUpdate(nonceData,
+                  history.calculateNonceForNonGenesisEpoch(bestKnownParentId, bestKnownParentInfo, nonceData))
+                ommerCurrentFullConsensusEpochInfo = FullConsensusEpochInfo(frame.currentFullConsensusEpochInfo.stakeConsensusEpochInfo, nonce)
+                ommerPreviousFullConsensusEpochInfoOpt = frame.previousFullConsensusEpochInfoOpt
+              }
+            } match {
+              case Failure(e) =>
+                // Subtrees of the preceding Ommers are still traversed before the failure is reached.
+                items.append(Left(Failure(e)))
+                ommerEpochInfoFailed = true
+
+              case Success(_) =>
+                items.append(Left(Success((ommer, ommerCurrentFullConsensusEpochInfo))))
+                if(ommer.ommers.nonEmpty)
+                  items.append(Right(OmmersTraversalFrame(ommer, ommerCurrentFullConsensusEpochInfo, ommerPreviousFullConsensusEpochInfoOpt, accumulator)))
+
+                // Add previous epoch ommer info to accumulated sequence.
+                if(ommerEpochAndSlot.epochNumber < ommersContainerEpochNumber) {
+                  // prepend accumulator with ommer with more recent slot
+                  accumulator = (ommer, ommerCurrentFullConsensusEpochInfo.nonceConsensusEpochInfo, ommerEpochAndSlot.slotNumber) :: accumulator
+                }
+                previousOmmerEpochNumber = ommerEpochAndSlot.epochNumber
+            }
+          }
+
+          stack = items.toList ++ stack
       }
-      previousOmmerEpochNumber = ommerEpochAndSlot.epochNumber
     }
+
+    ommersToVerify
   }
 
   //Verify that forger box in block is correct (including stake), exist in history and had enough stake to be forger
@@ -162,3 +237,9 @@ class ConsensusValidator extends HistoryBlockValidator with ScorexLogging {
     }
   }
 }
+
+// Ommers container to traverse with the consensus epoch info of its Ommers and not yet materialized previous epoch Ommers info.
+private case class OmmersTraversalFrame(ommersContainer: OmmersContainer,
+                                        currentFullConsensusEpochInfo: FullConsensusEpochInfo,
+                                        previousFullConsensusEpochInfoOpt: Option[FullConsensusEpochInfo],
+                                        accumulator: List[(Ommer, NonceConsensusEpochInfo, ConsensusSlotNumber)])
@@ -1,16 +1,38 @@
 package com.horizen.validation
 
+import com.google.common.cache.{Cache, CacheBuilder}
 import com.horizen.SidechainHistory
+import com.horizen.block.ProofOfWorkVerifier.PowTimeBitsWindow
 import com.horizen.block.{ProofOfWorkVerifier, SidechainBlock}
 import com.horizen.params.NetworkParams
 import com.horizen.utils.BytesUtils
-import scorex.util.idToBytes
+import scorex.util.{ModifierId, idToBytes}
 
 import scala.util.{Failure, Success, Try}
 
 class MainchainPoWValidator(params: NetworkParams) extends HistoryBlockValidator {
+  // PoW time/bits windows after the recently validated blocks, so the child block is validated without walking through the history.
+  private val powWindows: Cache[ModifierId, PowTimeBitsWindow] = CacheBuilder.newBuilder()
+    .maximumSize(MainchainPoWValidator.POW_WINDOWS_CACHE_SIZE)
+    .build[ModifierId, PowTimeBitsWindow]()
+
   override def validate(block: SidechainBlock, history: SidechainHistory): Try[Unit] = {
-    if(ProofOfWorkVerifier.checkNextWorkRequired(block, history.storage, params)) {
+    val initialWindowOpt: Option[PowTimeBitsWindow] = Option(powWindows.getIfPresent(block.parentId))
+      .orElse(ProofOfWorkVerifier.getPowTimeBitsWindow(block, history.storage, params))
+
+    val isValid: Boolean = initialWindowOpt match {
+      case Some(initialWindow) =>
+        ProofOfWorkVerifier.checkNextWorkRequired(block, initialWindow, params) match {
+          case Some(window) =>
+            powWindows.put(block.id, window)
+            true
+          case None => false
+        }
+      // Window is not known for the block without MainchainHeaders, while there is nothing to verify.
+      case None => block.mainchainHeaders.isEmpty
+    }
+
+    if(isValid) {
       Success()
     }
     else {
@@ -18,3 +40,7 @@ class MainchainPoWValidator(params: NetworkParams) extends HistoryBlockValidator
     }
   }
 }
+
+object MainchainPoWValidator {
+  val POW_WINDOWS_CACHE_SIZE: Int = 1024
+}
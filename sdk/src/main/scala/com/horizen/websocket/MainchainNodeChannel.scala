@@ -15,6 +15,10 @@ trait MainchainNodeChannel {
   // Get reference for given hash in MC node block storage (any chain)
   def getBlockByHash(hash: String): Try[MainchainBlockReference]
 
+  // Get references with their heights for given hashes in MC node block storage (any chain) in the same order.
+  // Up to `maxRequestsInFlight` requests are sent without waiting for the responses.
+  def getBlocksByHashes(hashes: Seq[String], maxRequestsInFlight: Int): Try[Seq[(Int, MainchainBlockReference)]]
+
   // Get up to `limit` block hashes from MC node active chain after given height.
   def getBlockHashesAfterHeight(height: Int, limit: Int): Try[Seq[String]]
 
@@ -3,6 +3,8 @@ import com.horizen.block.MainchainBlockReference
 import com.horizen.params.NetworkParams
 import com.horizen.utils.BytesUtils
 
+import scala.collection.mutable
+import scala.collection.mutable.ListBuffer
 import scala.util.{Failure, Success, Try}
 import scala.concurrent.{Await, Future}
 
@@ -35,8 +37,30 @@ class MainchainNodeChannelImpl(client: CommunicationClient, params: NetworkParam
     processBlockResponsePayload(future).get
   }
 
+  override def getBlocksByHashes(hashes: Seq[String], maxRequestsInFlight: Int): Try[Seq[(Int, MainchainBlockReference)]] = Try {
+    require(maxRequestsInFlight > 0, s"Invalid max requests in flight number $maxRequestsInFlight. Number must be > 0")
+
+    val references = ListBuffer[(Int, MainchainBlockReference)]()
+    val requestsInFlight = mutable.Queue[Future[BlockResponsePayload]]()
+    val hashesToRequest = hashes.iterator
+
+    // Responses are processed in the requests order, so the parsing of one block overlaps with the retrieving of the next ones.
+    while (hashesToRequest.hasNext || requestsInFlight.nonEmpty) {
+      while (hashesToRequest.hasNext && requestsInFlight.size < maxRequestsInFlight)
+        requestsInFlight.enqueue(client.sendRequest(0, GetBlockByHashRequestPayload(hashesToRequest.next()), classOf[BlockResponsePayload]))
+
+      val response: BlockResponsePayload = Await.result(requestsInFlight.dequeue(), client.requestTimeoutDuration())
+      references.append((response.height, parseBlockResponsePayload(response).get))
+    }
+    references
+  }
+
   private def processBlockResponsePayload(future: Future[BlockResponsePayload]): Try[MainchainBlockReference] = Try {
     val response: BlockResponsePayload = Await.result(future, client.requestTimeoutDuration())
+    parseBlockResponsePayload(response).get
+  }
+
+  private def parseBlockResponsePayload(response: BlockResponsePayload): Try[MainchainBlockReference] = Try {
     val blockBytes = BytesUtils.fromHexString(response.block)
     MainchainBlockReference.create(blockBytes, params).get
   }
@@ -0,0 +1,67 @@
+package com.horizen.secret;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import com.horizen.node.NodeWallet;
+import com.horizen.proposition.Proposition;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import scorex.crypto.hash.Blake2b256;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SecretDerivationTest {
+    byte[] walletSeed = "wallet seed".getBytes();
+
+    @Test
+    public void secretSeed() {
+        // Derivation must stay compatible with the secrets already generated by generateNextSecret.
+        for (int index = 0; index < 5; index++) {
+            byte[] expectedSeed = Blake2b256.hash(Bytes.concat(walletSeed, Ints.toByteArray(index)));
+            assertArrayEquals("Derived seed is different.", expectedSeed, SecretCreator.secretSeed(walletSeed, index));
+        }
+    }
+
+    @Test
+    public void generateSecrets() {
+        PrivateKey25519Creator creator = PrivateKey25519Creator.getInstance();
+        int fromIndex = 10;
+        int count = 50;
+
+        List<PrivateKey25519> secrets = creator.generateSecrets(walletSeed, fromIndex, count);
+        assertEquals("Different number of secrets expected.", count, secrets.size());
+        for (int i = 0; i < count; i++)
+            assertEquals("Secrets must be ordered by derivation index.",
+                    creator.generateSecret(SecretCreator.secretSeed(walletSeed, fromIndex + i)), secrets.get(i));
+
+        assertEquals("Derivation must be deterministic.", secrets, creator.generateSecrets(walletSeed, fromIndex, count));
+        assertTrue("No secrets expected.", creator.generateSecrets(walletSeed, fromIndex, 0).isEmpty());
+    }
+
+    @Test
+    public void generateNextSecretAfterDerivationWithGap() {
+        PrivateKey25519Creator creator = PrivateKey25519Creator.getInstance();
+
+        // Wallet contains the secrets derived for indexes 2 and 3 only.
+        List<Secret> walletSecrets = new ArrayList<>(creator.generateSecrets(walletSeed, 2, 2));
+        NodeWallet wallet = Mockito.mock(NodeWallet.class);
+        Mockito.when(wallet.walletSeed()).thenReturn(walletSeed);
+        Mockito.when(wallet.secretsOfType(PrivateKey25519.class)).thenAnswer(answer -> walletSecrets);
+        Mockito.when(wallet.secretByPublicKey(ArgumentMatchers.any(Proposition.class))).thenAnswer(answer ->
+                walletSecrets.stream().filter(secret -> secret.publicImage().equals(answer.getArgument(0))).findFirst());
+
+        // Index 2 is the number of secrets, but it's already used, so the next free index is taken.
+        PrivateKey25519 nextSecret = creator.generateNextSecret(wallet);
+        assertEquals("Secret with the next unused index expected.",
+                creator.generateSecret(SecretCreator.secretSeed(walletSeed, 4)), nextSecret);
+
+        // Gap before the derived range is not filled, the secrets follow the used indexes.
+        walletSecrets.add(nextSecret);
+        assertEquals("Secret with the next unused index expected.",
+                creator.generateSecret(SecretCreator.secretSeed(walletSeed, 5)), creator.generateNextSecret(wallet));
+    }
+}
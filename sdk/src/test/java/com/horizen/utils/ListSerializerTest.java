@@ -6,8 +6,10 @@ import org.junit.Test;
 import scorex.core.serialization.BytesSerializable;
 import scorex.core.serialization.ScorexSerializer;
 import scorex.util.serialization.Reader;
+import scorex.util.serialization.VLQByteBufferReader;
 import scorex.util.serialization.Writer;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -407,4 +409,40 @@ public class ListSerializerTest {
         }
         assertTrue("Exception expected during deserialization, because of garbage.", exceptionOccurred);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void ListSerializerTest_PartialParsing() {
+        ListSerializer<BytesSerializable> listSerializer = new ListSerializer<>((ScorexSerializer)new ListSerializerTestObjectASerializer());
+
+        ArrayList<BytesSerializable> data = new ArrayList<>();
+        data.add(new ListSerializerTestObjectA("test1"));
+        data.add(new ListSerializerTestObjectA("test22"));
+        data.add(new ListSerializerTestObjectA("test333"));
+        byte[] bytes = listSerializer.toBytes(data);
+
+        // Test 1: every element can be parsed alone
+        for(int i = 0; i < data.size(); i++) {
+            Reader reader = new VLQByteBufferReader(ByteBuffer.wrap(bytes));
+            assertEquals(String.format("Parsed list item %d is different to original", i), data.get(i), listSerializer.parseElement(reader, i));
+        }
+
+        // Test 2: element index out of the list
+        boolean exceptionOccurred = false;
+        try {
+            listSerializer.parseElement(new VLQByteBufferReader(ByteBuffer.wrap(bytes)), data.size());
+        }
+        catch (Exception e) {
+            exceptionOccurred = true;
+        }
+        assertTrue("Exception expected during parsing of missed element.", exceptionOccurred);
+
+        // Test 3: skipped lists are followed by the next data
+        byte[] twoListsBytes = new byte[bytes.length * 2];
+        System.arraycopy(bytes, 0, twoListsBytes, 0, bytes.length);
+        System.arraycopy(bytes, 0, twoListsBytes, bytes.length, bytes.length);
+        Reader reader = new VLQByteBufferReader(ByteBuffer.wrap(twoListsBytes));
+        listSerializer.skip(reader);
+        assertEquals("Reader expected to be moved to the end of the first list", bytes.length, reader.remaining());
+        assertEquals("Parsed item of the second list is different to original", data.get(1), listSerializer.parseElement(reader, 1));
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.Assert._
 import com.horizen.fixtures._
 import scorex.util.ModifierId
 import scala.collection.JavaConverters._
+import scala.util.Random
 
 class SidechainMemoryPoolTest
   extends JUnitSuite
@@ -123,4 +124,30 @@ class SidechainMemoryPoolTest
       false)
     assertEquals("Size must be 2.", memoryPool.size, 2)
   }
+
+  @Test
+  def takeOrderedByFee(): Unit = {
+    val memoryPool = getSidechainMemoryPool()
+    val rnd = new Random(42)
+    val transactions = (1 to 20).map(_ => generateRegularTransaction(rnd, 1547798549470L, 3, 4))
+
+    transactions.foreach(tx => assertTrue("Put operation must be success.", memoryPool.put(tx).isSuccess))
+    val expectedOrder = transactions.sortWith(SidechainMemoryPool.feeDescendingComparator.compare(_, _) < 0)
+    assertTrue("Transactions must have different fees.", transactions.map(_.fee()).distinct.size > 1)
+    assertEquals("Take must return transactions ordered by fee.", expectedOrder.take(5), memoryPool.take(5).toSeq)
+    assertEquals("Transactions sorted by fee must be ordered by fee.", expectedOrder.take(5).asJava, memoryPool.getTransactionsSortedByFee(5))
+
+    // Remove the transaction with the highest fee and filter out some others
+    memoryPool.remove(expectedOrder.head)
+    val filteredOut = expectedOrder.slice(3, 6)
+    memoryPool.filter(filteredOut)
+    val expectedOrderAfterRemoval = expectedOrder.tail.filterNot(filteredOut.contains)
+
+    assertEquals("Size must be 16.", 16, memoryPool.size)
+    assertEquals("Take must return transactions ordered by fee after removal.", expectedOrderAfterRemoval, memoryPool.take(20).toSeq)
+
+    // Put the removed transaction back
+    assertTrue("Put operation must be success.", memoryPool.put(expectedOrder.head).isSuccess)
+    assertEquals("Take must return the transaction with the highest fee.", expectedOrder.head, memoryPool.take(1).head)
+  }
 }
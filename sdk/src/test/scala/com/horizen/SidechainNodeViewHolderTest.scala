@@ -9,7 +9,7 @@ import com.horizen.companion.SidechainTransactionsCompanion
 import com.horizen.consensus.{ConsensusEpochInfo, FullConsensusEpochInfo, intToConsensusEpochNumber}
 import com.horizen.fixtures._
 import com.horizen.params.{NetworkParams, RegTestParams}
-import com.horizen.utils.MerkleTree
+import com.horizen.utils.{ByteArrayWrapper, MerkleTree}
 import org.junit.Assert.{assertEquals, assertTrue}
 import org.junit.{Before, Test}
 import org.mockito.{ArgumentMatchers, Mockito}
@@ -211,6 +211,8 @@ class SidechainNodeViewHolderTest extends JUnitSuite
       Success(state)
       })
 
+    // Wallet has no rescan results to be reverted by the rollback
+    Mockito.when(wallet.rescanVersions).thenReturn(Set[ByteArrayWrapper]())
     // Wallet rollback check
     Mockito.when(wallet.rollback(ArgumentMatchers.any[VersionTag])).thenAnswer(answer => {
       val rollbackPoint: VersionTag = answer.getArgument(0).asInstanceOf[VersionTag]
@@ -244,12 +246,19 @@ class SidechainNodeViewHolderTest extends JUnitSuite
     // Send locally generated block to the NodeViewHolder
     val eventListener = TestProbe()
     actorSystem.eventStream.subscribe(eventListener.ref, classOf[SemanticallySuccessfulModifier[SidechainBlock]])
+    actorSystem.eventStream.subscribe(eventListener.ref, classOf[SidechainAppEvents.ChainSwitched])
     mockedNodeViewHolderRef ! LocallyGeneratedModifier(secondBlockInFork)
 
 
     // Verify successful applying for 2 fork blocks
     eventListener.expectMsgType[SemanticallySuccessfulModifier[SidechainBlock]]
     eventListener.expectMsgType[SemanticallySuccessfulModifier[SidechainBlock]]
+
+    // Verify chain switch metrics
+    val chainSwitched = eventListener.expectMsgType[SidechainAppEvents.ChainSwitched]
+    assertEquals("Different chain switch branch point expected.", branchPointBlock.id, chainSwitched.branchPoint)
+    assertEquals("Different number of removed blocks expected.", 1, chainSwitched.removedBlocks)
+    assertEquals("Different number of applied blocks expected.", 2, chainSwitched.appliedBlocks)
   }
 
   @Test
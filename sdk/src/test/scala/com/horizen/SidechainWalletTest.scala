@@ -6,7 +6,7 @@ import java.util.{ArrayList => JArrayList, HashMap => JHashMap, List => JList}
 
 import com.horizen.block.SidechainBlock
 import com.horizen.box._
-import com.horizen.box.data.{NoncedBoxData, RegularBoxData}
+import com.horizen.box.data.{ForgerBoxData, NoncedBoxData, RegularBoxData}
 import com.horizen.companion._
 import com.horizen.consensus.{ConsensusEpochInfo, ConsensusEpochNumber}
 import com.horizen.customtypes._
@@ -28,6 +28,7 @@ import scorex.util.ModifierId
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable.ListBuffer
+import scala.collection.parallel.TaskSupport
 import scala.util.{Failure, Random, Success, Try}
 
 class SidechainWalletTest
@@ -331,6 +332,11 @@ class SidechainWalletTest
     val blockId = new Array[Byte](32)
     Random.nextBytes(blockId)
     val versionTag: VersionTag = VersionTag @@ BytesUtils.toHexString(blockId)
+    // Rescan results committed on top of the block version
+    val rescanVersion = SidechainWallet.rescanVersion(Some(new ByteArrayWrapper(blockId)))
+
+    Mockito.when(mockedWalletBoxStorage.rollbackVersions).thenReturn(List(new ByteArrayWrapper(blockId), rescanVersion))
+    Mockito.when(mockedForgingBoxesMerklePathStorage.rollbackVersions).thenReturn(List(new ByteArrayWrapper(blockId)))
 
     // Prepare what we expect to receive in WalletBoxStorage.rollback
     Mockito.when(mockedWalletBoxStorage.rollback(
@@ -340,7 +346,7 @@ class SidechainWalletTest
         val version = answer.getArgument(0).asInstanceOf[ByteArrayWrapper]
 
         assertEquals("Rollback on WalletBoxStorage.rollback(...) actual version is wrong.",
-          new ByteArrayWrapper(blockId),
+          rescanVersion,
           version)
         Success(mockedWalletBoxStorage)
       })
@@ -396,6 +402,184 @@ class SidechainWalletTest
     assertFalse("ApplicationWallet onRollback(...) event NOT expected.", rollbackEventOccurred)
   }
 
+  @Test
+  def testRescan(): Unit = {
+    val mockedWalletBoxStorage: SidechainWalletBoxStorage = mock[SidechainWalletBoxStorage]
+    val mockedSecretStorage: SidechainSecretStorage = mock[SidechainSecretStorage]
+    val mockedWalletTransactionStorage: SidechainWalletTransactionStorage = mock[SidechainWalletTransactionStorage]
+    val mockedForgingBoxesInfoStorage: ForgingBoxesInfoStorage = mock[ForgingBoxesInfoStorage]
+    val mockedApplicationWallet: ApplicationWallet = mock[ApplicationWallet]
+    val mockedState: SidechainState = mock[SidechainState]
+
+    val sidechainWallet = new SidechainWallet("seed".getBytes,
+      mockedWalletBoxStorage,
+      mockedSecretStorage,
+      mockedWalletTransactionStorage,
+      mockedForgingBoxesInfoStorage,
+      mockedApplicationWallet)
+
+    val stateVersion = new Array[Byte](32)
+    Random.nextBytes(stateVersion)
+    val timestamp = 1000L
+
+    val importedSecrets = getPrivateKey25519List(2).asScala
+    val importedPropositions: Set[SidechainTypes#SCP] = importedSecrets.map(_.publicImage().asInstanceOf[SidechainTypes#SCP]).toSet
+    val importedBoxes = getRegularBoxList(importedSecrets.asJava).asScala.map(_.asInstanceOf[SidechainTypes#SCB])
+    val alreadyKnownBox = importedBoxes.head
+    val foreignBoxes = getRegularBoxList(1).asScala.map(_.asInstanceOf[SidechainTypes#SCB])
+
+    Mockito.when(mockedState.version).thenReturn(scorex.core.bytesToVersion(stateVersion))
+    Mockito.when(mockedWalletBoxStorage.lastVersionId).thenReturn(util.Optional.of(new ByteArrayWrapper(stateVersion)))
+    Mockito.when(mockedForgingBoxesInfoStorage.lastVersionId).thenReturn(Some(new ByteArrayWrapper(stateVersion)))
+    // forger box owned by a foreign key, but delegated to one of the imported keys
+    val delegatedForgerBox = new ForgerBoxData(getPrivateKey25519.publicImage(), 10, importedSecrets.head.publicImage(), getVRFPublicKey)
+      .getBox(1).asInstanceOf[SidechainTypes#SCB]
+    // box of an imported proposition spent in the State after the rescan has found it
+    val spentBox = getRegularBoxList(importedSecrets.take(1).asJava).asScala.head.asInstanceOf[SidechainTypes#SCB]
+    val stateBoxes = importedBoxes ++ foreignBoxes :+ delegatedForgerBox :+ spentBox
+    Mockito.when(mockedState.closedBox(ArgumentMatchers.any[Array[Byte]]()))
+      .thenAnswer(answer => {
+        val boxId = answer.getArgument(0).asInstanceOf[Array[Byte]]
+        stateBoxes.find(box => !box.equals(spentBox) && util.Arrays.equals(box.id(), boxId))
+      })
+    Mockito.when(mockedState.closedBoxesByChunks(
+      ArgumentMatchers.anyInt(),
+      ArgumentMatchers.any[TaskSupport](),
+      ArgumentMatchers.any[SidechainTypes#SCB => Boolean]()))
+      .thenAnswer(answer => {
+        val chunkSize = answer.getArgument(0).asInstanceOf[Int]
+        val boxFilter = answer.getArgument(2).asInstanceOf[SidechainTypes#SCB => Boolean]
+        val chunks = stateBoxes.grouped(chunkSize).toSeq
+        (chunks.size, chunks.iterator.map(_.filter(boxFilter)))
+      })
+
+    var forgerBoxesUpdateCalled = false
+    Mockito.when(mockedForgingBoxesInfoStorage.updateForgerBoxes(
+      ArgumentMatchers.any[ByteArrayWrapper](),
+      ArgumentMatchers.any[Seq[ForgerBox]],
+      ArgumentMatchers.any[Seq[Array[Byte]]]))
+      .thenAnswer(answer => {
+        forgerBoxesUpdateCalled = true
+        assertEquals("Rescan on ForgingBoxesInfoStorage.updateForgerBoxes(...) actual version is wrong.",
+          SidechainWallet.rescanVersion(Some(new ByteArrayWrapper(stateVersion))), answer.getArgument(0).asInstanceOf[ByteArrayWrapper])
+        assertEquals("Rescan on ForgingBoxesInfoStorage.updateForgerBoxes(...) actual toAppend seq is wrong.",
+          Seq(delegatedForgerBox), answer.getArgument(1).asInstanceOf[Seq[ForgerBox]])
+        Success(mockedForgingBoxesInfoStorage)
+      })
+
+    Mockito.when(mockedWalletBoxStorage.get(ArgumentMatchers.any[Array[Byte]]()))
+      .thenAnswer(answer => {
+        val boxId = answer.getArgument(0).asInstanceOf[Array[Byte]]
+        if (util.Arrays.equals(boxId, alreadyKnownBox.id()))
+          Some(new WalletBox(alreadyKnownBox, bytesToId(stateVersion), timestamp))
+        else
+          None
+      })
+
+    var updateCalled = false
+    Mockito.when(mockedWalletBoxStorage.update(
+      ArgumentMatchers.any[ByteArrayWrapper](),
+      ArgumentMatchers.any[List[WalletBox]](),
+      ArgumentMatchers.any[List[Array[Byte]]]()))
+      .thenAnswer(answer => {
+        updateCalled = true
+        assertEquals("Rescan on WalletBoxStorage.update(...) actual version is wrong.",
+          SidechainWallet.rescanVersion(Some(new ByteArrayWrapper(stateVersion))), answer.getArgument(0).asInstanceOf[ByteArrayWrapper])
+        val walletBoxUpdateList = answer.getArgument(1).asInstanceOf[List[WalletBox]]
+        val boxIdsRemoveList = answer.getArgument(2).asInstanceOf[List[Array[Byte]]]
+
+        assertEquals("Rescan on WalletBoxStorage.update(...) actual walletBoxUpdateList is wrong.",
+          importedBoxes.tail.map(box => new WalletBox(box, bytesToId(stateVersion), timestamp)).toList,
+          walletBoxUpdateList)
+        assertTrue("Rescan on WalletBoxStorage.update(...) actual boxIdsRemoveList must be empty.", boxIdsRemoveList.isEmpty)
+
+        Try {
+          mockedWalletBoxStorage
+        }
+      })
+
+    // Test 1: boxes of imported propositions and delegated forger boxes are found in the State
+    val progress = new WalletRescanProgress()
+    var foundChunks: Seq[Seq[SidechainTypes#SCB]] = Seq()
+    SidechainWallet.rescanState(mockedState, importedPropositions, progress)(boxes => foundChunks :+= boxes)
+    assertEquals("Rescan expected to go through all chunks.", progress.totalChunks, foundChunks.size)
+    assertEquals("Rescan expected to find different boxes.", (importedBoxes :+ delegatedForgerBox :+ spentBox).toSet, foundChunks.flatten.toSet)
+    assertFalse("Rescan expected NOT to be finished before the chunks are applied.", progress.isFinished)
+
+    // Test 2: found boxes, that are unknown to the wallet and still present in the State, are added
+    foundChunks.foreach(boxes =>
+      assertTrue("Rescan chunk expected to be applied.", sidechainWallet.applyRescanChunk(mockedState, importedPropositions, boxes, timestamp, progress).isSuccess))
+    assertTrue("Rescan expected to update WalletBoxStorage.", updateCalled)
+    assertTrue("Rescan expected to update ForgingBoxesInfoStorage.", forgerBoxesUpdateCalled)
+    assertEquals("Rescan expected to process all chunks.", progress.totalChunks, progress.processedChunks)
+    assertEquals("Rescan expected to find different number of boxes.", importedBoxes.size - 1, progress.foundBoxes)
+
+    // Test 3: nothing is found for empty propositions set
+    val emptyProgress = new WalletRescanProgress()
+    foundChunks = Seq()
+    SidechainWallet.rescanState(mockedState, Set(), emptyProgress)(boxes => foundChunks :+= boxes)
+    assertEquals("Rescan expected NOT to have any chunk.", 0, emptyProgress.totalChunks)
+    assertTrue("Rescan expected NOT to go through any chunk.", foundChunks.isEmpty)
+
+    // Test 4: cancelled rescan doesn't go through any chunk
+    val cancelledProgress = new WalletRescanProgress()
+    cancelledProgress.cancel()
+    SidechainWallet.rescanState(mockedState, importedPropositions, cancelledProgress)(boxes => foundChunks :+= boxes)
+    assertTrue("Rescan expected NOT to go through any chunk.", foundChunks.isEmpty)
+  }
+
+  @Test
+  def testRescanRevertedByRollback(): Unit = {
+    val walletBoxStorage = new SidechainWalletBoxStorage(getStorage(), sidechainBoxesCompanion)
+    val forgingBoxesInfoStorage = new ForgingBoxesInfoStorage(getStorage())
+    val mockedWalletTransactionStorage: SidechainWalletTransactionStorage = mock[SidechainWalletTransactionStorage]
+    Mockito.when(mockedWalletTransactionStorage.rollback(ArgumentMatchers.any[ByteArrayWrapper]()))
+      .thenReturn(Success(mockedWalletTransactionStorage))
+    val mockedState: SidechainState = mock[SidechainState]
+
+    val sidechainWallet = new SidechainWallet("seed".getBytes,
+      walletBoxStorage,
+      mock[SidechainSecretStorage],
+      mockedWalletTransactionStorage,
+      forgingBoxesInfoStorage,
+      mock[ApplicationWallet])
+
+    // Two blocks applied to the wallet
+    val blockVersions = Seq(getVersion, getVersion)
+    blockVersions.foreach(version => {
+      walletBoxStorage.update(version, List(), List()).get
+      forgingBoxesInfoStorage.updateForgerBoxes(version, Seq(), Seq()).get
+    })
+
+    // Rescan on top of the last block finds the boxes of the imported keys
+    val importedSecrets = getPrivateKey25519List(2).asScala
+    val importedPropositions: Set[SidechainTypes#SCP] = importedSecrets.map(_.publicImage().asInstanceOf[SidechainTypes#SCP]).toSet
+    val importedBoxes = getRegularBoxList(importedSecrets.asJava).asScala.map(_.asInstanceOf[SidechainTypes#SCB])
+    Mockito.when(mockedState.version).thenReturn(scorex.core.bytesToVersion(blockVersions.last.data))
+    Mockito.when(mockedState.closedBox(ArgumentMatchers.any[Array[Byte]]()))
+      .thenAnswer(answer => importedBoxes.find(box => util.Arrays.equals(box.id(), answer.getArgument(0).asInstanceOf[Array[Byte]])))
+
+    sidechainWallet.applyRescanChunk(mockedState, importedPropositions, importedBoxes, 1000L, new WalletRescanProgress()).get
+    assertEquals("Rescan expected to add the boxes.", importedBoxes.size, walletBoxStorage.getAll.size)
+    val rescanVersions = sidechainWallet.rescanVersions
+    assertFalse("Rescan versions expected to be known.", rescanVersions.isEmpty)
+
+    // Test 1: rollback to the current block keeps the rescan results
+    assertTrue("Rollback expected to be successful.", sidechainWallet.rollback(scorex.core.bytesToVersion(blockVersions.last.data)).isSuccess)
+    assertEquals("Rescan results expected to be kept.", importedBoxes.size, walletBoxStorage.getAll.size)
+    assertEquals("Rescan versions expected to be kept.", rescanVersions, sidechainWallet.rescanVersions)
+
+    // Test 2: rollback of one block reverts the rescan results, that is reported by the missed rescan versions
+    assertTrue("Rollback expected to be successful.", sidechainWallet.rollback(scorex.core.bytesToVersion(blockVersions.head.data)).isSuccess)
+    assertTrue("Rescan results expected to be reverted.", walletBoxStorage.getAll.isEmpty)
+    assertFalse("Reverted rescan versions expected to be missed.", rescanVersions.subsetOf(sidechainWallet.rescanVersions))
+
+    // Test 3: rescan done again restores the boxes still present in the State
+    Mockito.when(mockedState.version).thenReturn(scorex.core.bytesToVersion(blockVersions.head.data))
+    sidechainWallet.applyRescanChunk(mockedState, importedPropositions, importedBoxes, 1000L, new WalletRescanProgress()).get
+    assertEquals("Rescan expected to restore the boxes.", importedBoxes.size, walletBoxStorage.getAll.size)
+  }
+
   @Test
   def testScanPersistentIntegration() : Unit = {
     val mockedBlock : SidechainBlock = mock[SidechainBlock]
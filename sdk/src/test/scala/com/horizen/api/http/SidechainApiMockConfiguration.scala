@@ -1,7 +1,7 @@
 package com.horizen.api.http
 
 import com.horizen.consensus.ConsensusEpochAndSlot
-import com.horizen.forge.ForgingInfo
+import com.horizen.forge.{ForgingInfo, ForgingSlotEligibility}
 import scorex.util.ModifierId
 
 import scala.collection.mutable
@@ -18,6 +18,7 @@ class SidechainApiMockConfiguration {
   var should_blockActor_StopForging_reply: Boolean = true
   var should_blockActor_StartForging_reply: Boolean = true
   var should_blockActor_ForgingInfo_reply: Try[ForgingInfo] = Failure(new NullPointerException)
+  var should_blockActor_ForgingSchedule_reply: Try[Seq[ForgingSlotEligibility]] = Failure(new NullPointerException)
 
   val blockActor_ForgingEpochAndSlot_reply: mutable.Map[ConsensusEpochAndSlot, Try[ModifierId]] = mutable.Map[ConsensusEpochAndSlot, Try[ModifierId]]()
   private var should_peerManager_GetAllPeers_reply: Boolean = true
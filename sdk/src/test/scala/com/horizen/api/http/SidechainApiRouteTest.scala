@@ -115,6 +115,11 @@ abstract class SidechainApiRouteTest extends WordSpec with Matchers with Scalate
           if (sidechainApiMockConfiguration.getShould_nodeViewHolder_LocallyGeneratedSecret_reply())
             sender ! Success()
           else sender ! Failure(new Exception("Secret not added."))
+        case LocallyGeneratedSecrets(_) =>
+          if (sidechainApiMockConfiguration.getShould_nodeViewHolder_LocallyGeneratedSecret_reply())
+            sender ! Success()
+          else sender ! Failure(new Exception("Secrets not added."))
+        case RescanWallet(_) =>
       }
       TestActor.KeepRunning
     }
@@ -193,6 +198,10 @@ abstract class SidechainApiRouteTest extends WordSpec with Matchers with Scalate
         case Forger.ReceivableMessages.GetForgingInfo => {
           sender ! sidechainApiMockConfiguration.should_blockActor_ForgingInfo_reply
         }
+
+        case Forger.ReceivableMessages.GetForgingSchedule(_) => {
+          sender ! sidechainApiMockConfiguration.should_blockActor_ForgingSchedule_reply
+        }
       }
       TestActor.KeepRunning
     }
@@ -235,7 +244,7 @@ abstract class SidechainApiRouteTest extends WordSpec with Matchers with Scalate
   val params = MainNetParams()
   val sidechainTransactionApiRoute: Route = SidechainTransactionApiRoute(mockedRESTSettings, mockedSidechainNodeViewHolderRef, mockedSidechainTransactioActorRef,
     sidechainTransactionsCompanion, sidechainCoreTransactionFactory, params).route
-  val sidechainWalletApiRoute: Route = SidechainWalletApiRoute(mockedRESTSettings, mockedSidechainNodeViewHolderRef).route
+  val sidechainWalletApiRoute: Route = SidechainWalletApiRoute(mockedRESTSettings, mockedSidechainNodeViewHolderRef, getDefaultSecretCompanion).route
   val sidechainNodeApiRoute: Route = SidechainNodeApiRoute(mockedPeerManagerRef, mockedNetworkControllerRef, mockedTimeProvider, mockedRESTSettings, mockedSidechainNodeViewHolderRef).route
   val sidechainBlockApiRoute: Route = SidechainBlockApiRoute(mockedRESTSettings, mockedSidechainNodeViewHolderRef, mockedsidechainBlockActorRef, mockedSidechainBlockForgerActorRef).route
   val mainchainBlockApiRoute: Route = MainchainBlockApiRoute(mockedRESTSettings, mockedSidechainNodeViewHolderRef).route
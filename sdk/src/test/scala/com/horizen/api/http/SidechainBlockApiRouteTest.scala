@@ -7,6 +7,7 @@ import com.horizen.api.http.SidechainBlockRestSchema._
 import com.horizen.consensus.{ConsensusEpochAndSlot, intToConsensusEpochNumber, intToConsensusSlotNumber}
 import com.horizen.forge
 import com.horizen.serialization.SerializationUtil
+import com.horizen.utils.BytesUtils
 import org.junit.Assert._
 import scorex.util.bytesToId
 
@@ -60,6 +61,14 @@ class SidechainBlockApiRouteTest extends SidechainApiRouteTest {
         status.intValue() shouldBe StatusCodes.BadRequest.intValue
         responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
       }
+
+      Post(basePath + "forgingSchedule").withEntity(s"{\"slotsNumber\": ${forge.Forger.maxForgingScheduleSlots + 1}}") ~> sidechainBlockApiRoute ~> check {
+        rejection.getClass.getCanonicalName.contains(MalformedRequestContentRejection.getClass.getCanonicalName.toString)
+      }
+      Post(basePath + "forgingSchedule").withEntity(s"{\"slotsNumber\": ${forge.Forger.maxForgingScheduleSlots + 1}}") ~> Route.seal(sidechainBlockApiRoute) ~> check {
+        status.intValue() shouldBe StatusCodes.BadRequest.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+      }
     }
 
     "reply at /findById" in {
@@ -311,5 +320,36 @@ class SidechainBlockApiRouteTest extends SidechainApiRouteTest {
         assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorGetForgingInfo("", None).code)
       }
     }
+
+    "Successfully reply at /forgingSchedule" in {
+      val expectedEpochAndSlot = ConsensusEpochAndSlot(intToConsensusEpochNumber(5), intToConsensusSlotNumber(7))
+      val expectedForgerBoxId = BytesUtils.fromHexString("aa" * 32)
+      val expectedForgerBoxValue = 1000L
+
+      sidechainApiMockConfiguration.should_blockActor_ForgingSchedule_reply =
+        Success(Seq(forge.ForgingSlotEligibility(expectedEpochAndSlot, expectedForgerBoxId, expectedForgerBoxValue)))
+
+      Post(basePath + "forgingSchedule").withEntity("{\"slotsNumber\": 5}") ~> sidechainBlockApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        val eligibleSlots = mapper.readTree(entityAs[String]).get("result").get("eligibleSlots")
+        assertEquals(1, eligibleSlots.size())
+        val slot = eligibleSlots.get(0)
+        assertEquals(expectedEpochAndSlot.epochNumber, slot.get("epochNumber").asInt())
+        assertEquals(expectedEpochAndSlot.slotNumber, slot.get("slotNumber").asInt())
+        assertEquals(BytesUtils.toHexString(expectedForgerBoxId), slot.get("forgerBoxId").asText())
+        assertEquals(expectedForgerBoxValue, slot.get("forgerBoxValue").asLong())
+      }
+    }
+
+    "Failed reply at /forgingSchedule" in {
+      sidechainApiMockConfiguration.should_blockActor_ForgingSchedule_reply = Failure(new IllegalStateException)
+
+      Post(basePath + "forgingSchedule").withEntity("{}") ~> sidechainBlockApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorGetForgingSchedule("", None).code)
+      }
+    }
   }
-}
\ No newline at end of file
+}
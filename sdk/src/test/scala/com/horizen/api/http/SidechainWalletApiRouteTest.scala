@@ -2,8 +2,9 @@ package com.horizen.api.http
 
 import akka.http.scaladsl.model.{ContentTypes, HttpMethods, StatusCodes}
 import akka.http.scaladsl.server.{MalformedRequestContentRejection, MethodRejection, Route}
-import com.horizen.api.http.SidechainWalletErrorResponse.ErrorSecretNotAdded
+import com.horizen.api.http.SidechainWalletErrorResponse.{ErrorRescanInProgress, ErrorRescanNotFound, ErrorSecretDerivation, ErrorSecretNotAdded, ErrorSecretParsing}
 import com.horizen.api.http.SidechainWalletRestScheme._
+import com.horizen.secret.PrivateKey25519Creator
 import com.horizen.serialization.SerializationUtil
 import com.horizen.utils.BytesUtils
 import org.junit.Assert._
@@ -176,6 +177,138 @@ class SidechainWalletApiRouteTest extends SidechainApiRouteTest {
       }
     }
 
+    "reply at /importSecrets" in {
+      val secretsHex = Seq("seed1", "seed2", "seed3").map(seed =>
+        BytesUtils.toHexString(getDefaultSecretCompanion.toBytes(PrivateKey25519Creator.getInstance().generateSecret(seed.getBytes))))
+
+      // secrets are added
+      sidechainApiMockConfiguration.setShould_nodeViewHolder_LocallyGeneratedSecret_reply(true)
+      Post(basePath + "importSecrets")
+        .withEntity(SerializationUtil.serialize(ReqImportSecrets(secretsHex))) ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        mapper.readTree(entityAs[String]).get("result") match {
+          case result =>
+            assertEquals(1, result.findValues("propositions").size())
+            result.get("propositions") match {
+              case node =>
+                assertTrue(node.isArray)
+                assertEquals(secretsHex.size, node.findValues("publicKey").size())
+              case _ => fail("Result serialization failed")
+            }
+          case _ => fail("Serialization failed for object SidechainApiResponseBody")
+        }
+      }
+      // secrets are not added
+      sidechainApiMockConfiguration.setShould_nodeViewHolder_LocallyGeneratedSecret_reply(false)
+      Post(basePath + "importSecrets")
+        .withEntity(SerializationUtil.serialize(ReqImportSecrets(secretsHex))) ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorSecretNotAdded("", None).code)
+      }
+      // secrets can't be parsed
+      Post(basePath + "importSecrets")
+        .withEntity(SerializationUtil.serialize(ReqImportSecrets(Seq("abcd")))) ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorSecretParsing("", None).code)
+      }
+    }
+
+    "reply at /deriveSecrets" in {
+      // secrets are derived and added
+      sidechainApiMockConfiguration.setShould_nodeViewHolder_LocallyGeneratedSecret_reply(true)
+      Post(basePath + "deriveSecrets")
+        .withEntity(SerializationUtil.serialize(ReqDeriveSecrets(None, Some(5), 3))) ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        mapper.readTree(entityAs[String]).get("result") match {
+          case result =>
+            assertEquals(1, result.findValues("propositions").size())
+            result.get("propositions") match {
+              case node =>
+                assertTrue(node.isArray)
+                assertEquals(3, node.findValues("publicKey").size())
+              case _ => fail("Result serialization failed")
+            }
+          case _ => fail("Serialization failed for object SidechainApiResponseBody")
+        }
+      }
+      // secrets are not added
+      sidechainApiMockConfiguration.setShould_nodeViewHolder_LocallyGeneratedSecret_reply(false)
+      Post(basePath + "deriveSecrets")
+        .withEntity(SerializationUtil.serialize(ReqDeriveSecrets(Some("PrivateKey25519"), None, 3))) ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorSecretNotAdded("", None).code)
+      }
+      // unsupported secret type
+      Post(basePath + "deriveSecrets")
+        .withEntity(SerializationUtil.serialize(ReqDeriveSecrets(Some("a_secret_type"), None, 3))) ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorSecretDerivation("", None).code)
+      }
+      // invalid number of secrets
+      Post(basePath + "deriveSecrets")
+        .withEntity(SerializationUtil.serialize(ReqDeriveSecrets(None, None, 0))) ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorSecretDerivation("", None).code)
+      }
+    }
+
+    "reply at /rescan, /rescanStatus and /cancelRescan" in {
+      // rescan was not started yet
+      Post(basePath + "rescanStatus") ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorRescanNotFound("", None).code)
+      }
+      Post(basePath + "cancelRescan") ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorRescanNotFound("", None).code)
+      }
+      // rescan is started
+      Post(basePath + "rescan") ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        mapper.readTree(entityAs[String]).get("result") match {
+          case result =>
+            assertFalse(result.get("cancelled").asBoolean())
+            assertFalse(result.get("finished").asBoolean())
+          case _ => fail("Serialization failed for object SidechainApiResponseBody")
+        }
+      }
+      // rescan is still in progress
+      Post(basePath + "rescan") ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        assertsOnSidechainErrorResponseSchema(entityAs[String], ErrorRescanInProgress("", None).code)
+      }
+      // rescan is cancelled
+      Post(basePath + "cancelRescan") ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        mapper.readTree(entityAs[String]).get("result") match {
+          case result => assertTrue(result.get("cancelled").asBoolean())
+          case _ => fail("Serialization failed for object SidechainApiResponseBody")
+        }
+      }
+      Post(basePath + "rescanStatus") ~> sidechainWalletApiRoute ~> check {
+        status.intValue() shouldBe StatusCodes.OK.intValue
+        responseEntity.getContentType() shouldEqual ContentTypes.`application/json`
+        mapper.readTree(entityAs[String]).get("result") match {
+          case result =>
+            assertEquals(1, result.findValues("processedChunks").size())
+            assertTrue(result.get("cancelled").asBoolean())
+          case _ => fail("Serialization failed for object SidechainApiResponseBody")
+        }
+      }
+    }
+
     "reply at /allPublicKeys" in {
       Post(basePath + "allPublicKeys") ~> sidechainWalletApiRoute ~> check {
         status.intValue() shouldBe StatusCodes.OK.intValue
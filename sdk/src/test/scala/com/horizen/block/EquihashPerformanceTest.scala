@@ -0,0 +1,40 @@
+package com.horizen.block
+
+import com.horizen.utils.BytesUtils
+import org.junit.Assert.assertEquals
+import org.scalatest.junit.JUnitSuite
+
+import scala.io.Source
+
+class EquihashPerformanceTest extends JUnitSuite {
+  private val warmUpIterations = 200
+  private val measureIterations = 1000
+
+  private val equihash = new Equihash(200, 9)
+
+  // MainNet headers msg bytes and solutions.
+  private val headers: Seq[(Array[Byte], Array[Byte])] =
+    Seq("mcblock473173_mainnet", "mcblock473174_mainnet", "mcblock473175_mainnet", "mcblock473176_mainnet").map(blockName => {
+      val header = MainchainHeader.create(BytesUtils.fromHexString(Source.fromResource(blockName).getLines().next()), 0).get
+      (header.mainchainHeaderBytes.take(MainchainHeader.HEADER_MIN_SIZE), header.solution)
+    })
+
+  private def measure(name: String, check: (Array[Byte], Array[Byte]) => Boolean): Unit = {
+    for (_ <- 0 until warmUpIterations; (msgBytes, solution) <- headers)
+      assertEquals("Solution expected to be valid.", true, check(msgBytes, solution))
+
+    val start = System.nanoTime()
+    for (_ <- 0 until measureIterations; (msgBytes, solution) <- headers)
+      check(msgBytes, solution)
+    val timeInMs = (System.nanoTime() - start).toDouble / 1000000
+    val checksNumber = measureIterations * headers.size
+
+    println(f"$name: $checksNumber solutions checked in $timeInMs%.3f ms\t${timeInMs * 1000 / checksNumber}%.1f us per solution")
+  }
+
+  //@Test
+  def runMeasures(): Unit = {
+    measure("Blake2bDigest based check", (msgBytes, solution) => equihash.checkEquihashSolution(equihash.baseDigest(msgBytes), solution))
+    measure("Optimized check", (msgBytes, solution) => equihash.checkEquihashSolution(msgBytes, solution))
+  }
+}
@@ -10,6 +10,8 @@ import org.junit.Assert.assertArrayEquals
 import org.junit.Test
 import org.scalatest.junit.JUnitSuite
 
+import scala.io.Source
+
 class EquihashTest extends JUnitSuite {
 
   @Test
@@ -358,4 +360,66 @@ class EquihashTest extends JUnitSuite {
     solution = Equihash.getMinimalFromIndices(indices, biLen)
     assertEquals("Solution expected to be Invalid.", false, equihash.checkEquihashSolution(wrongDigest, solution))
   }
+
+  @Test
+  def EquihashTest_OptimizedCheckEquihashSolution(): Unit = {
+    // Test 1: test vectors solutions checked by msg bytes expected to give the same results as the ones checked by digest.
+    val N: Int = 96
+    val K: Int = 5
+    val biLen: Int = N / (K + 1)
+    val msg: Array[Byte] = "Equihash is an asymmetric PoW based on the Generalised Birthday problem.".getBytes("utf-8")
+    val nonce: Array[Byte] = new Array[Byte](32)
+    nonce(0) = 1
+    val msgBytes: Array[Byte] = Bytes.concat(msg, nonce)
+    val equihash: Equihash = new Equihash(N, K)
+
+    val validIndices: Array[Int] = Array(2261, 15185, 36112, 104243, 23779, 118390, 118332, 130041, 32642, 69878,
+      76925, 80080, 45858, 116805, 92842, 111026, 15972, 115059, 85191, 90330, 68190, 122819,
+      81830, 91132, 23460, 49807, 52426, 80391, 69567, 114474, 104973, 122568)
+    val indicesList: Seq[Array[Int]] = Seq(
+      validIndices,
+      validIndices.updated(0, 2262),
+      validIndices.updated(0, 45858).updated(12, 2261),
+      validIndices.updated(0, 15185).updated(1, 2261),
+      validIndices.slice(2, 4) ++ validIndices.slice(0, 2) ++ validIndices.drop(4),
+      validIndices.take(28) ++ validIndices.slice(30, 32) ++ validIndices.slice(28, 30),
+      validIndices.drop(16) ++ validIndices.take(16),
+      validIndices.sorted,
+      validIndices.take(16).flatMap(index => Array(index, index)),
+      validIndices.take(16) ++ validIndices.take(16)
+    )
+
+    indicesList.foreach(indices => {
+      val solution: Array[Byte] = Equihash.getMinimalFromIndices(indices, biLen)
+      assertEquals("Solution [%s] check result expected to be the same.".format(indices.mkString(", ")),
+        equihash.checkEquihashSolution(equihash.baseDigest(msgBytes), solution), equihash.checkEquihashSolution(msgBytes, solution))
+    })
+    assertEquals("Solution expected to be Valid.", true,
+      equihash.checkEquihashSolution(msgBytes, Equihash.getMinimalFromIndices(validIndices, biLen)))
+    assertEquals("Solution with nonce missed expected to be Invalid.", false,
+      equihash.checkEquihashSolution(msg, Equihash.getMinimalFromIndices(validIndices, biLen)))
+
+
+    // Test 2: real MainNet headers and their modifications.
+    val mainnetEquihash: Equihash = new Equihash(200, 9)
+    for (blockName <- Seq("mcblock473173_mainnet", "mcblock473174_mainnet", "mcblock473175_mainnet", "mcblock473176_mainnet")) {
+      val header: MainchainHeader = MainchainHeader.create(BytesUtils.fromHexString(Source.fromResource(blockName).getLines().next()), 0).get
+      val headerMsg: Array[Byte] = header.mainchainHeaderBytes.take(MainchainHeader.HEADER_MIN_SIZE)
+
+      assertEquals("Header %s solution expected to be Valid.".format(blockName), true,
+        mainnetEquihash.checkEquihashSolution(headerMsg, header.solution))
+
+      val modifiedSolution: Array[Byte] = header.solution.clone()
+      modifiedSolution(100) = (modifiedSolution(100) ^ 1).toByte
+      val modifiedMsg: Array[Byte] = headerMsg.clone()
+      modifiedMsg(0) = (modifiedMsg(0) ^ 1).toByte
+      for ((msgBytes, solution) <- Seq((headerMsg, modifiedSolution), (modifiedMsg, header.solution))) {
+        assertEquals("Header %s modification check result expected to be the same.".format(blockName),
+          mainnetEquihash.checkEquihashSolution(mainnetEquihash.baseDigest(msgBytes), solution),
+          mainnetEquihash.checkEquihashSolution(msgBytes, solution))
+        assertEquals("Header %s modification expected to be Invalid.".format(blockName), false,
+          mainnetEquihash.checkEquihashSolution(msgBytes, solution))
+      }
+    }
+  }
 }
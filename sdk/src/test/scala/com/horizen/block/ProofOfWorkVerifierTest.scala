@@ -17,6 +17,7 @@ import scorex.core.block.Block.Timestamp
 import scorex.util.ModifierId
 
 import scala.collection.mutable.ListBuffer
+import scala.io.Source
 
 class ProofOfWorkVerifierTest extends JUnitSuite with MainchainHeaderFixture with MockitoSugar {
 
@@ -180,9 +181,9 @@ class ProofOfWorkVerifierTest extends JUnitSuite with MainchainHeaderFixture wit
 
     // mock History methods used in test
     val storage = mock[SidechainHistoryStorage]
-    Mockito.when(storage.blockById(ArgumentMatchers.any[ModifierId]()))
+    Mockito.when(storage.ommerById(ArgumentMatchers.any[ModifierId]()))
       .thenAnswer(answer => {
-        Some(scblocks.filter(block => block.id.equals(answer.getArgument(0))).head)
+        Some(Ommer.toOmmer(scblocks.filter(block => block.id.equals(answer.getArgument(0))).head))
       })
 
     // MainNetParams with Test genesis data
@@ -349,6 +350,61 @@ class ProofOfWorkVerifierTest extends JUnitSuite with MainchainHeaderFixture wit
     block = createSCBlockForPowTest(scblocks.last.id, powRelatedDataList(27).mcblockhash, Seq(powRelatedDataList(28), powRelatedDataList(29), powRelatedDataList(30)), ommers)
     assertFalse("SC block with invalid Ommers expected to have valid PoW Target.",
       ProofOfWorkVerifier.checkNextWorkRequired(block, storage, params))
+
+
+    // Test 9: Check consecutive SCBlocks using the rolling PoW window without history walking
+    val firstBlock = createSCBlockForPowTest(scblocks.last.id, powRelatedDataList(27).mcblockhash, Seq(powRelatedDataList(28)))
+    val initialWindowOpt = ProofOfWorkVerifier.getPowTimeBitsWindow(firstBlock, storage, params)
+    assertTrue("PoW window expected to be collected.", initialWindowOpt.isDefined)
+    assertEquals("PoW window expected to have different size.", params.nPowAveragingWindow + params.nMedianTimeSpan, initialWindowOpt.get.timeBitsData.size)
+    assertTrue("PoW window last header expected to be known.",
+      initialWindowOpt.get.lastHeaderHashOpt.exists(_.sameElements(BytesUtils.fromHexString(powRelatedDataList(27).mcblockhash))))
+
+    val firstBlockWindowOpt = ProofOfWorkVerifier.checkNextWorkRequired(firstBlock, initialWindowOpt.get, params)
+    assertTrue("SC block with 1 valid MainchainHeader expected to have valid PoW Target.", firstBlockWindowOpt.isDefined)
+
+    // SCBlock without MainchainHeaders keeps the window
+    val emptyBlock = createSCBlockForPowTest(firstBlock.id, "", Seq())
+    assertEquals("SC block without MainchainHeaders expected to keep the PoW window.",
+      firstBlockWindowOpt, ProofOfWorkVerifier.checkNextWorkRequired(emptyBlock, firstBlockWindowOpt.get, params))
+
+    val secondBlock = createSCBlockForPowTest(emptyBlock.id, powRelatedDataList(28).mcblockhash, Seq(powRelatedDataList(29), powRelatedDataList(30)))
+    assertTrue("Next SC block with 2 valid MainchainHeaders expected to have valid PoW Target.",
+      ProofOfWorkVerifier.checkNextWorkRequired(secondBlock, firstBlockWindowOpt.get, params).isDefined)
+
+    // Same result as for 2 MainchainHeaders more in the single block
+    val thirdBlock = createSCBlockForPowTest(scblocks.last.id, powRelatedDataList(27).mcblockhash, Seq(powRelatedDataList(28), powRelatedDataList(29), powRelatedDataList(30)))
+    assertEquals("PoW windows expected to be equal.",
+      ProofOfWorkVerifier.checkNextWorkRequired(secondBlock, firstBlockWindowOpt.get, params).map(window => (window.timeBitsData, window.bitsTotal)),
+      ProofOfWorkVerifier.checkNextWorkRequired(thirdBlock, initialWindowOpt.get, params).map(window => (window.timeBitsData, window.bitsTotal)))
+
+    // Next SCBlock MainchainHeader doesn't follow the last MainchainHeader of the window
+    val notFollowingBlock = createSCBlockForPowTest(firstBlock.id, powRelatedDataList(27).mcblockhash, Seq(powRelatedDataList(29)))
+    assertTrue("SC block with MainchainHeader that doesn't follow last MainchainHeader in the window expected to have invalid PoW Target.",
+      ProofOfWorkVerifier.checkNextWorkRequired(notFollowingBlock, firstBlockWindowOpt.get, params).isEmpty)
+
+    // Next SCBlock MainchainHeader with invalid target(bits)
+    val invalidBitsBlock = createSCBlockForPowTest(firstBlock.id, powRelatedDataList(28).mcblockhash, Seq(powRelatedDataList(29).copy(bits = 0x1c111ca1)))
+    assertTrue("SC block, that contains 1 MainchainHeader with invalid target(bits), expected to have invalid PoW Target.",
+      ProofOfWorkVerifier.checkNextWorkRequired(invalidBitsBlock, firstBlockWindowOpt.get, params).isEmpty)
+  }
+
+  @Test
+  def headersSemanticValidity(): Unit = {
+    val headers: Seq[MainchainHeader] = Seq("mcblock473173_mainnet", "mcblock473174_mainnet", "mcblock473175_mainnet", "mcblock473176_mainnet")
+      .map(blockName => MainchainHeader.create(BytesUtils.fromHexString(Source.fromResource(blockName).getLines().next()), 0).get)
+
+    // Test 1: all headers are valid
+    assertTrue("All MainchainHeaders expected to be valid.",
+      ProofOfWorkVerifier.headersSemanticValidity(headers, params).forall(_.isSuccess))
+
+    // Test 2: results are in the order of the headers
+    val invalidHeaderBytes: Array[Byte] = headers(2).mainchainHeaderBytes.clone()
+    invalidHeaderBytes(10) = (invalidHeaderBytes(10) ^ 1).toByte
+    val invalidHeader = MainchainHeader.create(invalidHeaderBytes, 0).get
+    val results = ProofOfWorkVerifier.headersSemanticValidity(headers.updated(2, invalidHeader), params)
+    assertEquals("Results number expected to be equal to headers number.", headers.size, results.size)
+    assertEquals("Only the modified MainchainHeader expected to be invalid.", Seq(true, true, false, true), results.map(_.isSuccess))
   }
 
   private def createSCBlockForPowTest(prevSCBlockId: String,
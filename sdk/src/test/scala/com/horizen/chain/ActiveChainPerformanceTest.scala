@@ -0,0 +1,70 @@
+package com.horizen.chain
+
+import com.horizen.utils.WithdrawalEpochInfo
+import com.horizen.vrf.VrfOutput
+import org.junit.Assert.assertEquals
+import org.scalatest.junit.JUnitSuite
+import scorex.core.consensus.ModifierSemanticValidity
+import scorex.util.{ModifierId, bytesToId}
+
+import scala.util.Random
+
+class ActiveChainPerformanceTest extends JUnitSuite {
+  private val mainchainCreationBlockHeight = 1000
+  private val lookupsNumber = 1000000
+
+  private val rnd = new Random(42L)
+
+  private def randomBytes(length: Int): Array[Byte] = {
+    val bytes = new Array[Byte](length)
+    rnd.nextBytes(bytes)
+    bytes
+  }
+
+  private def usedMemory(): Long = {
+    val runtime = Runtime.getRuntime
+    (0 until 3).foreach(_ => System.gc())
+    runtime.totalMemory() - runtime.freeMemory()
+  }
+
+  // Each block contains one MainchainHeader and MainchainBlockReferenceData.
+  private def measure(blocksNumber: Int): Unit = {
+    val memoryBefore = usedMemory()
+    val start = System.nanoTime()
+
+    val chain = ActiveChain(mainchainCreationBlockHeight)
+    var parentId: ModifierId = bytesToId(randomBytes(32))
+    var mainchainParent: MainchainHeaderHash = byteArrayToMainchainHeaderHash(randomBytes(32))
+    val sampleIds = new Array[ModifierId](lookupsNumber)
+
+    for (height <- 1 to blocksNumber) {
+      val id = bytesToId(randomBytes(32))
+      val mainchainHash = byteArrayToMainchainHeaderHash(randomBytes(32))
+      val info = SidechainBlockInfo(height, height, parentId, height, ModifierSemanticValidity.Valid,
+        Seq(mainchainHash), Seq(mainchainHash), WithdrawalEpochInfo(height / 100, height % 100), Some(new VrfOutput(randomBytes(32))), parentId)
+      chain.setBestBlock(id, info, Some(mainchainParent))
+      sampleIds(height % lookupsNumber) = id
+      parentId = id
+      mainchainParent = mainchainHash
+    }
+    val fillTimeInMs = (System.nanoTime() - start).toDouble / 1000000
+
+    val memoryAfter = usedMemory()
+
+    val lookupStart = System.nanoTime()
+    sampleIds.foreach(id => chain.blockInfoById(id).get)
+    val lookupTimeInMs = (System.nanoTime() - lookupStart).toDouble / 1000000
+
+    assertEquals("Active chain height is wrong", blocksNumber, chain.height)
+    println(f"$blocksNumber blocks: filled in $fillTimeInMs%.0f ms, heap used ${(memoryAfter - memoryBefore) / (1024 * 1024)} MB, " +
+      f"allocated ${chain.allocatedBytes / (1024 * 1024)} MB (${chain.allocatedBytes / blocksNumber} bytes per block), " +
+      f"$lookupsNumber block info lookups by id in $lookupTimeInMs%.0f ms")
+  }
+
+  //@Test
+  def runMeasures(): Unit = {
+    // Run with enough heap, e.g. -Xmx4g
+    measure(1000000)
+    measure(10000000)
+  }
+}
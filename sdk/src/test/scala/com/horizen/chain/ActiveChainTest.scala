@@ -317,6 +317,17 @@ class ActiveChainTest extends JUnitSuite with SidechainBlockInfoFixture {
     chainAfter = chain.chainAfter(blockInfoData.last._1)
     assertEquals("ActiveChain chainAfter expected to return chain with size 1 for tip modifier", 1, chainAfter.size)
     assertEquals("ActiveChain chainAfter item at index 0 is different", blockInfoData.last._1, chainAfter.head)
+
+
+    val limit = 2
+    chainAfter = chain.chainAfter(blockInfoData(startingIndex)._1, limit)
+    assertEquals("ActiveChain chainAfter expected to return given modifier and limited number of modifiers after it",
+      limit + 1, chainAfter.size)
+    for(i <- chainAfter.indices)
+      assertEquals("ActiveChain limited chainAfter item at index %d is different".format(i), blockInfoData(i + startingIndex)._1, chainAfter(i))
+
+    chainAfter = chain.chainAfter(blockInfoData(chainHeight - 2)._1, limit)
+    assertEquals("ActiveChain chainAfter expected to be clipped by the chain height", 2, chainAfter.size)
   }
 
 
@@ -0,0 +1,53 @@
+package com.horizen.chain
+
+import org.junit.Assert.{assertEquals, assertFalse, assertTrue}
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+import scorex.util.{ModifierId, bytesToId}
+
+import scala.util.Random
+
+class BlockTreeIndexTest extends JUnitSuite {
+  private val rnd = new Random(42L)
+
+  private def generateId(): ModifierId = {
+    val id = new Array[Byte](32)
+    rnd.nextBytes(id)
+    bytesToId(id)
+  }
+
+  @Test
+  def addAndEvict(): Unit = {
+    val tree = new BlockTreeIndex()
+    val genesisId = generateId()
+    tree.add(genesisId, BlockTreeNode(generateId(), 1, 1))
+
+    // Active chain of 10 blocks and a fork from the block at height 5
+    val chainIds = (2 to 10).scanLeft(genesisId)((parentId, height) => {
+      val id = generateId()
+      tree.add(id, BlockTreeNode(parentId, height, height))
+      id
+    })
+    val forkIds = (6 to 8).scanLeft(chainIds(4))((parentId, height) => {
+      val id = generateId()
+      tree.add(id, BlockTreeNode(parentId, height, height + 100))
+      id
+    }).tail
+
+    assertEquals("Tree size is wrong", chainIds.size + forkIds.size, tree.size)
+    assertEquals("Fork block parent is wrong", Some(chainIds(4)), tree.get(forkIds.head).map(_.parentId))
+    assertEquals("Fork block score is wrong", Some(108L), tree.get(forkIds.last).map(_.score))
+
+    // Duplicates are ignored
+    tree.add(forkIds.head, BlockTreeNode(genesisId, 42, 42))
+    assertEquals("Duplicate block expected to be ignored", Some(6), tree.get(forkIds.head).map(_.height))
+    assertEquals("Tree size is wrong after duplicate add", chainIds.size + forkIds.size, tree.size)
+
+    tree.evictBelow(7)
+    chainIds.take(6).foreach(id => assertFalse("Block below the height expected to be evicted", tree.contains(id)))
+    assertFalse("Fork block below the height expected to be evicted", tree.contains(forkIds.head))
+    chainIds.drop(6).foreach(id => assertTrue("Block above the height expected to be present", tree.contains(id)))
+    forkIds.tail.foreach(id => assertTrue("Fork block above the height expected to be present", tree.contains(id)))
+    assertEquals("Tree size after evict is wrong", 4 + 2, tree.size)
+  }
+}
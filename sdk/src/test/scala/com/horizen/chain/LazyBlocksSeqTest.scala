@@ -0,0 +1,48 @@
+package com.horizen.chain
+
+import com.horizen.block.SidechainBlock
+import org.junit.Assert.{assertEquals, assertTrue}
+import org.junit.Test
+import org.mockito.Mockito
+import org.scalatest.junit.JUnitSuite
+import scorex.util.{ModifierId, bytesToId}
+
+import scala.collection.mutable
+import scala.util.{Random, Try}
+
+class LazyBlocksSeqTest extends JUnitSuite {
+  private val rnd = new Random(42L)
+
+  private def generateId(): ModifierId = {
+    val id = new Array[Byte](32)
+    rnd.nextBytes(id)
+    bytesToId(id)
+  }
+
+  @Test
+  def loadOnTraversal(): Unit = {
+    val blocks: Map[ModifierId, SidechainBlock] = (1 to 5).map(_ => generateId() -> Mockito.mock(classOf[SidechainBlock])).toMap
+    val ids = blocks.keys.toIndexedSeq
+
+    val loadedIds = mutable.ListBuffer[ModifierId]()
+    val seq = new LazyBlocksSeq(ids, id => {
+      loadedIds += id
+      blocks.get(id)
+    })
+
+    assertEquals("Size is wrong", ids.size, seq.size)
+    assertTrue("Seq expected to be not empty", seq.nonEmpty)
+    assertTrue("No blocks expected to be loaded to get the size", loadedIds.isEmpty)
+
+    assertEquals("Different blocks expected", ids.map(blocks), seq.toList)
+    assertEquals("Every block expected to be loaded exactly once", ids, loadedIds)
+
+    loadedIds.clear()
+    val prefix = seq.takeWhileId(id => !id.equals(ids(3)))
+    assertEquals("Prefix ids are wrong", ids.take(3), prefix.ids)
+    assertTrue("No blocks expected to be loaded to take the prefix", loadedIds.isEmpty)
+
+    val missed = new LazyBlocksSeq(ids :+ generateId(), blocks.get)
+    assertTrue("Missed block expected to be reported on traversal", Try(missed.toList).isFailure)
+  }
+}
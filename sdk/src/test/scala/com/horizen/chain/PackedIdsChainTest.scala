@@ -0,0 +1,72 @@
+package com.horizen.chain
+
+import org.junit.Assert.{assertArrayEquals, assertEquals, assertFalse, assertTrue}
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+
+import scala.util.{Random, Try}
+
+class PackedIdsChainTest extends JUnitSuite {
+  private val idLength = 32
+
+  private def generateIds(count: Int, seed: Long): Seq[Array[Byte]] = {
+    val rnd = new Random(seed)
+    (0 until count).map(_ => {
+      val id = new Array[Byte](idLength)
+      rnd.nextBytes(id)
+      id
+    })
+  }
+
+  private def checkIdsArePresent(chain: PackedIdsChain, ids: Seq[Array[Byte]]): Unit = {
+    ids.zipWithIndex.foreach {
+      case (id, index) =>
+        assertTrue("Id expected to be present", chain.contains(id))
+        assertEquals("Id expected to have a height", Some(index + 1), chain.heightById(id))
+        assertArrayEquals("Id expected to be found by height", id, chain.idByHeight(index + 1).get)
+    }
+  }
+
+  @Test
+  def emptyChain(): Unit = {
+    val chain = new PackedIdsChain(idLength)
+    assertEquals("Empty chain expected to have height 0", 0, chain.height)
+    assertTrue("Empty chain expected to have no best id", chain.bestId.isEmpty)
+    assertTrue("Empty chain expected not to find id by height", chain.idByHeight(0).isEmpty)
+    assertTrue("Empty chain expected not to find id by height", chain.idByHeight(1).isEmpty)
+    assertFalse("Empty chain expected not to contain id", chain.contains(generateIds(1, 1L).head))
+    assertFalse("Empty chain expected not to contain id of different length", chain.contains(new Array[Byte](idLength - 1)))
+  }
+
+  @Test
+  def appendAndCut(): Unit = {
+    val chain = new PackedIdsChain(idLength)
+    // Enough ids to resize the index several times
+    val ids = generateIds(10000, 42L)
+    ids.foreach(chain.append)
+
+    assertEquals("Chain height is wrong", ids.size, chain.height)
+    assertArrayEquals("Best id is wrong", ids.last, chain.bestId.get)
+    checkIdsArePresent(chain, ids)
+    assertTrue("Existing id expected not to be added once more", Try(chain.append(ids(10))).isFailure)
+    assertTrue("Id of wrong length expected not to be added", Try(chain.append(new Array[Byte](idLength + 1))).isFailure)
+
+    // Cut ids, so the entries are removed from the middle of the probe sequences
+    val newHeight = 3333
+    chain.cutToHeight(newHeight)
+    assertEquals("Chain height after cut is wrong", newHeight, chain.height)
+    checkIdsArePresent(chain, ids.take(newHeight))
+    ids.drop(newHeight).foreach(id => assertFalse("Cut id expected not to be present", chain.contains(id)))
+    assertTrue("Id expected not to be found above the height", chain.idByHeight(newHeight + 1).isEmpty)
+
+    // Fork from the cut point
+    val forkIds = generateIds(5000, 43L)
+    forkIds.foreach(chain.append)
+    checkIdsArePresent(chain, ids.take(newHeight) ++ forkIds)
+
+    chain.cutToHeight(0)
+    assertEquals("Chain height after full cut is wrong", 0, chain.height)
+    ids.foreach(id => assertFalse("Cut id expected not to be present", chain.contains(id)))
+    forkIds.foreach(id => assertFalse("Cut id expected not to be present", chain.contains(id)))
+  }
+}
@@ -0,0 +1,60 @@
+package com.horizen.consensus
+
+import com.horizen.params.TestNetParams
+import com.horizen.utils.Utils
+import org.scalatest.junit.JUnitSuite
+import scorex.util.{ModifierId, bytesToId}
+
+class ConsensusDataProviderPerformanceTest extends JUnitSuite {
+  private val slotsInEpoch = 720
+  private val epochsNumber = 20
+
+  private val networkParams = new TestNetParams(
+    sidechainGenesisBlockId = bytesToId(Utils.doubleSHA256Hash("genesis".getBytes())),
+    sidechainGenesisBlockTimestamp = 1000000,
+    consensusSlotsInEpoch = slotsInEpoch,
+    consensusSecondsInSlot = 12
+  ) {override val sidechainGenesisBlockParentId: ModifierId = bytesToId(Utils.doubleSHA256Hash("genesisParent".getBytes))}
+
+  // Emulates the consensus data requests done during block appending: block info calculation and consensus validation.
+  private def appendBlocks(dataProvider: TestedConsensusDataProvider): Unit = {
+    var boundaryTimeNano: Long = 0
+    var boundaryBlocks: Int = 0
+
+    val start = System.nanoTime()
+    dataProvider.blockIdAndInfosPerEpoch.tail.foreach(epoch => {
+      epoch.zipWithIndex.foreach { case ((_, blockInfo), idx) =>
+        val blockStart = System.nanoTime()
+        dataProvider.getOrCalculateNonceConsensusEpochInfo(blockInfo.timestamp, blockInfo.parentId)
+        dataProvider.getFullConsensusEpochInfoForBlock(blockInfo.timestamp, blockInfo.parentId)
+        if (idx == 0) {
+          boundaryTimeNano += System.nanoTime() - blockStart
+          boundaryBlocks += 1
+        }
+      }
+    })
+    val timeInSec = (System.nanoTime() - start).toDouble / 1000000000
+    val blocksNumber = dataProvider.blockIdAndInfosPerEpoch.tail.map(_.size).sum
+
+    println(f"$blocksNumber blocks appended in $timeInSec%.3f sec\t${blocksNumber / timeInSec}%.1f blocks/sec")
+    println(f"First block in epoch appended in ${boundaryTimeNano.toDouble / boundaryBlocks / 1000000}%.3f ms on average")
+  }
+
+  //@Test
+  def runMeasures(): Unit = {
+    val slotsPresentation: List[List[Int]] = List.fill(epochsNumber)(List.fill(slotsInEpoch)(1))
+
+    println("Cold start, no nonces stored:")
+    val dataProvider = new TestedConsensusDataProvider(slotsPresentation, networkParams)
+    appendBlocks(dataProvider)
+
+    println("Warm start, nonces stored:")
+    appendBlocks(dataProvider)
+
+    println("Nonce calculation of the last epoch from scratch:")
+    val anotherDataProvider = new TestedConsensusDataProvider(slotsPresentation, networkParams)
+    val start = System.nanoTime()
+    anotherDataProvider.calculateNonceForEpoch(anotherDataProvider.epochIds.last)
+    println(f"$epochsNumber epochs nonces calculated in ${(System.nanoTime() - start).toDouble / 1000000}%.3f ms")
+  }
+}
@@ -1,17 +1,22 @@
 package com.horizen.consensus
 
 import java.io.{BufferedReader, BufferedWriter, FileReader, FileWriter}
+import java.util.{Optional => JOptional}
 
+import com.horizen.block.SidechainBlockHeader
+import com.horizen.box.ForgerBox
 import com.horizen.chain.SidechainBlockInfo
-import com.horizen.fixtures.{CompanionsFixture, SidechainBlockFixture}
+import com.horizen.fixtures.{BoxFixture, CompanionsFixture, SidechainBlockFixture}
 import com.horizen.params.{NetworkParams, NetworkParamsUtils, TestNetParams}
 import com.horizen.proof.VrfProof
+import com.horizen.proposition.VrfPublicKey
 import com.horizen.storage.{InMemoryStorageAdapter, SidechainBlockInfoProvider}
 import com.horizen.utils
 import com.horizen.utils.{BytesUtils, Utils}
 import com.horizen.vrf.VrfOutput
 import org.junit.Assert._
 import org.junit.Test
+import org.mockito.{ArgumentMatchers, Mockito}
 import scorex.core.consensus.ModifierSemanticValidity
 import scorex.util._
 
@@ -273,4 +278,79 @@ class ConsensusDataProviderTest extends CompanionsFixture{
     assertNotEquals(consensusInfoForEndTenEpoch.nonceConsensusEpochInfo, consensusInfoForEndTenEpoch2.nonceConsensusEpochInfo)
   }
 
-}
\ No newline at end of file
+  @Test
+  def nonceCalculationPersistence(): Unit = {
+    val slotsInEpoch = 10
+    val epochsNumber = 200
+    val slotsPresentation: List[List[Int]] = List.fill(epochsNumber)(List.fill(slotsInEpoch)(1))
+
+    val genesisBlockId = bytesToId(Utils.doubleSHA256Hash("genesis".getBytes()))
+    val networkParams = new TestNetParams(
+      sidechainGenesisBlockId = genesisBlockId,
+      sidechainGenesisBlockTimestamp = 1000000,
+      consensusSlotsInEpoch = slotsInEpoch,
+      consensusSecondsInSlot = 100
+    ) {override val sidechainGenesisBlockParentId: ModifierId = bytesToId(Utils.doubleSHA256Hash("genesisParent".getBytes))}
+
+    // Calculate the nonce of the last epoch at once, so all the previous epochs are passed
+    val dataProvider = new TestedConsensusDataProvider(slotsPresentation, networkParams)
+    val lastEpochNonce = dataProvider.calculateNonceForEpoch(dataProvider.epochIds.last)
+
+    // Calculate the nonces epoch by epoch
+    val expectedDataProvider = new TestedConsensusDataProvider(slotsPresentation, networkParams)
+    val expectedNonces = expectedDataProvider.epochIds.map(epochId => expectedDataProvider.calculateNonceForEpoch(epochId))
+    assertEquals("Different nonce expected for the last epoch.", expectedNonces.last, lastEpochNonce)
+
+    // Nonces of all epochs expected to be persisted during the calculation
+    dataProvider.epochIds.zip(expectedNonces).tail.foreach { case (epochId, expectedNonce) =>
+      assertEquals(s"Different nonce expected to be stored for epoch $epochId.",
+        Some(expectedNonce), dataProvider.consensusDataStorage.getNonceConsensusEpochInfo(epochId))
+    }
+
+    // Full consensus info expected to be cached for the previous epoch id
+    val (_, blockInfo) = dataProvider.blockIdAndInfosPerEpoch.last.last
+    val fullConsensusEpochInfo = dataProvider.getFullConsensusEpochInfoForBlock(blockInfo.timestamp, blockInfo.parentId)
+    assertEquals("Full consensus info expected to be cached.", Some(fullConsensusEpochInfo),
+      dataProvider.consensusDataStorage.getFullConsensusEpochInfo(blockIdToEpochId(blockInfo.lastBlockInPreviousConsensusEpoch)))
+    assertEquals("Nonce of the previous epoch expected to be used.",
+      expectedNonces(expectedNonces.size - 2), fullConsensusEpochInfo.nonceConsensusEpochInfo)
+  }
+
+  @Test
+  def vrfOutputCache(): Unit = {
+    val slotsInEpoch = 10
+    val genesisBlockId = bytesToId(Utils.doubleSHA256Hash("genesis".getBytes()))
+    val networkParams = new TestNetParams(
+      sidechainGenesisBlockId = genesisBlockId,
+      sidechainGenesisBlockTimestamp = 1000000,
+      consensusSlotsInEpoch = slotsInEpoch,
+      consensusSecondsInSlot = 100
+    ) {override val sidechainGenesisBlockParentId: ModifierId = bytesToId(Utils.doubleSHA256Hash("genesisParent".getBytes))}
+    val dataProvider = new TestedConsensusDataProvider(List(List.fill(slotsInEpoch)(1)), networkParams)
+
+    val vrfOutput = new VrfOutput("vrfOutputCacheTest".getBytes)
+    val vrfProof: VrfProof = Mockito.mock(classOf[VrfProof])
+    Mockito.when(vrfProof.proofToVrfOutput(ArgumentMatchers.any[VrfPublicKey](), ArgumentMatchers.any[Array[Byte]]()))
+      .thenReturn(JOptional.of(vrfOutput))
+    val forgerBox: ForgerBox = new BoxFixture {}.getForgerBox
+    val header: SidechainBlockHeader = Mockito.mock(classOf[SidechainBlockHeader])
+    Mockito.when(header.id).thenReturn(bytesToId(Utils.doubleSHA256Hash("vrfOutputCacheTestBlock".getBytes)))
+    Mockito.when(header.timestamp).thenReturn(networkParams.sidechainGenesisBlockTimestamp + 100)
+    Mockito.when(header.vrfProof).thenReturn(vrfProof)
+    Mockito.when(header.forgerBox).thenReturn(forgerBox)
+
+    val nonce = NonceConsensusEpochInfo(byteArrayToConsensusNonce("vrfOutputCacheTestNonce".getBytes))
+    val anotherNonce = NonceConsensusEpochInfo(byteArrayToConsensusNonce("vrfOutputCacheTestAnotherNonce".getBytes))
+
+    // Test 1: VRF output is calculated once for the same block and nonce
+    assertEquals("Different VRF output expected.", Some(vrfOutput), dataProvider.getVrfOutput(header, nonce))
+    assertEquals("Different VRF output expected.", Some(vrfOutput), dataProvider.getVrfOutput(header, nonce))
+    Mockito.verify(vrfProof, Mockito.times(1)).proofToVrfOutput(ArgumentMatchers.any[VrfPublicKey](), ArgumentMatchers.any[Array[Byte]]())
+
+    // Test 2: VRF output is calculated again for the different nonce
+    assertEquals("Different VRF output expected.", Some(vrfOutput), dataProvider.getVrfOutput(header, anotherNonce))
+    Mockito.verify(vrfProof, Mockito.times(2)).proofToVrfOutput(ArgumentMatchers.any[VrfPublicKey](), ArgumentMatchers.any[Array[Byte]]())
+    assertTrue("Cache hits expected to be recorded.", ConsensusDataProvider.vrfOutputCacheStats(networkParams).hitCount() > 0)
+    assertEquals("Cache size expected to cover every slot of the epoch twice.", 2L * slotsInEpoch, ConsensusDataProvider.vrfOutputCacheSize(networkParams))
+  }
+}
@@ -4,7 +4,7 @@ import com.horizen.SidechainTypes
 import com.horizen.consensus.ConsensusEpochNumber
 import com.horizen.fixtures.{BoxFixture, IODBStoreFixture}
 import com.horizen.storage.{ForgingBoxesInfoStorage, IODBStoreAdapter}
-import com.horizen.utils.{BytesUtils, ForgerBoxMerklePathInfo, MerklePath}
+import com.horizen.utils.{ByteArrayWrapper, BytesUtils, ForgerBoxMerklePathInfo, MerklePath, Pair}
 import org.junit.Assert.{assertEquals, assertTrue}
 import org.junit.Test
 import org.scalatest.junit.JUnitSuite
@@ -12,6 +12,8 @@ import java.util.{ArrayList => JArrayList}
 
 import com.horizen.box.ForgerBox
 
+import scala.collection.JavaConverters._
+
 
 class ForgingBoxesInfoStorageTest extends JUnitSuite with IODBStoreFixture with SidechainTypes with BoxFixture {
 
@@ -77,7 +79,7 @@ class ForgingBoxesInfoStorageTest extends JUnitSuite with IODBStoreFixture with
 
     assertTrue("updateForgerBoxes must be successful.",
       forgingBoxesMerklePathStorage.updateForgerBoxes(version1, forgerBoxesToAppend, Seq()).isSuccess)
-    assertEquals("Different ForgerBox seq expected.", forgerBoxesToAppend, forgingBoxesMerklePathStorage.getForgerBoxes.get)
+    assertEquals("Different ForgerBox set expected.", forgerBoxesToAppend.toSet, forgingBoxesMerklePathStorage.getForgerBoxes.get.toSet)
 
 
     // Test 2: Update non empty storage with 2 new forger boxes and 2 boxes to remove
@@ -87,6 +89,53 @@ class ForgingBoxesInfoStorageTest extends JUnitSuite with IODBStoreFixture with
 
     assertTrue("updateForgerBoxes must be successful.",
       forgingBoxesMerklePathStorage.updateForgerBoxes(version2, Seq(forgerBox4, forgerBox5), Seq(forgerBox1.id(), forgerBox3.id())).isSuccess)
-    assertEquals("Different ForgerBox seq expected.", Seq(forgerBox2, forgerBox4, forgerBox5), forgingBoxesMerklePathStorage.getForgerBoxes.get)
+    assertEquals("Different ForgerBox set expected.", Set(forgerBox2, forgerBox4, forgerBox5), forgingBoxesMerklePathStorage.getForgerBoxes.get.toSet)
+    assertEquals("Different ForgerBox count expected.", 3, forgingBoxesMerklePathStorage.forgerBoxesCount)
+
+
+    // Test 3: Update storage with already existing box and removal of all other boxes
+    val version3 = getVersion
+
+    assertTrue("updateForgerBoxes must be successful.",
+      forgingBoxesMerklePathStorage.updateForgerBoxes(version3, Seq(forgerBox2), Seq(forgerBox4.id(), forgerBox5.id())).isSuccess)
+    assertEquals("Different ForgerBox seq expected.", Seq(forgerBox2), forgingBoxesMerklePathStorage.getForgerBoxes.get)
+    assertEquals("Different ForgerBox count expected.", 1, forgingBoxesMerklePathStorage.forgerBoxesCount)
+
+
+    // Test 4: Rollback restores the removed boxes
+    assertTrue("Rollback operation must be successful.", forgingBoxesMerklePathStorage.rollback(version2).isSuccess)
+    assertEquals("Different ForgerBox set expected.", Set(forgerBox2, forgerBox4, forgerBox5), forgingBoxesMerklePathStorage.getForgerBoxes.get.toSet)
+    assertEquals("Different ForgerBox count expected.", 3, forgingBoxesMerklePathStorage.forgerBoxesCount)
+  }
+
+  @Test
+  def legacyForgerBoxesMigration(): Unit = {
+    val storage = new IODBStoreAdapter(getStore())
+    val legacyStorage = new ForgingBoxesInfoStorage(storage)
+
+    // Forger boxes stored as a single list record
+    val legacyVersion = getVersion
+    val legacyForgerBoxes = Seq(getForgerBox, getForgerBox)
+    val toUpdate = new JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]]()
+    toUpdate.add(new Pair(legacyStorage.legacyForgerBoxesKey,
+      new ByteArrayWrapper(legacyStorage.legacyForgerBoxListSerializer.toBytes(legacyForgerBoxes.asJava))))
+    storage.update(legacyVersion, toUpdate, new JArrayList[ByteArrayWrapper]())
+
+    // Test 1: legacy record is migrated on open
+    val forgingBoxesInfoStorage = new ForgingBoxesInfoStorage(storage)
+    assertTrue("Legacy forger boxes record expected to be removed.", !storage.get(forgingBoxesInfoStorage.legacyForgerBoxesKey).isPresent)
+    assertEquals("Different ForgerBox seq expected.", legacyForgerBoxes, forgingBoxesInfoStorage.getForgerBoxes.get)
+    assertEquals("Different ForgerBox count expected.", 2, forgingBoxesInfoStorage.forgerBoxesCount)
+
+    // Test 2: migrated boxes are updated as usual
+    val forgerBox = getForgerBox
+    assertTrue("updateForgerBoxes must be successful.",
+      forgingBoxesInfoStorage.updateForgerBoxes(getVersion, Seq(forgerBox), Seq(legacyForgerBoxes.head.id())).isSuccess)
+    assertEquals("Different ForgerBox seq expected.", Seq(legacyForgerBoxes(1), forgerBox), forgingBoxesInfoStorage.getForgerBoxes.get)
+
+    // Test 3: rollback to the version before the migration restores the legacy record, which is migrated again
+    assertTrue("Rollback operation must be successful.", forgingBoxesInfoStorage.rollback(legacyVersion).isSuccess)
+    assertTrue("Legacy forger boxes record expected to be removed.", !storage.get(forgingBoxesInfoStorage.legacyForgerBoxesKey).isPresent)
+    assertEquals("Different ForgerBox seq expected.", legacyForgerBoxes, forgingBoxesInfoStorage.getForgerBoxes.get)
   }
 }
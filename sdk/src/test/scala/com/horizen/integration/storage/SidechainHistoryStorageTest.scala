@@ -1,20 +1,23 @@
 package com.horizen.integration.storage
 
 import java.lang.{Byte => JByte}
-import java.util.{HashMap => JHashMap}
+import java.util.{ArrayList => JArrayList, HashMap => JHashMap}
 
 import com.horizen.SidechainTypes
-import com.horizen.block.SidechainBlock
+import com.horizen.block.{SidechainBlock, SidechainBlockSerializer}
 import com.horizen.chain.SidechainBlockInfo
 import com.horizen.companion.SidechainTransactionsCompanion
 import com.horizen.fixtures.{CompanionsFixture, IODBStoreFixture, SidechainBlockFixture, SidechainBlockInfoFixture}
 import com.horizen.params.{MainNetParams, NetworkParams}
-import com.horizen.storage.{IODBStoreAdapter, SidechainHistoryStorage}
+import com.horizen.storage.{BlockBodyCodec, HistoryPruningResult, IODBStoreAdapter, SidechainHistoryStorage}
 import com.horizen.transaction.TransactionSerializer
+import com.horizen.utils.{ByteArrayWrapper, Pair, WithdrawalEpochInfo}
 import org.junit.Assert._
 import org.junit.Test
 import org.scalatest.junit.JUnitSuite
 import scorex.core.consensus.ModifierSemanticValidity
+import scorex.crypto.hash.Blake2b256
+import scorex.util.idToBytes
 
 
 class SidechainHistoryStorageTest extends JUnitSuite with SidechainBlockFixture with IODBStoreFixture with SidechainBlockInfoFixture with CompanionsFixture {
@@ -92,6 +95,15 @@ class SidechainHistoryStorageTest extends JUnitSuite with SidechainBlockFixture
     assertEquals("HistoryStorage different block expected form active chain", secondBlock.id, historyStorage.activeChainBlockId(expectedHeight).get)
     assertEquals("HistoryStorage different block chain expected form active chain", Seq(genesisBlock.id, secondBlock.id), historyStorage.activeChainAfter(genesisBlock.id))
 
+    // Mainchain data is parsed from the records of the containing block, repeated lookups are served from the cache
+    val genesisMainchainHash: Array[Byte] = genesisBlock.mainchainHeaders.head.hash
+    for (_ <- 1 to 2) {
+      assertArrayEquals("HistoryStorage different mainchain header expected", genesisBlock.mainchainHeaders.head.mainchainHeaderBytes,
+        historyStorage.getMainchainHeaderByHash(genesisMainchainHash).get.mainchainHeaderBytes)
+      assertEquals("HistoryStorage different mainchain reference data expected", genesisBlock.mainchainBlockReferencesData.head,
+        historyStorage.getMainchainReferenceDataByHash(genesisMainchainHash).get)
+    }
+
 
     // Add one more block
     val thirdBlock: SidechainBlock = generateNextSidechainBlock(secondBlock, sidechainTransactionsCompanion, params)
@@ -139,4 +151,206 @@ class SidechainHistoryStorageTest extends JUnitSuite with SidechainBlockFixture
     assertEquals("HistoryStorage different block chain expected form active chain", Seq(genesisBlock.id, forkBlock.id), historyStorage.activeChainAfter(genesisBlock.id))
     assertEquals("HistoryStorage different block chain expected form active chain", Seq(forkBlock.id), historyStorage.activeChainAfter(forkBlock.id))
   }
+
+  @Test
+  def activeChainCheckpoint(): Unit = {
+    val store = getStore()
+    val checkpointChunkSize = 2
+    val historyStorage = new SidechainHistoryStorage(new IODBStoreAdapter(store), sidechainTransactionsCompanion, params, checkpointChunkSize)
+
+    def addBestBlock(block: SidechainBlock, blockInfo: SidechainBlockInfo): Unit = {
+      assertTrue("HistoryStorage expected to be updated", historyStorage.update(block, blockInfo).isSuccess)
+      assertTrue("HistoryStorage best block expected to be updated", historyStorage.setAsBestBlock(block, blockInfo).isSuccess)
+    }
+
+    def checkReloadedActiveChain(expectedChain: Seq[SidechainBlock]): Unit = {
+      val reloadedStorage = new SidechainHistoryStorage(new IODBStoreAdapter(store), sidechainTransactionsCompanion, params, checkpointChunkSize)
+      assertEquals("Reloaded HistoryStorage different height expected", expectedChain.size, reloadedStorage.height)
+      assertEquals("Reloaded HistoryStorage different active chain expected", expectedChain.map(_.id), reloadedStorage.activeChainAfter(genesisBlock.id))
+      expectedChain.foreach(block => assertEquals("Reloaded HistoryStorage different block info expected",
+        historyStorage.blockInfoOptionById(block.id).get, reloadedStorage.blockInfoOptionById(block.id).get))
+      assertEquals("Reloaded HistoryStorage different best mainchain header expected",
+        historyStorage.getBestMainchainHeaderInfo, reloadedStorage.getBestMainchainHeaderInfo)
+    }
+
+    // Add 5 blocks, so the checkpoint contains the first 4 of them
+    var activeChainBlocks: Seq[SidechainBlock] = Seq(genesisBlock)
+    var activeChainBlockInfos: Seq[SidechainBlockInfo] = Seq(genesisBlockInfo)
+    addBestBlock(genesisBlock, genesisBlockInfo)
+    for (_ <- 1 until 5) {
+      val block = generateNextSidechainBlock(activeChainBlocks.last, sidechainTransactionsCompanion, params)
+      val blockInfo = generateBlockInfo(block, activeChainBlockInfos.last, params, validity = ModifierSemanticValidity.Valid)
+      addBestBlock(block, blockInfo)
+      activeChainBlocks :+= block
+      activeChainBlockInfos :+= blockInfo
+    }
+    checkReloadedActiveChain(activeChainBlocks)
+
+    // Heights range reads are clipped by the active chain height
+    assertEquals("HistoryStorage different active chain ids range expected", activeChainBlocks.slice(1, 4).map(_.id), historyStorage.activeChainBlockIds(2, 4))
+    assertEquals("HistoryStorage different active chain blocks range expected", activeChainBlocks.map(_.id), historyStorage.activeChainBlocks(0, 100).map(_.id))
+    assertTrue("HistoryStorage empty active chain ids range expected", historyStorage.activeChainBlockIds(6, 10).isEmpty)
+
+    // Fork below the checkpoint height: checkpoint blocks after the fork point shall be ignored
+    val forkBlock = generateNextSidechainBlock(activeChainBlocks(1), sidechainTransactionsCompanion, params, basicSeed = 991919L)
+    val forkBlockInfo = generateBlockInfo(forkBlock, activeChainBlockInfos(1), params, Some(100L << 32), validity = ModifierSemanticValidity.Valid)
+    addBestBlock(forkBlock, forkBlockInfo)
+    checkReloadedActiveChain(activeChainBlocks.take(2) :+ forkBlock)
+  }
+
+  @Test
+  def reloadWithForks(): Unit = {
+    val store = getStore()
+    val historyStorage = new SidechainHistoryStorage(new IODBStoreAdapter(store), sidechainTransactionsCompanion, params)
+
+    assertTrue("HistoryStorage expected to be updated", historyStorage.update(genesisBlock, genesisBlockInfo).isSuccess)
+    assertTrue("HistoryStorage best block expected to be updated", historyStorage.setAsBestBlock(genesisBlock, genesisBlockInfo).isSuccess)
+    val block = generateNextSidechainBlock(genesisBlock, sidechainTransactionsCompanion, params)
+    val blockInfo = generateBlockInfo(block, genesisBlockInfo, params, validity = ModifierSemanticValidity.Valid)
+    assertTrue("HistoryStorage expected to be updated", historyStorage.update(block, blockInfo).isSuccess)
+    assertTrue("HistoryStorage best block expected to be updated", historyStorage.setAsBestBlock(block, blockInfo).isSuccess)
+    val forkBlock = generateNextSidechainBlock(genesisBlock, sidechainTransactionsCompanion, params, basicSeed = 991919L)
+    val forkBlockInfo = generateBlockInfo(forkBlock, genesisBlockInfo, params, validity = ModifierSemanticValidity.Valid)
+    assertTrue("HistoryStorage expected to be updated", historyStorage.update(forkBlock, forkBlockInfo).isSuccess)
+
+    // Storage constructed over the non-empty store restores both the active chain and the fork blocks
+    val reloadedStorage = new SidechainHistoryStorage(new IODBStoreAdapter(store), sidechainTransactionsCompanion, params)
+    assertEquals("Reloaded HistoryStorage different height expected", 2, reloadedStorage.height)
+    assertEquals("Reloaded HistoryStorage different best block expected", block.id, reloadedStorage.bestBlockId)
+    Seq((block, blockInfo), (forkBlock, forkBlockInfo)).foreach {
+      case (b, info) =>
+        assertEquals("Reloaded HistoryStorage different block height expected", Some(info.height), reloadedStorage.heightOf(b.id))
+        assertEquals("Reloaded HistoryStorage different parent expected", Some(genesisBlock.id), reloadedStorage.parentBlockId(b.id))
+        assertEquals("Reloaded HistoryStorage different score expected", Some(info.score), reloadedStorage.chainScoreFor(b.id))
+    }
+    assertFalse("Fork block expected NOT to be a part of active chain", reloadedStorage.isInActiveChain(forkBlock.id))
+  }
+
+  @Test
+  def pruning(): Unit = {
+    val pruningParams: NetworkParams = new MainNetParams(new Array[Byte](32), genesisBlock.id) {
+      override val maxHistoryRewritingLength: Int = 2
+    }
+    val historyStorage = new SidechainHistoryStorage(new IODBStoreAdapter(getStore()), sidechainTransactionsCompanion, pruningParams)
+
+    // Active chain of 6 blocks, every block is in its own withdrawal epoch equal to the block height
+    var activeChainBlocks: Seq[SidechainBlock] = Seq(genesisBlock)
+    var activeChainBlockInfos: Seq[SidechainBlockInfo] = Seq(genesisBlockInfo.copy(withdrawalEpochInfo = WithdrawalEpochInfo(1, 0)))
+    historyStorage.update(genesisBlock, activeChainBlockInfos.head).get
+    historyStorage.setAsBestBlock(genesisBlock, activeChainBlockInfos.head).get
+    for (_ <- 1 until 6) {
+      val block = generateNextSidechainBlock(activeChainBlocks.last, sidechainTransactionsCompanion, pruningParams)
+      val blockInfo = generateBlockInfo(block, activeChainBlockInfos.last, pruningParams, validity = ModifierSemanticValidity.Valid)
+        .copy(withdrawalEpochInfo = WithdrawalEpochInfo(activeChainBlockInfos.size + 1, 0))
+      historyStorage.update(block, blockInfo).get
+      historyStorage.setAsBestBlock(block, blockInfo).get
+      activeChainBlocks :+= block
+      activeChainBlockInfos :+= blockInfo
+    }
+
+    // Fork blocks at heights 2 (below the rewriting horizon) and 5 (above it)
+    val deepForkBlock = generateNextSidechainBlock(genesisBlock, sidechainTransactionsCompanion, pruningParams, basicSeed = 1357L)
+    historyStorage.update(deepForkBlock, generateBlockInfo(deepForkBlock, activeChainBlockInfos.head, pruningParams)).get
+    val recentForkBlock = generateNextSidechainBlock(activeChainBlocks(3), sidechainTransactionsCompanion, pruningParams, basicSeed = 2468L)
+    historyStorage.update(recentForkBlock, generateBlockInfo(recentForkBlock, activeChainBlockInfos(3), pruningParams)).get
+
+    // Prune fork blocks only
+    val forksResult = historyStorage.prune(None, 100).get
+    assertEquals("Different number of pruned fork blocks expected", 1, forksResult.prunedForkBlocks)
+    assertEquals("No pruned bodies expected", 0, forksResult.prunedBodies)
+    assertTrue("Reclaimed space expected", forksResult.reclaimedBytes > 0)
+    assertTrue("Pruned fork block expected to be removed", historyStorage.blockInfoOptionById(deepForkBlock.id).isEmpty)
+    assertTrue("Pruned fork block expected to be removed", historyStorage.blockById(deepForkBlock.id).isEmpty)
+    assertTrue("Fork block above the horizon expected to be kept", historyStorage.blockById(recentForkBlock.id).isDefined)
+    activeChainBlocks.foreach(block => assertTrue("Active chain block expected to be kept", historyStorage.blockById(block.id).isDefined))
+    assertEquals("Nothing expected to be pruned twice", HistoryPruningResult(0, 0, 0L), historyStorage.prune(None, 100).get)
+
+    // Fork block received at the height already passed by pruning is pruned by the next run
+    val lateForkBlock = generateNextSidechainBlock(genesisBlock, sidechainTransactionsCompanion, pruningParams, basicSeed = 8642L)
+    historyStorage.update(lateForkBlock, generateBlockInfo(lateForkBlock, activeChainBlockInfos.head, pruningParams)).get
+    assertEquals("Late fork block expected to be pruned", 1, historyStorage.prune(None, 100).get.prunedForkBlocks)
+    assertTrue("Late fork block expected to be removed", historyStorage.blockById(lateForkBlock.id).isEmpty)
+    activeChainBlocks.foreach(block => assertTrue("Active chain block expected to be kept", historyStorage.blockById(block.id).isDefined))
+
+    // Prune bodies of the blocks older than 2 epochs: best block epoch is 6, so bodies of the epochs 1-3 are removed
+    val bodiesResult = historyStorage.prune(Some(2), 100).get
+    assertEquals("Different number of pruned bodies expected", 3, bodiesResult.prunedBodies)
+    activeChainBlocks.zipWithIndex.foreach {
+      case (block, index) =>
+        assertEquals("Different body presence expected", index >= 3, historyStorage.blockById(block.id).isDefined)
+        assertEquals("Block header expected to be kept", block.id, historyStorage.headerById(block.id).get.id)
+        assertEquals("Block info expected to be kept", activeChainBlockInfos(index), historyStorage.blockInfoOptionById(block.id).get)
+    }
+  }
+
+  @Test
+  def compressedBlockBodies(): Unit = {
+    val store = getStore()
+    val storageAdapter = new IODBStoreAdapter(store)
+
+    def storedBodyCodec(block: SidechainBlock): Byte = storageAdapter.get(new ByteArrayWrapper(Blake2b256(s"blockBody${block.id}"))).get().data.head
+
+    // Genesis block body stored without compression
+    val rawHistoryStorage = new SidechainHistoryStorage(storageAdapter, sidechainTransactionsCompanion, params)
+    assertTrue("HistoryStorage expected to be updated", rawHistoryStorage.update(genesisBlock, genesisBlockInfo).isSuccess)
+    assertTrue("HistoryStorage best block expected to be updated", rawHistoryStorage.setAsBestBlock(genesisBlock, genesisBlockInfo).isSuccess)
+    assertEquals("Block body expected to be stored without compression", BlockBodyCodec.RawCodecId, storedBodyCodec(genesisBlock))
+
+    // Next block body stored compressed after the restart with compression enabled
+    val compressedHistoryStorage = new SidechainHistoryStorage(storageAdapter, sidechainTransactionsCompanion, params, compressBlockBodies = true)
+    val secondBlock: SidechainBlock = generateNextSidechainBlock(genesisBlock, sidechainTransactionsCompanion, params)
+    val secondBlockInfo = generateBlockInfo(secondBlock, genesisBlockInfo, params, validity = ModifierSemanticValidity.Valid)
+    assertTrue("HistoryStorage expected to be updated", compressedHistoryStorage.update(secondBlock, secondBlockInfo).isSuccess)
+    assertEquals("Block body expected to be stored compressed", BlockBodyCodec.DeflateCodecId, storedBodyCodec(secondBlock))
+
+    // Both formats are readable
+    Seq(genesisBlock, secondBlock).foreach(block => {
+      assertArrayEquals("HistoryStorage different block expected", block.bytes, compressedHistoryStorage.blockById(block.id).get.bytes)
+      assertArrayEquals("HistoryStorage different block expected", block.bytes, rawHistoryStorage.blockById(block.id).get.bytes)
+    })
+
+    // Truncated compressed record is not decoded
+    val compressedRecord = BlockBodyCodec.encode(secondBlock.bytes, compress = true)
+    assertTrue("Truncated compressed record expected not to be decoded", BlockBodyCodec.decode(compressedRecord.take(compressedRecord.length / 2)).isFailure)
+  }
+
+  @Test
+  def legacyBlockRecords(): Unit = {
+    val store = getStore()
+    val storageAdapter = new IODBStoreAdapter(store)
+    val blockSerializer = new SidechainBlockSerializer(sidechainTransactionsCompanion)
+
+    // Blocks stored before the header and body split: the whole block bytes under the block id key
+    val secondBlock: SidechainBlock = generateNextSidechainBlock(genesisBlock, sidechainTransactionsCompanion, params)
+    val secondBlockInfo = generateBlockInfo(secondBlock, genesisBlockInfo, params, validity = ModifierSemanticValidity.Valid)
+    val legacyRecords = new JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]]()
+    Seq((genesisBlock, genesisBlockInfo), (secondBlock, secondBlockInfo)).foreach {
+      case (block, info) =>
+        legacyRecords.add(new Pair(new ByteArrayWrapper(idToBytes(block.id)), new ByteArrayWrapper(blockSerializer.toBytes(block))))
+        legacyRecords.add(new Pair(new ByteArrayWrapper(Blake2b256(s"blockInfo${block.id}")), new ByteArrayWrapper(info.bytes)))
+    }
+    storageAdapter.update(new ByteArrayWrapper(Blake2b256("legacy")), legacyRecords, new JArrayList[ByteArrayWrapper]())
+
+    val historyStorage = new SidechainHistoryStorage(storageAdapter, sidechainTransactionsCompanion, params)
+    Seq(genesisBlock, secondBlock).foreach(block => {
+      assertArrayEquals("Legacy block expected to be read", block.bytes, historyStorage.blockById(block.id).get.bytes)
+      assertEquals("Legacy block header expected to be read", block.id, historyStorage.headerById(block.id).get.id)
+      assertEquals("Legacy block ommer expected to be read", block.id, historyStorage.ommerById(block.id).get.header.id)
+    })
+
+    // Legacy blocks are applied and restored after the restart next to the blocks stored in the new format
+    assertTrue("HistoryStorage best block expected to be updated", historyStorage.setAsBestBlock(genesisBlock, genesisBlockInfo).isSuccess)
+    assertTrue("HistoryStorage best block expected to be updated", historyStorage.setAsBestBlock(secondBlock, secondBlockInfo).isSuccess)
+    assertEquals("Legacy block mainchain header expected to be read", Some(genesisBlock.mainchainHeaders.head.hash.toSeq),
+      historyStorage.getMainchainHeaderByHash(genesisBlock.mainchainHeaders.head.hash).map(_.hash.toSeq))
+    val thirdBlock: SidechainBlock = generateNextSidechainBlock(secondBlock, sidechainTransactionsCompanion, params)
+    val thirdBlockInfo = generateBlockInfo(thirdBlock, secondBlockInfo, params, validity = ModifierSemanticValidity.Valid)
+    assertTrue("HistoryStorage expected to be updated", historyStorage.update(thirdBlock, thirdBlockInfo).isSuccess)
+    assertTrue("HistoryStorage best block expected to be updated", historyStorage.setAsBestBlock(thirdBlock, thirdBlockInfo).isSuccess)
+
+    val reloadedStorage = new SidechainHistoryStorage(new IODBStoreAdapter(store), sidechainTransactionsCompanion, params)
+    assertEquals("Reloaded HistoryStorage different height expected", 3, reloadedStorage.height)
+    Seq(genesisBlock, secondBlock, thirdBlock).foreach(block =>
+      assertArrayEquals("Reloaded HistoryStorage different block expected", block.bytes, reloadedStorage.blockById(block.id).get.bytes))
+  }
 }
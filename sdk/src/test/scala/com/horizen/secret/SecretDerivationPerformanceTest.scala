@@ -0,0 +1,27 @@
+package com.horizen.secret
+
+import org.scalatest.junit.JUnitSuite
+
+class SecretDerivationPerformanceTest extends JUnitSuite {
+  private val walletSeed = "performance test seed".getBytes
+  private val secretsCount = 10000
+  private val warmUpCount = 100
+
+  private def measure(secretType: String, derive: (Int, Int) => Int): Unit = {
+    derive(0, warmUpCount)
+
+    val start = System.nanoTime()
+    val derived = derive(warmUpCount, secretsCount)
+    val timeInSec = (System.nanoTime() - start).toDouble / 1000000000
+
+    println(f"$secretType:\t$derived keys derived in $timeInSec%.3f sec\t${derived / timeInSec}%.1f keys/sec")
+  }
+
+  //@Test
+  def runMeasures(): Unit = {
+    println(s"Available processors: ${Runtime.getRuntime.availableProcessors()}")
+    measure("PrivateKey25519", (from, count) => PrivateKey25519Creator.getInstance().generateSecrets(walletSeed, from, count).size())
+    measure("VrfSecretKey", (from, count) => VrfKeyGenerator.getInstance().generateSecrets(walletSeed, from, count).size())
+    measure("SchnorrSecret", (from, count) => SchnorrKeyGenerator.getInstance().generateSecrets(walletSeed, from, count).size())
+  }
+}
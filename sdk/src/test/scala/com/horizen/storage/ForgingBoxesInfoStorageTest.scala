@@ -11,7 +11,8 @@ import org.junit.Assert.{assertEquals, assertFalse, assertTrue}
 import org.mockito.{ArgumentMatchers, Mockito}
 import java.util.{ArrayList => JArrayList, Optional => JOptional}
 
-import com.horizen.box.ForgerBox
+import com.google.common.primitives.Ints
+import com.horizen.box.{ForgerBox, ForgerBoxSerializer}
 
 import scala.collection.JavaConverters._
 
@@ -29,17 +30,26 @@ class ForgingBoxesInfoStorageTest extends JUnitSuite
 
     val version = getVersion
     val version2 = getVersion
+    val version3 = getVersion
     val forgerBox = getForgerBox
+    val storedForgerBox = getForgerBox
+    val storedForgerBox2 = getForgerBox
     val forgerBoxesToAppend: Seq[ForgerBox] = Seq(forgerBox)
     val boxIdsToRemove: Seq[Array[Byte]] = Seq(getRandomBoxId(444L))
 
-    // mock physical storage to return nothing on forger box seq request.
+    // mock physical storage to contain two forger boxes.
+    val storedRecords: Map[ByteArrayWrapper, ByteArrayWrapper] = Map(
+      forgingBoxesMerklePathStorage.forgerBoxesCountKey -> new ByteArrayWrapper(Ints.toByteArray(2)),
+      forgingBoxesMerklePathStorage.forgerBoxIndexKey(0) -> new ByteArrayWrapper(storedForgerBox.id()),
+      forgingBoxesMerklePathStorage.forgerBoxIndexKey(1) -> new ByteArrayWrapper(storedForgerBox2.id()),
+      forgingBoxesMerklePathStorage.forgerBoxPositionKey(storedForgerBox.id()) -> new ByteArrayWrapper(Ints.toByteArray(0)),
+      forgingBoxesMerklePathStorage.forgerBoxPositionKey(storedForgerBox2.id()) -> new ByteArrayWrapper(Ints.toByteArray(1))
+    )
     Mockito.when(mockedStorage.get(
       ArgumentMatchers.any[ByteArrayWrapper]()))
       .thenAnswer( answer => {
         val key: ByteArrayWrapper = answer.getArgument(0).asInstanceOf[ByteArrayWrapper]
-        assertEquals("Store get different key expected.", forgingBoxesMerklePathStorage.forgerBoxesKey, key)
-        JOptional.empty
+        JOptional.ofNullable(storedRecords.getOrElse(key, null))
     })
 
     Mockito.when(mockedStorage.update(
@@ -53,7 +63,15 @@ class ForgingBoxesInfoStorageTest extends JUnitSuite
         val actualToRemove = answer.getArgument(2).asInstanceOf[java.util.List[ByteArrayWrapper]]
 
         assertEquals("Store update(...) actual Version is wrong.", version, actualVersion)
-        assertEquals("Store update(...) actual list to update expected to have different size.", 1, actualToUpdate.size())
+        assertEquals("Store update(...) actual list to update expected to have different size.", 4, actualToUpdate.size())
+        assertEquals("Store update(...) different forger box key expected.",
+          forgingBoxesMerklePathStorage.forgerBoxKey(forgerBox.id()), actualToUpdate.get(0).getKey)
+        assertEquals("Store update(...) different forger box index record expected.",
+          new Pair(forgingBoxesMerklePathStorage.forgerBoxIndexKey(2), new ByteArrayWrapper(forgerBox.id())), actualToUpdate.get(1))
+        assertEquals("Store update(...) different forger box position record expected.",
+          new Pair(forgingBoxesMerklePathStorage.forgerBoxPositionKey(forgerBox.id()), new ByteArrayWrapper(Ints.toByteArray(2))), actualToUpdate.get(2))
+        assertEquals("Store update(...) different forger boxes count record expected.",
+          new Pair(forgingBoxesMerklePathStorage.forgerBoxesCountKey, new ByteArrayWrapper(Ints.toByteArray(3))), actualToUpdate.get(3))
         assertTrue("Store update(...) actual list to remove expected to be empty.", actualToRemove.isEmpty)
       })
       // For Test 2: verify that nothing changed
@@ -66,27 +84,94 @@ class ForgingBoxesInfoStorageTest extends JUnitSuite
         assertTrue("Store update(...) actual list to update expected to be empty.",actualToUpdate.isEmpty)
         assertTrue("Store update(...) actual list to remove expected to be empty.", actualToRemove.isEmpty)
       })
-      // For Test 3:
+      // For Test 3: verify that the last box takes the position of the removed one
+      .thenAnswer(answer => {
+        val actualVersion = answer.getArgument(0).asInstanceOf[ByteArrayWrapper]
+        val actualToUpdate = answer.getArgument(1).asInstanceOf[java.util.List[Pair[ByteArrayWrapper, ByteArrayWrapper]]]
+        val actualToRemove = answer.getArgument(2).asInstanceOf[java.util.List[ByteArrayWrapper]]
+
+        assertEquals("Store update(...) actual Version is wrong.", version3, actualVersion)
+        assertEquals("Store update(...) actual list to update expected to have different size.", 3, actualToUpdate.size())
+        assertEquals("Store update(...) different forger box index record expected.",
+          new Pair(forgingBoxesMerklePathStorage.forgerBoxIndexKey(0), new ByteArrayWrapper(storedForgerBox2.id())), actualToUpdate.get(0))
+        assertEquals("Store update(...) different forger box position record expected.",
+          new Pair(forgingBoxesMerklePathStorage.forgerBoxPositionKey(storedForgerBox2.id()), new ByteArrayWrapper(Ints.toByteArray(0))), actualToUpdate.get(1))
+        assertEquals("Store update(...) different forger boxes count record expected.",
+          new Pair(forgingBoxesMerklePathStorage.forgerBoxesCountKey, new ByteArrayWrapper(Ints.toByteArray(1))), actualToUpdate.get(2))
+        assertEquals("Store update(...) actual list to remove expected to have different size.", 3, actualToRemove.size())
+        assertEquals("Store update(...) different forger box index key to remove expected.",
+          forgingBoxesMerklePathStorage.forgerBoxIndexKey(1), actualToRemove.get(0))
+        assertEquals("Store update(...) different forger box position key to remove expected.",
+          forgingBoxesMerklePathStorage.forgerBoxPositionKey(storedForgerBox.id()), actualToRemove.get(1))
+        assertEquals("Store update(...) different forger box key to remove expected.",
+          forgingBoxesMerklePathStorage.forgerBoxKey(storedForgerBox.id()), actualToRemove.get(2))
+      })
+      // For Test 4:
       .thenAnswer(answer => {
         throw new IllegalArgumentException("exception")
       })
 
 
-    // Test 1: successful update of physical Store
+    // Test 1: successful update of physical Store, missed box to remove is ignored
     assertTrue("updateForgerBoxes expected to be successful.",
       forgingBoxesMerklePathStorage.updateForgerBoxes(version, forgerBoxesToAppend, boxIdsToRemove).isSuccess)
 
 
-    // Test 2: successful update of physical Store, nothing changed in toUpdate list
+    // Test 2: successful update of physical Store, nothing changed in toUpdate list, already stored box is not appended again
+    assertTrue("updateForgerBoxes expected to be successful.",
+      forgingBoxesMerklePathStorage.updateForgerBoxes(version2, Seq(storedForgerBox), boxIdsToRemove).isSuccess)
+
+
+    // Test 3: successful update of physical Store, stored box removed without rewriting of the whole index
     assertTrue("updateForgerBoxes expected to be successful.",
-      forgingBoxesMerklePathStorage.updateForgerBoxes(version2, Seq(), boxIdsToRemove).isSuccess)
+      forgingBoxesMerklePathStorage.updateForgerBoxes(version3, Seq(), Seq(storedForgerBox.id())).isSuccess)
 
 
-    // Test 3: failed to update of physical Store
+    // Test 4: failed to update of physical Store
     assertTrue("updateForgerBoxes expected to fail.",
       forgingBoxesMerklePathStorage.updateForgerBoxes(version, forgerBoxesToAppend, boxIdsToRemove).isFailure)
   }
 
+  @Test
+  def getForgerBoxes(): Unit = {
+    val mockedStorage: Storage = mock[IODBStoreAdapter]
+    val forgingBoxesInfoStorage = new ForgingBoxesInfoStorage(mockedStorage)
+
+    val forgerBoxes = Seq(getForgerBox, getForgerBox)
+    val indexKeys = forgerBoxes.indices.map(forgingBoxesInfoStorage.forgerBoxIndexKey)
+    val indexRecords = new JArrayList[Pair[ByteArrayWrapper, JOptional[ByteArrayWrapper]]]()
+    forgerBoxes.zip(indexKeys).foreach { case (box, key) => indexRecords.add(new Pair(key, JOptional.of(new ByteArrayWrapper(box.id())))) }
+    val boxKeys = forgerBoxes.map(box => forgingBoxesInfoStorage.forgerBoxKey(box.id()))
+    val boxRecords = new JArrayList[Pair[ByteArrayWrapper, JOptional[ByteArrayWrapper]]]()
+    forgerBoxes.zip(boxKeys).foreach { case (box, key) =>
+      boxRecords.add(new Pair(key, JOptional.of(new ByteArrayWrapper(ForgerBoxSerializer.getSerializer.toBytes(box)))))
+    }
+
+    Mockito.when(mockedStorage.get(forgingBoxesInfoStorage.forgerBoxesCountKey))
+      .thenReturn(JOptional.empty[ByteArrayWrapper]())
+      .thenReturn(JOptional.of(new ByteArrayWrapper(Ints.toByteArray(forgerBoxes.size))))
+    Mockito.when(mockedStorage.get(ArgumentMatchers.anyList[ByteArrayWrapper]()))
+      .thenAnswer(answer => {
+        val keys = answer.getArgument(0).asInstanceOf[java.util.List[ByteArrayWrapper]].asScala
+        if (keys == indexKeys)
+          indexRecords
+        else {
+          assertEquals("Different forger box keys expected.", boxKeys, keys)
+          boxRecords
+        }
+      })
+
+
+    // Test 1: no forger boxes in the storage
+    assertTrue("No forger boxes expected.", forgingBoxesInfoStorage.getForgerBoxes.isEmpty)
+    Mockito.verify(mockedStorage, Mockito.never()).get(ArgumentMatchers.anyList[ByteArrayWrapper]())
+
+
+    // Test 2: forger boxes are retrieved by the index without iterating over the storage
+    assertEquals("Different forger boxes expected.", forgerBoxes, forgingBoxesInfoStorage.getForgerBoxes.get)
+    Mockito.verify(mockedStorage, Mockito.never()).getAll
+  }
+
   @Test
   def updateForgerBoxMerklePathInfo(): Unit = {
     val mockedStorage: Storage = mock[IODBStoreAdapter]
@@ -138,4 +223,35 @@ class ForgingBoxesInfoStorageTest extends JUnitSuite
     // Test 2: failed to update of physical Store
     assertTrue("Update expected to fail.", forgingBoxesInfoStorage.updateForgerBoxMerklePathInfo(epochNumber, boxMerklePathInfoSeq).isFailure)
   }
+
+  @Test
+  def getForgerBoxMerklePathInfoForEpochCache(): Unit = {
+    val mockedStorage: Storage = mock[IODBStoreAdapter]
+    val forgingBoxesInfoStorage = new ForgingBoxesInfoStorage(mockedStorage)
+
+    val epochNumber = ConsensusEpochNumber @@ 100
+    val boxMerklePathInfoSeq = Seq(
+      ForgerBoxMerklePathInfo(
+        getForgerBox,
+        new MerklePath(new JArrayList())
+      )
+    )
+    val storedBytes = new ByteArrayWrapper(forgingBoxesInfoStorage.forgerBoxMerklePathInfoListSerializer.toBytes(boxMerklePathInfoSeq.asJava))
+
+    Mockito.when(mockedStorage.lastVersionID()).thenReturn(JOptional.ofNullable[ByteArrayWrapper](null))
+    Mockito.when(mockedStorage.get(ArgumentMatchers.any[ByteArrayWrapper]())).thenReturn(JOptional.of(storedBytes))
+
+
+    // Test 1: info stored during the update is retrieved without accessing the physical storage
+    assertTrue("Update expected to be successful.", forgingBoxesInfoStorage.updateForgerBoxMerklePathInfo(epochNumber, boxMerklePathInfoSeq).isSuccess)
+    assertEquals("Different merkle path info expected.", Some(boxMerklePathInfoSeq), forgingBoxesInfoStorage.getForgerBoxMerklePathInfoForEpoch(epochNumber))
+    Mockito.verify(mockedStorage, Mockito.never()).get(ArgumentMatchers.any[ByteArrayWrapper]())
+
+
+    // Test 2: after rollback info is loaded from the physical storage once and then retrieved from the cache
+    assertTrue("Rollback expected to be successful.", forgingBoxesInfoStorage.rollback(getVersion).isSuccess)
+    assertEquals("Different merkle path info expected.", Some(boxMerklePathInfoSeq), forgingBoxesInfoStorage.getForgerBoxMerklePathInfoForEpoch(epochNumber))
+    assertEquals("Different merkle path info expected.", Some(boxMerklePathInfoSeq), forgingBoxesInfoStorage.getForgerBoxMerklePathInfoForEpoch(epochNumber))
+    Mockito.verify(mockedStorage, Mockito.times(1)).get(forgingBoxesInfoStorage.epochKey(epochNumber))
+  }
 }
@@ -0,0 +1,82 @@
+package com.horizen.storage
+
+import com.horizen.block.MainchainBlockReference
+import com.horizen.chain.{MainchainHeaderHash, byteArrayToMainchainHeaderHash}
+import com.horizen.params.MainNetParams
+import com.horizen.utils.BytesUtils
+import org.junit.Test
+import org.junit.Assert.{assertEquals, assertFalse, assertTrue}
+import org.scalatest.junit.JUnitSuite
+
+import scala.io.Source
+
+
+class MainchainBlockReferencesStorageTest extends JUnitSuite {
+
+  private val params = MainNetParams()
+  private val references: Seq[MainchainBlockReference] =
+    Seq("mcblock473173_mainnet", "mcblock473174_mainnet", "mcblock473175_mainnet", "mcblock473176_mainnet")
+      .map(resource => MainchainBlockReference.create(BytesUtils.fromHexString(Source.fromResource(resource).getLines().next()), params).get)
+
+  private def hash(reference: MainchainBlockReference): MainchainHeaderHash = byteArrayToMainchainHeaderHash(reference.header.hash)
+
+  @Test
+  def addAndGet(): Unit = {
+    val referencesStorage = new MainchainBlockReferencesStorage(new InMemoryStorageAdapter())
+    assertTrue("Storage expected to be empty.", referencesStorage.isEmpty)
+    assertTrue("Min height expected to be not defined.", referencesStorage.minHeight.isEmpty)
+
+    val heightsAndReferences = references.zipWithIndex.map{case (reference, idx) => (473173 + idx, reference)}
+    assertTrue("Add operation expected to be successful.", referencesStorage.add(heightsAndReferences).isSuccess)
+
+    references.foreach(reference => {
+      assertTrue("Reference expected to be present.", referencesStorage.contains(hash(reference)))
+      assertEquals("Different reference expected.", Some(reference), referencesStorage.get(hash(reference)))
+    })
+    assertEquals("Different min height expected.", Some(473173), referencesStorage.minHeight)
+    assertEquals("Different max height expected.", Some(473176), referencesStorage.maxHeight)
+
+    // Add the same references once again
+    assertTrue("Add operation expected to be successful.", referencesStorage.add(heightsAndReferences).isSuccess)
+    references.foreach(reference =>
+      assertEquals("Different reference expected.", Some(reference), referencesStorage.get(hash(reference))))
+
+    val missedHash = byteArrayToMainchainHeaderHash(new Array[Byte](32))
+    assertFalse("Reference expected to be missed.", referencesStorage.contains(missedHash))
+    assertTrue("Reference expected to be missed.", referencesStorage.get(missedHash).isEmpty)
+  }
+
+  @Test
+  def pruneByHeight(): Unit = {
+    val referencesStorage = new MainchainBlockReferencesStorage(new InMemoryStorageAdapter(), maxStoredHeights = 2)
+
+    assertTrue("Add operation expected to be successful.", referencesStorage.add(Seq((100, references(0)), (101, references(1)))).isSuccess)
+    assertTrue("Reference expected to be present.", referencesStorage.contains(hash(references(0))))
+    assertTrue("Reference expected to be present.", referencesStorage.contains(hash(references(1))))
+
+    // Reference of the height 100 is out of the window of 2 heights
+    assertTrue("Add operation expected to be successful.", referencesStorage.add(Seq((102, references(2)))).isSuccess)
+    assertFalse("Reference expected to be pruned.", referencesStorage.contains(hash(references(0))))
+    assertTrue("Reference expected to be present.", referencesStorage.contains(hash(references(1))))
+    assertTrue("Reference expected to be present.", referencesStorage.contains(hash(references(2))))
+    assertEquals("Different min height expected.", Some(101), referencesStorage.minHeight)
+    assertEquals("Different max height expected.", Some(102), referencesStorage.maxHeight)
+
+    // Reference of the height below the window is not added
+    assertTrue("Add operation expected to be successful.", referencesStorage.add(Seq((100, references(0)))).isSuccess)
+    assertFalse("Reference expected to be not added.", referencesStorage.contains(hash(references(0))))
+
+    // Another reference for the same height (MC fork)
+    assertTrue("Add operation expected to be successful.", referencesStorage.add(Seq((101, references(3)))).isSuccess)
+    assertTrue("Reference expected to be present.", referencesStorage.contains(hash(references(3))))
+
+    // All references of the height 101 are out of the window
+    assertTrue("Add operation expected to be successful.", referencesStorage.add(Seq((103, references(0)))).isSuccess)
+    assertFalse("Reference expected to be pruned.", referencesStorage.contains(hash(references(1))))
+    assertFalse("Reference expected to be pruned.", referencesStorage.contains(hash(references(3))))
+    assertTrue("Reference expected to be present.", referencesStorage.contains(hash(references(2))))
+    assertTrue("Reference expected to be present.", referencesStorage.contains(hash(references(0))))
+    assertEquals("Different min height expected.", Some(102), referencesStorage.minHeight)
+    assertEquals("Different max height expected.", Some(103), referencesStorage.maxHeight)
+  }
+}
@@ -4,7 +4,7 @@ import java.lang.{Byte => JByte}
 import java.util.{ArrayList => JArrayList, HashMap => JHashMap, List => JList, Optional => JOptional}
 
 import com.horizen.SidechainTypes
-import com.horizen.block.SidechainBlock
+import com.horizen.block.{Ommer, SidechainBlock}
 import com.horizen.chain.SidechainBlockInfo
 import com.horizen.companion.SidechainTransactionsCompanion
 import com.horizen.fixtures.{CompanionsFixture, SidechainBlockFixture, SidechainBlockInfoFixture, VrfGenerator}
@@ -50,15 +50,29 @@ class SidechainHistoryStorageTest extends JUnitSuite with MockitoSugar with Side
         blockList(i)._2.bytes
       )
 
-      // block data
+      // block header data
       dataList += new Pair(
         new ByteArrayWrapper(idToBytes(blockList(i)._1.id)),
-        new ByteArrayWrapper(blockList(i)._1.bytes)
+        new ByteArrayWrapper(SidechainHistoryStorage.blockHeaderRecord(blockList(i)._1))
+      )
+
+      // block body data
+      dataList += new Pair(
+        new ByteArrayWrapper(Blake2b256(s"blockBody${blockList(i)._1.id}")),
+        new ByteArrayWrapper(BlockBodyCodec.encode(new SidechainBlockBodySerializer(sidechainTransactionsCompanion).toBytes(
+          SidechainBlockBody(blockList(i)._1.sidechainTransactions, blockList(i)._1.mainchainBlockReferencesData)), compress = false))
       )
     }
     dataList
   }
 
+  // Ids of the blocks of the same height data emulating storage data, the block is appended to the already stored ones.
+  def generateBlocksAtHeightData(block: SidechainBlock, blockInfo: SidechainBlockInfo): Pair[ByteArrayWrapper, ByteArrayWrapper] = {
+    val key = new ByteArrayWrapper(Blake2b256(s"blocksAtHeight${blockInfo.height}"))
+    val storedIds: Array[Byte] = storedDataList.find(_.getKey.equals(key)).map(_.getValue.data).getOrElse(Array[Byte]())
+    new Pair(key, new ByteArrayWrapper(storedIds ++ idToBytes(block.id)))
+  }
+
   private def checkMainchainContent(historyStorage: SidechainHistoryStorage, blocks: Seq[SidechainBlock], blockIndex: Int): Unit = {
     // Check MainchainHeaders
     blocks(blockIndex).mainchainHeaders.foreach { case mainchainHeader =>
@@ -165,6 +179,12 @@ class SidechainHistoryStorageTest extends JUnitSuite with MockitoSugar with Side
 
     storedDataList ++= generateStoredData(activeChainBlockList zip activeChainBlockInfoList)
     storedDataList ++= generateStoredData(forkChainBlockList zip forkChainBlockInfoList) // without genesis block
+    ((activeChainBlockList zip activeChainBlockInfoList) ++ (forkChainBlockList zip forkChainBlockInfoList)).foreach {
+      case (block, blockInfo) =>
+        val blocksAtHeightData = generateBlocksAtHeightData(block, blockInfo)
+        storedDataList --= storedDataList.filter(_.getKey.equals(blocksAtHeightData.getKey))
+        storedDataList += blocksAtHeightData
+    }
 
     // store best block data from active chain
     storedDataList += new Pair(
@@ -232,6 +252,11 @@ class SidechainHistoryStorageTest extends JUnitSuite with MockitoSugar with Side
     // unknown block id
     assertTrue("Storage expected not to find block for unknown id", historyStorage.blockById(getRandomModifier()).isEmpty)
 
+    // block header and ommer are read without the block body
+    assertEquals("Storage returned wrong block header", activeChainBlockList(4).header.id, historyStorage.headerById(activeChainBlockList(4).id).get.id)
+    assertEquals("Storage returned wrong block ommer", Ommer.toOmmer(forkChainBlockList.last), historyStorage.ommerById(forkChainBlockList.last.id).get)
+    assertTrue("Storage expected not to find block header for unknown id", historyStorage.headerById(getRandomModifier()).isEmpty)
+
 
 
     // Test 6: get blockInfoById
@@ -333,11 +358,13 @@ class SidechainHistoryStorageTest extends JUnitSuite with MockitoSugar with Side
     val nextTipBlockInfo = generateBlockInfo(nextTipBlock, activeChainBlockInfoList.last, params)
     val nextTipToUpdate: JList[Pair[ByteArrayWrapper, ByteArrayWrapper]] = new JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]]()
     generateStoredData(ListBuffer(nextTipBlock -> nextTipBlockInfo)).map(p => nextTipToUpdate.add(p))
+    nextTipToUpdate.add(generateBlocksAtHeightData(nextTipBlock, nextTipBlockInfo))
 
     val nextForkTipBlock = generateNextSidechainBlock(forkChainBlockList.last, sidechainTransactionsCompanion, params, basicSeed = 114422L)
     val nextForkTipBlockInfo = generateBlockInfo(nextForkTipBlock, forkChainBlockInfoList.last, params, Some(forkChainBlockInfoList.last.score + 2))
     val forkTipToUpdate: JList[Pair[ByteArrayWrapper, ByteArrayWrapper]] = new JArrayList[Pair[ByteArrayWrapper, ByteArrayWrapper]]()
     generateStoredData(ListBuffer(nextForkTipBlock -> nextForkTipBlockInfo)).map(p => forkTipToUpdate.add(p))
+    forkTipToUpdate.add(generateBlocksAtHeightData(nextForkTipBlock, nextForkTipBlockInfo))
 
     Mockito.when(mockedStorage.update(
       ArgumentMatchers.any[ByteArrayWrapper](),
@@ -551,4 +578,13 @@ class SidechainHistoryStorageTest extends JUnitSuite with MockitoSugar with Side
     assertTrue("HistoryStorage constructor. Exception must be thrown if params object is not specified.",
       exceptionThrown)
   }
+
+  @Test
+  def testLocatorHeights(): Unit = {
+    assertTrue("Locator of empty chain expected to be empty", SidechainHistoryStorage.locatorHeights(0).isEmpty)
+    assertEquals("Locator of genesis only chain is wrong", Seq(1), SidechainHistoryStorage.locatorHeights(1))
+    assertEquals("Locator of short chain expected to contain all heights", (10 to 1 by -1), SidechainHistoryStorage.locatorHeights(10))
+    assertEquals("Locator of tall chain is wrong", (100 to 91 by -1) ++ Seq(89, 85, 77, 61, 29, 1), SidechainHistoryStorage.locatorHeights(100))
+    assertTrue("Locator size expected to be logarithmic", SidechainHistoryStorage.locatorHeights(10000000).size < 40)
+  }
 }
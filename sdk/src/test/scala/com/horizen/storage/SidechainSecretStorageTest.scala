@@ -147,6 +147,51 @@ class SidechainSecretStorageTest
     assertTrue("SecretStorage failure expected during add.", tryRes.isFailure)
   }
 
+  @Test
+  def testAddList(): Unit = {
+    val maxSecretsPerUpdate = 3
+    val secretStorage = new SidechainSecretStorage(mockedStorage, sidechainSecretsCompanion, maxSecretsPerUpdate)
+
+    val newSecrets: List[SidechainTypes#SCS] = (1 to 7).map(i => getPrivateKey25519(s"new secret $i".getBytes())).toList
+    val committedChunks = new ListBuffer[java.util.List[Pair[ByteArrayWrapper, ByteArrayWrapper]]]()
+
+    Mockito.when(mockedStorage.update(
+      ArgumentMatchers.any[ByteArrayWrapper](),
+      ArgumentMatchers.anyList[Pair[ByteArrayWrapper, ByteArrayWrapper]](),
+      ArgumentMatchers.anyList[ByteArrayWrapper]()))
+      .thenAnswer(answer => {
+        committedChunks.append(answer.getArgument(1).asInstanceOf[java.util.List[Pair[ByteArrayWrapper, ByteArrayWrapper]]])
+        assertTrue("SecretStorage.update(...) actual toRemove list must be empty.",
+          answer.getArgument(2).asInstanceOf[java.util.List[ByteArrayWrapper]].isEmpty)
+      })
+
+
+    // Test 1: test successful add(...) of the list, that is committed in chunks
+    val tryRes = secretStorage.add(newSecrets)
+    assertTrue("SecretStorage successful adding expected, instead exception occurred:\n %s".format(if(tryRes.isFailure) tryRes.failed.get.getMessage else ""),
+      tryRes.isSuccess)
+    assertEquals("SecretStorage expected to commit Secrets in chunks.", Seq(3, 3, 1), committedChunks.map(_.size()))
+    assertEquals("SecretStorage expected to commit all Secrets.",
+      newSecrets.map(s => new ByteArrayWrapper(Blake2b256.hash(s.publicImage().bytes))),
+      committedChunks.flatMap(_.asScala.map(_.getKey)))
+    for (s <- newSecrets)
+      assertEquals("SecretStorage successful adding expected. Secret should be added.", s, secretStorage.get(s.publicImage()).get)
+
+
+    // Test 2: test failed add(...), when the list contains duplicates. Nothing should be committed.
+    committedChunks.clear()
+    val newSecret = getPrivateKey25519("new secret".getBytes())
+    assertTrue("SecretStorage failure expected during add.", secretStorage.add(List(newSecret, newSecret)).isFailure)
+    assertTrue("SecretStorage expected to commit nothing.", committedChunks.isEmpty)
+    assertTrue("Storage should NOT contain Secret that was tried to add.", secretStorage.get(newSecret.publicImage()).isEmpty)
+
+
+    // Test 3: test failed add(...), when the list contains existing Secret. Nothing should be committed.
+    assertTrue("SecretStorage failure expected during add.", secretStorage.add(List(newSecret, secretList.head)).isFailure)
+    assertTrue("SecretStorage expected to commit nothing.", committedChunks.isEmpty)
+    assertTrue("Storage should NOT contain Secret that was tried to add.", secretStorage.get(newSecret.publicImage()).isEmpty)
+  }
+
   @Test
   def testRemove(): Unit = {
     val secretStorage = new SidechainSecretStorage(mockedStorage, sidechainSecretsCompanion)
@@ -0,0 +1,88 @@
+package com.horizen.storage.performance
+
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.util.{ArrayList => JArrayList, List => JList}
+
+import com.horizen.block.{MainchainBlockReference, MainchainBlockReferenceData}
+import com.horizen.fixtures.{CompanionsFixture, IODBStoreFixture}
+import com.horizen.params.RegTestParams
+import com.horizen.storage.{BlockBodyCodec, IODBStoreAdapter, SidechainBlockBody, SidechainBlockBodySerializer}
+import com.horizen.utils.{ByteArrayWrapper, BytesUtils, Pair}
+import org.junit.Assert.assertEquals
+import org.scalatest.junit.JUnitSuite
+import scorex.crypto.hash.Blake2b256
+
+import scala.io.Source
+import scala.util.Random
+
+class BlockBodyCompressionPerformanceTest extends JUnitSuite with IODBStoreFixture with CompanionsFixture {
+  private val bodiesNumber = 20000
+  private val batchSize = 100
+  private val readsNumber = 20000
+
+  private val bodySerializer = new SidechainBlockBodySerializer(getDefaultTransactionsCompanion)
+  private val threadMXBean = ManagementFactory.getThreadMXBean
+
+  // Mainchain references data of the regtest blocks, sidechain id is the one of the sidechains declared in the blocks.
+  private val mainchainReferencesData: Seq[MainchainBlockReferenceData] = {
+    val params = RegTestParams(BytesUtils.fromHexString("7f056e570ede40aee29236ada94740f01bcbba90fd4c889f6ddea8f1223a4105"))
+    Seq("mc_block_empty_sidechains", "mc_block_with_3_sidechains", "mc_block_with_backward_transfer")
+      .map(resource => Source.fromResource(s"new_mc_blocks/$resource").getLines().next())
+      .map(blockHex => MainchainBlockReference.create(BytesUtils.fromHexString(blockHex), params).get.data)
+  }
+
+  // Regtest chain bodies: every sidechain block contains the reference data of one mainchain block.
+  private val bodies: Seq[Array[Byte]] = (0 until bodiesNumber).map(index =>
+    bodySerializer.toBytes(SidechainBlockBody(Seq(), Seq(mainchainReferencesData(index % mainchainReferencesData.size)))))
+
+  private def bodyKey(index: Int): ByteArrayWrapper = new ByteArrayWrapper(Blake2b256(s"blockBody$index"))
+
+  private def nextVersion: ByteArrayWrapper = {
+    val version = new Array[Byte](32)
+    Random.nextBytes(version)
+    new ByteArrayWrapper(version)
+  }
+
+  private def directorySize(dir: File): Long = dir.listFiles().map(file => if (file.isDirectory) directorySize(file) else file.length()).sum
+
+  private def measure(description: String, compress: Boolean): Unit = {
+    val storage = new IODBStoreAdapter(getStore())
+    val storeDir = stores.last._1
+
+    val writeCpuStart = threadMXBean.getCurrentThreadCpuTime
+    var encodedBytes: Long = 0
+    bodies.indices.grouped(batchSize).foreach(batch => {
+      val toUpdate: JList[Pair[ByteArrayWrapper, ByteArrayWrapper]] = new JArrayList()
+      batch.foreach(index => {
+        val record = BlockBodyCodec.encode(bodies(index), compress)
+        encodedBytes += record.length
+        toUpdate.add(new Pair(bodyKey(index), new ByteArrayWrapper(record)))
+      })
+      storage.update(nextVersion, toUpdate, new JArrayList())
+    })
+    val writeCpuTimeInMs = (threadMXBean.getCurrentThreadCpuTime - writeCpuStart).toDouble / 1000000
+
+    val rnd = new Random(42L)
+    val readStart = System.nanoTime()
+    val readCpuStart = threadMXBean.getCurrentThreadCpuTime
+    for (_ <- 0 until readsNumber) {
+      val index = rnd.nextInt(bodiesNumber)
+      val body = bodySerializer.parseBytes(BlockBodyCodec.decode(storage.get(bodyKey(index)).get().data).get)
+      assertEquals("Read body is wrong", 1, body.mainchainBlockReferencesData.size)
+    }
+    val readTimeInMs = (System.nanoTime() - readStart).toDouble / 1000000
+    val readCpuTimeInMs = (threadMXBean.getCurrentThreadCpuTime - readCpuStart).toDouble / 1000000
+
+    println(f"$description: $bodiesNumber bodies, records ${encodedBytes / 1024} KB, on disk ${directorySize(storeDir) / 1024} KB, " +
+      f"write CPU $writeCpuTimeInMs%.0f ms, $readsNumber random reads in $readTimeInMs%.0f ms " +
+      f"(${readTimeInMs * 1000 / readsNumber}%.1f us per read, CPU $readCpuTimeInMs%.0f ms)")
+  }
+
+  //@Test
+  def runMeasures(): Unit = {
+    println(s"Raw bodies size: ${bodies.map(_.length.toLong).sum / 1024} KB")
+    measure("Raw codec", compress = false)
+    measure("Deflate codec", compress = true)
+  }
+}
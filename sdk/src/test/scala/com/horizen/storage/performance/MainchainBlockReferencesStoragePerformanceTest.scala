@@ -0,0 +1,70 @@
+package com.horizen.storage.performance
+
+import com.horizen.SidechainHistory
+import com.horizen.block.MainchainBlockReference
+import com.horizen.chain.{MainchainHeaderHash, byteArrayToMainchainHeaderHash}
+import com.horizen.fixtures.IODBStoreFixture
+import com.horizen.forge.MainchainSynchronizer
+import com.horizen.params.MainNetParams
+import com.horizen.storage.{IODBStoreAdapter, MainchainBlockReferencesStorage}
+import com.horizen.utils.BytesUtils
+import com.horizen.websocket.MainchainNodeChannel
+import org.mockito.{ArgumentMatchers, Mockito}
+import org.scalatest.junit.JUnitSuite
+import org.scalatest.mockito.MockitoSugar
+
+import scala.io.Source
+import scala.util.Try
+
+class MainchainBlockReferencesStoragePerformanceTest extends JUnitSuite with IODBStoreFixture with MockitoSugar {
+  private val params = MainNetParams()
+  // Emulated round trip time of the MC node request.
+  private val requestLatencyMillis: Long = 20
+  private val measureIterations: Int = 10
+
+  private val blocksHexByHash: Map[String, String] =
+    Seq("mcblock473173_mainnet", "mcblock473174_mainnet", "mcblock473175_mainnet", "mcblock473176_mainnet")
+      .map(resource => Source.fromResource(resource).getLines().next())
+      .map(blockHex => MainchainBlockReference.create(BytesUtils.fromHexString(blockHex), params).get.header.hashHex -> blockHex)
+      .toMap
+  private val hashes: Seq[MainchainHeaderHash] = blocksHexByHash.keys.toSeq.map(hash => byteArrayToMainchainHeaderHash(BytesUtils.fromHexString(hash)))
+
+  // MC node channel, that retrieves and parses the blocks the same way as the real one, but without the network.
+  private def mainchainNodeChannel: MainchainNodeChannel = {
+    val channel = mock[MainchainNodeChannel]
+    Mockito.when(channel.getBlocksByHashes(ArgumentMatchers.any[Seq[String]], ArgumentMatchers.anyInt())).thenAnswer(answer => Try {
+      val requestedHashes = answer.getArgument(0).asInstanceOf[Seq[String]]
+      if (requestedHashes.nonEmpty)
+        Thread.sleep(requestLatencyMillis)
+      requestedHashes.map(hash => (0, MainchainBlockReference.create(BytesUtils.fromHexString(blocksHexByHash(hash)), params).get))
+    })
+    channel
+  }
+
+  private def measure(description: String, synchronizerFactory: () => MainchainSynchronizer): Unit = {
+    val history = mock[SidechainHistory]
+    var totalTimeNano: Long = 0
+    for (_ <- 1 to measureIterations) {
+      val mainchainSynchronizer = synchronizerFactory()
+      val start = System.nanoTime()
+      mainchainSynchronizer.getMainchainBlockReferences(history, hashes).get
+      totalTimeNano += System.nanoTime() - start
+    }
+    println(f"$description: ${hashes.size} references retrieved in ${totalTimeNano.toDouble / measureIterations / 1000000}%.3f ms on average")
+  }
+
+  //@Test
+  def runMeasures(): Unit = {
+    // Every forging attempt starts with the empty storage.
+    measure("Cold cache", () => new MainchainSynchronizer(mainchainNodeChannel, new MainchainBlockReferencesStorage(new IODBStoreAdapter(getStore()))))
+
+    // Every forging attempt starts after the node restart: storage is filled, in-memory cache is empty.
+    val filledStorage = new MainchainBlockReferencesStorage(new IODBStoreAdapter(getStore()))
+    new MainchainSynchronizer(mainchainNodeChannel, filledStorage).getMainchainBlockReferences(mock[SidechainHistory], hashes).get
+    measure("Warm storage", () => new MainchainSynchronizer(mainchainNodeChannel, filledStorage))
+
+    // All forging attempts share the same synchronizer.
+    val sharedSynchronizer = new MainchainSynchronizer(mainchainNodeChannel, filledStorage)
+    measure("Warm in-memory cache", () => sharedSynchronizer)
+  }
+}
@@ -0,0 +1,93 @@
+package com.horizen.storage.performance
+
+import java.util.{ArrayList => JArrayList, List => JList}
+
+import com.google.common.primitives.Ints
+import com.horizen.block.SidechainBlock
+import com.horizen.chain.SidechainBlockInfo
+import com.horizen.fixtures.{CompanionsFixture, IODBStoreFixture, SidechainBlockFixture}
+import com.horizen.params.MainNetParams
+import com.horizen.storage.{ActiveChainCheckpointChunkSerializer, IODBStoreAdapter, SidechainHistoryStorage, Storage}
+import com.horizen.utils.{ByteArrayWrapper, Pair}
+import org.junit.Assert.assertEquals
+import org.scalatest.junit.JUnitSuite
+import scorex.core.consensus.ModifierSemanticValidity
+import scorex.crypto.hash.Blake2b256
+import scorex.util.{ModifierId, bytesToId, idToBytes}
+
+import scala.util.Random
+
+class SidechainHistoryStorageLoadPerformanceTest extends JUnitSuite with IODBStoreFixture with SidechainBlockFixture with CompanionsFixture {
+  private val blocksNumber = 1000000
+  private val batchSize = 10000
+  private val checkpointChunkSize = SidechainHistoryStorage.DefaultActiveChainCheckpointChunkSize
+
+  private val sidechainTransactionsCompanion = getDefaultTransactionsCompanion
+  private val genesisBlock: SidechainBlock = SidechainBlockFixture.generateSidechainBlock(sidechainTransactionsCompanion)
+  private val params = MainNetParams(new Array[Byte](32), genesisBlock.id)
+
+  private def nextVersion: ByteArrayWrapper = {
+    val version = new Array[Byte](32)
+    Random.nextBytes(version)
+    new ByteArrayWrapper(version)
+  }
+
+  // Block infos of the chain, only the genesis block header is stored, because the other blocks are not read on load.
+  private def generateChain(): Seq[(ModifierId, SidechainBlockInfo)] = {
+    val genesisBlockInfo = generateGenesisBlockInfo(
+      Some(genesisBlock.mainchainHeaders.head.hash),
+      Some(genesisBlock.mainchainBlockReferencesData.head.headerHash),
+      ModifierSemanticValidity.Valid,
+      Some(genesisBlock.timestamp))
+
+    (2 to blocksNumber).scanLeft((genesisBlock.id, genesisBlockInfo)) {
+      case ((parentId, parentInfo), blockHeight) =>
+        val id = bytesToId(Blake2b256(idToBytes(parentId)))
+        (id, parentInfo.copy(height = blockHeight, score = blockHeight, parentId = parentId, mainchainHeaderHashes = Seq(), mainchainReferenceDataHeaderHashes = Seq()))
+    }
+  }
+
+  private def fillStorage(storage: Storage, chain: Seq[(ModifierId, SidechainBlockInfo)]): Unit = {
+    storage.update(nextVersion, java.util.Arrays.asList(
+      new Pair(new ByteArrayWrapper(idToBytes(genesisBlock.id)), new ByteArrayWrapper(SidechainHistoryStorage.blockHeaderRecord(genesisBlock))),
+      new Pair(new ByteArrayWrapper(Array.fill(32)(-1: Byte)), new ByteArrayWrapper(idToBytes(chain.last._1)))),
+      new JArrayList())
+
+    chain.grouped(batchSize).foreach(batch => {
+      val toUpdate: JList[Pair[ByteArrayWrapper, ByteArrayWrapper]] = new JArrayList()
+      batch.foreach { case (id, info) => toUpdate.add(new Pair(new ByteArrayWrapper(Blake2b256(s"blockInfo$id")), new ByteArrayWrapper(info.bytes))) }
+      storage.update(nextVersion, toUpdate, new JArrayList())
+    })
+  }
+
+  private def fillCheckpoint(storage: Storage, chain: Seq[(ModifierId, SidechainBlockInfo)]): Unit = {
+    val chunks = chain.grouped(checkpointChunkSize).filter(_.size == checkpointChunkSize).toSeq
+    chunks.zipWithIndex.foreach {
+      case (chunk, chunkIndex) =>
+        storage.update(nextVersion, java.util.Arrays.asList(
+          new Pair(SidechainHistoryStorage.activeChainCheckpointChunkKey(chunkIndex), new ByteArrayWrapper(ActiveChainCheckpointChunkSerializer.toBytes(chunk))),
+          new Pair(SidechainHistoryStorage.activeChainCheckpointHeightKey, new ByteArrayWrapper(Ints.toByteArray((chunkIndex + 1) * checkpointChunkSize)))),
+          new JArrayList())
+    }
+  }
+
+  private def measureLoad(description: String, storage: Storage): Unit = {
+    val start = System.nanoTime()
+    val historyStorage = new SidechainHistoryStorage(storage, sidechainTransactionsCompanion, params)
+    val timeInMs = (System.nanoTime() - start).toDouble / 1000000
+
+    assertEquals("Loaded active chain height is wrong", blocksNumber, historyStorage.height)
+    println(f"$description: active chain of $blocksNumber blocks loaded in $timeInMs%.0f ms")
+  }
+
+  //@Test
+  def runMeasures(): Unit = {
+    val chain = generateChain()
+    val storage = new IODBStoreAdapter(getStore())
+    fillStorage(storage, chain)
+
+    measureLoad("Without checkpoint", storage)
+    fillCheckpoint(storage, chain)
+    measureLoad(s"With checkpoint of $checkpointChunkSize blocks chunks", storage)
+  }
+}
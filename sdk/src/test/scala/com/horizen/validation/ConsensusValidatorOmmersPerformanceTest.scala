@@ -0,0 +1,98 @@
+package com.horizen.validation
+
+import com.horizen.SidechainHistory
+import com.horizen.block.{Ommer, SidechainBlock, SidechainBlockHeader}
+import com.horizen.chain.SidechainBlockInfo
+import com.horizen.consensus._
+import com.horizen.params.{MainNetParams, NetworkParams}
+import com.horizen.utils.ParallelComputation
+import com.horizen.vrf.VrfOutput
+import org.junit.Assert.assertEquals
+import org.mockito.{ArgumentMatchers, Mockito}
+import org.scalatest.junit.JUnitSuite
+import org.scalatest.mockito.MockitoSugar
+import scorex.crypto.hash.Blake2b256
+import scorex.util.ModifierId
+
+import java.util.concurrent.atomic.AtomicInteger
+import scala.util.Random
+
+class ConsensusValidatorOmmersPerformanceTest extends JUnitSuite with MockitoSugar {
+  private val ommersPerContainer = 3
+  private val ommersTreeDepth = 4
+  // Emulates the cost of the VRF proof verification done by SidechainHistory.getVrfOutput
+  private val vrfVerificationHashes = 20000
+
+  private val consensusValidator: ConsensusValidator = new ConsensusValidator {
+    override private[horizen] def verifyForgerBox(header: SidechainBlockHeader, stakeConsensusEpochInfo: StakeConsensusEpochInfo, vrfOutput: VrfOutput): Unit = {}
+  }
+
+  private val vrfOutputsCalculated = new AtomicInteger(0)
+
+  private val params: NetworkParams = MainNetParams()
+  private class TimeToEpochSlotConverterImpl(val params: NetworkParams) extends TimeToEpochSlotConverter
+  private val converter = new TimeToEpochSlotConverterImpl(params)
+
+  private def mockHistory(): SidechainHistory = {
+    val history: SidechainHistory = mock[SidechainHistory]
+    Mockito.when(history.timeStampToEpochNumber(ArgumentMatchers.any[Long])).thenAnswer(answer => {
+      converter.timeStampToEpochNumber(answer.getArgument(0))
+    })
+    Mockito.when(history.timestampToEpochAndSlot(ArgumentMatchers.any[Long])).thenAnswer(answer => {
+      converter.timestampToEpochAndSlot(answer.getArgument(0))
+    })
+    Mockito.when(history.params).thenReturn(params)
+    Mockito.when(history.getVrfOutput(ArgumentMatchers.any[SidechainBlockHeader], ArgumentMatchers.any[NonceConsensusEpochInfo])).thenAnswer(answer => {
+      val header: SidechainBlockHeader = answer.getArgument(0)
+      var hash: Array[Byte] = BigInt(header.timestamp).toByteArray
+      for (_ <- 0 until vrfVerificationHashes)
+        hash = Blake2b256.hash(hash)
+      vrfOutputsCalculated.incrementAndGet()
+      Some(new VrfOutput(Array.fill(6)(hash).flatten))
+    })
+    history
+  }
+
+  // Ommers tree with `depth` levels of `ommersPerContainer` Ommers each starting from `firstSlot`, returns the last used slot as well.
+  private def generateOmmers(epochNumber: Int, firstSlot: Int, depth: Int): (Seq[Ommer], Int) = {
+    if (depth == 0)
+      return (Seq(), firstSlot - 1)
+
+    var nextSlot = firstSlot
+    val ommers = (0 until ommersPerContainer).map(_ => {
+      val (subOmmers, subOmmersLastSlot) = generateOmmers(epochNumber, nextSlot, depth - 1)
+      val slot = subOmmersLastSlot + 1
+      nextSlot = slot + 1
+      val header = mock[SidechainBlockHeader]
+      Mockito.when(header.timestamp).thenReturn(converter.getTimeStampForEpochAndSlot(ConsensusEpochNumber @@ epochNumber, ConsensusSlotNumber @@ slot))
+      Ommer(header, None, Seq(), subOmmers)
+    })
+    (ommers, nextSlot - 1)
+  }
+
+  //@Test
+  def runMeasures(): Unit = {
+    val history = mockHistory()
+    val epochNumber = 3
+    val (ommers, lastOmmerSlot) = generateOmmers(epochNumber, 1, ommersTreeDepth)
+    val ommersNumber = Seq.iterate(ommersPerContainer, ommersTreeDepth)(_ * ommersPerContainer).sum
+
+    val header = mock[SidechainBlockHeader]
+    Mockito.when(header.timestamp).thenReturn(converter.getTimeStampForEpochAndSlot(ConsensusEpochNumber @@ epochNumber, ConsensusSlotNumber @@ (lastOmmerSlot + 1)))
+    val verifiedBlock: SidechainBlock = mock[SidechainBlock]
+    Mockito.when(verifiedBlock.header).thenReturn(header)
+    Mockito.when(verifiedBlock.ommers).thenReturn(ommers)
+
+    val nonceBytes = new Array[Byte](32)
+    Random.nextBytes(nonceBytes)
+    val fullConsensusEpochInfo = FullConsensusEpochInfo(mock[StakeConsensusEpochInfo], NonceConsensusEpochInfo(byteArrayToConsensusNonce(nonceBytes)))
+
+    val start = System.nanoTime()
+    consensusValidator.verifyOmmers(verifiedBlock, fullConsensusEpochInfo, Some(fullConsensusEpochInfo),
+      ModifierId @@ "parent", mock[SidechainBlockInfo], history, Seq())
+    val timeInMs = (System.nanoTime() - start).toDouble / 1000000
+
+    assertEquals("Each Ommer VRF output expected to be calculated once.", ommersNumber, vrfOutputsCalculated.get())
+    println(f"$ommersNumber nested ommers ($ommersTreeDepth levels) verified in $timeInMs%.3f ms with parallelism ${ParallelComputation.parallelism}")
+  }
+}
@@ -0,0 +1,121 @@
+package com.horizen.websocket
+
+import com.horizen.{SidechainHistory, WebSocketSettings}
+import com.horizen.block.MainchainBlockReference
+import com.horizen.chain.byteArrayToMainchainHeaderHash
+import com.horizen.forge.MainchainSynchronizer
+import com.horizen.params.MainNetParams
+import com.horizen.storage.{InMemoryStorageAdapter, MainchainBlockReferencesStorage}
+import com.horizen.utils.BytesUtils
+import org.glassfish.tyrus.server.Server
+import org.junit.{After, Before, Test}
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import org.scalatest.mockito.MockitoSugar
+
+import scala.concurrent.duration._
+import scala.io.Source
+
+class MainchainNodeChannelImplWebSocketTest extends JUnitSuite with MockitoSugar {
+
+  private val serverHost = "localhost"
+  private var server: Server = _
+  private var connector: WebSocketConnectorImpl = _
+  private var mainchainNodeChannel: MainchainNodeChannelImpl = _
+
+  private val params = MainNetParams()
+  private val blocksHex: Seq[String] = Seq("mcblock473173_mainnet", "mcblock473174_mainnet", "mcblock473175_mainnet", "mcblock473176_mainnet")
+    .map(resource => Source.fromResource(resource).getLines().next())
+  private val blocksHashes: Seq[String] = blocksHex
+    .map(blockHex => MainchainBlockReference.create(BytesUtils.fromHexString(blockHex), params).get.header.hashHex)
+
+  @Before
+  def setUp(): Unit = {
+    WebSocketServerMainchainNodeEndpoint.reset()
+    blocksHashes.zip(blocksHex).foreach{case (hash, blockHex) => WebSocketServerMainchainNodeEndpoint.blocks.put(hash, blockHex)}
+
+    // start server on available port
+    server = new Server(serverHost, 0, null, null, classOf[WebSocketServerMainchainNodeEndpoint])
+    server.start()
+
+    val conf = WebSocketSettings(
+      address = "ws://" + serverHost + ":" + server.getPort,
+      connectionTimeout = 1 second,
+      reconnectionDelay = 0 seconds,
+      reconnectionMaxAttempts = 1,
+      zencliCommandLine = ""
+    )
+
+    val communicationClient = new WebSocketCommunicationClient()
+    connector = new WebSocketConnectorImpl(conf.address, conf.connectionTimeout, communicationClient, new DefaultWebSocketReconnectionHandler(conf))
+    assertTrue("Web socket connector expected to be started.", connector.start().isSuccess)
+    communicationClient.setWebSocketChannel(connector)
+
+    mainchainNodeChannel = new MainchainNodeChannelImpl(communicationClient, params)
+  }
+
+  @After
+  def tearDown(): Unit = {
+    connector.stop()
+    server.stop()
+  }
+
+  @Test
+  def getBlocksByHashes(): Unit = {
+    WebSocketServerMainchainNodeEndpoint.responseDelayMillis = 100
+    val maxRequestsInFlight = 3
+
+    val referencesTry = mainchainNodeChannel.getBlocksByHashes(blocksHashes, maxRequestsInFlight)
+    assertTrue("MCBlock refs expected to be retrieved.", referencesTry.isSuccess)
+    assertEquals("MCBlock refs hashes are different.", blocksHashes, referencesTry.get.map(_._2.header.hashHex))
+
+    assertEquals("Every MCBlock expected to be requested once.", blocksHashes.size, WebSocketServerMainchainNodeEndpoint.requestsNumber.get())
+    assertEquals("Requests expected to be sent without waiting for the previous responses.",
+      maxRequestsInFlight, WebSocketServerMainchainNodeEndpoint.maxRequestsInFlight.get())
+  }
+
+  @Test
+  def getBlocksByHashesSequentially(): Unit = {
+    WebSocketServerMainchainNodeEndpoint.responseDelayMillis = 10
+
+    val referencesTry = mainchainNodeChannel.getBlocksByHashes(blocksHashes.reverse, 1)
+    assertTrue("MCBlock refs expected to be retrieved.", referencesTry.isSuccess)
+    assertEquals("MCBlock refs hashes are different.", blocksHashes.reverse, referencesTry.get.map(_._2.header.hashHex))
+    assertEquals("Requests expected to be sent one by one.", 1, WebSocketServerMainchainNodeEndpoint.maxRequestsInFlight.get())
+  }
+
+  @Test
+  def getBlocksByHashesUnknownBlock(): Unit = {
+    val unknownHash = "0000000024ebb5c6d558daa34ad9b9a4c5503b057e14815a48e241612b1eb661"
+
+    val referencesTry = mainchainNodeChannel.getBlocksByHashes(blocksHashes :+ unknownHash, 2)
+    assertTrue("MCBlock refs retrieving expected to fail.", referencesTry.isFailure)
+  }
+
+  @Test
+  def mainchainSynchronizerReferencesCache(): Unit = {
+    val history = mock[SidechainHistory]
+    val referencesStorage = new MainchainBlockReferencesStorage(new InMemoryStorageAdapter())
+    val mainchainSynchronizer = new MainchainSynchronizer(mainchainNodeChannel, referencesStorage, 2)
+    val hashes = blocksHashes.map(hash => byteArrayToMainchainHeaderHash(BytesUtils.fromHexString(hash)))
+
+    val referencesTry = mainchainSynchronizer.getMainchainBlockReferences(history, hashes.take(2))
+    assertTrue("MCBlock refs expected to be retrieved.", referencesTry.isSuccess)
+    assertEquals("MCBlock refs hashes are different.", blocksHashes.take(2), referencesTry.get.map(_.header.hashHex))
+    assertEquals("Every MCBlock expected to be requested once.", 2, WebSocketServerMainchainNodeEndpoint.requestsNumber.get())
+
+    // Only not cached references expected to be requested.
+    val allReferencesTry = mainchainSynchronizer.getMainchainBlockReferences(history, hashes.reverse)
+    assertTrue("MCBlock refs expected to be retrieved.", allReferencesTry.isSuccess)
+    assertEquals("MCBlock refs hashes are different.", blocksHashes.reverse, allReferencesTry.get.map(_.header.hashHex))
+    assertEquals("Cached MCBlocks expected not to be requested again.", blocksHashes.size, WebSocketServerMainchainNodeEndpoint.requestsNumber.get())
+  }
+
+    // References retrieved before expected to be taken from the storage after the restart.
+    val restartedMainchainSynchronizer = new MainchainSynchronizer(mainchainNodeChannel, referencesStorage, 2)
+    val storedReferencesTry = restartedMainchainSynchronizer.getMainchainBlockReferences(history, hashes)
+    assertTrue("MCBlock refs expected to be retrieved.", storedReferencesTry.isSuccess)
+    assertEquals("MCBlock refs hashes are different.", blocksHashes, storedReferencesTry.get.map(_.header.hashHex))
+    assertEquals("Stored MCBlocks expected not to be requested again.", blocksHashes.size, WebSocketServerMainchainNodeEndpoint.requestsNumber.get())
+  }
+}
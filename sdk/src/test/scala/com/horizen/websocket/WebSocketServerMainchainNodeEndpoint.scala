@@ -0,0 +1,72 @@
+package com.horizen.websocket
+
+import java.util.concurrent.{Executors, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import javax.websocket.{OnMessage, Session}
+import javax.websocket.server.ServerEndpoint
+
+import scala.collection.concurrent.TrieMap
+
+// Stub of MC node, that replies on get block by hash requests with a delay.
+@ServerEndpoint("/")
+class WebSocketServerMainchainNodeEndpoint {
+
+  import WebSocketServerMainchainNodeEndpoint._
+
+  @OnMessage
+  def onMessage(session: Session, message: String): Unit = {
+    val json = mapper.readTree(message)
+    val requestId = json.get("requestId").asText()
+    val hash = json.get("requestPayload").get("hash").asText()
+
+    requestsNumber.incrementAndGet()
+    val inFlight = requestsInFlight.incrementAndGet()
+    maxRequestsInFlight.accumulateAndGet(inFlight, Math.max(_, _))
+
+    scheduler.schedule(new Runnable {
+      override def run(): Unit = {
+        val response = blocks.get(hash) match {
+          case Some(blockHex) =>
+            mapper.createObjectNode()
+              .put("msgType", 2)
+              .put("requestId", requestId)
+              .set("responsePayload", mapper.createObjectNode()
+                .put("height", 0)
+                .put("hash", hash)
+                .put("block", blockHex))
+          case None =>
+            mapper.createObjectNode()
+              .put("msgType", 3)
+              .put("requestId", requestId)
+              .put("errorCode", 1)
+              .put("message", "BLOCK_NOT_FOUND")
+        }
+        requestsInFlight.decrementAndGet()
+        session.getAsyncRemote.sendText(response.toString)
+      }
+    }, responseDelayMillis, TimeUnit.MILLISECONDS)
+  }
+}
+
+object WebSocketServerMainchainNodeEndpoint {
+  private val mapper = new ObjectMapper()
+  private val scheduler = Executors.newScheduledThreadPool(4)
+
+  // Block hex by block hash
+  val blocks: TrieMap[String, String] = TrieMap()
+  @volatile var responseDelayMillis: Long = 0
+
+  val requestsNumber = new AtomicInteger()
+  val requestsInFlight = new AtomicInteger()
+  val maxRequestsInFlight = new AtomicInteger()
+
+  def reset(): Unit = {
+    blocks.clear()
+    responseDelayMillis = 0
+    requestsNumber.set(0)
+    requestsInFlight.set(0)
+    maxRequestsInFlight.set(0)
+  }
+}